@@ -0,0 +1,171 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.Random;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.OvalRoi;
+import ij.gui.Roi;
+
+/**
+ * Synthetic input images for the benchmarks: channel 1 is a binary mask (255 = object) of randomly placed discs (2D) or spheres (3D),
+ * the other channels contain random intensities that are brighter inside the objects. Images are reproducible for a seed.
+ * */
+class AdipoBenchmarkImages{
+	static final int MASK_VALUE = 255;
+	static final int MIN_RADIUS = 4, MAX_RADIUS = 12;
+	
+	/**
+	 * @param size: width and height in px
+	 * @param nSlices: number of slices, 1 = 2D image
+	 * @param nChannels: number of channels (mask channel included)
+	 * @param density: fraction of the image covered by objects (before overlapping objects merge), 0 < density < 1
+	 * @return 16-bit hyperstack with the mask in channel 1
+	 * */
+	static ImagePlus createImage(int size, int nSlices, int nChannels, double density, long seed) {
+		Random random = new Random(seed);
+		ImagePlus imp = IJ.createHyperStack("benchmark", size, size, nChannels, nSlices, 1, 16);
+		ImageStack stack = imp.getStack();
+		
+		short [][] mask = new short [nSlices][];
+		for(int z = 0; z < nSlices; z++) {
+			mask [z] = (short []) stack.getPixels(imp.getStackIndex(1, z+1, 1));
+		}
+		
+		double meanRadius = (MIN_RADIUS + MAX_RADIUS) / 2.0;
+		double objectVolume = nSlices == 1 ? Math.PI * meanRadius * meanRadius : 4.0 / 3.0 * Math.PI * Math.pow(meanRadius, 3);
+		long nObjects = Math.max(1, Math.round(density * size * size * nSlices / objectVolume));
+		int cx, cy, cz, r;
+		for(long o = 0; o < nObjects; o++) {
+			r = MIN_RADIUS + random.nextInt(MAX_RADIUS - MIN_RADIUS + 1);
+			cx = random.nextInt(size);
+			cy = random.nextInt(size);
+			cz = random.nextInt(nSlices);
+			for(int z = Math.max(0, cz - r); z <= Math.min(nSlices - 1, cz + r); z++) {
+				for(int y = Math.max(0, cy - r); y <= Math.min(size - 1, cy + r); y++) {
+					for(int x = Math.max(0, cx - r); x <= Math.min(size - 1, cx + r); x++) {
+						if((x-cx)*(x-cx) + (y-cy)*(y-cy) + (z-cz)*(z-cz) > r * r) continue;
+						mask [z][y * size + x] = (short) MASK_VALUE;
+					}
+				}
+			}
+		}
+		
+		fillIntensities(imp, mask, random);
+		return imp;
+	}
+	
+	/**
+	 * @return 16-bit hyperstack with one disc (2D) or sphere (3D) of the given radius in the center of the mask channel 1, 
+	 * surrounded by a margin of 2 * radius px in x and y (and in z, for 3D images)
+	 * */
+	static ImagePlus createSingleObjectImage(int radius, boolean threeD, int nChannels, long seed) {
+		int size = 6 * radius + 1;
+		int nSlices = threeD ? size : 1;
+		int c = size / 2;
+		ImagePlus imp = IJ.createHyperStack("benchmark object", size, size, nChannels, nSlices, 1, 16);
+		ImageStack stack = imp.getStack();
+		
+		short [][] mask = new short [nSlices][];
+		for(int z = 0; z < nSlices; z++) {
+			mask [z] = (short []) stack.getPixels(imp.getStackIndex(1, z+1, 1));
+			for(int y = 0; y < size; y++) {
+				for(int x = 0; x < size; x++) {
+					if((x-c)*(x-c) + (y-c)*(y-c) + (threeD ? (z-c)*(z-c) : 0) > radius * radius) continue;
+					mask [z][y * size + x] = (short) MASK_VALUE;
+				}
+			}
+		}
+		
+		fillIntensities(imp, mask, new Random(seed));
+		return imp;
+	}
+	
+	/**
+	 * @return the ROI outlining the disc of an image created by createSingleObjectImage(...) in 2D
+	 * */
+	static Roi getSingleObjectRoi(ImagePlus imp, int radius) {
+		int c = imp.getWidth() / 2;
+		return new OvalRoi(c - radius, c - radius, 2 * radius + 1, 2 * radius + 1);
+	}
+	
+	/**
+	 * @return the foreground voxels of channel c of the image as one particle
+	 * */
+	static AdipoParticle getForeground(ImagePlus imp, int c) {
+		AdipoChannel mask = new AdipoChannel(imp, c);
+		AdipoParticle particle = new AdipoParticle(1024, mask);
+		for(int t = 0; t < imp.getNFrames(); t++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				for(int y = 0; y < imp.getHeight(); y++) {
+					for(int x = 0; x < imp.getWidth(); x++) {
+						if(mask.isForeground(t * mask.nSlices + z, y * mask.width + x)) {
+							particle.add(x, y, z, t);
+						}
+					}
+				}
+			}
+		}
+		particle.trimToSize();
+		return particle;
+	}
+	
+	/**
+	 * @return copies of the pixel arrays of channel c, to restore the channel with restoreChannel(...)
+	 * */
+	static Object [] copyChannel(ImagePlus imp, int c) {
+		Object [] planes = new Object [imp.getNSlices() * imp.getNFrames()];
+		for(int t = 0; t < imp.getNFrames(); t++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				planes [t * imp.getNSlices() + z] = imp.getStack().getProcessor(imp.getStackIndex(c, z+1, t+1)).getPixelsCopy();
+			}
+		}
+		return planes;
+	}
+	
+	static void restoreChannel(ImagePlus imp, int c, Object [] planes) {
+		for(int t = 0; t < imp.getNFrames(); t++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				Object pixels = imp.getStack().getPixels(imp.getStackIndex(c, z+1, t+1));
+				System.arraycopy(planes [t * imp.getNSlices() + z], 0, pixels, 0, imp.getWidth() * imp.getHeight());
+			}
+		}
+	}
+	
+	/**
+	 * Fills channels 2 - n with noise, brighter inside the objects of the mask
+	 * */
+	private static void fillIntensities(ImagePlus imp, short [][] mask, Random random) {
+		short [] pixels;
+		for(int ch = 2; ch <= imp.getNChannels(); ch++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				pixels = (short []) imp.getStack().getPixels(imp.getStackIndex(ch, z+1, 1));
+				for(int i = 0; i < pixels.length; i++) {
+					pixels [i] = (short) (random.nextInt(1000) + (mask [z][i] != 0 ? 2000 : 0));
+				}
+			}
+		}
+	}
+}
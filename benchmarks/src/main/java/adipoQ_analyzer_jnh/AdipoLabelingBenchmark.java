@@ -0,0 +1,95 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import ij.ImagePlus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Flood-fill labeling and quantification of all objects of an image (AdipoQAnalyzerMain.analyzeAdipocytes(...)) in 2D and 3D images,
+ * with 6- / 26-connectivity (increaseRange). Surroundings are not quantified (see AdipocyteBenchmark).
+ * 
+ * 3D images have 32 slices. The mask channel is restored at the start of each invocation, since excluded particles are removed from it;
+ * restoring copies the mask planes and is included in the measured time.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class AdipoLabelingBenchmark{
+	@Param({"256", "1024"})
+	int size;
+	
+	@Param({"0.1", "0.4"})
+	double density;
+	
+	@Param({"1", "3"})
+	int channels;
+	
+	@Param({"2D", "3D"})
+	String dimensions;
+	
+	@Param({"false", "true"})
+	boolean increaseRange;
+	
+	private AdipoQAnalyzerMain analyzer;
+	private ImagePlus imp;
+	private Object [] maskPlanes;
+	
+	@Setup(Level.Trial)
+	public void createImage() {
+		imp = AdipoBenchmarkImages.createImage(size, dimensions.equals("3D") ? 32 : 1, channels, density, 1L);
+		maskPlanes = AdipoBenchmarkImages.copyChannel(imp, 1);
+		
+		analyzer = new AdipoQAnalyzerMain();
+		analyzer.headless = true;
+		analyzer.progress = new AdipoConsoleProgress(new String [] {"benchmark"}, 1, false);
+		analyzer.channelID = 1;
+		analyzer.increaseRange = increaseRange;
+		analyzer.minSize = 20.0;
+		analyzer.excludeSelection = AdipoQAnalyzerMain.excludeOptions [1];
+		analyzer.chosenReconstruction = AdipoQAnalyzerMain.reconstructionMethod [0];
+		analyzer.quantifySurroundings = false;
+	}
+	
+	@Benchmark
+	public ArrayList<Adipocyte> analyzeAdipocytes() {
+		AdipoBenchmarkImages.restoreChannel(imp, 1, maskPlanes);
+		return analyzer.analyzeAdipocytes(imp, 1);
+	}
+}
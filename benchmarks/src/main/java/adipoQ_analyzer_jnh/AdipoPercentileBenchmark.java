@@ -0,0 +1,109 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Average of the lowest / highest 10 % of the intensities of an object and the median, computed by AdipoQuantiles like in Adipocyte
+ * (histogram for 16-bit, selection for 32-bit intensities). sortedMaxPercent is the reference of sorting the whole array.
+ * 
+ * AdipoQuantiles reorders the array it is given, so each invocation first copies the intensities; the copy is included in the measured 
+ * time (also in sortedMaxPercent), instead of a per-invocation setup, which would distort the timing of these short calls.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdipoPercentileBenchmark{
+	@Param({"1000", "100000", "1000000"})
+	int values;
+	
+	@Param({"16", "32"})
+	int bitDepth;
+	
+	private double [] intensities;
+	private double [] work;
+	private double min, max;
+	
+	@Setup(Level.Trial)
+	public void createIntensities() {
+		Random random = new Random(1L);
+		intensities = new double [values];
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < values; i++) {
+			if(bitDepth == 16) {
+				intensities [i] = random.nextInt(4096);
+			}else {
+				intensities [i] = random.nextGaussian() * 500.0 + 2000.0;
+			}
+			if(intensities [i] < min) min = intensities [i];
+			if(intensities [i] > max) max = intensities [i];
+		}
+		work = new double [values];
+	}
+	
+	private AdipoQuantiles createQuantiles() {
+		System.arraycopy(intensities, 0, work, 0, values);
+		return new AdipoQuantiles(work, bitDepth, min, max);
+	}
+	
+	@Benchmark
+	public double maxPercent() {
+		return createQuantiles().getMaxPercentAverage(10.0);
+	}
+	
+	@Benchmark
+	public double minPercent() {
+		return createQuantiles().getMinPercentAverage(10.0);
+	}
+	
+	@Benchmark
+	public double sortedMaxPercent() {
+		double [] sorted = Arrays.copyOf(intensities, intensities.length);
+		Arrays.sort(sorted);
+		return AdipoQAnalyzerMain.getMaxPercentFromSortedArray(sorted, 10.0);
+	}
+	
+	@Benchmark
+	public double median() {
+		return createQuantiles().getMedian();
+	}
+}
@@ -0,0 +1,97 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.concurrent.TimeUnit;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction of one Adipocyte from a disc (2D) or sphere (3D) of the given radius.
+ * 
+ * Without surroundings, the construction time is the time of determineIntensityParams(...). The time of the surroundings methods
+ * (quantifySurroundingStructuresIn2DStatic(...) and quantifySurroundingStructuresIn3DTimelapse(...)) is the difference between 
+ * the construction with and without surroundings.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class AdipocyteBenchmark{
+	@Param({"8", "32"})
+	int radius;
+	
+	@Param({"2", "4"})
+	int channels;
+	
+	@Param({"5.0"})
+	double refDistance;
+	
+	private ImagePlus imp2D, imp3D;
+	private AdipoParticle particle2D, particle3D;
+	private Roi roi2D;
+	
+	@Setup(Level.Trial)
+	public void createObjects() {
+		imp2D = AdipoBenchmarkImages.createSingleObjectImage(radius, false, channels, 1L);
+		particle2D = AdipoBenchmarkImages.getForeground(imp2D, 1);
+		roi2D = AdipoBenchmarkImages.getSingleObjectRoi(imp2D, radius);
+		
+		imp3D = AdipoBenchmarkImages.createSingleObjectImage(radius, true, channels, 1L);
+		particle3D = AdipoBenchmarkImages.getForeground(imp3D, 1);
+	}
+	
+	@Benchmark
+	public Adipocyte intensityParams2D() {
+		return new Adipocyte(particle2D, imp2D, 1, false, refDistance, roi2D);
+	}
+	
+	@Benchmark
+	public Adipocyte intensityParams3D() {
+		return new Adipocyte(particle3D, imp3D, 1, false, refDistance);
+	}
+	
+	@Benchmark
+	public Adipocyte surroundings2DStatic() {
+		return new Adipocyte(particle2D, imp2D, 1, true, refDistance, roi2D);
+	}
+	
+	@Benchmark
+	public Adipocyte surroundings3DTimelapse() {
+		return new Adipocyte(particle3D, imp3D, 1, true, refDistance);
+	}
+}
@@ -0,0 +1,135 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Runs the tasks of a batch (one image each) concurrently.
+ * 
+ * Tasks are started largest-first and only while the sum of the estimated memory of all running tasks stays within the memory budget.
+ * If the next largest task does not fit into the remaining budget, the largest task that still fits is started instead.
+ * A task that exceeds the budget on its own is started once no other task is running.
+ * */
+class AdipoBatchScheduler{
+	private final int nrOfParallelTasks;
+	private final long memoryBudget;
+	
+	private final ArrayList<Task> pending = new ArrayList<Task>();
+	private final Object lock = new Object();
+	private int running = 0;
+	private long memoryInUse = 0;
+	private Throwable failure = null;
+	
+	private static class Task{
+		final int index;
+		final long memory;
+		final Runnable runnable;
+		
+		Task(int index, long memory, Runnable runnable){
+			this.index = index;
+			this.memory = memory;
+			this.runnable = runnable;
+		}
+	}
+	
+	/**
+	 * @param nrOfParallelTasks: maximum number of tasks that run at the same time (>= 1)
+	 * @param memoryBudget: maximum sum of the estimated memory (bytes) of all running tasks
+	 * */
+	public AdipoBatchScheduler(int nrOfParallelTasks, long memoryBudget){
+		this.nrOfParallelTasks = Math.max(1, nrOfParallelTasks);
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * @param index: index of the task, tasks of equal memory are started in the order of their index
+	 * @param memory: estimated memory (bytes) needed to process the task
+	 * */
+	void addTask(int index, long memory, Runnable runnable) {
+		pending.add(new Task(index, memory, runnable));
+	}
+	
+	/**
+	 * Runs all added tasks and returns once all of them are finished.
+	 * @throws RuntimeException if a task threw an exception or error; the remaining tasks are still processed
+	 * */
+	void run() throws InterruptedException {
+		Collections.sort(pending, new Comparator<Task>() {
+			public int compare(Task a, Task b) {
+				if(a.memory != b.memory) return a.memory > b.memory ? -1 : 1;
+				return Integer.compare(a.index, b.index);
+			}
+		});
+		
+		Task next;
+		synchronized(lock) {
+			while(!pending.isEmpty()) {
+				next = null;
+				if(running < nrOfParallelTasks) {
+					for(int i = 0; i < pending.size(); i++) {
+						if(running == 0 || memoryInUse + pending.get(i).memory <= memoryBudget) {
+							next = pending.remove(i);
+							break;
+						}
+					}
+				}
+				if(next == null) {
+					lock.wait();
+					continue;
+				}
+				running++;
+				memoryInUse += next.memory;
+				start(next);
+			}
+			while(running > 0) {
+				lock.wait();
+			}
+		}
+		
+		if(failure != null) {
+			throw new RuntimeException("A task of the batch failed", failure);
+		}
+	}
+	
+	private void start(final Task task) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					task.runnable.run();
+				}catch(Throwable e) {
+					synchronized(lock) {
+						if(failure == null) failure = e;
+					}
+				}finally {
+					synchronized(lock) {
+						running--;
+						memoryInUse -= task.memory;
+						lock.notifyAll();
+					}
+				}
+			}
+		}, "AdipoQ task " + (task.index+1));
+		thread.start();
+	}
+}
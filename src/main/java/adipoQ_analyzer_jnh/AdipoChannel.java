@@ -0,0 +1,154 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * Direct access to the primitive pixel arrays of one channel of a hyperstack.
+ * Planes are addressed by plane = t * nSlices + z and pixels within a plane by index = y * width + x.
+ * Values are returned like ImageStack.getVoxel(...) returns them.
+ * For a disk-backed stack (AdipoVirtualStack), the planes of the channel are pinned in memory.
+ * */
+class AdipoChannel{
+	static final int TYPE_BYTE = 0, TYPE_SHORT = 1, TYPE_FLOAT = 2, TYPE_RGB = 3;
+
+	final int width, height, nSlices, nFrames, planeSize;
+	final int type;
+	private byte [][] bytePlanes;
+	private short [][] shortPlanes;
+	private float [][] floatPlanes;
+	private int [][] rgbPlanes;
+
+	/**
+	 * @param imp: Hyperstack image
+	 * @param channel: 1 <= channel <= imp.getNChannels()
+	 * */
+	public AdipoChannel(ImagePlus imp, int channel){
+		width = imp.getWidth();
+		height = imp.getHeight();
+		nSlices = imp.getNSlices();
+		nFrames = imp.getNFrames();
+		planeSize = width * height;
+
+		ImageStack stack = imp.getStack();
+		Object pixels = stack.getPixels(imp.getStackIndex(channel, 1, 1));
+		if(pixels instanceof byte []) {
+			type = TYPE_BYTE;
+			bytePlanes = new byte [nSlices*nFrames][];
+		}else if(pixels instanceof short []) {
+			type = TYPE_SHORT;
+			shortPlanes = new short [nSlices*nFrames][];
+		}else if(pixels instanceof float []) {
+			type = TYPE_FLOAT;
+			floatPlanes = new float [nSlices*nFrames][];
+		}else {
+			type = TYPE_RGB;
+			rgbPlanes = new int [nSlices*nFrames][];
+		}
+
+		for(int t = 0; t < nFrames; t++) {
+			for(int z = 0; z < nSlices; z++) {
+				if(stack instanceof AdipoVirtualStack) {
+					pixels = ((AdipoVirtualStack) stack).pin(imp.getStackIndex(channel, z+1, t+1));
+				}else {
+					pixels = stack.getPixels(imp.getStackIndex(channel, z+1, t+1));
+				}
+				switch(type) {
+				case TYPE_BYTE: bytePlanes [t*nSlices+z] = (byte []) pixels; break;
+				case TYPE_SHORT: shortPlanes [t*nSlices+z] = (short []) pixels; break;
+				case TYPE_FLOAT: floatPlanes [t*nSlices+z] = (float []) pixels; break;
+				default: rgbPlanes [t*nSlices+z] = (int []) pixels;
+				}
+			}
+		}
+	}
+
+	int getNPlanes() {
+		return nSlices * nFrames;
+	}
+
+	/**
+	 * @return value at position index (= y * width + x) in plane (= t * nSlices + z)
+	 * */
+	double getValue(int plane, int index) {
+		switch(type) {
+		case TYPE_BYTE: return bytePlanes [plane][index] & 0xff;
+		case TYPE_SHORT: return shortPlanes [plane][index] & 0xffff;
+		case TYPE_FLOAT: return floatPlanes [plane][index];
+		default: return rgbPlanes [plane][index] & 0xffffff;
+		}
+	}
+
+	/**
+	 * @return value at position index of a pixel array of an ImageStack, like ImageStack.getVoxel(...) returns it
+	 * */
+	static double getValue(Object pixels, int index) {
+		if(pixels instanceof byte []) return ((byte []) pixels) [index] & 0xff;
+		if(pixels instanceof short []) return ((short []) pixels) [index] & 0xffff;
+		if(pixels instanceof float []) return ((float []) pixels) [index];
+		return ((int []) pixels) [index] & 0xffffff;
+	}
+
+	/**
+	 * 0 <= z < nSlices, 0 <= t < nFrames
+	 * */
+	double getValue(int x, int y, int z, int t) {
+		return getValue(t*nSlices+z, y*width+x);
+	}
+
+	/**
+	 * @return true if the value at index in plane is > 0.0
+	 * */
+	boolean isForeground(int plane, int index) {
+		switch(type) {
+		case TYPE_BYTE: return bytePlanes [plane][index] != 0;
+		case TYPE_SHORT: return shortPlanes [plane][index] != 0;
+		case TYPE_FLOAT: return floatPlanes [plane][index] > 0.0f;
+		default: return (rgbPlanes [plane][index] & 0xffffff) != 0;
+		}
+	}
+
+	/**
+	 * Sets the value at index in plane like ImageStack.setVoxel(...) does (rounded and clipped to the range of the type)
+	 * */
+	void setValue(int plane, int index, double value) {
+		switch(type) {
+		case TYPE_BYTE: bytePlanes [plane][index] = (byte) (Math.max(0.0, Math.min(255.0, value)) + 0.5); break;
+		case TYPE_SHORT: shortPlanes [plane][index] = (short) (Math.max(0.0, Math.min(65535.0, value)) + 0.5); break;
+		case TYPE_FLOAT: floatPlanes [plane][index] = (float) value; break;
+		default: rgbPlanes [plane][index] = (int) value;
+		}
+	}
+
+	/**
+	 * Sets the value at index in plane to 0
+	 * */
+	void clear(int plane, int index) {
+		switch(type) {
+		case TYPE_BYTE: bytePlanes [plane][index] = 0; break;
+		case TYPE_SHORT: shortPlanes [plane][index] = 0; break;
+		case TYPE_FLOAT: floatPlanes [plane][index] = 0.0f; break;
+		default: rgbPlanes [plane][index] = 0;
+		}
+	}
+}
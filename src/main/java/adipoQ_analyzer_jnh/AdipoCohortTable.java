@@ -0,0 +1,297 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Consolidated results of all images of a batch, written while the batch is running:
+ * 
+ * The cohort table (e.g., AQA_cohort.txt) contains the object rows of all images under one header line, preceded by the directory 
+ * of the image. The rows of an image are appended as soon as the image is finished (in the order the images finish) and the file 
+ * is flushed, so that the table can be read while the batch is running. Images with other columns than the first image are reported and left out.
+ * 
+ * The directory table (e.g., AQA_cohort_directories.txt) contains one row for each directory with the number of images and result rows
+ * (one row per object and frame, so objects of time series are counted once per frame) and the mean, median, minimum, maximum and 
+ * quantiles of the object sizes of these rows (area in 2D, volume in 3D, all frames). A row is written
+ * once all images of the directory are finished; only the sizes of unfinished directories are kept in memory.
+ * */
+class AdipoCohortTable{
+	static final String DIRECTORY_TABLE_SUFFIX = "_directories.txt";
+	static final double [] QUANTILES = {0.05, 0.25, 0.75, 0.95};
+	static final int SIZE_COLUMN = 9;	// index of the area / volume column in the text result tables
+	
+	private final AdipoProgress progress;
+	private final String [] taskDirectory;
+	private final boolean [] taskFinished;
+	private final HashMap<String,Integer> unfinishedTasks = new HashMap<String,Integer>();
+	private final HashMap<String,DirectoryStatistics> statistics = new HashMap<String,DirectoryStatistics>();
+	private final AdipoTableWriter objectTable, directoryTable;
+	private final AdipoNumberFormat nf6;
+	private final DecimalFormat parser;
+	private String header = null;
+	private boolean failed = false;
+	
+	/**
+	 * Sizes of the objects of one directory
+	 * */
+	private static class DirectoryStatistics{
+		int images = 0;
+		int n = 0;
+		double [] sizes = new double [1024];
+		
+		void add(double size) {
+			if(n == sizes.length) sizes = Arrays.copyOf(sizes, 2 * n);
+			sizes [n++] = size;
+		}
+	}
+	
+	/**
+	 * @param taskDirectory: directory of the image of each task
+	 * @param symbols: symbols of the output number format
+	 * */
+	AdipoCohortTable(String path, String [] taskDirectory, DecimalFormatSymbols symbols, AdipoProgress progress) throws IOException {
+		this.progress = progress;
+		this.taskDirectory = taskDirectory;
+		taskFinished = new boolean [taskDirectory.length];
+		for(int task = 0; task < taskDirectory.length; task++) {
+			Integer count = unfinishedTasks.get(taskDirectory [task]);
+			unfinishedTasks.put(taskDirectory [task], count == null ? 1 : count + 1);
+		}
+		nf6 = new AdipoNumberFormat(symbols);
+		parser = new DecimalFormat("#0.000000", symbols);
+		
+		objectTable = new AdipoTableWriter(path, false);
+		String directoryPath = path.endsWith(".txt") ? path.substring(0, path.length() - 4) : path;
+		try {
+			directoryTable = new AdipoTableWriter(directoryPath + DIRECTORY_TABLE_SUFFIX, false);
+		}catch(IOException e) {
+			objectTable.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return the path of the cohort table
+	 * */
+	String getPath() {
+		return objectTable.getPath();
+	}
+	
+	/**
+	 * Appends the object rows of the image of a task and marks the task as finished
+	 * @param header: header line of the text result tables (see AdipoResultTable.getTextHeader)
+	 * @param rows: rows of the text result tables
+	 * @param sizes: object size (area / volume) of each row
+	 * */
+	synchronized void addImage(int task, String header, ArrayList<String> rows, double [] sizes) {
+		if(failed || taskFinished [task]) return;
+		String directory = taskDirectory [task];
+		try {
+			if(this.header == null) {
+				this.header = header;
+				objectTable.append("Directory	" + header);
+				String sizeColumn = header.split("	") [SIZE_COLUMN];
+				StringBuilder line = new StringBuilder("Directory	Images	Rows");
+				line.append("	Mean ").append(sizeColumn);
+				line.append("	Median ").append(sizeColumn);
+				line.append("	Min ").append(sizeColumn);
+				line.append("	Max ").append(sizeColumn);
+				for(int q = 0; q < QUANTILES.length; q++) {
+					line.append("	").append(Math.round(QUANTILES [q] * 100)).append("% quantile ").append(sizeColumn);
+				}
+				directoryTable.append(line);
+				directoryTable.flush();
+			}else if(!this.header.equals(header)) {
+				progress.notifyMessage("Task " + (task+1) + "/" + taskFinished.length + ": Results contain other columns than those in the cohort table - "
+						+ "not added to the cohort table", ProgressDialog.ERROR);
+				finishTask(task);
+				return;
+			}
+			
+			StringBuilder line = new StringBuilder(1024);
+			for(int i = 0; i < rows.size(); i++) {
+				line.setLength(0);
+				line.append(directory).append('	').append(rows.get(i));
+				objectTable.append(line);
+			}
+			objectTable.flush();
+		}catch(IOException e) {
+			fail(e);
+			return;
+		}
+		
+		DirectoryStatistics directoryStatistics = getStatistics(directory);
+		directoryStatistics.images++;
+		for(int i = 0; i < sizes.length; i++) {
+			directoryStatistics.add(sizes [i]);
+		}
+		finishTask(task);
+	}
+	
+	/**
+	 * Appends the rows of an existing short result table (*_AQAs.txt or *_AQAs.txt.gz), e.g., of an image skipped since its outputs are complete
+	 * */
+	synchronized void addResults(int task, File shortTable) {
+		if(failed || taskFinished [task]) return;
+		ArrayList<String> rows = new ArrayList<String>();
+		double [] sizes = new double [1024];
+		String header;
+		try {
+			InputStream in = new FileInputStream(shortTable);
+			if(shortTable.getName().endsWith(AdipoTableWriter.GZIP_SUFFIX)) in = new GZIPInputStream(in, 65536);
+			BufferedReader br = new BufferedReader(new InputStreamReader(in));
+			try {
+				header = br.readLine();
+				if(header == null) throw new IOException("empty file");
+				if(header.contains(AdipoResultMerger.FOOTER_START)) header = header.substring(0, header.indexOf(AdipoResultMerger.FOOTER_START));
+				String line;
+				String [] fields;
+				while((line = br.readLine()) != null) {
+					if(line.equals("")) continue;
+					fields = line.split("	", SIZE_COLUMN + 2);
+					if(rows.size() == sizes.length) sizes = Arrays.copyOf(sizes, 2 * sizes.length);
+					try {
+						sizes [rows.size()] = fields.length > SIZE_COLUMN ? parser.parse(fields [SIZE_COLUMN]).doubleValue() : Double.NaN;
+					}catch(ParseException e) {
+						sizes [rows.size()] = Double.NaN;
+					}
+					rows.add(line);
+				}
+			}finally {
+				br.close();
+			}
+		}catch(IOException e) {
+			progress.notifyMessage("Task " + (task+1) + "/" + taskFinished.length + ": Results could not be read from " + shortTable.getPath() 
+				+ " - not added to the cohort table (" + e.getMessage() + ")", ProgressDialog.ERROR);
+			finishTask(task);
+			return;
+		}
+		addImage(task, header, rows, Arrays.copyOf(sizes, rows.size()));
+	}
+	
+	/**
+	 * Marks the task as finished; the row of its directory is written once all tasks of the directory are finished
+	 * */
+	synchronized void finishTask(int task) {
+		if(taskFinished [task]) return;
+		taskFinished [task] = true;
+		String directory = taskDirectory [task];
+		int remaining = unfinishedTasks.get(directory) - 1;
+		unfinishedTasks.put(directory, remaining);
+		if(remaining == 0) {
+			writeDirectory(directory);
+		}
+	}
+	
+	/**
+	 * Writes the rows of the remaining directories and closes the tables
+	 * */
+	synchronized void close() {
+		for(int task = 0; task < taskFinished.length; task++) {
+			if(!taskFinished [task] && statistics.containsKey(taskDirectory [task])) {
+				writeDirectory(taskDirectory [task]);
+			}
+		}
+		try {
+			try {
+				objectTable.close();
+			}finally {
+				directoryTable.close();
+			}
+		}catch(IOException e) {
+			fail(e);
+		}
+	}
+	
+	private DirectoryStatistics getStatistics(String directory) {
+		DirectoryStatistics directoryStatistics = statistics.get(directory);
+		if(directoryStatistics == null) {
+			directoryStatistics = new DirectoryStatistics();
+			statistics.put(directory, directoryStatistics);
+		}
+		return directoryStatistics;
+	}
+	
+	private void writeDirectory(String directory) {
+		DirectoryStatistics directoryStatistics = statistics.remove(directory);
+		if(failed || directoryStatistics == null) return;	// no images of the directory with results
+		
+		// sizes that could not be read are left out
+		double [] sizes = new double [directoryStatistics.n];
+		int n = 0;
+		double sum = 0.0;
+		for(int i = 0; i < directoryStatistics.n; i++) {
+			if(Double.isNaN(directoryStatistics.sizes [i])) continue;
+			sizes [n++] = directoryStatistics.sizes [i];
+			sum += directoryStatistics.sizes [i];
+		}
+		sizes = Arrays.copyOf(sizes, n);
+		Arrays.sort(sizes);
+		
+		StringBuilder line = new StringBuilder(directory);
+		line.append('	').append(directoryStatistics.images);
+		line.append('	').append(directoryStatistics.n);
+		line.append('	');	nf6.append(line, n > 0 ? sum / n : Double.NaN);
+		line.append('	');	nf6.append(line, getQuantileOfSortedArray(sizes, 0.5));
+		line.append('	');	nf6.append(line, n > 0 ? sizes [0] : Double.NaN);
+		line.append('	');	nf6.append(line, n > 0 ? sizes [n-1] : Double.NaN);
+		for(int q = 0; q < QUANTILES.length; q++) {
+			line.append('	');	nf6.append(line, getQuantileOfSortedArray(sizes, QUANTILES [q]));
+		}
+		try {
+			directoryTable.append(line);
+			directoryTable.flush();
+		}catch(IOException e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * @return quantile by linear interpolation between the closest ranks (the median for p = 0.5), NaN if there are no values
+	 * */
+	static double getQuantileOfSortedArray(double [] sortedValues, double p) {
+		if(sortedValues.length == 0) return Double.NaN;
+		double rank = p * (sortedValues.length - 1);
+		int lower = (int) Math.floor(rank);
+		if(lower + 1 >= sortedValues.length) return sortedValues [sortedValues.length - 1];
+		return sortedValues [lower] + (rank - lower) * (sortedValues [lower + 1] - sortedValues [lower]);
+	}
+	
+	private void fail(IOException e) {
+		if(failed) return;
+		failed = true;
+		progress.notifyMessage("Cohort table " + objectTable.getPath() + " could not be written - " + e.getMessage(), ProgressDialog.ERROR);
+	}
+}
@@ -0,0 +1,157 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a result table row by row into a columnar results file (*_AQA.aqac), read by AdipoResultTable.
+ * 
+ * File layout (big-endian): 
+ * 	"AQAC", version (int), 
+ * 	number of metadata entries (int), {key (string), value (string)} for each entry,
+ * 	number of columns (int), {name (string), type (byte, AdipoResultTable.INT or DOUBLE)} for each column,
+ * 	blocks of up to BLOCK_ROWS rows: number of rows (int), {compressed length (int), compressed values} for each column,
+ * 	0 (int) after the last block.
+ * Strings are written as length (int) and UTF-8 bytes. The values of a column in a block are deflate-compressed after the bytes of 
+ * the values have been shuffled (first bytes of all values, then second bytes, ...), which compresses numbers of similar magnitude much better.
+ * */
+class AdipoColumnarWriter{
+	static final int BLOCK_ROWS = 8192;
+	
+	private final DataOutputStream out;
+	private final byte [] types;
+	private final double [][] block;	// [column][row] values of the current block
+	private int blockRows = 0;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(65536);
+	private final byte [] deflateBuffer = new byte [65536];
+	private byte [] bytes = new byte [0];
+	
+	/**
+	 * @param types: AdipoResultTable.INT or DOUBLE for each column
+	 * @param metadata: e.g., the preferences block (AdipoResultTable.SETTINGS)
+	 * */
+	AdipoColumnarWriter(String path, String [] columns, byte [] types, LinkedHashMap<String,String> metadata) throws IOException {
+		this.types = types.clone();
+		block = new double [columns.length][BLOCK_ROWS];
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 65536));
+		try {
+			out.write(AdipoResultTable.MAGIC);
+			out.writeInt(AdipoResultTable.VERSION);
+			out.writeInt(metadata.size());
+			Map.Entry<String,String> entry;
+			for(Iterator<Map.Entry<String,String>> it = metadata.entrySet().iterator(); it.hasNext();) {
+				entry = it.next();
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+			out.writeInt(columns.length);
+			for(int c = 0; c < columns.length; c++) {
+				writeString(columns [c]);
+				out.writeByte(types [c]);
+			}
+		}catch(IOException e) {
+			deflater.end();
+			out.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @param row: the values of all columns (values of INT columns are written as int)
+	 * */
+	void addRow(double [] row) throws IOException {
+		for(int c = 0; c < row.length; c++) {
+			block [c][blockRows] = row [c];
+		}
+		blockRows++;
+		if(blockRows == BLOCK_ROWS) writeBlock();
+	}
+	
+	/**
+	 * Writes the remaining rows and closes the file
+	 * */
+	void close() throws IOException {
+		try {
+			if(blockRows > 0) writeBlock();
+			out.writeInt(0);
+		}finally {
+			deflater.end();
+			out.close();
+		}
+	}
+	
+	private void writeBlock() throws IOException {
+		out.writeInt(blockRows);
+		for(int c = 0; c < block.length; c++) {
+			int size = types [c] == AdipoResultTable.INT ? 4 : 8;
+			ByteBuffer buffer = ByteBuffer.allocate(blockRows * size);
+			for(int r = 0; r < blockRows; r++) {
+				if(types [c] == AdipoResultTable.INT) {
+					buffer.putInt((int) block [c][r]);
+				}else {
+					buffer.putDouble(block [c][r]);
+				}
+			}
+			shuffle(buffer.array(), blockRows, size);
+			
+			compressed.reset();
+			deflater.reset();
+			deflater.setInput(bytes, 0, blockRows * size);
+			deflater.finish();
+			while(!deflater.finished()) {
+				compressed.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+			}
+			out.writeInt(compressed.size());
+			compressed.writeTo(out);
+		}
+		blockRows = 0;
+	}
+	
+	/**
+	 * Shuffles the bytes of n values of the given size into bytes: the first bytes of all values, then the second bytes, ...
+	 * */
+	private void shuffle(byte [] values, int n, int size) {
+		if(bytes.length < n * size) bytes = new byte [n * size];
+		for(int b = 0; b < size; b++) {
+			for(int j = 0; j < n; j++) {
+				bytes [b * n + j] = values [j * size + b];
+			}
+		}
+	}
+	
+	private void writeString(String text) throws IOException {
+		byte [] utf8 = text.getBytes("UTF-8");
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+}
@@ -0,0 +1,109 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.io.PrintStream;
+
+/**
+ * Progress of a batch that is written to the console instead of a ProgressDialog, for headless processing.
+ * Notifications are printed to System.out, errors to System.err. Bar texts are only printed in verbose mode.
+ * */
+class AdipoConsoleProgress implements AdipoProgress{
+	private final String [] taskNames;
+	private final int tasks;
+	private final boolean verbose;
+	private final ThreadLocal<Integer> boundTask = new ThreadLocal<Integer>();
+	private int task = 0, finishedTasks = 0;
+	private boolean errorsAvailable = false, notificationsAvailable = false;
+	
+	/**
+	 * @param verbose: print also bar texts (progress within a task)
+	 * */
+	public AdipoConsoleProgress(String [] taskNames, int tasks, boolean verbose){
+		this.taskNames = taskNames;
+		this.tasks = tasks;
+		this.verbose = verbose;
+	}
+	
+	public void bindTask(int taskIndex) {
+		boundTask.set(taskIndex);
+	}
+	
+	public void unbindTask() {
+		boundTask.remove();
+	}
+	
+	private synchronized int getTask() {
+		Integer bound = boundTask.get();
+		if(bound != null) return bound;
+		return task;
+	}
+	
+	public void updateBarText(String text) {
+		if(verbose) {
+			print(System.out, "Task " + (getTask()+1) + "/" + tasks + ": " + text);
+		}
+	}
+	
+	public void addToBar(double addFractionOfTask) {
+	}
+	
+	public void setBar(double fractionOfTask) {
+	}
+	
+	public synchronized void notifyMessage(String message, int type) {
+		Integer bound = boundTask.get();
+		if(bound != null) {
+			message = ProgressDialog.getTaskPrefix(bound, tasks, taskNames [bound], message) + message;
+		}
+		if(type == ProgressDialog.ERROR) {
+			errorsAvailable = true;
+			print(System.err, "ERROR: " + message);
+		}else if(type == ProgressDialog.NOTIFICATION) {
+			notificationsAvailable = true;
+			print(System.out, "NOTIFICATION: " + message);
+		}else {
+			print(System.out, message);
+		}
+	}
+	
+	public synchronized void moveTask(int i) {
+		finishedTasks++;
+		print(System.out, "Finished task " + (i+1) + "/" + tasks + " (" + finishedTasks + " of " + tasks + " done): " + taskNames [i]);
+		if(boundTask.get() == null && task < tasks - 1) {
+			task++;
+		}
+	}
+	
+	synchronized boolean hasErrors() {
+		return errorsAvailable;
+	}
+	
+	synchronized boolean hasNotifications() {
+		return notificationsAvailable;
+	}
+	
+	private static void print(PrintStream stream, String text) {
+		synchronized(stream) {
+			stream.println(text);
+		}
+	}
+}
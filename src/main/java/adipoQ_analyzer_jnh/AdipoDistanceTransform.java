@@ -0,0 +1,125 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+/**
+ * Anisotropic Euclidean distance transform of a 3D grid (Felzenszwalb & Huttenlocher), applied separably along x, y, and z.
+ * Squared distances are accumulated in the order x, y, z, like ((dx*calX)^2 + (dy*calY)^2) + (dz*calZ)^2.
+ * Optionally, the label of the nearest site is propagated (feature transform); for equidistant sites the choice is deterministic.
+ * */
+class AdipoDistanceTransform{
+	private double [] line = new double [0], result = new double [0], boundaries = new double [0];
+	private int [] parabolas = new int [0], lineLabels = new int [0], resultLabels = new int [0];
+
+	/**
+	 * Replaces the values in grid by the squared calibrated distance to the nearest site.
+	 * @param grid: values [(z * ny + y) * nx + x], 0.0 at sites and Double.POSITIVE_INFINITY elsewhere
+	 * @param labels: null or labels of the sites at the same positions as in grid; replaced by the label of the nearest site
+	 * @param calX, calY, calZ: voxel size in x, y, and z
+	 * */
+	void transform(double [] grid, int [] labels, int nx, int ny, int nz, double calX, double calY, double calZ) {
+		transform(grid, labels, nx, ny, nz, calX, calY, calZ, 0, 0, 0);
+	}
+
+	/**
+	 * Transform of a grid that is cut out of a larger grid at the position (originX, originY, originZ). Positions enter the calculation
+	 * in the coordinates of the larger grid, so equidistant sites are resolved like in the larger grid.
+	 * */
+	void transform(double [] grid, int [] labels, int nx, int ny, int nz, double calX, double calY, double calZ, int originX, int originY, int originZ) {
+		ensureCapacity(Math.max(nx, Math.max(ny, nz)));
+		for(int z = 0; z < nz; z++) {
+			for(int y = 0; y < ny; y++) {
+				transformLine(grid, labels, (z * ny + y) * nx, 1, nx, calX, originX);
+			}
+		}
+		if(ny > 1) {
+			for(int z = 0; z < nz; z++) {
+				for(int x = 0; x < nx; x++) {
+					transformLine(grid, labels, z * ny * nx + x, nx, ny, calY, originY);
+				}
+			}
+		}
+		if(nz > 1) {
+			for(int y = 0; y < ny; y++) {
+				for(int x = 0; x < nx; x++) {
+					transformLine(grid, labels, y * nx + x, nx * ny, nz, calZ, originZ);
+				}
+			}
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if(line.length >= n) return;
+		line = new double [n];
+		result = new double [n];
+		boundaries = new double [n + 1];
+		parabolas = new int [n];
+		lineLabels = new int [n];
+		resultLabels = new int [n];
+	}
+
+	/**
+	 * 1D transform along a line of n values starting at offset with the given stride: lower envelope of the parabolas ((q-p)*cal)^2 + f(p)
+	 * @param origin: position of the first value of the line
+	 * */
+	private void transformLine(double [] grid, int [] labels, int offset, int stride, int n, double cal, int origin) {
+		for(int i = 0; i < n; i++) {
+			line [i] = grid [offset + i * stride];
+			if(labels != null) lineLabels [i] = labels [offset + i * stride];
+		}
+		double cal2 = cal * cal, s;
+		int k = -1, pq, pk;
+		for(int q = 0; q < n; q++) {
+			if(line [q] == Double.POSITIVE_INFINITY) continue;
+			s = Double.NEGATIVE_INFINITY;
+			pq = q + origin;
+			while(k >= 0) {
+				pk = parabolas [k] + origin;
+				s = ((line [q] + cal2 * pq * pq) - (line [parabolas [k]] + cal2 * pk * pk)) / (2.0 * cal2 * (pq - pk));
+				if(s <= boundaries [k]) {
+					k--;
+					s = Double.NEGATIVE_INFINITY;
+				}else {
+					break;
+				}
+			}
+			k++;
+			parabolas [k] = q;
+			boundaries [k] = s;
+		}
+		if(k < 0) return;	// no site on this line
+		boundaries [k+1] = Double.POSITIVE_INFINITY;
+
+		double distance;
+		int j = 0;
+		for(int q = 0; q < n; q++) {
+			while(boundaries [j+1] < q + origin) j++;
+			distance = (q - parabolas [j]) * cal;
+			result [q] = distance * distance + line [parabolas [j]];
+			resultLabels [q] = lineLabels [parabolas [j]];
+		}
+		for(int i = 0; i < n; i++) {
+			grid [offset + i * stride] = result [i];
+			if(labels != null) labels [offset + i * stride] = resultLabels [i];
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.util.Arrays;
+
+/**
+ * Flood filler that reconstructs particles from the primitive pixel arrays of the segmented channel.
+ *
+ * Seeds are searched in the same order as in the legacy implementation (t, z, x, y) and neighbours
+ * are visited in the same order, so particles and the order of their points are identical to the legacy
+ * flood filler. Neighbours in time (t-1, t+1) are always connected.
+ * */
+class AdipoFloodFiller implements AdipoLabeler{
+	static final int CONNECTIVITY_6 = 6, CONNECTIVITY_18 = 18, CONNECTIVITY_26 = 26;
+
+	private final AdipoChannel mask;
+	private final int width, height, nSlices, nFrames, nPlanes;
+	private final long [][] visited;	// plane, bit-packed index
+
+	// neighbour-offset table
+	private final int [] dX, dY, dZ, dT, dIndex, dPlane;
+
+	// work stack
+	private int [] stackPlanes = new int [1024], stackIndices = new int [1024];
+	private int stackSize = 0;
+
+	// points of the current particle
+	private int [] particlePlanes = new int [1024], particleIndices = new int [1024];
+	private int particleSize = 0;
+
+	// scan position
+	private int scanPlane = 0, scanX = 0, scanY = 0;
+
+	/**
+	 * @param mask: segmented channel, voxels > 0.0 are foreground
+	 * @param connectivity: CONNECTIVITY_6, CONNECTIVITY_18, or CONNECTIVITY_26
+	 * */
+	public AdipoFloodFiller(AdipoChannel mask, int connectivity){
+		this.mask = mask;
+		width = mask.width;
+		height = mask.height;
+		nSlices = mask.nSlices;
+		nFrames = mask.nFrames;
+		nPlanes = mask.getNPlanes();
+
+		visited = new long [nPlanes][(mask.planeSize + 63) >> 6];
+
+		int [][] offsets = getNeighbourOffsets(connectivity);
+		dX = new int [offsets.length];
+		dY = new int [offsets.length];
+		dZ = new int [offsets.length];
+		dT = new int [offsets.length];
+		dIndex = new int [offsets.length];
+		dPlane = new int [offsets.length];
+		for(int n = 0; n < offsets.length; n++) {
+			dX [n] = offsets [n][0];
+			dY [n] = offsets [n][1];
+			dZ [n] = offsets [n][2];
+			dT [n] = offsets [n][3];
+			dIndex [n] = dY [n] * width + dX [n];
+			dPlane [n] = dT [n] * nSlices + dZ [n];
+		}
+	}
+
+	/**
+	 * @return neighbour offsets {dx, dy, dz, dt} in the order used by the legacy flood filler
+	 * */
+	static int [][] getNeighbourOffsets(int connectivity){
+		int [][] faces = {{-1,0,0,0},{1,0,0,0},{0,-1,0,0},{0,1,0,0},{0,0,-1,0},{0,0,1,0},{0,0,0,-1},{0,0,0,1}};
+		int [][] edges = {{-1,-1,0,0},{1,1,0,0},{1,-1,0,0},{-1,1,0,0},	// X, Y
+				{-1,0,-1,0},{1,0,-1,0},{-1,0,1,0},{1,0,1,0},	// Z-X
+				{0,-1,-1,0},{0,1,-1,0},{0,-1,1,0},{0,1,1,0}};	// Z-Y
+		int [][] corners = {{-1,-1,-1,0},{1,1,-1,0},{1,-1,-1,0},{-1,1,-1,0},	// X, Y - Z down
+				{-1,-1,1,0},{1,1,1,0},{1,-1,1,0},{-1,1,1,0}};	// X, Y - Z up
+
+		int nr = faces.length;
+		if(connectivity >= CONNECTIVITY_18) nr += edges.length;
+		if(connectivity >= CONNECTIVITY_26) nr += corners.length;
+
+		int [][] offsets = new int [nr][];
+		int n = 0;
+		for(int i = 0; i < faces.length; i++) offsets [n++] = faces [i];
+		if(connectivity >= CONNECTIVITY_18) for(int i = 0; i < edges.length; i++) offsets [n++] = edges [i];
+		if(connectivity >= CONNECTIVITY_26) for(int i = 0; i < corners.length; i++) offsets [n++] = corners [i];
+		return offsets;
+	}
+
+	/**
+	 * @return number of foreground voxels in the mask
+	 * */
+	public long countForeground() {
+		long nr = 0;
+		for(int p = 0; p < nPlanes; p++) {
+			for(int i = 0; i < mask.planeSize; i++) {
+				if(mask.isForeground(p, i)) nr++;
+			}
+		}
+		return nr;
+	}
+
+	/**
+	 * Searches the next not yet reconstructed foreground voxel and flood fills the particle connected to it.
+	 * @return false if no particle is left
+	 * */
+	public boolean nextParticle() {
+		particleSize = 0;
+		for(; scanPlane < nPlanes; scanPlane++) {
+			for(; scanX < width; scanX++) {
+				for(; scanY < height; scanY++) {
+					int index = scanY * width + scanX;
+					if(!isVisited(scanPlane, index) && mask.isForeground(scanPlane, index)) {
+						floodFill(scanPlane, index);
+						scanY++;
+						return true;
+					}
+				}
+				scanY = 0;
+			}
+			scanX = 0;
+		}
+		return false;
+	}
+
+	private void floodFill(int seedPlane, int seedIndex) {
+		stackSize = 0;
+		addPoint(seedPlane, seedIndex);
+
+		int plane, index, x, y, z, t, nPlane, nIndex, nx, ny, nz, nt;
+		while(stackSize > 0) {
+			stackSize--;
+			plane = stackPlanes [stackSize];
+			index = stackIndices [stackSize];
+			x = index % width;
+			y = index / width;
+			z = plane % nSlices;
+			t = plane / nSlices;
+
+			for(int n = 0; n < dX.length; n++) {
+				nx = x + dX [n];
+				if(nx < 0 || nx >= width) continue;
+				ny = y + dY [n];
+				if(ny < 0 || ny >= height) continue;
+				nz = z + dZ [n];
+				if(nz < 0 || nz >= nSlices) continue;
+				nt = t + dT [n];
+				if(nt < 0 || nt >= nFrames) continue;
+
+				nPlane = plane + dPlane [n];
+				nIndex = index + dIndex [n];
+				if(isVisited(nPlane, nIndex) || !mask.isForeground(nPlane, nIndex)) continue;
+				addPoint(nPlane, nIndex);
+			}
+		}
+	}
+
+	/**
+	 * Marks the point as visited, adds it to the current particle and pushes it to the work stack
+	 * */
+	private void addPoint(int plane, int index) {
+		visited [plane][index >> 6] |= 1L << (index & 63);
+
+		if(particleSize == particlePlanes.length) {
+			particlePlanes = Arrays.copyOf(particlePlanes, particlePlanes.length * 2);
+			particleIndices = Arrays.copyOf(particleIndices, particleIndices.length * 2);
+		}
+		particlePlanes [particleSize] = plane;
+		particleIndices [particleSize] = index;
+		particleSize++;
+
+		if(stackSize == stackPlanes.length) {
+			stackPlanes = Arrays.copyOf(stackPlanes, stackPlanes.length * 2);
+			stackIndices = Arrays.copyOf(stackIndices, stackIndices.length * 2);
+		}
+		stackPlanes [stackSize] = plane;
+		stackIndices [stackSize] = index;
+		stackSize++;
+	}
+
+	private boolean isVisited(int plane, int index) {
+		return (visited [plane][index >> 6] & (1L << (index & 63))) != 0;
+	}
+
+	/**
+	 * Sets all voxels of the current particle to 0 in the mask channel
+	 * */
+	public void clearParticle() {
+		for(int i = 0; i < particleSize; i++) {
+			mask.clear(particlePlanes [i], particleIndices [i]);
+		}
+	}
+
+	public int getParticleSize() {
+		return particleSize;
+	}
+
+	public int getX(int i) {
+		return particleIndices [i] % width;
+	}
+
+	public int getY(int i) {
+		return particleIndices [i] / width;
+	}
+
+	public int getZ(int i) {
+		return particlePlanes [i] % nSlices;
+	}
+
+	public int getT(int i) {
+		return particlePlanes [i] / nSlices;
+	}
+}
@@ -0,0 +1,234 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.ArrayList;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.gui.Overlay;
+import ij.gui.TextRoi;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Object-ID label image of the analyzed objects: the value of each object voxel is the ID of the object in the result tables
+ * (0 = no object). It replaces the copy of the image (_RP.tif) and the ID rois (_IDs.zip) as compact output: the label image is written
+ * as 16-bit image (32-bit if there are more than 65535 objects) and zip-compressed. 32-bit images store IDs as float, which is exact 
+ * up to MAX_FLOAT_LABEL (2^24 = 16777216) - images with more objects cannot be written as label image.
+ * 
+ * The IDs are kept as 16-bit raster (2 bytes per voxel) as long as there are at most 65535 objects, and only planes that contain objects 
+ * are allocated. The 16-bit label image uses the planes of the raster without copying them.
+ * 
+ * Voxels that belong to several objects (e.g., an object inside the filled outline of another object in 2D) carry the ID of the object
+ * added last, so the voxel counts in the label image can be lower than the voxel numbers in the result tables for such objects.
+ * 
+ * An overlay with the IDs can be created from the objects (createIdOverlay) and added to the label image.
+ * */
+class AdipoLabelImage{
+	static final int MAX_FLOAT_LABEL = 1 << 24;
+	
+	private final int width, height, nSlices, nFrames;
+	// [plane (t * nSlices + z)][y * width + x], planes without objects are null; IDs are stored in labels16 (unsigned) up to ID 65535
+	private short [][] labels16;
+	private int [][] labels32 = null;
+	private int maxLabel = 0;
+	
+	AdipoLabelImage(int width, int height, int nSlices, int nFrames){
+		this.width = width;
+		this.height = height;
+		this.nSlices = nSlices;
+		this.nFrames = nFrames;
+		labels16 = new short [nSlices * nFrames][];
+	}
+	
+	/**
+	 * Assigns all voxels of the particle to the object with the given ID
+	 * @param id: ID of the object in the result tables, 1 <= id
+	 * */
+	void addParticle(AdipoParticle particle, int id) {
+		if(id > 65535 && labels32 == null) {
+			widenTo32Bit();
+		}
+		int plane;
+		for(int j = 0; j < particle.size(); j++) {
+			plane = particle.getT(j) * nSlices + particle.getZ(j);
+			if(labels32 != null) {
+				if(labels32 [plane] == null) labels32 [plane] = new int [width * height];
+				labels32 [plane][particle.getY(j) * width + particle.getX(j)] = id;
+			}else {
+				if(labels16 [plane] == null) labels16 [plane] = new short [width * height];
+				labels16 [plane][particle.getY(j) * width + particle.getX(j)] = (short) id;
+			}
+		}
+		if(id > maxLabel) maxLabel = id;
+	}
+	
+	private void widenTo32Bit() {
+		labels32 = new int [labels16.length][];
+		for(int p = 0; p < labels16.length; p++) {
+			if(labels16 [p] == null) continue;
+			labels32 [p] = new int [width * height];
+			for(int i = 0; i < labels32 [p].length; i++) {
+				labels32 [p][i] = labels16 [p][i] & 0xffff;
+			}
+			labels16 [p] = null;
+		}
+		labels16 = null;
+	}
+	
+	/**
+	 * @return the ID at index i (y * width + x) of the plane, 0 = no object
+	 * */
+	private int getLabel(int plane, int i) {
+		if(labels32 != null) {
+			return labels32 [plane] == null ? 0 : labels32 [plane][i];
+		}
+		return labels16 [plane] == null ? 0 : labels16 [plane][i] & 0xffff;
+	}
+	
+	private boolean isEmpty(int plane) {
+		return labels32 != null ? labels32 [plane] == null : labels16 [plane] == null;
+	}
+	
+	/**
+	 * @return the label image as hyperstack with one channel, 16-bit or, if there are more than 65535 objects, 32-bit;
+	 * a 16-bit label image contains the planes of the raster, so objects added later are contained as well
+	 * @throws IllegalStateException if there are more than MAX_FLOAT_LABEL objects, whose IDs would be rounded in a 32-bit image
+	 * */
+	ImagePlus toImagePlus(String title, Calibration calibration) {
+		if(maxLabel > MAX_FLOAT_LABEL) {
+			throw new IllegalStateException("The label image cannot be written: object IDs above " + MAX_FLOAT_LABEL 
+					+ " are not exact in a 32-bit image (" + maxLabel + " objects)");
+		}
+		ImageStack stack = new ImageStack(width, height);
+		for(int p = 0; p < nSlices * nFrames; p++) {
+			if(labels32 == null) {
+				if(labels16 [p] == null) labels16 [p] = new short [width * height];
+				stack.addSlice(null, labels16 [p]);
+			}else {
+				float [] pixels = new float [width * height];
+				if(labels32 [p] != null) {
+					for(int i = 0; i < pixels.length; i++) {
+						pixels [i] = labels32 [p][i];
+					}
+				}
+				stack.addSlice(null, pixels);
+			}
+		}
+		ImagePlus imp = new ImagePlus(title, stack);
+		imp.setDimensions(1, nSlices, nFrames);
+		if(stack.getSize() > 1) imp.setOpenAsHyperStack(true);
+		imp.setCalibration(calibration.copy());
+		imp.setDisplayRange(0, Math.max(1, maxLabel));
+		return imp;
+	}
+	
+	/**
+	 * Creates an image in which the voxels of each object carry a value of the object (e.g., its surrounding intensity), 0 outside objects.
+	 * The image is backed by a virtual stack that fills each plane from the raster when it is requested, e.g., by the TIFF writer, 
+	 * so that the map is not held in memory as a whole.
+	 * @param values: value of each object, values [id-1]
+	 * @param bitDepth: bit depth of the image; values are converted like by ImageStack.setVoxel
+	 * */
+	ImagePlus createValueMap(String title, double [] values, int bitDepth, Calibration calibration) {
+		ImagePlus imp = new ImagePlus(title, new ValueMapStack(values, bitDepth));
+		imp.setDimensions(1, nSlices, nFrames);
+		if(nSlices * nFrames > 1) imp.setOpenAsHyperStack(true);
+		imp.setCalibration(calibration);
+		// display range of a new (empty) image of ImageJ, not of the first plane
+		imp.setDisplayRange(0, bitDepth == 8 ? 255 : (bitDepth == 16 ? 65535 : 1.0));
+		return imp;
+	}
+	
+	/**
+	 * Planes of a value map (see createValueMap), created from the raster whenever they are requested
+	 * */
+	private class ValueMapStack extends VirtualStack{
+		private final Object objectValues;	// value of each object converted to the pixel type, index = id
+		private final int bitDepth;
+		
+		ValueMapStack(double [] values, int bitDepth){
+			super(width, height, null, null);
+			this.bitDepth = bitDepth;
+			setBitDepth(bitDepth);
+			ImageStack converter = ImageStack.create(values.length + 1, 1, 1, bitDepth);
+			for(int id = 1; id <= values.length; id++) {
+				converter.setVoxel(id, 0, 0, values [id-1]);
+			}
+			objectValues = converter.getPixels(1);
+		}
+		
+		public int getSize() {
+			return nSlices * nFrames;
+		}
+		
+		public String getSliceLabel(int n) {
+			return null;
+		}
+		
+		public Object getPixels(int n) {
+			int plane = n-1, label;
+			Object pixels = ImageStack.create(width, height, 1, bitDepth).getPixels(1);
+			if(isEmpty(plane)) return pixels;
+			for(int i = 0; i < width * height; i++) {
+				label = getLabel(plane, i);
+				if(label == 0) continue;
+				System.arraycopy(objectValues, label, pixels, i, 1);
+			}
+			return pixels;
+		}
+		
+		public ImageProcessor getProcessor(int n) {
+			Object pixels = getPixels(n);
+			if(pixels instanceof byte []) {
+				return new ByteProcessor(width, height, (byte []) pixels, null);
+			}else if(pixels instanceof short []) {
+				return new ShortProcessor(width, height, (short []) pixels, null);
+			}else if(pixels instanceof float []) {
+				return new FloatProcessor(width, height, (float []) pixels, null);
+			}
+			return new ColorProcessor(width, height, (int []) pixels);
+		}
+	}
+	
+	/**
+	 * Creates an overlay with the ID of each object at its center in the first frame, at the same positions as the ID rois of the _IDs.zip output
+	 * */
+	static Overlay createIdOverlay(ArrayList<Adipocyte> adipocytes, Font font) {
+		Overlay overlay = new Overlay();
+		TextRoi txtID;
+		for(int i = 0; i < adipocytes.size(); i++) {
+			txtID = new TextRoi((int) Math.round(adipocytes.get(i).centerX [0]), (int) Math.round(adipocytes.get(i).centerY [0]), "" + (i+1), font);
+			txtID.setStrokeColor(Color.WHITE);
+			overlay.add(txtID);
+		}
+		return overlay;
+	}
+}
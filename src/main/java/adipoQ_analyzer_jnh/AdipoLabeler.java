@@ -0,0 +1,54 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+/**
+ * Reconstructs the particles of a segmented channel one after another.
+ * Particles are returned in the order of their first voxel in the scan order t, z, x, y.
+ * */
+interface AdipoLabeler{
+	/**
+	 * @return number of foreground voxels in the mask
+	 * */
+	long countForeground();
+
+	/**
+	 * Moves to the next particle.
+	 * @return false if no particle is left
+	 * */
+	boolean nextParticle();
+
+	int getParticleSize();
+
+	int getX(int i);
+
+	int getY(int i);
+
+	int getZ(int i);
+
+	int getT(int i);
+
+	/**
+	 * Sets all voxels of the current particle to 0 in the mask channel
+	 * */
+	void clearParticle();
+}
@@ -0,0 +1,123 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * File manifest of a batch (the list of images to process) and its deterministic split into shards,
+ * so that several machines can each process one shard of a large study.
+ * */
+class AdipoManifest{
+	static final String[] shardModes = {"index", "size"};
+	
+	/**
+	 * Adds an image, all .tif / .tiff images of a directory (sorted by name), or all paths listed in a list file (.txt / .lst) to the files.
+	 * In list files, empty lines and lines starting with # are ignored, relative paths are resolved against the directory of the list file.
+	 * @return false if the input does not exist
+	 * */
+	static boolean addInput(File input, ArrayList<File> files) throws IOException {
+		if(input.isDirectory()) {
+			File [] content = input.listFiles();
+			Arrays.sort(content);
+			for(int i = 0; i < content.length; i++) {
+				String lowerName = content [i].getName().toLowerCase();
+				if(content [i].isFile() && (lowerName.endsWith(".tif") || lowerName.endsWith(".tiff"))) {
+					files.add(content [i]);
+				}
+			}
+			return true;
+		}
+		if(!input.isFile()) {
+			return false;
+		}
+		String lowerName = input.getName().toLowerCase();
+		if(lowerName.endsWith(".txt") || lowerName.endsWith(".lst")) {
+			BufferedReader br = new BufferedReader(new FileReader(input));
+			try {
+				String line;
+				File listed;
+				while((line = br.readLine()) != null) {
+					line = line.trim();
+					if(line.equals("") || line.startsWith("#")) continue;
+					listed = new File(line);
+					if(!listed.isAbsolute()) listed = new File(input.getAbsoluteFile().getParentFile(), line);
+					files.add(listed);
+				}
+			}finally {
+				br.close();
+			}
+			return true;
+		}
+		files.add(input);
+		return true;
+	}
+	
+	/**
+	 * Splits the manifest deterministically into shards and returns the files of one shard in manifest order.
+	 * Mode "index" assigns file i to shard i % nShards. Mode "size" assigns the files from largest to smallest 
+	 * (ties by manifest order) to the shard with the lowest total size so far (ties by shard index).
+	 * @param shard: 0 <= shard < nShards
+	 * @param mode: one of shardModes
+	 * */
+	static ArrayList<File> selectShard(ArrayList<File> files, int shard, int nShards, String mode) {
+		int [] shardOfFile = new int [files.size()];
+		if(mode.equals(shardModes [1])) {
+			final long [] sizes = new long [files.size()];
+			Integer [] order = new Integer [files.size()];
+			for(int i = 0; i < files.size(); i++) {
+				sizes [i] = files.get(i).length();
+				order [i] = i;
+			}
+			Arrays.sort(order, new java.util.Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					if(sizes [a] != sizes [b]) return sizes [a] > sizes [b] ? -1 : 1;
+					return a.compareTo(b);
+				}
+			});
+			long [] shardSizes = new long [nShards];
+			int smallest;
+			for(int i = 0; i < order.length; i++) {
+				smallest = 0;
+				for(int s = 1; s < nShards; s++) {
+					if(shardSizes [s] < shardSizes [smallest]) smallest = s;
+				}
+				shardOfFile [order [i]] = smallest;
+				shardSizes [smallest] += sizes [order [i]];
+			}
+		}else {
+			for(int i = 0; i < files.size(); i++) {
+				shardOfFile [i] = i % nShards;
+			}
+		}
+		
+		ArrayList<File> shardFiles = new ArrayList<File>();
+		for(int i = 0; i < files.size(); i++) {
+			if(shardOfFile [i] == shard) shardFiles.add(files.get(i));
+		}
+		return shardFiles;
+	}
+}
@@ -0,0 +1,85 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Formats numbers for the result tables with six decimals, producing exactly the same text as DecimalFormat("#0.000000")
+ * with the same symbols (e.g., "-0,000001" in German format), but without the overhead of DecimalFormat for each cell.
+ * 
+ * Values with |value| < 1E7 are rounded half-even on their exact binary value, which is what DecimalFormat does for this range; 
+ * values close to a rounding tie, larger values, NaN and infinite values are formatted by DecimalFormat.
+ * */
+class AdipoNumberFormat{
+	private static final double FAST_LIMIT = 1E7;
+	private static final long SCALE = 1000000L;
+	
+	private final DecimalFormat fallback;
+	private final char decimalSeparator, minusSign;
+	
+	/**
+	 * @param symbols: decimal format symbols of the output number format
+	 * */
+	public AdipoNumberFormat(DecimalFormatSymbols symbols){
+		fallback = new DecimalFormat("#0.000000", symbols);
+		decimalSeparator = symbols.getDecimalSeparator();
+		minusSign = symbols.getMinusSign();
+	}
+	
+	String format(double value) {
+		StringBuilder text = new StringBuilder(16);
+		append(text, value);
+		return text.toString();
+	}
+	
+	/**
+	 * Appends the value with six decimals
+	 * */
+	void append(StringBuilder text, double value) {
+		double magnitude = Math.abs(value);
+		if(!(magnitude < FAST_LIMIT)) {	// also NaN
+			text.append(fallback.format(value));
+			return;
+		}
+		double scaled = magnitude * SCALE;
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		// scaled deviates by at most half an ulp from the exact product - the rounding direction is unsafe close to a tie
+		if(Math.abs(fraction - 0.5) <= 2.0 * Math.ulp(scaled)) {
+			text.append(fallback.format(value));
+			return;
+		}
+		long rounded = (long) floor;
+		if(fraction > 0.5) rounded++;
+		
+		if(value < 0.0 || (value == 0.0 && 1.0 / value < 0.0)) text.append(minusSign);
+		text.append(rounded / SCALE);
+		text.append(decimalSeparator);
+		long decimals = rounded % SCALE;
+		for(long digit = SCALE / 10; digit > 1 && decimals < digit; digit /= 10) {
+			text.append('0');
+		}
+		text.append(decimals);
+	}
+}
@@ -0,0 +1,243 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+/**
+ * Writes the output files of the tasks of a batch on a background thread, so that the analysis of the next image
+ * does not wait for slow storage.
+ * 
+ * Outputs are written one after another in the order they were submitted, so that actions submitted after the outputs of a task
+ * (e.g., closing its image or recording it in the result index) run once these outputs are written. At most queueSize outputs wait;
+ * further submissions block until an output is written. If queueSize is 0, outputs are written immediately by the submitting thread.
+ * 
+ * Write failures are reported as errors of the task. flush() is the barrier at the end of a batch: it waits until all outputs are 
+ * written and synchronizes the written files to the storage device.
+ * */
+class AdipoOutputWriter{
+	/**
+	 * Writes one output file
+	 * */
+	interface Output{
+		/**
+		 * @throws IOException with a message describing the failure, reported as error of the task
+		 * */
+		void write() throws IOException;
+	}
+	
+	private static class Job{
+		final int task;
+		final String path;
+		final Output output;
+		
+		Job(int task, String path, Output output){
+			this.task = task;
+			this.path = path;
+			this.output = output;
+		}
+	}
+	
+	private final AdipoProgress progress;
+	private final int tasks, queueSize;
+	
+	private final Object lock = new Object();
+	private final LinkedList<Job> queue = new LinkedList<Job>();
+	private final ArrayList<String> writtenFiles = new ArrayList<String>();
+	private final HashSet<Integer> failedTasks = new HashSet<Integer>();
+	private Thread thread = null;
+	private boolean writing = false;
+	
+	/**
+	 * @param queueSize: maximum number of outputs waiting to be written, 0 = outputs are written immediately by the submitting thread
+	 * */
+	public AdipoOutputWriter(AdipoProgress progress, int tasks, int queueSize){
+		this.progress = progress;
+		this.tasks = tasks;
+		this.queueSize = Math.max(0, queueSize);
+	}
+	
+	/**
+	 * Writes an output file of a task; the objects written must not be modified afterwards
+	 * @param path: path of the written file
+	 * */
+	void write(int task, String path, Output output) {
+		Job job = new Job(task, path, output);
+		if(queueSize == 0) {
+			execute(job);
+			return;
+		}
+		synchronized(lock) {
+			while(queue.size() >= queueSize) {
+				try {
+					lock.wait();
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			queue.add(job);
+			if(thread == null) {
+				thread = new Thread(new Runnable() {
+					public void run() {
+						writeQueue();
+					}
+				}, "AdipoQ output writer");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Runs an action once all outputs submitted before are written
+	 * */
+	void run(int task, final Runnable action) {
+		write(task, null, new Output() {
+			public void write() {
+				action.run();
+			}
+		});
+	}
+	
+	/**
+	 * Registers a file that a task has written itself (e.g., a streamed result table), so that it is synchronized
+	 * to the storage device by flush() like the files written in the background
+	 * */
+	void addWrittenFile(String path) {
+		if(queueSize == 0) return;
+		synchronized(lock) {
+			writtenFiles.add(path);
+		}
+	}
+	
+	/**
+	 * @return true if writing an output of the task failed
+	 * */
+	boolean hasFailed(int task) {
+		synchronized(lock) {
+			return failedTasks.contains(task);
+		}
+	}
+	
+	/**
+	 * Waits until all submitted outputs are written and synchronizes the files written by the background thread to the storage device
+	 * @return false if an output could not be written
+	 * */
+	boolean flush() {
+		ArrayList<String> files;
+		synchronized(lock) {
+			while(!queue.isEmpty() || writing) {
+				try {
+					lock.wait();
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			files = new ArrayList<String>(writtenFiles);
+			writtenFiles.clear();
+		}
+		
+		RandomAccessFile file;
+		for(int i = 0; i < files.size(); i++) {
+			if(!new File(files.get(i)).isFile()) continue;
+			try {
+				file = new RandomAccessFile(files.get(i), "rw");
+				try {
+					file.getFD().sync();
+				}finally {
+					file.close();
+				}
+			}catch(IOException e) {
+				progress.notifyMessage(files.get(i) + " could not be synchronized to disk - " + e.getMessage(), ProgressDialog.ERROR);
+				synchronized(lock) {
+					failedTasks.add(-1);	// not assigned to a task
+				}
+			}
+		}
+		synchronized(lock) {
+			return failedTasks.isEmpty();
+		}
+	}
+	
+	private void writeQueue() {
+		Job job;
+		while(true) {
+			synchronized(lock) {
+				while(queue.isEmpty()) {
+					try {
+						lock.wait();
+					}catch(InterruptedException e) {
+						return;
+					}
+				}
+				job = queue.removeFirst();
+				writing = true;
+				lock.notifyAll();
+			}
+			boolean written = false;
+			try {
+				written = execute(job);
+			}finally {
+				// flush() must not wait forever, even if reporting a failure throws
+				synchronized(lock) {
+					if(written && job.path != null) writtenFiles.add(job.path);
+					writing = false;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return false if the output could not be written
+	 * */
+	private boolean execute(Job job) {
+		try {
+			job.output.write();
+			return true;
+		}catch(IOException e) {
+			fail(job.task, e.getMessage());
+		}catch(Throwable e) {
+			// also errors (e.g., OutOfMemoryError), which would otherwise end the background thread
+			fail(job.task, (job.path != null ? job.path + " could not be written - " : "") + e.toString());
+		}
+		return false;
+	}
+	
+	/**
+	 * Reports that an output of the task could not be written; no entry is recorded in the result index for the task
+	 * */
+	void fail(int task, String message) {
+		synchronized(lock) {
+			failedTasks.add(task);
+		}
+		progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": " + message, ProgressDialog.ERROR);
+	}
+}
@@ -0,0 +1,492 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel connected-component labeling of a segmented channel.
+ *
+ * The hyperstack is split into blocks (a range of slices and a range of x within one frame). Blocks are labeled
+ * concurrently, then equivalences across block faces and between frames are merged with a lock-free union-find.
+ * Finally, labels are renumbered by the position of the first voxel of each particle in the scan order t, z, x, y,
+ * so particles are returned in the same order as by the flood filler. Points within a particle are in scan order.
+ * */
+class AdipoParallelLabeler implements AdipoLabeler{
+	private static final int PHASE_LOCAL = 0, PHASE_RESOLVE_LOCAL = 1, PHASE_MERGE = 2, PHASE_ROOTS = 3, PHASE_FINAL = 4;
+
+	private final AdipoChannel mask;
+	private final int width, height, nSlices, nFrames, nPlanes, nThreads;
+
+	// neighbour offsets that precede a voxel in scan order
+	private final int [] bX, bY, bZ, bT, bIndex, bPlane;
+
+	private Block [] blocks;
+	private int [][] labels;
+	private AtomicIntegerArray parent, sizes;
+	private AtomicLongArray firstKeys;
+	private int [] finalLabels;
+
+	// points of all particles, sorted by particle and in scan order within a particle
+	private int [] pointPlanes, pointIndices, particleStarts;
+	private int nParticles = 0, currentParticle = -1;
+
+	private static class Block{
+		int t, z0, z1, x0, x1;
+		int [] localParent;
+		int nLabels, offset;
+	}
+
+	/**
+	 * @param mask: segmented channel, voxels > 0.0 are foreground
+	 * @param connectivity: AdipoFloodFiller.CONNECTIVITY_6, CONNECTIVITY_18, or CONNECTIVITY_26
+	 * @param nThreads: number of threads used for labeling
+	 * */
+	public AdipoParallelLabeler(AdipoChannel mask, int connectivity, int nThreads){
+		this.mask = mask;
+		width = mask.width;
+		height = mask.height;
+		nSlices = mask.nSlices;
+		nFrames = mask.nFrames;
+		nPlanes = mask.getNPlanes();
+		this.nThreads = Math.max(1, nThreads);
+
+		int [][] offsets = AdipoFloodFiller.getNeighbourOffsets(connectivity);
+		int nr = 0;
+		for(int n = 0; n < offsets.length; n++) {
+			if(isBackward(offsets [n])) nr++;
+		}
+		bX = new int [nr];
+		bY = new int [nr];
+		bZ = new int [nr];
+		bT = new int [nr];
+		bIndex = new int [nr];
+		bPlane = new int [nr];
+		nr = 0;
+		for(int n = 0; n < offsets.length; n++) {
+			if(!isBackward(offsets [n])) continue;
+			bX [nr] = offsets [n][0];
+			bY [nr] = offsets [n][1];
+			bZ [nr] = offsets [n][2];
+			bT [nr] = offsets [n][3];
+			bIndex [nr] = bY [nr] * width + bX [nr];
+			bPlane [nr] = bT [nr] * nSlices + bZ [nr];
+			nr++;
+		}
+	}
+
+	/**
+	 * @return true if the neighbour at offset {dx, dy, dz, dt} precedes the voxel in scan order t, z, x, y
+	 * */
+	private static boolean isBackward(int [] offset) {
+		if(offset [3] != 0)	return offset [3] < 0;
+		if(offset [2] != 0)	return offset [2] < 0;
+		if(offset [0] != 0)	return offset [0] < 0;
+		return offset [1] < 0;
+	}
+
+	/**
+	 * Labels the mask. Needs to be called before any particle is requested.
+	 * */
+	void label() {
+		createBlocks();
+		labels = new int [nPlanes][mask.planeSize];
+
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		try {
+			runPhase(pool, PHASE_LOCAL);
+
+			long nLabels = 0;
+			for(int b = 0; b < blocks.length; b++) {
+				blocks [b].offset = (int) nLabels;
+				nLabels += blocks [b].nLabels;
+			}
+			if(nLabels > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("Too many provisional labels for parallel labeling (" + nLabels + ")");
+			}
+			parent = new AtomicIntegerArray((int) nLabels + 1);
+			firstKeys = new AtomicLongArray((int) nLabels + 1);
+			runPhase(pool, PHASE_RESOLVE_LOCAL);
+			runPhase(pool, PHASE_MERGE);
+			runPhase(pool, PHASE_ROOTS);
+
+			// order particles by their first voxel in scan order
+			nParticles = 0;
+			for(int l = 1; l <= nLabels; l++) {
+				if(parent.get(l) == l) nParticles++;
+			}
+			long [] keys = new long [nParticles];
+			for(int l = 1, k = 0; l <= nLabels; l++) {
+				if(parent.get(l) == l) keys [k++] = firstKeys.get(l);
+			}
+			firstKeys = null;
+			Arrays.sort(keys);
+			finalLabels = new int [(int) nLabels + 1];
+			int plane, rest;
+			for(int k = 0; k < nParticles; k++) {
+				plane = (int) (keys [k] / mask.planeSize);
+				rest = (int) (keys [k] % mask.planeSize);
+				finalLabels [labels [plane][(rest % height) * width + rest / height]] = k + 1;
+			}
+			keys = null;
+			parent = null;
+
+			sizes = new AtomicIntegerArray(nParticles + 1);
+			runPhase(pool, PHASE_FINAL);
+			finalLabels = null;
+		}finally {
+			pool.shutdown();
+		}
+		blocks = null;
+
+		// gather points of all particles in scan order
+		particleStarts = new int [nParticles + 1];
+		for(int p = 0; p < nParticles; p++) {
+			particleStarts [p+1] = particleStarts [p] + sizes.get(p+1);
+		}
+		sizes = null;
+		pointPlanes = new int [particleStarts [nParticles]];
+		pointIndices = new int [particleStarts [nParticles]];
+		int [] cursor = Arrays.copyOf(particleStarts, nParticles);
+		int l, index;
+		for(int p = 0; p < nPlanes; p++) {
+			for(int x = 0; x < width; x++) {
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					l = labels [p][index];
+					if(l == 0) continue;
+					pointPlanes [cursor [l-1]] = p;
+					pointIndices [cursor [l-1]] = index;
+					cursor [l-1]++;
+				}
+			}
+		}
+		labels = null;
+		currentParticle = -1;
+	}
+
+	/**
+	 * Splits each frame into about 4 blocks per thread, first along z, then along x
+	 * */
+	private void createBlocks() {
+		int blocksPerFrame = (nThreads * 4 + nFrames - 1) / nFrames;
+		int zBlocks = Math.max(1, Math.min(nSlices, blocksPerFrame));
+		int xBlocks = Math.max(1, Math.min(width, (blocksPerFrame + zBlocks - 1) / zBlocks));
+		blocks = new Block [nFrames * zBlocks * xBlocks];
+		int b = 0;
+		for(int t = 0; t < nFrames; t++) {
+			for(int zb = 0; zb < zBlocks; zb++) {
+				for(int xb = 0; xb < xBlocks; xb++) {
+					blocks [b] = new Block();
+					blocks [b].t = t;
+					blocks [b].z0 = zb * nSlices / zBlocks;
+					blocks [b].z1 = (zb+1) * nSlices / zBlocks;
+					blocks [b].x0 = xb * width / xBlocks;
+					blocks [b].x1 = (xb+1) * width / xBlocks;
+					b++;
+				}
+			}
+		}
+	}
+
+	private void runPhase(ExecutorService pool, final int phase) {
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(blocks.length);
+		for(int b = 0; b < blocks.length; b++) {
+			final Block block = blocks [b];
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					processBlock(block, phase);
+					return null;
+				}
+			});
+		}
+		try {
+			for(Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Parallel labeling was interrupted", e);
+		}catch(ExecutionException e) {
+			throw new RuntimeException("Parallel labeling failed", e.getCause());
+		}
+	}
+
+	private void processBlock(Block block, int phase) {
+		switch(phase) {
+		case PHASE_LOCAL: labelBlock(block); break;
+		case PHASE_RESOLVE_LOCAL: resolveBlock(block); break;
+		case PHASE_MERGE: mergeBlockFaces(block); break;
+		case PHASE_ROOTS: findFirstKeys(block); break;
+		default: finalizeBlock(block);
+		}
+	}
+
+	/**
+	 * Two-pass labeling within the block with block-local labels 1...nLabels and a local union-find
+	 * */
+	private void labelBlock(Block block) {
+		int [] localParent = new int [1024];
+		int nLabels = 0;
+		int plane, index, label, nLabel, nx, ny, nz;
+		for(int z = block.z0; z < block.z1; z++) {
+			plane = block.t * nSlices + z;
+			for(int x = block.x0; x < block.x1; x++) {
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					if(!mask.isForeground(plane, index)) continue;
+					label = 0;
+					for(int n = 0; n < bX.length; n++) {
+						if(bT [n] != 0) continue;
+						nz = z + bZ [n];
+						if(nz < block.z0) continue;
+						nx = x + bX [n];
+						if(nx < block.x0 || nx >= block.x1) continue;
+						ny = y + bY [n];
+						if(ny < 0 || ny >= height) continue;
+						nLabel = labels [plane + bPlane [n]][index + bIndex [n]];
+						if(nLabel == 0) continue;
+						if(label == 0) {
+							label = nLabel;
+						}else {
+							label = unionLocal(localParent, label, nLabel);
+						}
+					}
+					if(label == 0) {
+						nLabels++;
+						if(nLabels == localParent.length) {
+							localParent = Arrays.copyOf(localParent, localParent.length * 2);
+						}
+						localParent [nLabels] = nLabels;
+						label = nLabels;
+					}
+					labels [plane][index] = label;
+				}
+			}
+		}
+		block.localParent = localParent;
+		block.nLabels = nLabels;
+	}
+
+	private static int findLocal(int [] localParent, int label) {
+		while(localParent [label] != label) {
+			localParent [label] = localParent [localParent [label]];
+			label = localParent [label];
+		}
+		return label;
+	}
+
+	/**
+	 * @return the root of the joined labels
+	 * */
+	private static int unionLocal(int [] localParent, int a, int b) {
+		a = findLocal(localParent, a);
+		b = findLocal(localParent, b);
+		if(a < b) {
+			localParent [b] = a;
+			return a;
+		}
+		localParent [a] = b;
+		return b;
+	}
+
+	/**
+	 * Converts the local labels of the block into global labels pointing to their local root
+	 * */
+	private void resolveBlock(Block block) {
+		int [] roots = new int [block.nLabels + 1];
+		for(int l = 1; l <= block.nLabels; l++) {
+			roots [l] = block.offset + findLocal(block.localParent, l);
+			parent.set(block.offset + l, roots [l]);
+			firstKeys.set(block.offset + l, Long.MAX_VALUE);
+		}
+		block.localParent = null;
+
+		int plane, index;
+		for(int z = block.z0; z < block.z1; z++) {
+			plane = block.t * nSlices + z;
+			for(int x = block.x0; x < block.x1; x++) {
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					if(labels [plane][index] != 0) {
+						labels [plane][index] = roots [labels [plane][index]];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Joins labels of neighbouring voxels that are in different blocks.
+	 * Only voxels at the first slice, the first and last x of the block, and in later frames need to be checked.
+	 * */
+	private void mergeBlockFaces(Block block) {
+		int plane, index, label, nLabel, nx, ny, nz;
+		boolean face;
+		for(int z = block.z0; z < block.z1; z++) {
+			plane = block.t * nSlices + z;
+			for(int x = block.x0; x < block.x1; x++) {
+				face = z == block.z0 || x == block.x0 || x == block.x1 - 1;
+				if(!face && block.t == 0) continue;
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					label = labels [plane][index];
+					if(label == 0) continue;
+					for(int n = 0; n < bX.length; n++) {
+						if(bT [n] == 0) {
+							if(!face) continue;
+							nz = z + bZ [n];
+							if(nz < 0) continue;
+							nx = x + bX [n];
+							if(nx < 0 || nx >= width) continue;
+							if(nz >= block.z0 && nx >= block.x0 && nx < block.x1) continue;	// already joined in labelBlock
+						}else if(block.t + bT [n] < 0) {
+							continue;
+						}
+						ny = y + bY [n];
+						if(ny < 0 || ny >= height) continue;
+						nLabel = labels [plane + bPlane [n]][index + bIndex [n]];
+						if(nLabel != 0) union(label, nLabel);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the labels by their roots and records for each root the first voxel in scan order as key
+	 * (= plane * planeSize + x * height + y)
+	 * */
+	private void findFirstKeys(Block block) {
+		int plane, index, root;
+		long key, current;
+		for(int z = block.z0; z < block.z1; z++) {
+			plane = block.t * nSlices + z;
+			for(int x = block.x0; x < block.x1; x++) {
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					if(labels [plane][index] == 0) continue;
+					root = find(labels [plane][index]);
+					labels [plane][index] = root;
+					key = (long) plane * mask.planeSize + x * height + y;
+					current = firstKeys.get(root);
+					while(key < current && !firstKeys.compareAndSet(root, current, key)) {
+						current = firstKeys.get(root);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the roots by the final labels 1...nParticles and counts the voxels per particle
+	 * */
+	private void finalizeBlock(Block block) {
+		int plane, index, label;
+		for(int z = block.z0; z < block.z1; z++) {
+			plane = block.t * nSlices + z;
+			for(int x = block.x0; x < block.x1; x++) {
+				for(int y = 0; y < height; y++) {
+					index = y * width + x;
+					if(labels [plane][index] == 0) continue;
+					label = finalLabels [labels [plane][index]];
+					labels [plane][index] = label;
+					sizes.incrementAndGet(label);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lock-free find with path halving
+	 * */
+	private int find(int label) {
+		int p, gp;
+		while(true) {
+			p = parent.get(label);
+			if(p == label) return label;
+			gp = parent.get(p);
+			if(gp != p) parent.compareAndSet(label, p, gp);
+			label = gp;
+		}
+	}
+
+	/**
+	 * Lock-free union, the larger root is always linked to the smaller one
+	 * */
+	private void union(int a, int b) {
+		while(true) {
+			a = find(a);
+			b = find(b);
+			if(a == b) return;
+			if(a < b) {
+				int temp = a;
+				a = b;
+				b = temp;
+			}
+			if(parent.compareAndSet(a, a, b)) return;
+		}
+	}
+
+	public long countForeground() {
+		return pointPlanes.length;
+	}
+
+	public boolean nextParticle() {
+		if(currentParticle < nParticles) currentParticle++;
+		return currentParticle < nParticles;
+	}
+
+	public int getParticleSize() {
+		return particleStarts [currentParticle+1] - particleStarts [currentParticle];
+	}
+
+	public int getX(int i) {
+		return pointIndices [particleStarts [currentParticle] + i] % width;
+	}
+
+	public int getY(int i) {
+		return pointIndices [particleStarts [currentParticle] + i] / width;
+	}
+
+	public int getZ(int i) {
+		return pointPlanes [particleStarts [currentParticle] + i] % nSlices;
+	}
+
+	public int getT(int i) {
+		return pointPlanes [particleStarts [currentParticle] + i] / nSlices;
+	}
+
+	public void clearParticle() {
+		for(int i = particleStarts [currentParticle]; i < particleStarts [currentParticle+1]; i++) {
+			mask.clear(pointPlanes [i], pointIndices [i]);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.util.Arrays;
+
+/**
+ * Point buffer of a particle (or of its surroundings), stored as primitive arrays (struct of arrays).
+ *
+ * The surface of a point is stored as bits for the six face neighbours that are background (= 0.0) in the mask channel.
+ * Surface bits are only determined when first requested and only if a mask channel was given.
+ * */
+class AdipoParticle{
+	private static final int SURFACE_Z = 0x03, SURFACE_XY = 0x3C;
+
+	private int [] x, y, z, t;
+	private byte [] surface = null;
+	private int size = 0;
+	private final AdipoChannel mask;
+
+	/**
+	 * @param capacity: initial number of points that fit into the buffer
+	 * @param mask: segmented channel used to determine the surface; null if no surface is needed (e.g., surroundings)
+	 * */
+	public AdipoParticle(int capacity, AdipoChannel mask){
+		if(capacity < 16) capacity = 16;
+		x = new int [capacity];
+		y = new int [capacity];
+		z = new int [capacity];
+		t = new int [capacity];
+		this.mask = mask;
+	}
+
+	/**
+	 * pz >= 0 && pz < number of slices
+	 * pt >= 0 && pt < number of frames
+	 * */
+	void add(int px, int py, int pz, int pt) {
+		if(size == x.length) {
+			ensureCapacity(size + (size >> 1) + 16);
+		}
+		x [size] = px;
+		y [size] = py;
+		z [size] = pz;
+		t [size] = pt;
+		size++;
+		surface = null;
+	}
+
+	void addAll(AdipoParticle particle) {
+		ensureCapacity(size + particle.size);
+		System.arraycopy(particle.x, 0, x, size, particle.size);
+		System.arraycopy(particle.y, 0, y, size, particle.size);
+		System.arraycopy(particle.z, 0, z, size, particle.size);
+		System.arraycopy(particle.t, 0, t, size, particle.size);
+		size += particle.size;
+		surface = null;
+	}
+
+	void ensureCapacity(int capacity) {
+		if(capacity <= x.length) return;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		z = Arrays.copyOf(z, capacity);
+		t = Arrays.copyOf(t, capacity);
+	}
+
+	void trimToSize() {
+		if(size == x.length) return;
+		x = Arrays.copyOf(x, size);
+		y = Arrays.copyOf(y, size);
+		z = Arrays.copyOf(z, size);
+		t = Arrays.copyOf(t, size);
+	}
+
+	void clear() {
+		size = 0;
+		surface = null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int getX(int i) {
+		return x [i];
+	}
+
+	int getY(int i) {
+		return y [i];
+	}
+
+	int getZ(int i) {
+		return z [i];
+	}
+
+	int getT(int i) {
+		return t [i];
+	}
+
+	/**
+	 * @return number of faces of point i that border background in z direction
+	 * */
+	int getXYSurface(int i) {
+		return Integer.bitCount(getSurfaceBits(i) & SURFACE_Z);
+	}
+
+	/**
+	 * @return number of faces of point i that border background in x or y direction
+	 * */
+	int getXZYZSurface(int i) {
+		return Integer.bitCount(getSurfaceBits(i) & SURFACE_XY);
+	}
+
+	boolean isSurface(int i) {
+		return getSurfaceBits(i) != 0;
+	}
+
+	private int getSurfaceBits(int i) {
+		if(surface == null) {
+			determineSurface();
+		}
+		return surface [i];
+	}
+
+	/**
+	 * Determines for all points which face neighbours are background (0.0) in the mask channel.
+	 * Borders of the image are not counted as surface.
+	 * */
+	private void determineSurface() {
+		surface = new byte [size];
+		if(mask == null) return;
+		int bits, plane, index;
+		for(int i = 0; i < size; i++) {
+			bits = 0;
+			plane = t [i] * mask.nSlices + z [i];
+			index = y [i] * mask.width + x [i];
+			if(z [i] > 0 && mask.getValue(plane - 1, index) == 0.0)	bits |= 0x01;
+			if(z [i] < mask.nSlices - 1 && mask.getValue(plane + 1, index) == 0.0)	bits |= 0x02;
+			if(x [i] > 0 && mask.getValue(plane, index - 1) == 0.0)	bits |= 0x04;
+			if(x [i] < mask.width - 1 && mask.getValue(plane, index + 1) == 0.0)	bits |= 0x08;
+			if(y [i] > 0 && mask.getValue(plane, index - mask.width) == 0.0)	bits |= 0x10;
+			if(y [i] < mask.height - 1 && mask.getValue(plane, index + mask.width) == 0.0)	bits |= 0x20;
+			surface [i] = (byte) bits;
+		}
+	}
+}
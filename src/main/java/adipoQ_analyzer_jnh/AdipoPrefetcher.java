@@ -0,0 +1,195 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import ij.ImagePlus;
+
+/**
+ * Loads the images of the next tasks of a batch in the background while the current task is processed, so that reading images
+ * (e.g., from network shares) overlaps with their analysis.
+ * 
+ * Images are loaded in the order of the tasks. At most a given number of loaded images waits for processing, and further images
+ * are only loaded while the estimated memory of all waiting images stays within the memory cap (an image that exceeds the cap
+ * on its own is loaded once no other image is waiting). Exceptions thrown while loading an image are passed to the task that takes it,
+ * so that errors are reported by the task like without prefetching.
+ * */
+class AdipoPrefetcher{
+	/**
+	 * Loads the image of a task
+	 * */
+	interface Loader{
+		/**
+		 * @return the image of the task or null if the image of the task shall not be prefetched
+		 * */
+		ImagePlus load(int task) throws Exception;
+		
+		/**
+		 * @return estimated memory (bytes) of the loaded image of the task
+		 * */
+		long estimateMemory(int task);
+	}
+	
+	private final Loader loader;
+	private final int tasks, maxImages;
+	private final long memoryCap;
+	
+	private final Object lock = new Object();
+	private final HashMap<Integer, Object> loaded = new HashMap<Integer, Object>();	// loaded image or Throwable of waiting tasks
+	private final long [] memory;
+	private final boolean [] released;
+	private long memoryInUse = 0;
+	private int loadingTask = 0;	// task that is loaded next or currently
+	private boolean stopped = false;
+	
+	/**
+	 * @param maxImages: maximum number of loaded images that wait for processing (>= 1)
+	 * @param memoryCap: maximum sum of the estimated memory (bytes) of all loaded images that wait for processing
+	 * */
+	public AdipoPrefetcher(Loader loader, int tasks, int maxImages, long memoryCap){
+		this.loader = loader;
+		this.tasks = tasks;
+		this.maxImages = Math.max(1, maxImages);
+		this.memoryCap = memoryCap;
+		memory = new long [tasks];
+		released = new boolean [tasks];
+	}
+	
+	void start() {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				load();
+			}
+		}, "AdipoQ prefetcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void load() {
+		for(int task = 0; task < tasks; task++) {
+			// estimating may read the file header, so do not block take(...) and release(...) meanwhile
+			long estimatedMemory = loader.estimateMemory(task);
+			synchronized(lock) {
+				loadingTask = task;
+				lock.notifyAll();
+				memory [task] = estimatedMemory;
+				while(!stopped && !released [task] && !loaded.isEmpty() 
+						&& (loaded.size() >= maxImages || memoryInUse + memory [task] > memoryCap)) {
+					try {
+						lock.wait();
+					}catch(InterruptedException e) {
+						return;
+					}
+				}
+				if(stopped) return;
+				if(released [task]) continue;
+			}
+			
+			Object result;
+			try {
+				result = loader.load(task);
+			}catch(Throwable e) {
+				result = e;
+			}
+			
+			synchronized(lock) {
+				if(released [task] || stopped) {
+					close(result);
+				}else if(result != null) {
+					loaded.put(task, result);
+					memoryInUse += memory [task];
+				}
+				lock.notifyAll();
+			}
+		}
+		synchronized(lock) {
+			loadingTask = tasks;
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits until the image of the task is loaded
+	 * @return the image of the task or null if the image was not prefetched and has to be opened by the task
+	 * @throws Exception the exception thrown while loading the image
+	 * */
+	ImagePlus take(int task) throws Exception {
+		Object result;
+		synchronized(lock) {
+			while(!stopped && !loaded.containsKey(task) && loadingTask <= task) {
+				lock.wait();
+			}
+			result = loaded.remove(task);
+			if(result == null) return null;
+			memoryInUse -= memory [task];
+			lock.notifyAll();
+		}
+		if(result instanceof Exception) throw (Exception) result;
+		if(result instanceof Error) throw (Error) result;
+		return (ImagePlus) result;
+	}
+	
+	/**
+	 * Marks a task as finished; a loaded image that was not taken by the task (e.g., since the task was skipped) is closed.
+	 * */
+	void release(int task) {
+		synchronized(lock) {
+			released [task] = true;
+			Object result = loaded.remove(task);
+			if(result != null) {
+				memoryInUse -= memory [task];
+				close(result);
+			}
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Stops loading and closes all loaded images that were not taken
+	 * */
+	void stop() {
+		synchronized(lock) {
+			stopped = true;
+			for(Object result : loaded.values()) {
+				close(result);
+			}
+			loaded.clear();
+			memoryInUse = 0;
+			lock.notifyAll();
+		}
+	}
+	
+	private static void close(Object result) {
+		if(!(result instanceof ImagePlus)) return;
+		ImagePlus imp = (ImagePlus) result;
+		imp.changes = false;
+		imp.close();
+		if(imp.getStack() instanceof AdipoVirtualStack) {
+			try {
+				((AdipoVirtualStack) imp.getStack()).close();
+			}catch(IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+/**
+ * Receives progress updates and notifications of the tasks of a batch.
+ * Implemented by the ProgressDialog (GUI) and by AdipoConsoleProgress (headless).
+ * Notification types are ProgressDialog.ERROR, ProgressDialog.NOTIFICATION and ProgressDialog.LOG.
+ * */
+interface AdipoProgress{
+	/**
+	 * Routes all progress updates of the calling thread to the given task, so that several tasks can be processed in parallel.
+	 * @param taskIndex: 0 <= taskIndex < tasks
+	 * */
+	void bindTask(int taskIndex);
+	
+	void unbindTask();
+	
+	void updateBarText(String text);
+	
+	void addToBar(double addFractionOfTask);
+	
+	void setBar(double fractionOfTask);
+	
+	void notifyMessage(String message, int type);
+	
+	/**
+	 * Marks the task i as processed
+	 * */
+	void moveTask(int i);
+}
@@ -0,0 +1,288 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import ij.ImagePlus;
+
+/**
+ * Command-line entry point to run AdipoQ Analyzer without any AWT / Swing components (e.g., on headless compute nodes).
+ * 
+ * The preferences are read from an AdipoQ Analyzer metadata file (e.g., an _AQA.txt output file) with the same keys as
+ * when loading preferences in the plugin; the settings of the first dialog are given as options.
+ * Each image is processed exactly as by the plugin and the same output files are written next to the image. Files that are no TIFF files
+ * (and OME-TIFF files) are read via Bio-Formats, which has to be on the class path; each series of such a file is processed as an image.
+ * 
+ * Large studies can be split into shards (-shard k/N) that are processed on different machines from the same manifest;
+ * afterwards, -merge combines the results of all images of the manifest into one table (see AdipoResultMerger).
+ * 
+ * Exit codes: 0 = all images processed, 1 = some images could not be processed or merged, 2 = invalid arguments or preferences,
+ * 3 = unexpected error.
+ * */
+public class AdipoQAnalyzerHeadless{
+	static final int EXIT_OK = 0, EXIT_TASKS_FAILED = 1, EXIT_INVALID_ARGUMENTS = 2, EXIT_UNEXPECTED_ERROR = 3;
+	
+	static final String USAGE = "Usage: java -cp ij.jar:AdipoQ_Analyzer.jar adipoQ_analyzer_jnh.AdipoQAnalyzerHeadless -settings <file> [options] <input> ...\n"
+			+ "   or: java -cp ij.jar:AdipoQ_Analyzer.jar adipoQ_analyzer_jnh.AdipoQAnalyzerHeadless -merge <merged file> [-format US|Germany] <input> ...\n"
+			+ "   or: java -cp ij.jar:AdipoQ_Analyzer.jar adipoQ_analyzer_jnh.AdipoQAnalyzerHeadless -toText [-format US|Germany] <columnar results (.aqac)> ...\n"
+			+ "  <input>                 image file, directory (all .tif / .tiff files in it), or list file (.txt / .lst, one path per line)\n"
+			+ "  -settings <file>        AdipoQ Analyzer metadata file (e.g., *_AQA.txt) containing the preferences (required)\n"
+			+ "  -labelImage             segmented channel is a label image (object-specific intensity levels)\n"
+			+ "  -reconstruction <n>     reconstruction method in 3D / time-lapse images (0 = " + AdipoQAnalyzerMain.reconstructionMethod [0] + ")\n"
+			+ "  -threads <n>            number of threads for reconstruction and quantification\n"
+			+ "  -parallel <n>           number of images processed in parallel\n"
+			+ "  -memory <percent>       memory budget for parallel images (% of max. memory)\n"
+			+ "  -tileSize <px>          process 2D images in tiles of this size with fewer full-size working copies;\n"
+			+ "                          the image is still loaded as a whole (0 = no tiling)\n"
+			+ "  -diskBacked <MB>        read TIFF images disk-backed with a plane cache of this size (0 = load into memory)\n"
+			+ "  -prefetch <n>           load up to n images ahead in the background while an image is analyzed\n"
+			+ "  -prefetchMemory <MB>    memory cap for images loaded ahead\n"
+			+ "  -writeQueue <n>         write outputs in the background with up to n files waiting (0 = write immediately)\n"
+			+ "  -resolution <n>         resolution level read from pyramidal images via Bio-Formats (0 = full resolution)\n"
+			+ "  -format US|Germany      output number format\n"
+			+ "  -dateSuffix             add the date to the output file names\n"
+			+ "  -saveRois               save rois in 2D static mode\n"
+			+ "  -idLabels               save an object-ID label image (_Labels.zip) instead of the image copy (_RP.tif) and ID rois (_IDs.zip)\n"
+			+ "  -idOverlay              add an overlay of the IDs to the label image\n"
+			+ "  -saveSurrMaps           save maps for surrounding intensities in 2D static mode\n"
+			+ "  -compressSurrMaps       save the maps for surrounding intensities zip-compressed (*.zip)\n"
+			+ "  -gzip                   write gzip-compressed result tables (*.txt.gz)\n"
+			+ "  -columnar               write the results also as compressed columnar table (*_AQA.aqac)\n"
+			+ "  -cohort <file>          write the results of all images into one cohort table and directory aggregates (<file>_directories.txt)\n"
+			+ "  -incremental            skip images whose outputs for the same image content and settings exist\n"
+			+ "  -verbose                print progress within the tasks\n"
+			+ "  -shard <k>/<N>          process only shard k (1 <= k <= N) of the inputs split into N shards\n"
+			+ "  -shardBy index|size     split the inputs by their index (default) or into shards of balanced file size\n"
+			+ "  -merge <file>           merge the results of all inputs into one table instead of processing them\n"
+			+ "  -toText                 convert columnar results into the text result tables (*_AQA.txt, *_AQAs.txt) next to them";
+	
+	public static void main(String [] args){
+		System.setProperty("java.awt.headless", "true");
+		int exitCode;
+		try {
+			exitCode = run(args);
+		}catch(Throwable e) {
+			e.printStackTrace();
+			exitCode = EXIT_UNEXPECTED_ERROR;
+		}
+		System.exit(exitCode);
+	}
+	
+	/**
+	 * @return exit code
+	 * */
+	static int run(String [] args) throws IOException {
+		AdipoQAnalyzerMain analyzer = new AdipoQAnalyzerMain();
+		analyzer.headless = true;
+		analyzer.selectedTaskVariant = AdipoQAnalyzerMain.taskVariant [1];
+		
+		File settingsFile = null, mergedFile = null;
+		boolean verbose = false, toText = false;
+		int shard = 0, nShards = 1;
+		String shardMode = AdipoManifest.shardModes [0];
+		ArrayList<File> files = new ArrayList<File>();
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args [i].equals("-settings")) {
+					settingsFile = new File(args [++i]);
+				}else if(args [i].equals("-labelImage")) {
+					analyzer.chosenInput = AdipoQAnalyzerMain.inputVariant [1];
+				}else if(args [i].equals("-reconstruction")) {
+					int method = Integer.parseInt(args [++i]);
+					if(method < 0 || method >= AdipoQAnalyzerMain.reconstructionMethod.length) {
+						return invalidArguments("Unknown reconstruction method: " + method);
+					}
+					analyzer.chosenReconstruction = AdipoQAnalyzerMain.reconstructionMethod [method];
+				}else if(args [i].equals("-threads")) {
+					analyzer.nrOfThreads = Math.max(1, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-parallel")) {
+					analyzer.nrOfParallelImages = Math.max(1, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-memory")) {
+					analyzer.memoryBudgetPercent = Double.parseDouble(args [++i]);
+				}else if(args [i].equals("-tileSize")) {
+					analyzer.tileSize = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-diskBacked")) {
+					analyzer.diskBackedCacheMB = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-prefetch")) {
+					analyzer.prefetchImages = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-prefetchMemory")) {
+					analyzer.prefetchMemoryMB = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-writeQueue")) {
+					analyzer.writeQueueSize = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-resolution")) {
+					analyzer.resolutionLevel = Math.max(0, Integer.parseInt(args [++i]));
+				}else if(args [i].equals("-format")) {
+					i++;
+					if(args [i].equalsIgnoreCase("US")) {
+						analyzer.ChosenNumberFormat = AdipoQAnalyzerMain.nrFormats [0];
+					}else if(args [i].equalsIgnoreCase("Germany")) {
+						analyzer.ChosenNumberFormat = AdipoQAnalyzerMain.nrFormats [1];
+					}else {
+						return invalidArguments("Unknown number format: " + args [i]);
+					}
+				}else if(args [i].equals("-dateSuffix")) {
+					analyzer.chosenOutputName = AdipoQAnalyzerMain.outputVariant [1];
+				}else if(args [i].equals("-saveRois")) {
+					analyzer.saveRois = true;
+				}else if(args [i].equals("-idLabels")) {
+					analyzer.chosenImageOutput = AdipoQAnalyzerMain.imageOutputVariants [1];
+				}else if(args [i].equals("-idOverlay")) {
+					analyzer.addIdOverlay = true;
+				}else if(args [i].equals("-saveSurrMaps")) {
+					analyzer.saveSurrMaps = true;
+				}else if(args [i].equals("-compressSurrMaps")) {
+					analyzer.compressSurrMaps = true;
+				}else if(args [i].equals("-gzip")) {
+					analyzer.gzipResults = true;
+				}else if(args [i].equals("-columnar")) {
+					analyzer.saveColumnarResults = true;
+				}else if(args [i].equals("-cohort")) {
+					analyzer.cohortTablePath = new File(args [++i]).getAbsolutePath();
+				}else if(args [i].equals("-incremental")) {
+					analyzer.skipUnchangedImages = true;
+				}else if(args [i].equals("-verbose")) {
+					verbose = true;
+				}else if(args [i].equals("-shard")) {
+					i++;
+					if(!args [i].matches("[0-9]+/[0-9]+")) {
+						return invalidArguments("Invalid shard: " + args [i]);
+					}
+					shard = Integer.parseInt(args [i].substring(0, args [i].indexOf("/"))) - 1;
+					nShards = Integer.parseInt(args [i].substring(args [i].indexOf("/")+1));
+					if(nShards < 1 || shard < 0 || shard >= nShards) {
+						return invalidArguments("Invalid shard: " + args [i]);
+					}
+				}else if(args [i].equals("-shardBy")) {
+					shardMode = null;
+					i++;
+					for(int m = 0; m < AdipoManifest.shardModes.length; m++) {
+						if(args [i].equals(AdipoManifest.shardModes [m])) shardMode = AdipoManifest.shardModes [m];
+					}
+					if(shardMode == null) {
+						return invalidArguments("Unknown shard mode: " + args [i]);
+					}
+				}else if(args [i].equals("-merge")) {
+					mergedFile = new File(args [++i]);
+				}else if(args [i].equals("-toText")) {
+					toText = true;
+				}else if(args [i].startsWith("-")) {
+					return invalidArguments("Unknown option: " + args [i]);
+				}else if(!AdipoManifest.addInput(new File(args [i]), files)) {
+					return invalidArguments("Input not found: " + args [i]);
+				}
+			}
+		}catch(ArrayIndexOutOfBoundsException e) {
+			return invalidArguments("Missing value for option " + args [args.length-1]);
+		}catch(NumberFormatException e) {
+			return invalidArguments("Invalid number: " + e.getMessage());
+		}
+		
+		if(files.isEmpty()) {
+			return invalidArguments("No images to process");
+		}
+		
+		analyzer.applyNumberFormat();
+		if(mergedFile != null) {
+			if(AdipoResultMerger.merge(files, mergedFile, analyzer.getOneRowFooter(new Date()), System.err) > 0) {
+				return EXIT_TASKS_FAILED;
+			}
+			return EXIT_OK;
+		}
+		if(toText) {
+			return convertToText(files, analyzer);
+		}
+		
+		if(settingsFile == null || !settingsFile.isFile()) {
+			return invalidArguments("Preferences file missing (-settings)");
+		}
+		if(nShards > 1) {
+			int nFiles = files.size();
+			files = AdipoManifest.selectShard(files, shard, nShards, shardMode);
+			System.out.println("Shard " + (shard+1) + "/" + nShards + ": " + files.size() + " of " + nFiles + " images");
+			if(files.isEmpty()) {
+				return EXIT_OK;
+			}
+		}
+		
+		if(!analyzer.importSettings(settingsFile)) {
+			System.err.println("Preferences could not be loaded from " + settingsFile.getPath());
+			return EXIT_INVALID_ARGUMENTS;
+		}
+		
+		int tasks = files.size();
+		String [] name = new String [tasks];
+		String [] dir = new String [tasks];
+		for(int task = 0; task < tasks; task++) {
+			name [task] = files.get(task).getName();
+			dir [task] = files.get(task).getAbsoluteFile().getParent() + System.getProperty("file.separator");
+		}
+		
+		analyzer.tasks = tasks;
+		String [][] seriesTasks = analyzer.splitSeriesIntoTasks(name, dir);
+		name = seriesTasks [0];
+		dir = seriesTasks [1];
+		tasks = analyzer.tasks;
+		
+		AdipoConsoleProgress progress = new AdipoConsoleProgress(seriesTasks [2], tasks, verbose);
+		analyzer.progress = progress;
+		analyzer.processTasks(name, dir, new ImagePlus [tasks]);
+		
+		if(progress.hasErrors()) {
+			return EXIT_TASKS_FAILED;
+		}
+		return EXIT_OK;
+	}
+	
+	/**
+	 * Writes the text result tables {name}.txt and {name}s.txt for each columnar results file {name}.aqac
+	 * @return exit code
+	 * */
+	private static int convertToText(ArrayList<File> files, AdipoQAnalyzerMain analyzer) {
+		int exitCode = EXIT_OK;
+		String prefix;
+		for(int i = 0; i < files.size(); i++) {
+			if(!files.get(i).getName().endsWith(AdipoResultTable.EXTENSION)) {
+				System.err.println("ERROR: " + files.get(i).getPath() + " is no columnar results file (" + AdipoResultTable.EXTENSION + ")");
+				exitCode = EXIT_TASKS_FAILED;
+				continue;
+			}
+			prefix = files.get(i).getPath().substring(0, files.get(i).getPath().length() - AdipoResultTable.EXTENSION.length());
+			try {
+				AdipoResultTable.read(files.get(i)).writeText(prefix + ".txt", prefix + "s.txt", analyzer.df6.getDecimalFormatSymbols());
+				System.out.println("Converted " + files.get(i).getPath());
+			}catch(IOException e) {
+				System.err.println("ERROR: " + files.get(i).getPath() + " could not be converted - " + e.getMessage());
+				exitCode = EXIT_TASKS_FAILED;
+			}
+		}
+		return exitCode;
+	}
+	
+	private static int invalidArguments(String message) {
+		System.err.println(message);
+		System.err.println(USAGE);
+		return EXIT_INVALID_ARGUMENTS;
+	}
+}
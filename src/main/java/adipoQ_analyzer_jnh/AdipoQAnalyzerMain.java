@@ -26,6 +26,10 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.text.*;
 
 import javax.swing.UIManager;
@@ -37,7 +41,9 @@ import ij.measure.*;
 import ij.plugin.*;
 import ij.plugin.filter.ParticleAnalyzer;
 import ij.plugin.frame.RoiManager;
-import ij.text.*;
+import ij.process.ImageProcessor;
+import ij.process.LUT;
+import ij.process.ImageStatistics;
 
 public class AdipoQAnalyzerMain implements PlugIn, Measurements {
 	//Name variables
@@ -57,14 +63,14 @@ public class AdipoQAnalyzerMain implements PlugIn, Measurements {
 	DecimalFormat df0 = new DecimalFormat("#0");
 	DecimalFormat dfDialog = new DecimalFormat("#0.000000");
 		
-	static SimpleDateFormat NameDateFormatter = new SimpleDateFormat("yyMMdd_HHmmss");
-	static SimpleDateFormat FullDateFormatter = new SimpleDateFormat("yyyy-MM-dd	HH:mm:ss");
-	static SimpleDateFormat FullDateFormatter2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	SimpleDateFormat NameDateFormatter = new SimpleDateFormat("yyMMdd_HHmmss");
+	SimpleDateFormat FullDateFormatter = new SimpleDateFormat("yyyy-MM-dd	HH:mm:ss");
+	SimpleDateFormat FullDateFormatter2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 	
-	//Progress Dialog
-	ProgressDialog progress;	
-	boolean processingDone = false;	
-	boolean continueProcessing = true;
+	//Progress Dialog (or console progress in headless mode)
+	AdipoProgress progress;	
+	volatile boolean processingDone = false;	
+	volatile boolean continueProcessing = true;
 	
 	//-----------------define params-----------------
 	static final String[] taskVariant = {"active image in FIJI","multiple images (open multi-task manager)", "all images open in FIJI"};
@@ -79,10 +85,36 @@ public class AdipoQAnalyzerMain implements PlugIn, Measurements {
 	
 	static final String[] outputVariant = {"save as filename + suffix 'AQA'", "save as filename + suffix 'AQA' + date"};
 	String chosenOutputName = outputVariant[0];
+	boolean gzipResults = false;	// result tables are written gzip-compressed (*.txt.gz)
+	boolean saveColumnarResults = false;	// results are also written as columnar table (*_AQA.aqac, see AdipoResultTable)
+	static final String [] INTEGER_COLUMNS = {"ID", "Frame", "Total frames", "Voxels"};	// result columns stored as integers
+	boolean writeCohortTable = false;	// the results of all images are also written into one cohort table (AQA_cohort_{date}.txt next to the first image)
+	String cohortTablePath = null;	// path of the cohort table, replaces the default path
+	AdipoCohortTable cohort = null;	// cohort table of the running batch (see AdipoCohortTable)
+	
+	static final String[] imageOutputVariants = {"image copy (_RP.tif) and ID rois (_IDs.zip)", "object-ID label image (_Labels.zip)"};
+	String chosenImageOutput = imageOutputVariants[0];
+	boolean addIdOverlay = false;	// the label image is saved with an overlay of the IDs
 	boolean keepAwake = false;
 	
 	boolean inputIsLabelImage = false;	
 	
+	static final String[] reconstructionMethod = {"primitive flood fill", "parallel union-find labeling (multi-threaded)", "run-length labeling (sparse masks)", "legacy flood fill (slow, fallback)"};
+	String chosenReconstruction = reconstructionMethod[0];
+	
+	int nrOfThreads = Runtime.getRuntime().availableProcessors();
+	int nrOfParallelImages = 1;
+	double memoryBudgetPercent = 75.0;
+	boolean skipUnchangedImages = false;
+	int writeQueueSize = 0;	// outputs are written by a background writer with a queue of this many files, 0 = outputs are written by the task
+	private AdipoPrefetcher prefetcher = null;	// loads the images of the next tasks in the background if images are processed sequentially
+	int tileSize = 0;	// 2D images are labeled in tiles of this size (px) with fewer full-size working copies, 0 = no tiling
+	int diskBackedCacheMB = 0;	// TIFF images are read disk-backed with a plane cache of this size (MB), 0 = images are loaded into memory
+	int prefetchImages = 0;	// number of images loaded in the background ahead of the processed image, 0 = no prefetching
+	int prefetchMemoryMB = 2048;	// memory cap for prefetched images (MB)
+	int resolutionLevel = 0;	// resolution level read from pyramidal images via Bio-Formats, 0 = full resolution
+	int [][] taskSeries = null;	// series of the files read via Bio-Formats that are processed in the tasks (see AdipoSeriesReader.listSeries), null for other tasks
+	
 	static final String[] nrFormats = {"US (0.00...)", "Germany (0,00...)"};
 	String ChosenNumberFormat = nrFormats[0];
 
@@ -90,14 +122,30 @@ public class AdipoQAnalyzerMain implements PlugIn, Measurements {
 	double minSize = 100.0;
 	double minSizeCalibrated = 20.0;
 	boolean increaseRange, fuseParticles, quantifySurroundings, saveRois, saveSurrMaps = false;
+	boolean compressSurrMaps = false;	// surroundings maps are saved zip-compressed (*.zip)
 	double refDistance = 20.0;
 	
+	static final String[] surroundingsModes = {"overlapping rings (each object)", "exclusive zones (nearest object)"};
+	String chosenSurroundingsMode = surroundingsModes[0];
+	
 	static final String[] excludeOptions = {"nothing", "particles touching x or y borders", "particles touching x or y or z borders"};
 	String excludeSelection = excludeOptions [1];
 	//-----------------define params-----------------
 	
 	//Variables for processing of an individual task
 	Robot robo;
+	RoiManager taskRoiManager = null;
+	ArrayList<String> taskOutputs = new ArrayList<String>();
+	
+	// Headless mode: no AWT components are created, ROIs are kept in a list instead of a ROI manager
+	boolean headless = false;
+	ArrayList<Roi> headlessRois = new ArrayList<Roi>();
+	AdipoOutputWriter writer = null;	// writes the output files of all tasks of the batch
+	private int currentTask = 0;	// task processed by this plugin (workers process one task each)
+	private AdipoLabelImage objectLabels = null;	// object-ID label image of the processed task, if saved
+	
+	// The particle analyzer hands over ROIs via static fields
+	static final Object PARTICLE_ANALYZER_LOCK = new Object();
 	
 public void run(String arg) {
 
@@ -116,11 +164,28 @@ public void run(String arg) {
 	
 	gd.setInsets(10,0,0);	gd.addMessage("GENERAL SETTINGS:", HeadingFont);
 	gd.setInsets(5,0,0);	gd.addChoice("Segmented channel is ", inputVariant, chosenInput);
+	gd.setInsets(5,0,0);	gd.addChoice("Reconstruction in 3D / time-lapse images", reconstructionMethod, chosenReconstruction);
+	gd.setInsets(5,0,0);	gd.addNumericField("Number of threads for reconstruction and quantification", nrOfThreads, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Number of images processed in parallel", nrOfParallelImages, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Memory budget for parallel images (% of max. memory)", memoryBudgetPercent, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Tile size for 2D images - fewer full-size working copies (px, 0 = no tiling)", tileSize, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Plane cache for disk-backed TIFF input (MB, 0 = load images into memory)", diskBackedCacheMB, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Images loaded ahead in the background (0 = no prefetching)", prefetchImages, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Memory cap for images loaded ahead (MB)", prefetchMemoryMB, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Output files queued for background writing (0 = write immediately)", writeQueueSize, 0);
+	gd.setInsets(5,0,0);	gd.addNumericField("Resolution level of pyramidal images (Bio-Formats, 0 = full resolution)", resolutionLevel, 0);
 	gd.setInsets(5,0,0);	gd.addChoice("Output image name: ", outputVariant, chosenOutputName);
 	gd.setInsets(5,0,0);	gd.addChoice("Output number format", nrFormats, nrFormats[0]);
-	gd.setInsets(5,0,0);	gd.addCheckbox("Save rois in 2D static mode (time-consuming!)", saveRois);
-	gd.setInsets(5,0,0);	gd.addCheckbox("Save maps for surrounding intensities", saveSurrMaps);
+	gd.setInsets(5,0,0);	gd.addChoice("Output of the objects in the image", imageOutputVariants, chosenImageOutput);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Save rois in 2D static mode", saveRois);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Save maps for surrounding intensities in 2D static mode", saveSurrMaps);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Save surroundings maps zip-compressed (.zip)", compressSurrMaps);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Compress result tables (gzip)", gzipResults);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Save results also as compressed columnar table (.aqac)", saveColumnarResults);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Write consolidated cohort table of all images (next to the first image)", writeCohortTable);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Add ID overlay to the label image", addIdOverlay);
 	gd.setInsets(5,0,0);	gd.addCheckbox("Keep computer awake during analysis", keepAwake);
+	gd.setInsets(5,0,0);	gd.addCheckbox("Skip images unchanged since their last analysis (result index)", skipUnchangedImages);
 	
 	gd.showDialog();
 	//show Dialog-----------------------------------------------------------------
@@ -129,21 +194,37 @@ public void run(String arg) {
 	selectedTaskVariant = gd.getNextChoice();
 	selectedSettingsVariant = gd.getNextChoice();
 	chosenInput = gd.getNextChoice();	
+	chosenReconstruction = gd.getNextChoice();
 	chosenOutputName = gd.getNextChoice();	
 	ChosenNumberFormat = gd.getNextChoice();
-	dfDialog.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-	if(ChosenNumberFormat.equals(nrFormats[0])){ //US-Format
-		df6.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-		df3.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-		df0.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
-	}else if (ChosenNumberFormat.equals(nrFormats[1])){
-		df6.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
-		df3.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
-		df0.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
-	}
+	applyNumberFormat();
+	chosenImageOutput = gd.getNextChoice();
 	saveRois = gd.getNextBoolean();
 	saveSurrMaps = gd.getNextBoolean();
+	compressSurrMaps = gd.getNextBoolean();
+	gzipResults = gd.getNextBoolean();
+	saveColumnarResults = gd.getNextBoolean();
+	writeCohortTable = gd.getNextBoolean();
+	addIdOverlay = gd.getNextBoolean();
 	keepAwake = gd.getNextBoolean();
+	skipUnchangedImages = gd.getNextBoolean();
+	nrOfThreads = (int) gd.getNextNumber();
+	if(nrOfThreads < 1) nrOfThreads = 1;
+	nrOfParallelImages = (int) gd.getNextNumber();
+	if(nrOfParallelImages < 1) nrOfParallelImages = 1;
+	memoryBudgetPercent = gd.getNextNumber();
+	tileSize = (int) gd.getNextNumber();
+	if(tileSize < 0) tileSize = 0;
+	diskBackedCacheMB = (int) gd.getNextNumber();
+	if(diskBackedCacheMB < 0) diskBackedCacheMB = 0;
+	prefetchImages = (int) gd.getNextNumber();
+	if(prefetchImages < 0) prefetchImages = 0;
+	prefetchMemoryMB = (int) gd.getNextNumber();
+	if(prefetchMemoryMB < 0) prefetchMemoryMB = 0;
+	writeQueueSize = (int) gd.getNextNumber();
+	if(writeQueueSize < 0) writeQueueSize = 0;
+	resolutionLevel = (int) gd.getNextNumber();
+	if(resolutionLevel < 0) resolutionLevel = 0;
 	
 	//read and process variables--------------------------------------------------
 	if (gd.wasCanceled()) return;
@@ -163,6 +244,7 @@ public void run(String arg) {
 
 	String name [] = {"",""};
 	String dir [] = {"",""};
+	String taskNames [] = null;
 	ImagePlus allImps [] = new ImagePlus [2];
 //	RoiEncoder re;
 	{
@@ -193,7 +275,11 @@ public void run(String arg) {
 			for(int task = 0; task < tasks; task++){
 				name[task] = od.filesToOpen.get(task).getName();
 				dir[task] = od.filesToOpen.get(task).getParent() + System.getProperty("file.separator");
-			}		
+			}
+			String [][] seriesTasks = splitSeriesIntoTasks(name, dir);
+			name = seriesTasks [0];
+			dir = seriesTasks [1];
+			taskNames = seriesTasks [2];
 		}else if(selectedTaskVariant.equals(taskVariant[0])){
 			if(WindowManager.getIDList()==null){
 				new WaitForUserDialog("Plugin canceled - no image open in FIJI!").show();
@@ -231,10 +317,10 @@ public void run(String arg) {
 	}
 	
 	//add progressDialog
-		progress = new ProgressDialog(name, tasks);
-		progress.setLocation(0,0);
-		progress.setVisible(true);
-		progress.addWindowListener(new java.awt.event.WindowAdapter() {
+		ProgressDialog progressDialog = new ProgressDialog(taskNames != null ? taskNames : name, tasks);
+		progressDialog.setLocation(0,0);
+		progressDialog.setVisible(true);
+		progressDialog.addWindowListener(new java.awt.event.WindowAdapter() {
 	        public void windowClosing(WindowEvent winEvt) {
 	        	if(processingDone==false){
 	        		IJ.error("Script stopped...");
@@ -243,11 +329,8 @@ public void run(String arg) {
 	        	return;
 	        }
 		});
+		progress = progressDialog;
 	
-   	ImagePlus imp;
-   	TextPanel tp1, tp2;
-   	Date startDate, endDate;
-   	
    	if(keepAwake) {
    		try {
 			robo = new Robot();
@@ -257,291 +340,1027 @@ public void run(String arg) {
    	}
    	
 
+	processTasks(name, dir, allImps);
+}
+
+/**
+ * Splits the tasks of files that are read via Bio-Formats into one task per series of the file (see AdipoSeriesReader).
+ * Files whose series cannot be listed remain one task and are reported when they are processed.
+ * @return {file names, directories, names of the tasks for the progress display} of all tasks; the number of tasks is updated
+ * */
+String [][] splitSeriesIntoTasks(String [] name, String [] dir){
+	ArrayList<String> names = new ArrayList<String>(tasks), dirs = new ArrayList<String>(tasks), taskNames = new ArrayList<String>(tasks);
+	ArrayList<int []> series = new ArrayList<int []>(tasks);
+	ArrayList<int []> fileSeries;
+	for(int task = 0; task < tasks; task++){
+		fileSeries = null;
+		if(isSeriesFile(name[task])){
+			try{
+				fileSeries = AdipoSeriesReader.listSeries(dir[task] + name[task], resolutionLevel);
+			}catch(Exception e){
+				fileSeries = null;
+			}catch(LinkageError e){
+				fileSeries = null;	// Bio-Formats is not available
+			}
+		}
+		if(fileSeries == null || fileSeries.isEmpty()){
+			names.add(name[task]);
+			dirs.add(dir[task]);
+			taskNames.add(name[task]);
+			series.add(null);
+			continue;
+		}
+		for(int s = 0; s < fileSeries.size(); s++){
+			names.add(name[task]);
+			dirs.add(dir[task]);
+			taskNames.add(getImageName(name[task], fileSeries.get(s)));
+			series.add(fileSeries.get(s));
+		}
+	}
+	tasks = names.size();
+	taskSeries = series.toArray(new int [tasks][]);
+	return new String [][] {names.toArray(new String [tasks]), dirs.toArray(new String [tasks]), taskNames.toArray(new String [tasks])};
+}
+
+/**
+ * @return true if the file is read via Bio-Formats (AdipoSeriesReader): OME-TIFF files and all files that are no TIFF files
+ * */
+static boolean isSeriesFile(String name){
+	String lowerCaseName = name.toLowerCase();
+	if(lowerCaseName.endsWith(".ome.tif") || lowerCaseName.endsWith(".ome.tiff")) return true;
+	return !lowerCaseName.endsWith(".tif") && !lowerCaseName.endsWith(".tiff") 
+			&& !lowerCaseName.endsWith(".txt") && !lowerCaseName.endsWith(".zip");
+}
+
+/**
+ * @param series: series of the file processed in the task or null
+ * @return the name of the image processed in a task, i.e., the file name and for files with several series the series number
+ * */
+private static String getImageName(String name, int [] series){
+	if(series == null || series [AdipoSeriesReader.NSERIES] <= 1) return name;
+	return name + " - series " + (series [AdipoSeriesReader.SERIES]+1);
+}
+
+/**
+ * Processes all tasks of the batch, sequentially or in parallel
+ * */
+void processTasks(String [] name, String [] dir, ImagePlus [] allImps){
 	if(saveSurrMaps && !quantifySurroundings) {
 		progress.notifyMessage("Surroundings Maps cannot be saved since surroundings are not set to be quantified!", ProgressDialog.NOTIFICATION);
 		saveSurrMaps = false;
 	}
 	
+	writer = new AdipoOutputWriter(progress, tasks, writeQueueSize);
+	if(writeQueueSize > 0) {
+		progress.notifyMessage("Writing outputs in the background (queue of " + writeQueueSize + " files)", ProgressDialog.LOG);
+	}
+	if(writeCohortTable || cohortTablePath != null) {
+		String path = cohortTablePath;
+		if(path == null) path = dir[0] + "AQA_cohort_" + NameDateFormatter.format(new Date()) + ".txt";
+		try {
+			cohort = new AdipoCohortTable(path, Arrays.copyOf(dir, tasks), df6.getDecimalFormatSymbols(), progress);
+			progress.notifyMessage("Writing the results of all images into the cohort table " + path, ProgressDialog.LOG);
+		}catch(IOException e) {
+			progress.notifyMessage("Cohort table " + path + " could not be created - " + e.getMessage(), ProgressDialog.ERROR);
+		}
+	}
+	try {
+		if(nrOfParallelImages > 1 && tasks > 1 && !selectedTaskVariant.equals(taskVariant[0])){
+			processTasksInParallel(name, dir, allImps);
+		}else{
+			if(prefetchImages > 0 && tasks > 1 && selectedTaskVariant.equals(taskVariant[1])){
+				startPrefetcher(name, dir);
+			}
+			try {
+				for(int task = 0; task < tasks; task++){
+					processTask(task, name, dir, allImps);
+				}
+			}finally {
+				if(prefetcher != null) {
+					prefetcher.stop();
+					prefetcher = null;
+				}
+			}
+		}
+	}finally {
+		if(cohort != null) {
+			cohort.close();
+			cohort = null;
+		}
+		// all outputs are written and synchronized to disk before the batch ends
+		if(!writer.flush()) {
+			progress.notifyMessage("Not all output files of the batch could be written - see the errors of the tasks.", ProgressDialog.ERROR);
+		}
+	}
+}
+
+/**
+ * Starts loading the images of the next tasks in the background (see AdipoPrefetcher), used when images are processed sequentially
+ * */
+private void startPrefetcher(final String [] name, final String [] dir){
+	progress.notifyMessage("Loading up to " + prefetchImages + " images ahead in the background (memory cap " + prefetchMemoryMB + " MB)", ProgressDialog.LOG);
+	prefetcher = new AdipoPrefetcher(new AdipoPrefetcher.Loader() {
+		public ImagePlus load(int task) throws Exception {
+			if(isSeriesFile(name[task]) && (taskSeries == null || taskSeries[task] == null)) return null;
+			if(name[task].toLowerCase().endsWith(".txt") || name[task].toLowerCase().endsWith(".zip")) return null;
+			return openTaskImage(task, name, dir);
+		}
+		
+		public long estimateMemory(int task) {
+			return estimateImageMemory(task, name, dir);
+		}
+	}, tasks, prefetchImages, prefetchMemoryMB * 1048576L);
+	prefetcher.start();
+}
+
+/**
+ * Processes the images of the batch in parallel, each on a copy of this plugin with the same settings.
+ * Images are started largest-first while their estimated memory fits into the memory budget.
+ * */
+private void processTasksInParallel(final String [] name, final String [] dir, final ImagePlus [] allImps){
+	long memoryBudget = (long)(Runtime.getRuntime().maxMemory() / 100.0 * memoryBudgetPercent);
+	progress.notifyMessage("Processing up to " + nrOfParallelImages + " images in parallel with a memory budget of " 
+			+ df0.format(memoryBudget / 1048576.0) + " MB", ProgressDialog.LOG);
+	
+	AdipoBatchScheduler scheduler = new AdipoBatchScheduler(nrOfParallelImages, memoryBudget);
 	for(int task = 0; task < tasks; task++){
-		running: while(continueProcessing){
-			startDate = new Date();
-			progress.updateBarText("in progress...");
-			//Check for problems
-			if(name[task].contains(".") && name[task].substring(name[task].lastIndexOf("."),name[task].length()).equals(".txt")){
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": A file is no image! Could not be processed!", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
+		final int taskIndex = task;
+		final AdipoQAnalyzerMain worker = getTaskWorker();
+		scheduler.addTask(task, estimateTaskMemory(task, name, dir, allImps), new Runnable() {
+			public void run() {
+				progress.bindTask(taskIndex);
+				try {
+					worker.processTask(taskIndex, name, dir, allImps);
+				}catch(Throwable e) {
+					// also errors (e.g., OutOfMemoryError) only fail this task, the other tasks of the batch are still processed
+					progress.notifyMessage("Task " + (taskIndex+1) + "/" + tasks + ": Could not be processed - " + e.toString(), ProgressDialog.ERROR);
+					progress.moveTask(taskIndex);
+				}finally {
+					progress.unbindTask();
+				}
 			}
-			if(name[task].contains(".") && name[task].substring(name[task].lastIndexOf("."),name[task].length()).equals(".zip")){	
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": A file is no image! Could not be processed!", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
-			}					
-			//Check for problems
-
-			//open Image
-		   	try{
-		   		if(selectedTaskVariant.equals(taskVariant[1])){
-	   				imp = IJ.openImage(""+dir[task]+name[task]+"");
-		   			imp.hide();
-					imp.deleteRoi();
-		   		}else if(selectedTaskVariant.equals(taskVariant[0])){
-		   			imp = WindowManager.getCurrentImage();
-		   			imp.deleteRoi();
-		   		}else{
-		   			imp = allImps[task];
-		   			imp.deleteRoi();
-		   		}
-		   	}catch (Exception e) {
-		   		progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": file is no image - could not be processed!", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
+		});
+	}
+	
+	try {
+		scheduler.run();
+	}catch(InterruptedException e) {
+		Thread.currentThread().interrupt();
+		progress.notifyMessage("Processing was interrupted!", ProgressDialog.ERROR);
+	}catch(RuntimeException e) {
+		progress.notifyMessage("Processing failed - " + (e.getCause() != null ? e.getCause() : e).toString(), ProgressDialog.ERROR);
+	}
+	processingDone = true;
+}
+
+/**
+ * @return a copy of this plugin with the same settings that processes one task of a parallel batch
+ * */
+private AdipoQAnalyzerMain getTaskWorker(){
+	AdipoQAnalyzerMain worker = new AdipoQAnalyzerMain();
+	worker.df6 = (DecimalFormat) df6.clone();
+	worker.df3 = (DecimalFormat) df3.clone();
+	worker.df0 = (DecimalFormat) df0.clone();
+	worker.dfDialog = (DecimalFormat) dfDialog.clone();
+	worker.progress = progress;
+	worker.selectedTaskVariant = selectedTaskVariant;
+	worker.tasks = tasks;
+	worker.chosenInput = chosenInput;
+	worker.chosenOutputName = chosenOutputName;
+	worker.gzipResults = gzipResults;
+	worker.saveColumnarResults = saveColumnarResults;
+	worker.cohort = cohort;
+	worker.chosenImageOutput = chosenImageOutput;
+	worker.addIdOverlay = addIdOverlay;
+	worker.keepAwake = keepAwake;
+	worker.skipUnchangedImages = skipUnchangedImages;
+	worker.robo = robo;
+	worker.inputIsLabelImage = inputIsLabelImage;
+	worker.chosenReconstruction = chosenReconstruction;
+	worker.nrOfThreads = nrOfThreads;
+	worker.tileSize = tileSize;
+	worker.diskBackedCacheMB = diskBackedCacheMB;
+	worker.resolutionLevel = resolutionLevel;
+	worker.taskSeries = taskSeries;
+	worker.writeQueueSize = writeQueueSize;
+	worker.writer = writer;
+	worker.ChosenNumberFormat = ChosenNumberFormat;
+	worker.channelID = channelID;
+	worker.minSizeCalibrated = minSizeCalibrated;
+	worker.increaseRange = increaseRange;
+	worker.fuseParticles = fuseParticles;
+	worker.quantifySurroundings = quantifySurroundings;
+	worker.saveRois = saveRois;
+	worker.saveSurrMaps = saveSurrMaps;
+	worker.compressSurrMaps = compressSurrMaps;
+	worker.refDistance = refDistance;
+	worker.chosenSurroundingsMode = chosenSurroundingsMode;
+	worker.excludeSelection = excludeSelection;
+	worker.headless = headless;
+	if(!headless) worker.taskRoiManager = new RoiManager(true);
+	return worker;
+}
+
+/**
+ * Estimates the memory needed to process a task from the image dimensions (read from the TIFF header if the image is not open).
+ * For files whose header cannot be read, the file size is used as image size.
+ * @return estimated memory in bytes
+ * */
+private long estimateTaskMemory(int task, String [] name, String [] dir, ImagePlus [] allImps){
+	if(selectedTaskVariant.equals(taskVariant[2])){
+		ImagePlus imp = allImps[task];
+		int bytesPerPixel = imp.getBitDepth()==24 ? 4 : imp.getBitDepth()/8;
+		return estimateTaskMemory((long)imp.getWidth()*imp.getHeight(), imp.getNChannels(), imp.getNSlices()*imp.getNFrames(), bytesPerPixel, false);
+	}
+	long [] dimensions = readImageDimensions(task, name, dir);
+	if(dimensions != null) {
+		return estimateTaskMemory(dimensions [0], (int) dimensions [1], (int) dimensions [2], (int) dimensions [3], isReadDiskBacked(name[task]));
+	}
+	return 3 * new File(dir[task] + name[task]).length();
+}
+
+/**
+ * @return estimated memory in bytes of the loaded image of a task (the plane cache for disk-backed images), the file size if the 
+ * dimensions of the image cannot be read
+ * */
+private long estimateImageMemory(int task, String [] name, String [] dir){
+	long [] dimensions = readImageDimensions(task, name, dir);
+	if(dimensions == null) {
+		return new File(dir[task] + name[task]).length();
+	}
+	long memory = dimensions [0] * dimensions [1] * dimensions [2] * dimensions [3];
+	if(isReadDiskBacked(name[task])) {
+		memory = Math.min(memory, Math.max(diskBackedCacheMB * 1048576L, dimensions [0] * dimensions [1] * dimensions [3]));
+	}
+	return memory;
+}
+
+/**
+ * @return {pixels per plane, channels, slices * frames, bytes per pixel} of the image file of a task, read from the series metadata
+ * (files read via Bio-Formats) or the TIFF header; null if the dimensions cannot be read
+ * */
+private long [] readImageDimensions(int task, String [] name, String [] dir){
+	if(taskSeries != null && taskSeries[task] != null){
+		int [] series = taskSeries[task];
+		return new long [] {(long)series [AdipoSeriesReader.WIDTH]*series [AdipoSeriesReader.HEIGHT], series [AdipoSeriesReader.NCHANNELS], 
+				series [AdipoSeriesReader.NPLANES], series [AdipoSeriesReader.BYTESPERPIXEL]};
+	}
+	try {
+		FileInfo [] info = new TiffDecoder(dir[task], name[task]).getTiffInfo();
+		if(info != null && info.length > 0) {
+			int nImages = info.length > 1 ? info.length : Math.max(1, info[0].nImages);
+			int nChannels = 1;
+			if(info[0].description != null && info[0].description.contains("channels=")) {
+				String tempString = info[0].description.substring(info[0].description.indexOf("channels=")+9);
+				if(tempString.contains("\n")) tempString = tempString.substring(0, tempString.indexOf("\n"));
+				nChannels = Math.max(1, Integer.parseInt(tempString.trim()));
 			}
-		   	//open Image
-		   	
-		   	//Check for problems with the image
-		   	if(imp.getNFrames()>1){	
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Could not be processed. Analysis of multi-frame images not yet implemented!", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
-			}			
-			if(imp.getNSlices()>1){	
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Could not be processed. Analysis of 3D images not yet implemented!", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
-			}			
-			if(channelID < 1 || channelID > imp.getNChannels()) {
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Could not be processed. Selected channel does not exist in the image!"
-						+ " Select a channel number between 1 and the total number of channels in the image.", ProgressDialog.ERROR);
-				progress.moveTask(task);	
-				break running;
+			return new long [] {(long)info[0].width*info[0].height, nChannels, Math.max(1, nImages/nChannels), info[0].getBytesPerPixel()};
+		}
+	}catch(Exception e) {
+	}
+	return null;
+}
+
+/**
+ * @return estimated memory in bytes to process an image: the image, the copies of the segmented channel, particle buffers, intensity buffers, 
+ * surroundings maps and the buffers for exclusive surroundings
+ * @param nPlanes: number of slices * number of frames
+ * @param diskBacked: true if the image is read disk-backed, so that only the segmented channel and the plane cache are held in memory;
+ * 2D static images in addition hold copies of the segmented channel
+ * */
+private long estimateTaskMemory(long planeSize, int nChannels, int nPlanes, int bytesPerPixel, boolean diskBacked){
+	long voxels = planeSize * nPlanes;
+	long memory = voxels * nChannels * bytesPerPixel;	// image
+	if(diskBacked) {
+		memory = Math.min(memory, voxels * bytesPerPixel + Math.max(diskBackedCacheMB * 1048576L, planeSize * nChannels * bytesPerPixel));
+	}
+	boolean tiled = tileSize > 0 && nPlanes == 1;
+	if(nPlanes > 1) {
+		if(chosenReconstruction.equals(reconstructionMethod[3])) {
+			memory += voxels * nChannels * bytesPerPixel;	// copy of the image for the legacy flood fill
+		}
+	}else if(tiled) {
+		memory += voxels * bytesPerPixel;	// copy of the segmented channel
+	}else {
+		memory += 2 * voxels * bytesPerPixel;	// copies of the segmented channel for the particle analyzer
+	}
+	memory += voxels * 16;	// particle points
+	if(chosenImageOutput.equals(imageOutputVariants[1])) {
+		memory += voxels * 2;	// 16-bit object-ID raster, used as label image
+	}
+	memory += voxels * 8 * nChannels;	// intensities of the particles
+	if(saveSurrMaps) {
+		if(fuseParticles || !chosenImageOutput.equals(imageOutputVariants[1])) {
+			memory += voxels * 2;	// own 16-bit object-ID raster
+		}
+		memory += planeSize * bytesPerPixel;	// plane of the map being written
+	}
+	if(quantifySurroundings && chosenSurroundingsMode.equals(surroundingsModes[1])) {
+		if(tiled) {
+			memory += Math.min(voxels, 4L * tileSize * tileSize * Math.max(1, nrOfThreads)) * 16;	// distance grids and labels of tiles with halo
+		}else {
+			memory += voxels * 16;	// surroundings map, distance grid and labels
+		}
+	}
+	return memory;
+}
+
+/**
+ * @return true if images shall be read as disk-backed stacks (AdipoVirtualStack) where supported, i.e., TIFF files and series read via Bio-Formats
+ * */
+private boolean isDiskBackedInput(){
+	return diskBackedCacheMB > 0 && !chosenReconstruction.equals(reconstructionMethod[3]);
+}
+
+/**
+ * @return true if the image file shall be read as disk-backed stack (AdipoVirtualStack) instead of being loaded into memory
+ * */
+private boolean isReadDiskBacked(String name){
+	if(!isDiskBackedInput()) return false;
+	if(isSeriesFile(name)) return true;
+	String lowerCaseName = name.toLowerCase();
+	return lowerCaseName.endsWith(".tif") || lowerCaseName.endsWith(".tiff");
+}
+
+/**
+ * @return the ROI manager of this task - the ROI manager of ImageJ or, if images are processed in parallel, a hidden ROI manager of the task
+ * */
+private RoiManager getRoiManager(){
+	if(taskRoiManager != null) return taskRoiManager;
+	RoiManager rm = RoiManager.getInstance();
+	if(rm == null) rm = new RoiManager();
+	return rm;
+}
+
+private void setRoiManagerVisible(boolean visible){
+	if(headless) return;
+	if(taskRoiManager == null) getRoiManager().setVisible(visible);
+}
+
+private void resetRois(){
+	if(headless){
+		headlessRois.clear();
+	}else{
+		getRoiManager().reset();
+	}
+}
+
+private void addRoi(Roi roi){
+	if(headless){
+		headlessRois.add(roi);
+	}else{
+		getRoiManager().addRoi(roi);
+	}
+}
+
+private Roi [] getRois(){
+	if(headless){
+		return headlessRois.toArray(new Roi [headlessRois.size()]);
+	}
+	return getRoiManager().getRoisAsArray();
+}
+
+/**
+ * Saves the ROIs; in headless mode via the output writer (from a copy of the ROI list), otherwise immediately by the ROI manager
+ * */
+private void saveRois(int task, final String path){
+	if(headless){
+		final ArrayList<Roi> rois = new ArrayList<Roi>(headlessRois);
+		getWriter().write(task, path, new AdipoOutputWriter.Output() {
+			public void write() throws IOException {
+				saveRoisAsZip(rois, path);
 			}
-			if(imp.getCalibration().pixelHeight != imp.getCalibration().pixelWidth) {
-				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": WARNING: Pixel width is not equal pixel height "
-						+ "- surface/outline calculation may be inaccurate.", ProgressDialog.NOTIFICATION);
-			}			
-		   	//Check for problems with the image
-		   	
-		   	//Create Outputfilename
-		   	progress.updateBarText("Create output filename");				
-			String filePrefix;
-			if(name[task].contains(".")){
-				filePrefix = name[task].substring(0,name[task].lastIndexOf("."));
-			}else{
-				filePrefix = name[task];
+		});
+	}else{
+		getRoiManager().runCommand("Save", path);
+	}
+}
+
+/**
+ * Saves ROIs into a zip file in the format of the ROI manager, without using a ROI manager.
+ * Unnamed ROIs are named by their position in the list.
+ * */
+private static void saveRoisAsZip(ArrayList<Roi> rois, String path) throws IOException {
+	AdipoRoiZipWriter writer = null;
+	try {
+		writer = new AdipoRoiZipWriter(path);
+		for(int i = 0; i < rois.size(); i++) {
+			writer.add(rois.get(i));
+		}
+	}catch(IOException e) {
+		throw new IOException("ROIs could not be saved to " + path + " - " + e.getMessage(), e);
+	}finally {
+		if(writer != null) try {writer.close();} catch (IOException e) {}
+	}
+}
+
+/**
+ * Applies the Fire LUT; in headless mode without running an ImageJ command
+ * */
+private void applyFireLut(ImagePlus imp){
+	if(headless){
+		imp.setLut(getFireLut());
+	}else{
+		IJ.run(imp, "Fire","");
+	}
+}
+
+/**
+ * @return the Fire LUT of ImageJ, interpolated from its 32 control colors like by LutLoader
+ * */
+private static LUT getFireLut(){
+	int [] r = {0,0,1,25,49,73,98,122,146,162,173,184,195,207,217,229,240,252,255,255,255,255,255,255,255,255,255,255,255,255,255,255};
+	int [] g = {0,0,0,0,0,0,0,0,0,0,0,0,0,14,35,57,79,101,117,133,147,161,175,190,205,219,234,248,255,255,255,255};
+	int [] b = {0,61,96,130,165,192,220,227,210,181,151,122,93,64,35,5,0,0,0,0,0,0,0,0,0,0,0,35,98,160,223,255};
+	byte [] reds = new byte [256], greens = new byte [256], blues = new byte [256];
+	double scale = r.length / 256.0, fraction;
+	int i1, i2;
+	for(int i = 0; i < 256; i++){
+		i1 = (int)(i * scale);
+		i2 = Math.min(i1 + 1, r.length - 1);
+		fraction = i * scale - i1;
+		reds [i] = (byte)((1.0 - fraction) * r [i1] + fraction * r [i2]);
+		greens [i] = (byte)((1.0 - fraction) * g [i1] + fraction * g [i2]);
+		blues [i] = (byte)((1.0 - fraction) * b [i1] + fraction * b [i2]);
+	}
+	return new LUT(reds, greens, blues);
+}
+
+/**
+ * Processes one image of the batch and moves the task to the processed tasks in the progress dialog
+ * */
+private void processTask(int task, String [] name, String [] dir, ImagePlus [] allImps){
+	ImagePlus imp = null;
+	int [] series = taskSeries != null ? taskSeries[task] : null;
+	String imageName = getImageName(name[task], series);
+	Date startDate, endDate;
+	String cacheKey = null;
+	currentTask = task;
+	taskOutputs.clear();
+	
+	running: while(continueProcessing){
+		startDate = new Date();
+		progress.updateBarText("in progress...");
+		//Check for problems
+		if(name[task].contains(".") && name[task].substring(name[task].lastIndexOf("."),name[task].length()).equals(".txt")){
+			progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": A file is no image! Could not be processed!", ProgressDialog.ERROR);
+			break running;
+		}
+		if(name[task].contains(".") && name[task].substring(name[task].lastIndexOf("."),name[task].length()).equals(".zip")){	
+			progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": A file is no image! Could not be processed!", ProgressDialog.ERROR);
+			break running;
+		}					
+		//Check for problems
+		
+		//Skip images whose outputs for the current settings exist already
+		if(skipUnchangedImages && selectedTaskVariant.equals(taskVariant[1])){
+			progress.updateBarText("Look up result index");
+			try {
+				cacheKey = AdipoResultCache.getKey(new File(dir[task] + name[task]), getResultCacheSettings());
+				if(AdipoResultCache.hasCompleteOutputs(dir[task], imageName, cacheKey)) {
+					progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Image and settings unchanged since last analysis - "
+							+ "skipped, outputs are complete.", ProgressDialog.LOG);
+					if(cohort != null) {
+						addExistingResultsToCohort(task, name, dir, series);
+					}
+					break running;
+				}
+			}catch(IOException e) {
+				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Result index could not be read - " + e.getMessage(), ProgressDialog.NOTIFICATION);
+				cacheKey = null;
 			}
-			
-			filePrefix += "_AQA";
-			
-			if(chosenOutputName.equals(outputVariant[1])){
-				//saveDate
-				filePrefix += "_" + NameDateFormatter.format(startDate);
+		}
+
+		//open Image
+	   	try{
+	   		if(selectedTaskVariant.equals(taskVariant[1])){
+	   			if(isSeriesFile(name[task]) && series == null) {
+	   				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": file could not be read via Bio-Formats - could not be processed!", ProgressDialog.ERROR);
+	   				break running;
+	   			}
+	   			imp = prefetcher != null ? prefetcher.take(task) : null;
+	   			if(imp == null) {
+	   				imp = openTaskImage(task, name, dir);
+	   			}
+	   			if(series != null && series [AdipoSeriesReader.RESOLUTION] > 0) {
+	   				progress.notifyMessage("Task " + (task+1) + ": Reading resolution level " + series [AdipoSeriesReader.RESOLUTION] + " (" 
+	   						+ imp.getWidth() + " x " + imp.getHeight() + " px)", ProgressDialog.LOG);
+	   			}
+	   		}else if(selectedTaskVariant.equals(taskVariant[0])){
+	   			imp = WindowManager.getCurrentImage();
+	   			imp.deleteRoi();
+	   		}else{
+	   			imp = allImps[task];
+	   			imp.deleteRoi();
+	   		}
+	   	}catch (Exception e) {
+	   		progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": file is no image - could not be processed!", ProgressDialog.ERROR);
+			break running;
+		}
+	   	//open Image
+	   	
+	   	//Check for problems with the image
+		if(channelID < 1 || channelID > imp.getNChannels()) {
+			progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Could not be processed. Selected channel does not exist in the image!"
+					+ " Select a channel number between 1 and the total number of channels in the image.", ProgressDialog.ERROR);
+			break running;
+		}
+		if(imp.getCalibration().pixelHeight != imp.getCalibration().pixelWidth) {
+			progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": WARNING: Pixel width is not equal pixel height "
+					+ "- surface/outline calculation may be inaccurate.", ProgressDialog.NOTIFICATION);
+		}			
+	   	//Check for problems with the image
+	   	
+	   	//Create Outputfilename
+	   	progress.updateBarText("Create output filename");				
+		String filePrefix;
+		if(name[task].contains(".")){
+			filePrefix = name[task].substring(0,name[task].lastIndexOf("."));
+		}else{
+			filePrefix = name[task];
+		}
+		
+		if(series != null && series [AdipoSeriesReader.NSERIES] > 1){
+			filePrefix += "_S" + (series [AdipoSeriesReader.SERIES]+1);
+		}
+		filePrefix += "_AQA";
+		
+		if(chosenOutputName.equals(outputVariant[1])){
+			//saveDate
+			filePrefix += "_" + NameDateFormatter.format(startDate);
+		}
+		
+		filePrefix = dir[task] + filePrefix;
+	   	
+		//Determine pixelated particle size
+		{
+			//convert calibrated minSize (minSizeCalibrated) into pixelated minSize
+			minSize = (double)minSizeCalibrated / (double)imp.getCalibration().pixelWidth / (double)imp.getCalibration().pixelHeight;
+			progress.notifyMessage("Task " + (task+1) + ": Minimum size in " + imp.getCalibration().getUnit() + "^2: " + df6.format(minSizeCalibrated) 
+				+ " -> in pixel: " + df6.format(minSize), ProgressDialog.LOG);
+		}
+		
+		if(imp.getNSlices() > 1 || imp.getNFrames() > 1) {
+			if(saveSurrMaps) {
+				progress.notifyMessage("Task " + (task+1) + ": Maps for surrounding intensities are only saved for 2D static images"
+						+ " - no maps saved for this image.", ProgressDialog.NOTIFICATION);
 			}
-			
-			filePrefix = dir[task] + filePrefix;
-		   	
-			//Determine pixelated particle size
-			{
-				//convert calibrated minSize (minSizeCalibrated) into pixelated minSize
-				minSize = (double)minSizeCalibrated / (double)imp.getCalibration().pixelWidth / (double)imp.getCalibration().pixelHeight;
-				progress.notifyMessage("Task " + (task+1) + ": Minimum size in " + imp.getCalibration().getUnit() + "^2: " + df6.format(minSizeCalibrated) 
-					+ " -> in pixel: " + df6.format(minSize), ProgressDialog.LOG);
+			if(tileSize > 0) {
+				progress.notifyMessage("Task " + (task+1) + ": Tiles only apply to 2D static images - image is analyzed as a whole.", ProgressDialog.LOG);
 			}
-			
-		/******************************************************************
-		*** 						Processing							***	
-		*******************************************************************/
-			
-			//processing
-			progress.updateBarText("Analyze " + channelID + " ...");
-			ArrayList<Adipocyte> adipocytes = new ArrayList<Adipocyte>(0);
-			if(imp.getNSlices()==1 && imp.getNFrames()==1) {
-				adipocytes = this.analyzeAdipocytesWithIn2D(imp, channelID, filePrefix, chosenInput.equals(inputVariant [1]));
-				if(saveRois) {
-					RoiManager.getInstance().runCommand("Save", filePrefix+"r.zip");
-					RoiManager.getInstance().reset();
-				}
-				RoiManager.getInstance().setVisible(true);
-			}else {
-				adipocytes = this.analyzeAdipocytes(imp, channelID);				
+		}
+		
+	/******************************************************************
+	*** 						Processing							***	
+	*******************************************************************/
+		
+		//processing
+		progress.updateBarText("Analyze " + channelID + " ...");
+		if(chosenImageOutput.equals(imageOutputVariants[1])) {
+			objectLabels = new AdipoLabelImage(imp.getWidth(), imp.getHeight(), imp.getNSlices(), imp.getNFrames());
+		}
+		ArrayList<Adipocyte> adipocytes = new ArrayList<Adipocyte>(0);
+		if(imp.getNSlices()==1 && imp.getNFrames()==1) {
+			adipocytes = this.analyzeAdipocytesWithIn2D(imp, channelID, filePrefix, chosenInput.equals(inputVariant [1]));
+		}else {
+			adipocytes = this.analyzeAdipocytes(imp, channelID);				
+		}
+		if(imp.getStack() instanceof AdipoVirtualStack) {
+			long decodedPlanes = ((AdipoVirtualStack) imp.getStack()).getDecodedPlanes();
+			progress.notifyMessage("Task " + (task+1) + ": Disk-backed input - " + decodedPlanes 
+				+ " planes read from file for " + imp.getStackSize() + " planes in the image", ProgressDialog.LOG);
+			if(decodedPlanes > 2L * imp.getStackSize()) {
+				progress.notifyMessage("Task " + (task+1) + ": Planes were read repeatedly from file since the plane cache holds fewer planes"
+						+ " than one channel of the image - a larger plane cache speeds up the analysis.", ProgressDialog.NOTIFICATION);
 			}
-			
-			//Saving
-			tp1 = new TextPanel("results");
-			tp2 = new TextPanel("results short");
-			endDate = new Date();
-			
-			addSettingsBlockToPanel(tp1,  startDate, endDate, name[task], imp);
-			tp1.append("");
-			
-			tp1.append("Results");
-			String appText;
-			
-			appText = ("Image name"
-					+ "	" + "ID" 
-					+ "	" + "Custom" 
-					+ "	" + "Frame" 
-					+ "	" + "Total frames" 
-					+ "	" + "Center X [" + imp.getCalibration().getUnit() + "]"
-					+ "	" + "Center Y [" + imp.getCalibration().getUnit() + "]"
-					+ "	" + "Center Z [" + imp.getCalibration().getUnit() + "]"
-					+ "	" + "Voxels");
-			if(imp.getNSlices()>1) {
-				appText += "	" + "Volume [" + imp.getCalibration().getUnit() + "^3]";
-				appText += "	" + "Surface [" + imp.getCalibration().getUnit() + "^2]";
-				appText += "	" + "3D-Asphericity Index";
-			}else {
-				appText += "	" + "Area [" + imp.getCalibration().getUnit() + "^2]";
-				appText += "	" + "Outline [" + imp.getCalibration().getUnit() + "]";
-				appText += "	" + "2D-Asphericity Index";
+		}
+		
+		//Saving
+		endDate = new Date();
+		saveResults(task, filePrefix, adipocytes, imp, imageName, startDate, endDate, series);
+		
+		if(objectLabels != null) {
+			ImagePlus labelImp = objectLabels.toImagePlus(imageName + " - object IDs", imp.getCalibration());
+			objectLabels = null;
+			if(addIdOverlay) {
+				labelImp.setOverlay(AdipoLabelImage.createIdOverlay(adipocytes, RoiFont));
 			}
-			for(int c = 0; c < imp.getNChannels(); c++) {
-				appText += "	" + "C" + (c+1) + ": Average Intensity";
-				appText += "	" + "C" + (c+1) + ": Integrated Intensity";
-				appText += "	" + "C" + (c+1) + ": Median Intensity";
-				appText += "	" +"C" + (c+1) +  ": SD of Intensities";
-				appText += "	" +"C" + (c+1) +  ": Min Intensity";
-				appText += "	" +"C" + (c+1) +  ": Max Intensity";
+			saveAsTiff(task, labelImp, filePrefix+"_Labels.zip", true);
+			taskOutputs.add(filePrefix+"_Labels.zip");
+		}else {
+			TextRoi txtID;
+			imp.setOverlay(new Overlay());
+			setRoiManagerVisible(false);
+			resetRois();			
+			for(int i = 0; i < adipocytes.size(); i++) {
+				//write ID into image and save ROIs
+				txtID = new TextRoi((int)Math.round(adipocytes.get(i).centerX[0]), 
+						(int)Math.round(adipocytes.get(i).centerY[0]),
+						df0.format(i+1), RoiFont);
+				txtID.setStrokeColor(Color.WHITE);
+				imp.getOverlay().add(txtID);
+				addRoi(txtID);
 			}
-			
-			//Output Surroundings data
-			if(quantifySurroundings) {
-				appText += "	" + "Surr Voxels";
-				for(int c = 0; c < imp.getNChannels(); c++) {
-					if(c == channelID-1) continue;
-					appText += "	" + "C" + (c+1) + ": Surr Average Intensity";
-					appText += "	" + "C" + (c+1) + ": Surr Integrated Intensity";
-					appText += "	" + "C" + (c+1) + ": Surr Median Intensity";
-					appText += "	" +"C" + (c+1) +  ": Surr SD of Intensities";
-					appText += "	" +"C" + (c+1) +  ": Surr Min Intensity";
-					appText += "	" +"C" + (c+1) +  ": Surr Max Intensity";
-					appText += "	" +"C" + (c+1) +  ": Surr Average Intensity Min 5%";
-					appText += "	" +"C" + (c+1) +  ": Surr Average Intensity Min 25%";
-					appText += "	" +"C" + (c+1) +  ": Surr Average Intensity Max 5%";
-					appText += "	" +"C" + (c+1) +  ": Surr Average Intensity Max 25%";
+	
+			saveAsTiff(task, imp, filePrefix+"_RP.tif", false);
+			taskOutputs.add(filePrefix+"_RP.tif");
+	
+			saveRois(task, filePrefix+"_IDs.zip");
+			taskOutputs.add(filePrefix+"_IDs.zip");
+			resetRois();
+			setRoiManagerVisible(true);
+		}
+		
+		if(cacheKey != null) {
+			recordInResultIndex(task, dir[task], imageName, cacheKey, new ArrayList<String>(taskOutputs));
+		}
+		
+		progress.updateBarText("Finished ...");
+		
+		/******************************************************************
+		*** 							Finish							***	
+		*******************************************************************/			
+		{
+			imp.unlock();	
+			final ImagePlus processedImp = imp;
+			final int processedTask = task;
+			getWriter().run(task, new Runnable() {
+				public void run() {
+					closeTaskImage(processedTask, processedImp);
+				}
+			});
+			imp = null;	// closed once its outputs are written
+			processingDone = true;
+			break running;
+		}				
+	}	
+	if(prefetcher != null) {
+		prefetcher.release(task);
+	}
+	if(imp != null) {
+		closeDiskBackedStack(task, imp);
+	}
+	if(cohort != null) {
+		cohort.finishTask(task);
+	}
+	progress.updateBarText("finished!");
+	progress.setBar(1.0);
+	progress.moveTask(task);
+}
+
+/**
+ * Closes the image of a processed task; images that were open before processing stay open
+ * */
+private void closeTaskImage(int task, ImagePlus imp){
+	if(selectedTaskVariant.equals(taskVariant[1])){
+		imp.changes = false;
+		imp.close();
+	}
+	closeDiskBackedStack(task, imp);
+}
+
+/**
+ * Closes the input file of an image read disk-backed (AdipoVirtualStack)
+ * */
+private void closeDiskBackedStack(int task, ImagePlus imp){
+	if(!(imp.getStack() instanceof AdipoVirtualStack)) return;
+	try {
+		((AdipoVirtualStack) imp.getStack()).close();
+	}catch(IOException e) {
+		progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Input file could not be closed - " + e.getMessage(), ProgressDialog.NOTIFICATION);
+	}
+}
+
+/**
+ * Records the outputs of a task in the result index once they are written; nothing is recorded if an output could not be written
+ * */
+private void recordInResultIndex(final int task, final String directory, final String imageName, final String cacheKey, final ArrayList<String> outputs){
+	getWriter().run(task, new Runnable() {
+		public void run() {
+			if(getWriter().hasFailed(task)) return;
+			try {
+				if(!AdipoResultCache.record(directory, imageName, cacheKey, outputs)) {
+					progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Outputs incomplete - not recorded in result index.", ProgressDialog.NOTIFICATION);
 				}
+			}catch(IOException e) {
+				progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Result index could not be written - " + e.getMessage(), ProgressDialog.NOTIFICATION);
+			}
+		}
+	});
+}
+
+/**
+ * @return the writer for the output files; outputs are written immediately if no batch writer was set up
+ * */
+private AdipoOutputWriter getWriter(){
+	if(writer == null) writer = new AdipoOutputWriter(progress, tasks, 0);
+	return writer;
+}
+
+/**
+ * Writes the result tables of an image line by line: the long table (*_AQA.txt with preferences, results and footer), 
+ * the short table (*_AQAs.txt with results under a one-row header) and, if selected, the columnar table (*_AQA.aqac)
+ * */
+private void saveResults(int task, String filePrefix, ArrayList<Adipocyte> adipocytes, ImagePlus imp, String imageName, 
+		Date startDate, Date endDate, int [] series){
+	String [] columns = getResultColumns(imp);
+	byte [] types = new byte [columns.length];
+	for(int c = 0; c < columns.length; c++) {
+		types [c] = AdipoResultTable.DOUBLE;
+		for(int i = 0; i < INTEGER_COLUMNS.length; i++) {
+			if(columns [c].equals(INTEGER_COLUMNS [i])) types [c] = AdipoResultTable.INT;
+		}
+	}
+	ArrayList<String> settings = new ArrayList<String>(), footer = new ArrayList<String>();
+	addSettingsBlockToPanel(settings, startDate, endDate, imageName, imp, series);
+	addFooter(footer, startDate);
+	String header = AdipoResultTable.getTextHeader(columns);
+	
+	// rows for the cohort table, added once all rows are written
+	ArrayList<String> cohortRows = null;
+	double [] cohortSizes = null;
+	if(cohort != null) {
+		int nRows = 0;
+		for(int i = 0; i < adipocytes.size(); i++) {
+			nRows += adipocytes.get(i).voxelNumber.length;
+		}
+		cohortRows = new ArrayList<String>(nRows);
+		cohortSizes = new double [nRows];
+	}
+	
+	AdipoTableWriter tp1 = null, tp2 = null;
+	AdipoColumnarWriter ct = null;
+	try {
+		try {
+			tp1 = new AdipoTableWriter(filePrefix + ".txt", gzipResults);
+			taskOutputs.add(tp1.getPath());
+			tp2 = new AdipoTableWriter(filePrefix + "s.txt", gzipResults);
+			taskOutputs.add(tp2.getPath());
+			if(saveColumnarResults) {
+				LinkedHashMap<String,String> metadata = new LinkedHashMap<String,String>();
+				metadata.put(AdipoResultTable.IMAGE_NAME, imageName);
+				metadata.put(AdipoResultTable.SETTINGS, joinLines(settings));
+				metadata.put(AdipoResultTable.FOOTER, joinLines(footer));
+				metadata.put(AdipoResultTable.ONE_ROW_FOOTER, getOneRowFooter(startDate));
+				ct = new AdipoColumnarWriter(filePrefix + AdipoResultTable.EXTENSION, columns, types, metadata);
+				taskOutputs.add(filePrefix + AdipoResultTable.EXTENSION);
 			}
 			
-			tp1.append(appText);
-			tp2.append(appText + this.getOneRowFooter(startDate));
+			for(int i = 0; i < settings.size(); i++) {
+				tp1.append(settings.get(i));
+			}
+			tp1.append("");
+			tp1.append("Results");
+			tp1.append(header);
+			tp2.append(header + this.getOneRowFooter(startDate));
 			
-			TextRoi txtID;
+			// rows are assembled in one buffer with a number format that produces the same text as df6
+			AdipoNumberFormat nf6 = new AdipoNumberFormat(df6.getDecimalFormatSymbols());
+			StringBuilder text = new StringBuilder(1024);
+			double [] row = new double [columns.length];
+			int k;
+			Adipocyte adipocyte;
+			double pixelWidth = imp.getCalibration().pixelWidth, pixelHeight = imp.getCalibration().pixelHeight, pixelDepth = imp.getCalibration().pixelDepth;
 			double volume, surface, sphereRadius, sphereSurface;
-			imp.setOverlay(new Overlay());
-			RoiManager.getInstance().setVisible(false);
-			RoiManager.getInstance().reset();			
 			for(int i = 0; i < adipocytes.size(); i++) {
 				if(keepAwake) {
 					stayAwake();
 				}
-				{
-					//write ID into image and save ROIs
-					txtID = new TextRoi((int)Math.round(adipocytes.get(i).centerX[0]), 
-							(int)Math.round(adipocytes.get(i).centerY[0]),
-							df0.format(i+1), RoiFont);
-					txtID.setStrokeColor(Color.WHITE);
-					imp.getOverlay().add(txtID);
-					RoiManager.getInstance().addRoi(txtID);			
-				}
-				for(int t = 0; t < adipocytes.get(i).voxelNumber.length; t++) {
-					appText = name[task] + "	" + (i+1);
-					appText += "	" + "";
-					appText += "	" + (t+1);
-					appText += "	" + (adipocytes.get(i).voxelNumber.length);
-					appText += "	" + df6.format(adipocytes.get(i).centerX[t] * imp.getCalibration().pixelWidth);
-					appText += "	" + df6.format(adipocytes.get(i).centerY[t] * imp.getCalibration().pixelHeight);
-					appText += "	" + df6.format(adipocytes.get(i).centerZ[t] * imp.getCalibration().pixelDepth);
-					appText += "	" + df0.format(adipocytes.get(i).voxelNumber[t]);
+				adipocyte = adipocytes.get(i);
+				for(int t = 0; t < adipocyte.voxelNumber.length; t++) {
+					k = 0;
+					row [k++] = i+1;
+					row [k++] = t+1;
+					row [k++] = adipocyte.voxelNumber.length;
+					row [k++] = adipocyte.centerX[t] * pixelWidth;
+					row [k++] = adipocyte.centerY[t] * pixelHeight;
+					row [k++] = adipocyte.centerZ[t] * pixelDepth;
+					row [k++] = adipocyte.voxelNumber[t];
 					if(imp.getNSlices()>1) {
-						volume = (double)adipocytes.get(i).voxelNumber[t] 
-								* imp.getCalibration().pixelWidth 
-								* imp.getCalibration().pixelHeight 
-								* imp.getCalibration().pixelDepth;
-						appText += "	" + df6.format(volume);
+						volume = (double)adipocyte.voxelNumber[t] * pixelWidth * pixelHeight * pixelDepth;
+						row [k++] = volume;
 						
-						surface = adipocytes.get(i).getSurface(imp.getCalibration().pixelWidth,
-								imp.getCalibration().pixelHeight,imp.getCalibration().pixelDepth,t);
-						appText += "	" + df6.format(surface);
+						surface = adipocyte.getSurface(pixelWidth, pixelHeight, pixelDepth, t);
+						row [k++] = surface;
 						
 						// Calculate asphericity	
 						sphereRadius = Math.pow((double)((volume*3.0)/(4.0*Math.PI)), (double)1/3.0);
 						sphereSurface = (Math.PI * Math.pow(sphereRadius,2) * 4);
-						appText += "	" + df6.format((double)surface/sphereSurface);
+						row [k++] = (double)surface/sphereSurface;
 					}else {
-						volume = (double)adipocytes.get(i).voxelNumber[t] 
-								* imp.getCalibration().pixelWidth 
-								* imp.getCalibration().pixelHeight;
-						appText += "	" + df6.format(volume);
+						volume = (double)adipocyte.voxelNumber[t] * pixelWidth * pixelHeight;
+						row [k++] = volume;
 						
-						surface = adipocytes.get(i).getSurface(imp.getCalibration().pixelWidth,
-								imp.getCalibration().pixelHeight,1.0,t);
-						appText += "	" + df6.format(surface);
+						surface = adipocyte.getSurface(pixelWidth, pixelHeight, 1.0, t);
+						row [k++] = surface;
 						
 						// Calculate asphericity	
-						appText += "	" + df6.format((surface)/(2*Math.sqrt(volume*Math.PI)));
+						row [k++] = (surface)/(2*Math.sqrt(volume*Math.PI));
 					}
 					for(int c = 0; c < imp.getNChannels(); c++) {
-						appText += "	" + df6.format(adipocytes.get(i).averageIntensity[t][c]);
-						appText += "	" + df6.format(adipocytes.get(i).integratedIntensity[t][c]);
-						appText += "	" + df6.format(adipocytes.get(i).medianIntensity[t][c]);
-						appText += "	" + df6.format(adipocytes.get(i).sdIntensity[t][c]);
-						appText += "	" + df6.format(adipocytes.get(i).minIntensity[t][c]);
-						appText += "	" + df6.format(adipocytes.get(i).maxIntensity[t][c]);
+						row [k++] = adipocyte.averageIntensity[t][c];
+						row [k++] = adipocyte.integratedIntensity[t][c];
+						row [k++] = adipocyte.medianIntensity[t][c];
+						row [k++] = adipocyte.sdIntensity[t][c];
+						row [k++] = adipocyte.minIntensity[t][c];
+						row [k++] = adipocyte.maxIntensity[t][c];
 					}
 					
 					if(quantifySurroundings) {
-						appText += "	" + df6.format(adipocytes.get(i).voxelNumberSurr[t]);
+						row [k++] = adipocyte.voxelNumberSurr[t];
 						for(int c = 0; c < imp.getNChannels(); c++) {
 							if(c == channelID-1) continue;
-
-							appText += "	" + df6.format(adipocytes.get(i).averageIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).integratedIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).medianIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).sdIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).minIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).maxIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).min5pIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).min25pIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).max5pIntensitySurr[t][c]);
-							appText += "	" + df6.format(adipocytes.get(i).max25pIntensitySurr[t][c]);
+							row [k++] = adipocyte.averageIntensitySurr[t][c];
+							row [k++] = adipocyte.integratedIntensitySurr[t][c];
+							row [k++] = adipocyte.medianIntensitySurr[t][c];
+							row [k++] = adipocyte.sdIntensitySurr[t][c];
+							row [k++] = adipocyte.minIntensitySurr[t][c];
+							row [k++] = adipocyte.maxIntensitySurr[t][c];
+							row [k++] = adipocyte.min5pIntensitySurr[t][c];
+							row [k++] = adipocyte.min25pIntensitySurr[t][c];
+							row [k++] = adipocyte.max5pIntensitySurr[t][c];
+							row [k++] = adipocyte.max25pIntensitySurr[t][c];
 						}
 					}
 					
-					tp1.append(appText);
-					tp2.append(appText);
+					text.setLength(0);
+					AdipoResultTable.appendTextRow(text, imageName, row, types, nf6);
+					tp1.append(text);
+					tp2.append(text);
+					if(ct != null) ct.addRow(row);
+					if(cohortRows != null) {
+						cohortSizes [cohortRows.size()] = row [7];	// area / volume
+						cohortRows.add(text.toString());
+					}
 				}
-				
 			}
 			tp1.append("");
-		   	
-		   	addFooter(tp1, startDate);				
-			tp1.saveAs(filePrefix + ".txt");
-			tp2.saveAs(filePrefix + "s.txt");
+			
+			for(int i = 0; i < footer.size(); i++) {
+				tp1.append(footer.get(i));
+			}
+		}finally {
+			try {
+				if(tp1 != null) tp1.close();
+			}finally {
+				try {
+					if(tp2 != null) tp2.close();
+				}finally {
+					if(ct != null) ct.close();
+				}
+			}
+		}
+		getWriter().addWrittenFile(tp1.getPath());
+		getWriter().addWrittenFile(tp2.getPath());
+		if(ct != null) getWriter().addWrittenFile(filePrefix + AdipoResultTable.EXTENSION);
+		if(cohortRows != null) cohort.addImage(task, header, cohortRows, cohortSizes);
+	}catch(IOException e) {
+		getWriter().fail(task, "Results could not be saved to " + filePrefix + ".txt - " + e.getMessage());
+	}
+}
+
+/**
+ * Adds the rows of the existing short result table of a task to the cohort table, e.g., if the task is skipped since its outputs are complete
+ * */
+private void addExistingResultsToCohort(int task, String [] name, String [] dir, int [] series){
+	String seriesSuffix = "";
+	if(series != null && series [AdipoSeriesReader.NSERIES] > 1){
+		seriesSuffix = "_S" + (series [AdipoSeriesReader.SERIES]+1);
+	}
+	File [] results = AdipoResultMerger.findResults(new File(dir[task] + name[task]), seriesSuffix);
+	if(results == null) {
+		progress.notifyMessage("Task " + (task+1) + "/" + tasks + ": Existing results not found - not added to the cohort table", ProgressDialog.ERROR);
+		return;
+	}
+	cohort.addResults(task, results [1]);
+}
 
-			IJ.saveAsTiff(imp,filePrefix+"_RP.tif");
+/**
+ * @return names of the columns of the result tables (without image name and custom column, see AdipoResultTable.getTextHeader)
+ * */
+private String [] getResultColumns(ImagePlus imp){
+	String unit = imp.getCalibration().getUnit();
+	ArrayList<String> columns = new ArrayList<String>();
+	columns.add("ID");
+	columns.add("Frame");
+	columns.add("Total frames");
+	columns.add("Center X [" + unit + "]");
+	columns.add("Center Y [" + unit + "]");
+	columns.add("Center Z [" + unit + "]");
+	columns.add("Voxels");
+	if(imp.getNSlices()>1) {
+		columns.add("Volume [" + unit + "^3]");
+		columns.add("Surface [" + unit + "^2]");
+		columns.add("3D-Asphericity Index");
+	}else {
+		columns.add("Area [" + unit + "^2]");
+		columns.add("Outline [" + unit + "]");
+		columns.add("2D-Asphericity Index");
+	}
+	for(int c = 0; c < imp.getNChannels(); c++) {
+		columns.add("C" + (c+1) + ": Average Intensity");
+		columns.add("C" + (c+1) + ": Integrated Intensity");
+		columns.add("C" + (c+1) + ": Median Intensity");
+		columns.add("C" + (c+1) + ": SD of Intensities");
+		columns.add("C" + (c+1) + ": Min Intensity");
+		columns.add("C" + (c+1) + ": Max Intensity");
+	}
+	
+	//Output Surroundings data
+	if(quantifySurroundings) {
+		columns.add("Surr Voxels");
+		for(int c = 0; c < imp.getNChannels(); c++) {
+			if(c == channelID-1) continue;
+			columns.add("C" + (c+1) + ": Surr Average Intensity");
+			columns.add("C" + (c+1) + ": Surr Integrated Intensity");
+			columns.add("C" + (c+1) + ": Surr Median Intensity");
+			columns.add("C" + (c+1) + ": Surr SD of Intensities");
+			columns.add("C" + (c+1) + ": Surr Min Intensity");
+			columns.add("C" + (c+1) + ": Surr Max Intensity");
+			columns.add("C" + (c+1) + ": Surr Average Intensity Min 5%");
+			columns.add("C" + (c+1) + ": Surr Average Intensity Min 25%");
+			columns.add("C" + (c+1) + ": Surr Average Intensity Max 5%");
+			columns.add("C" + (c+1) + ": Surr Average Intensity Max 25%");
+		}
+	}
+	return columns.toArray(new String [columns.size()]);
+}
 
-			RoiManager.getInstance().runCommand("Save", filePrefix+"_IDs.zip");
-			RoiManager.getInstance().reset();
-			RoiManager.getInstance().setVisible(true);
-			
-			progress.updateBarText("Finished ...");
-			
-			/******************************************************************
-			*** 							Finish							***	
-			*******************************************************************/			
-			{
-				imp.unlock();	
-				if(selectedTaskVariant.equals(taskVariant[1])){
+private static String joinLines(ArrayList<String> lines){
+	StringBuilder text = new StringBuilder();
+	for(int i = 0; i < lines.size(); i++) {
+		if(i > 0) text.append("\n");
+		text.append(lines.get(i));
+	}
+	return text.toString();
+}
+
+/**
+ * Saves an image as TIFF via the output writer, zip-compressed if the path ends with .zip
+ * @param close: close the image once it is written
+ * */
+private void saveAsTiff(int task, final ImagePlus imp, final String path, final boolean close){
+	getWriter().write(task, path, new AdipoOutputWriter.Output() {
+		public void write() throws IOException {
+			try {
+				writeImage(imp, path);
+			}finally {
+				if(close) {
 					imp.changes = false;
 					imp.close();
 				}
-				processingDone = true;
-				break running;
-			}				
-		}	
-		progress.updateBarText("finished!");
-		progress.setBar(1.0);
-		progress.moveTask(task);
+			}
+		}
+	});
+}
+
+/**
+ * Saves the image as TIFF or, if the path ends with .zip, as zip-compressed TIFF
+ * */
+private static void writeImage(ImagePlus imp, String path) throws IOException {
+	boolean saved;
+	if(path.endsWith(".zip")) {
+		saved = new FileSaver(imp).saveAsZip(path);
+	}else {
+		saved = IJ.saveAsTiff(imp, path);
+	}
+	if(!saved) throw new IOException("Image could not be saved to " + path);
+}
+
+/**
+ * Opens the image file of a task; series of files read via Bio-Formats are opened with AdipoSeriesReader, TIFF files are read disk-backed if set
+ * @return the image, hidden and without selection
+ * */
+private ImagePlus openTaskImage(int task, String [] name, String [] dir) throws Exception {
+	ImagePlus imp;
+	int [] series = taskSeries != null ? taskSeries[task] : null;
+	if(series != null) {
+		imp = AdipoSeriesReader.openSeries(""+dir[task]+name[task]+"", series [AdipoSeriesReader.SERIES], series [AdipoSeriesReader.RESOLUTION], 
+				isReadDiskBacked(name[task]) ? diskBackedCacheMB * 1048576L : 0L);
+	}else if(isReadDiskBacked(name[task])) {
+		imp = AdipoVirtualStack.openTiff(""+dir[task]+name[task]+"", diskBackedCacheMB * 1048576L);
+	}else {
+		imp = IJ.openImage(""+dir[task]+name[task]+"");
+	}
+	imp.hide();
+	imp.deleteRoi();
+	return imp;
+}
+
+/**
+ * Sets the decimal format symbols of the output number formats according to ChosenNumberFormat
+ * */
+void applyNumberFormat(){
+	dfDialog.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+	if(ChosenNumberFormat.equals(nrFormats[0])){ //US-Format
+		df6.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		df3.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+		df0.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.US));
+	}else if (ChosenNumberFormat.equals(nrFormats[1])){
+		df6.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
+		df3.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
+		df0.setDecimalFormatSymbols(new DecimalFormatSymbols(Locale.GERMANY));
 	}
 }
 
@@ -559,7 +1378,14 @@ private boolean importSettings() {
 	if(settingsFile.equals(null)) {
 		return false;
 	}	
-	
+	return importSettings(settingsFile);
+}
+
+/**
+ * Import settings from an existing AdipoQ Analyzer metadata file (e.g., the _AQA.txt output file).
+ * In headless mode, no dialogs are shown: settings that would need to be defined manually let the import fail.
+ */
+boolean importSettings(File settingsFile) {
 	channelID = -1;
 	String readVersion = "none";
 	double tempVoxelWidth = 0.0;
@@ -622,7 +1448,11 @@ private boolean importSettings() {
 						if(tempString.contains(",") && !tempString.contains("."))	tempString = tempString.replace(",", ".");
 						minSizeCalibrated = Double.parseDouble(tempString);
 						IJ.log("Min particle size (pixel) = " + df3.format(minSizeCalibrated));		
-						if(tempVoxelWidth == 0.0 || tempVoxelHeight == 0.0) {
+						if((tempVoxelWidth == 0.0 || tempVoxelHeight == 0.0) && headless) {
+							IJ.error("The loaded file stems from an outdated version of " + PLUGINNAME 
+									+ " and lacks the voxel size - minimum particle size cannot be determined.");
+							return false;
+						}else if(tempVoxelWidth == 0.0 || tempVoxelHeight == 0.0) {
 							GenericDialog gd = new GenericDialog(PLUGINNAME + " on " + System.getProperty("os.name") + " - set missing parameter");	
 							//show Dialog-----------------------------------------------------------------
 							gd.setInsets(5,0,0);		gd.addMessage(PLUGINNAME + ", Version " + PLUGINVERSION + ", \u00a9 2021-2022 JN Hansen", SuperHeadingFont);
@@ -723,10 +1553,28 @@ private boolean importSettings() {
 				}
 				
 				if(quantifySurroundings && fuseParticles) {
-					new WaitForUserDialog("Note: Surrounding will not be quantified as particles are fused into one.").show();
+					if(headless) {
+						IJ.log("Note: Surrounding will not be quantified as particles are fused into one.");
+					}else {
+						new WaitForUserDialog("Note: Surrounding will not be quantified as particles are fused into one.").show();
+					}
 					quantifySurroundings = false;
 				}
 				
+				// Optional, metadata files of previous versions do not contain the surrounding mode
+				chosenSurroundingsMode = surroundingsModes [0];
+				line = br.readLine();
+				if(line != null && line.contains("Surrounding in 2D static images:")){
+					tempString = line.substring(line.lastIndexOf("	")+1);
+					for(int i = 0; i < surroundingsModes.length; i++) {
+						if(tempString.equals(surroundingsModes[i])) {
+							chosenSurroundingsMode = surroundingsModes [i];
+							break;
+						}
+					}
+				}
+				IJ.log("Surrounding in 2D static images: " + chosenSurroundingsMode);
+				
 				break reading;
 			}			
 		}					
@@ -764,6 +1612,7 @@ private boolean enterSettings() {
 	gd.setInsets(5,0,0);		gd.addChoice("Additionally exclude...", excludeOptions, excludeSelection);
 	gd.setInsets(5,0,0);		gd.addCheckbox("Quantify Surrounding | reference distance (calibrated unit, e.g., µm)", quantifySurroundings);	
 	gd.setInsets(-23,100,0);		gd.addNumericField("", refDistance, 2);
+	gd.setInsets(5,0,0);		gd.addChoice("Surrounding in 2D static images", surroundingsModes, chosenSurroundingsMode);
 	gd.setInsets(5,0,0);		gd.addCheckbox("Fuse included particles into one for quantification", fuseParticles);	
 	
 	gd.showDialog();
@@ -777,6 +1626,7 @@ private boolean enterSettings() {
 		excludeSelection = gd.getNextChoice();
 		quantifySurroundings = gd.getNextBoolean();
 		refDistance = gd.getNextNumber();
+		chosenSurroundingsMode = gd.getNextChoice();
 		fuseParticles = gd.getNextBoolean();
 	}
 	//read and process variables--------------------------------------------------
@@ -791,17 +1641,47 @@ private boolean enterSettings() {
 	return true;
 }
 
-private void addFooter(TextPanel tp, Date currentDate){
-	tp.append("");
-	tp.append("Datafile was generated on " + FullDateFormatter2.format(currentDate) + " by '"
+private void addFooter(ArrayList<String> tp, Date currentDate){
+	tp.add("");
+	tp.add("Datafile was generated on " + FullDateFormatter2.format(currentDate) + " by '"
 			+PLUGINNAME+"', an ImageJ plug-in by Jan Niklas Hansen (jan.hansen@uni-bonn.de, https://github.com/hansenjn/AdipoQ_Analyzer).");
-	tp.append("The plug-in '"+PLUGINNAME+"' is distributed in the hope that it will be useful,"
+	tp.add("The plug-in '"+PLUGINNAME+"' is distributed in the hope that it will be useful,"
 			+ " but WITHOUT ANY WARRANTY; without even the implied warranty of"
 			+ " MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.");
-	tp.append("Plug-in version:	V"+PLUGINVERSION);	
+	tp.add("Plug-in version:	V"+PLUGINVERSION);	
 }
 
 
+/**
+ * @return all settings that influence the outputs of an image, used as part of the key in the result index.
+ * Settings that only change how fast or where an image is processed (threads, parallel images, memory budget, caches,
+ * queues, prefetching) do not change the outputs and are left out.
+ * */
+String getResultCacheSettings(){
+	return PLUGINNAME + "	" + PLUGINVERSION + "\n"
+			+ "channel=" + channelID + "\n"
+			+ "input=" + chosenInput + "\n"
+			+ "minSizeCalibrated=" + minSizeCalibrated + "\n"
+			+ "increaseRange=" + increaseRange + "\n"
+			+ "excludeSelection=" + excludeSelection + "\n"
+			+ "reconstruction=" + chosenReconstruction + "\n"
+			+ "tileSize=" + tileSize + "\n"
+			+ "fuseParticles=" + fuseParticles + "\n"
+			+ "quantifySurroundings=" + quantifySurroundings + "\n"
+			+ "refDistance=" + refDistance + "\n"
+			+ "surroundingsMode=" + chosenSurroundingsMode + "\n"
+			+ "numberFormat=" + ChosenNumberFormat + "\n"
+			+ "outputName=" + chosenOutputName + "\n"
+			+ "saveRois=" + saveRois + "\n"
+			+ "saveSurrMaps=" + saveSurrMaps + "\n"
+			+ "compressSurrMaps=" + compressSurrMaps + "\n"
+			+ "gzipResults=" + gzipResults + "\n"
+			+ "saveColumnarResults=" + saveColumnarResults + "\n"
+			+ "imageOutput=" + chosenImageOutput + "\n"
+			+ "idOverlay=" + addIdOverlay + "\n"
+			+ "resolutionLevel=" + resolutionLevel + "\n";
+}
+
 public String getOneRowFooter(Date currentDate){
 	String appendTxt = "		" + ("Datafile was generated on " + FullDateFormatter2.format(currentDate) + " by the imagej plug-in '"+PLUGINNAME+"', " 
 			+ "\u00a9 2017 - " + FullDateFormatter2.format(currentDate) + " Jan Niklas Hansen (jan.hansen@uni-bonn.de).");
@@ -812,54 +1692,66 @@ public String getOneRowFooter(Date currentDate){
 	return appendTxt;
 }
 
-private void addSettingsBlockToPanel(TextPanel tp, Date startDate, Date endDate, String name, ImagePlus imp) {
-	tp.append("Plugin name:	" + PLUGINNAME);
-	tp.append("Plugin version:	" + PLUGINVERSION);
-	tp.append("Starting date:	" + FullDateFormatter.format(startDate));
-	tp.append("Finishing date:	" + FullDateFormatter.format(endDate));
-	tp.append("Image name:	" + name);
-	tp.append("Image metadata:");
-	tp.append("	Width [voxel]:	" + imp.getWidth());
-	tp.append("	Height [voxel]:	" + imp.getHeight());
-	tp.append("	Number of channels:	" + imp.getNChannels());
-	tp.append("	Number of Slices:	" + imp.getNSlices());
-	tp.append("	Number of Frames:	" + imp.getNFrames());
-	tp.append("	Voxel width:	" + imp.getCalibration().pixelWidth);
-	tp.append("	Voxel height:	" + imp.getCalibration().pixelHeight);
-	tp.append("	Voxel depth:	" + imp.getCalibration().pixelDepth);
-	tp.append("	Frame interval:	" + imp.getCalibration().frameInterval);
-	tp.append("	Spatial unit:	" + imp.getCalibration().getUnit());
-	tp.append("	Temporal unit:	" + imp.getCalibration().getTimeUnit());
-	tp.append("");
-	tp.append("Preferences:	");
+/**
+ * @param series: series of the file read via Bio-Formats (see AdipoSeriesReader.listSeries) or null
+ * */
+private void addSettingsBlockToPanel(ArrayList<String> tp, Date startDate, Date endDate, String name, ImagePlus imp, int [] series) {
+	tp.add("Plugin name:	" + PLUGINNAME);
+	tp.add("Plugin version:	" + PLUGINVERSION);
+	tp.add("Starting date:	" + FullDateFormatter.format(startDate));
+	tp.add("Finishing date:	" + FullDateFormatter.format(endDate));
+	tp.add("Image name:	" + name);
+	tp.add("Image metadata:");
+	tp.add("	Width [voxel]:	" + imp.getWidth());
+	tp.add("	Height [voxel]:	" + imp.getHeight());
+	tp.add("	Number of channels:	" + imp.getNChannels());
+	tp.add("	Number of Slices:	" + imp.getNSlices());
+	tp.add("	Number of Frames:	" + imp.getNFrames());
+	tp.add("	Voxel width:	" + imp.getCalibration().pixelWidth);
+	tp.add("	Voxel height:	" + imp.getCalibration().pixelHeight);
+	tp.add("	Voxel depth:	" + imp.getCalibration().pixelDepth);
+	tp.add("	Frame interval:	" + imp.getCalibration().frameInterval);
+	tp.add("	Spatial unit:	" + imp.getCalibration().getUnit());
+	tp.add("	Temporal unit:	" + imp.getCalibration().getTimeUnit());
+	if(series != null) {
+		tp.add("	Series:	" + (series [AdipoSeriesReader.SERIES]+1) + "	of	" + series [AdipoSeriesReader.NSERIES]);
+		tp.add("	Resolution level:	" + series [AdipoSeriesReader.RESOLUTION]);
+	}
+	tp.add("");
+	tp.add("Preferences:	");
 	{
-		tp.append("	Channel Nr:	" + df0.format(channelID));
+		tp.add("	Channel Nr:	" + df0.format(channelID));
 		
 		if(increaseRange){
-			tp.append("	Increase range in particle detection:	TRUE");
+			tp.add("	Increase range in particle detection:	TRUE");
 		}else{
-			tp.append("	Increase range in particle detection:	FALSE");
+			tp.add("	Increase range in particle detection:	FALSE");
 		}
 		
-		tp.append("	Minimum particle size (" + imp.getCalibration().getUnit() + "^2):	" + df6.format(minSizeCalibrated) + "	" + "Minimum particle size (px):	" + df6.format(minSize));
+		tp.add("	Minimum particle size (" + imp.getCalibration().getUnit() + "^2):	" + df6.format(minSizeCalibrated) + "	" + "Minimum particle size (px):	" + df6.format(minSize));
 		
-		tp.append("	Exclude option:	" + excludeSelection);
+		tp.add("	Exclude option:	" + excludeSelection);
 		
 		if(quantifySurroundings){
-			tp.append("	Quantify Surrounding:	TRUE");
-			tp.append("	Surrounding: reference distance(" + imp.getCalibration().getUnit() + "):	" + df6.format(refDistance));
+			tp.add("	Quantify Surrounding:	TRUE");
+			tp.add("	Surrounding: reference distance(" + imp.getCalibration().getUnit() + "):	" + df6.format(refDistance));
 		}else{
-			tp.append("	Quantify Surrounding:	FALSE");
-			tp.append("");
+			tp.add("	Quantify Surrounding:	FALSE");
+			tp.add("");
 		}
 		
 		if(fuseParticles){
-			tp.append("	Fuse included particles into one for quantification:	TRUE");
+			tp.add("	Fuse included particles into one for quantification:	TRUE");
 		}else{
-			tp.append("	Fuse included particles into one for quantification:	FALSE");
+			tp.add("	Fuse included particles into one for quantification:	FALSE");
+		}
+		
+		// Only the non-default surrounding mode (2D static images) is written, metadata files without it are read as the default mode
+		if(quantifySurroundings && chosenSurroundingsMode.equals(surroundingsModes[1]) && imp.getNSlices() == 1 && imp.getNFrames() == 1) {
+			tp.add("	Surrounding in 2D static images:	" + chosenSurroundingsMode);
 		}
 	}
-	tp.append("");
+	tp.add("");
 }
 
 /**
@@ -868,6 +1760,101 @@ private void addSettingsBlockToPanel(TextPanel tp, Date startDate, Date endDate,
  * @param c: defines the channel of the Hyperstack image imp that shall serve for reconstruction; 1 <= c <= number of channels.
  * */
 ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
+	if(chosenReconstruction.equals(reconstructionMethod[3])) {
+		return analyzeAdipocytesLegacy(imp, c);
+	}
+	if(keepAwake) stayAwake();
+	
+	/**
+	 * The labelers do not modify the image while searching particles, so no copy of the image is needed.
+	 * Voxels of excluded particles are removed from channel c, like in the legacy implementation.
+	 * */
+	AdipoChannel mask = new AdipoChannel(imp, c);
+	int connectivity = AdipoFloodFiller.CONNECTIVITY_6;
+	if(increaseRange) {
+		connectivity = AdipoFloodFiller.CONNECTIVITY_26;
+	}
+	AdipoLabeler floodFiller;
+	AdipoRunLengthLabeler runLengthLabeler = null;
+	if(chosenReconstruction.equals(reconstructionMethod[1])) {
+		progress.updateBarText("Labeling structures in parallel...");
+		AdipoParallelLabeler parallelLabeler = new AdipoParallelLabeler(mask, connectivity, nrOfThreads);
+		parallelLabeler.label();
+		floodFiller = parallelLabeler;
+	}else if(chosenReconstruction.equals(reconstructionMethod[2])) {
+		progress.updateBarText("Run-length labeling of structures...");
+		runLengthLabeler = new AdipoRunLengthLabeler(mask, connectivity);
+		runLengthLabeler.label();
+		floodFiller = runLengthLabeler;
+	}else {
+		floodFiller = new AdipoFloodFiller(mask, connectivity);
+	}
+	long nrOfPoints = floodFiller.countForeground();
+	
+	ArrayList<Adipocyte> adipos = new ArrayList<Adipocyte>((int)Math.min(Math.round((double)nrOfPoints/minSize), Integer.MAX_VALUE-8));
+	
+	long pc100 = nrOfPoints/100; if (pc100==0){pc100 = 1;}
+	long pc1000 = nrOfPoints/1000; if (pc1000==0){pc1000 = 1;}
+	long floodFilledPc = 0, floodFilledPcOld = 0;
+	AdipoParticle preliminaryParticle;
+	AdipoParticle fusedParticles = new AdipoParticle(0, mask);
+	int [] frameCounter = new int [imp.getNFrames()];
+	
+	boolean keep;
+	while(floodFiller.nextParticle()) {
+		floodFilledPc += floodFiller.getParticleSize();
+		preliminaryParticle = null;
+		if(runLengthLabeler != null) {
+			/**
+			 * Inclusion criteria are determined from the runs, points are only created for included particles
+			 * */
+			keep = isParticleIncluded(runLengthLabeler, imp, frameCounter);
+		}else {
+			preliminaryParticle = getParticle(floodFiller, mask);
+			keep = isParticleIncluded(preliminaryParticle, imp, frameCounter);
+		}
+		
+		if(keep){
+			if(preliminaryParticle == null) {
+				preliminaryParticle = getParticle(floodFiller, mask);
+			}
+			if(!fuseParticles) {
+				adipos.add(new Adipocyte(preliminaryParticle, imp, channelID, quantifySurroundings, refDistance));
+				if(objectLabels != null) objectLabels.addParticle(preliminaryParticle, adipos.size());
+			}else {
+				fusedParticles.addAll(preliminaryParticle);
+			}
+		}else {
+			floodFiller.clearParticle();
+		}
+		preliminaryParticle = null;
+		
+		if(floodFilledPc%(pc100)<pc1000){						
+			progress.updateBarText("Reconstruction of structures complete: " + df3.format(((double)(floodFilledPc)/(double)(nrOfPoints))*100) + "%");
+			progress.addToBar(0.2*((double)(floodFilledPc-floodFilledPcOld)/(double)(nrOfPoints)));
+			floodFilledPcOld = floodFilledPc;
+			if(keepAwake) stayAwake();
+		}
+	}
+	
+	if(fuseParticles) {
+		fusedParticles.trimToSize();
+		adipos.add(new Adipocyte(fusedParticles, imp, channelID, false, 0.0));
+		if(objectLabels != null) objectLabels.addParticle(fusedParticles, 1);
+	}
+	
+	progress.updateBarText("Reconstruction of particles complete: " + df3.format(((double)(floodFilledPc)/(double)(nrOfPoints))*100) + "%");
+	progress.addToBar(0.4*((double)(floodFilledPc-floodFilledPcOld)/(double)(nrOfPoints)));
+	return adipos;
+}
+
+/**
+ * Legacy implementation of analyzeAdipocytes(...) based on ImageStack.getVoxel(...) / setVoxel(...).
+ * @return a container that contains adipocyte objects
+ * @param imp: Hyperstack image where one channel is binarized or semi-binarized
+ * @param c: defines the channel of the Hyperstack image imp that shall serve for reconstruction; 1 <= c <= number of channels.
+ * */
+ArrayList<Adipocyte> analyzeAdipocytesLegacy (ImagePlus imp, int c){
 	if(keepAwake) stayAwake();
 	ImagePlus refImp = imp.duplicate();
 	int nrOfPoints = 0;
@@ -893,8 +1880,9 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 	int[][] floodNodes = new int[nrOfPoints][4];
 	int floodNodeX, floodNodeY, floodNodeZ, floodNodeT, index = 0;
 //	boolean touchesXY, touchesZ;
-	ArrayList<AdipoPoint> preliminaryParticle;
-	ArrayList<AdipoPoint> tempParticles = new ArrayList<AdipoPoint>(nrOfPoints);
+	AdipoChannel mask = new AdipoChannel(refImp, c);
+	AdipoParticle preliminaryParticle;
+	AdipoParticle tempParticles = new AdipoParticle(nrOfPoints, mask);
 	
 //	int [] sliceCounter = new int [imp.getNSlices()];
 	int [] frameCounter = new int [imp.getNFrames()];
@@ -908,8 +1896,8 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 //						touchesXY = false;
 //						touchesZ = false;
 						
-						preliminaryParticle = new ArrayList<AdipoPoint>(nrOfPoints-floodFilledPc);
-						preliminaryParticle.add(new AdipoPoint(x, y, z, t, refImp, c));
+						preliminaryParticle = new AdipoParticle(1024, mask);
+						preliminaryParticle.add(x, y, z, t);
 						
 						imp.getStack().setVoxel(x, y, imp.getStackIndex(c, z+1, t+1)-1, 0.0);
 						
@@ -941,8 +1929,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeX > 0) 
 									&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY,floodNodeZ,floodNodeT,
-										refImp, c));
+								preliminaryParticle.add(floodNodeX-1,floodNodeY,floodNodeZ,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -956,7 +1943,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeX < (imp.getWidth()-1)) 
 									&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY,floodNodeZ,floodNodeT, refImp, c));
+								preliminaryParticle.add(floodNodeX+1,floodNodeY,floodNodeZ,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -970,7 +1957,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeY > 0) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY-1,floodNodeZ,floodNodeT, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY-1,floodNodeZ,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -984,7 +1971,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeY < (imp.getHeight()-1)) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY+1,floodNodeZ,floodNodeT, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY+1,floodNodeZ,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -998,7 +1985,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeZ > 0) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY,floodNodeZ-1,floodNodeT, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY,floodNodeZ-1,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -1012,7 +1999,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeZ < (imp.getNSlices()-1)) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY,floodNodeZ+1,floodNodeT, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY,floodNodeZ+1,floodNodeT);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 								
 								index++;
@@ -1026,7 +2013,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeT > 0) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, floodNodeZ+1, (floodNodeT-1)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY,floodNodeZ,floodNodeT-1, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY,floodNodeZ,floodNodeT-1);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, floodNodeZ+1, (floodNodeT-1)+1)-1, 0.0);
 								
 								index++;
@@ -1040,7 +2027,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 							if ((floodNodeT < (imp.getNFrames()-1)) 
 									&& imp.getStack().getVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, floodNodeZ+1, ((floodNodeT)+1)+1)-1) > 0.0){
 								
-								preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY,floodNodeZ,(floodNodeT)+1, refImp, c));
+								preliminaryParticle.add(floodNodeX,floodNodeY,floodNodeZ,(floodNodeT)+1);
 								imp.getStack().setVoxel(floodNodeX, floodNodeY, imp.getStackIndex(c, floodNodeZ+1, ((floodNodeT)+1)+1)-1, 0.0);
 								
 								index++;
@@ -1055,8 +2042,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								// X, Y
 								if ((floodNodeX > 0) && (floodNodeY > 0)  
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY-1,floodNodeZ,floodNodeT,
-											refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY-1,floodNodeZ,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1070,7 +2056,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY < (imp.getHeight()-1))
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY+1,floodNodeZ,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY+1,floodNodeZ,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1084,7 +2070,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY > 0) 
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY-1,floodNodeZ,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY-1,floodNodeZ,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1098,7 +2084,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX > 0) && (floodNodeY < (imp.getHeight()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY+1,floodNodeZ,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY+1,floodNodeZ,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1113,7 +2099,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX > 0) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1127,7 +2113,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1141,7 +2127,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX > 0) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1155,7 +2141,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1170,7 +2156,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeY > 0) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY-1,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX,floodNodeY-1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1184,7 +2170,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeY < (imp.getHeight()-1)) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY+1,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX,floodNodeY+1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1198,7 +2184,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeY > 0) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY-1,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX,floodNodeY-1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1212,7 +2198,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeY < (imp.getHeight()-1)) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX,floodNodeY+1,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX,floodNodeY+1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1226,8 +2212,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								// X, Y - Z down
 								if ((floodNodeX > 0) && (floodNodeY > 0) && (floodNodeZ > 0)  
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY-1,floodNodeZ-1,floodNodeT,
-											refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY-1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1241,7 +2226,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY < (imp.getHeight()-1)) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY+1,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY+1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1255,7 +2240,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY > 0) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY-1,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY-1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1269,7 +2254,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX > 0) && (floodNodeY < (imp.getHeight()-1)) && (floodNodeZ > 0)
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY+1,floodNodeZ-1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY+1,floodNodeZ-1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ-1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1283,8 +2268,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								// X, Y - Z up
 								if ((floodNodeX > 0) && (floodNodeY > 0) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY-1,floodNodeZ+1,floodNodeT,
-											refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY-1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1298,7 +2282,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY < (imp.getHeight()-1)) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY+1,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY+1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1312,7 +2296,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX < (imp.getWidth()-1)) && (floodNodeY > 0) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX+1,floodNodeY-1,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX+1,floodNodeY-1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX+1, floodNodeY-1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1326,7 +2310,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 								if ((floodNodeX > 0) && (floodNodeY < (imp.getHeight()-1)) && (floodNodeZ < (imp.getNSlices()-1)) 
 										&& imp.getStack().getVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1) > 0.0){
 									
-									preliminaryParticle.add(new AdipoPoint(floodNodeX-1,floodNodeY+1,floodNodeZ+1,floodNodeT, refImp, c));
+									preliminaryParticle.add(floodNodeX-1,floodNodeY+1,floodNodeZ+1,floodNodeT);
 									imp.getStack().setVoxel(floodNodeX-1, floodNodeY+1, imp.getStackIndex(c, (floodNodeZ+1)+1, (floodNodeT)+1)-1, 0.0);
 									
 									index++;
@@ -1342,75 +2326,12 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 						//Floodfiller
 						preliminaryParticle.trimToSize();
 						
-						keep = true;
-						if(imp.getNFrames()>1) {
-							/**
-							 * Test size of particle in all t
-							 * */
-							
-							Arrays.fill(frameCounter, 0);
-							for(int p = 0; p < preliminaryParticle.size(); p++){
-								frameCounter[preliminaryParticle.get(p).t]++;
-							}
-							
-							for(int ti = 0; ti < frameCounter.length; ti++){
-								if(frameCounter[ti] < minSize && frameCounter [ti] != 0){
-									keep = false;
-									break;
-								}
-							}
-						}else if(preliminaryParticle.size()<minSize) {
-							keep = false;
-						}
-						
-						/**
-						 * Check for touching XYZ
-						 * */
-						if(excludeSelection.equals(excludeOptions[1])){
-							for(int p = 0; p < preliminaryParticle.size(); p++){
-								if(preliminaryParticle.get(p).x==0) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).x==imp.getWidth()-1) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).y==0) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).y==imp.getHeight()-1) {
-									keep = false;
-									break;
-								}								
-							}
-						}else if(excludeSelection.equals(excludeOptions[2])) {
-							for(int p = 0; p < preliminaryParticle.size(); p++){
-								if(preliminaryParticle.get(p).x==0) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).x==imp.getWidth()-1) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).y==0) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).y==imp.getHeight()-1) {
-									keep = false;
-									break;
-								}
-								
-								if(preliminaryParticle.get(p).z==0) {
-									keep = false;
-									break;
-								}else if(preliminaryParticle.get(p).z==imp.getNSlices()-1) {
-									keep = false;
-									break;
-								}	
-							}
-						}
+						keep = isParticleIncluded(preliminaryParticle, imp, frameCounter);
 						
 						if(keep){
 							if(!fuseParticles) {
 								adipos.add(new Adipocyte(preliminaryParticle, refImp, channelID, quantifySurroundings, refDistance));
+								if(objectLabels != null) objectLabels.addParticle(preliminaryParticle, adipos.size());
 							}
 							tempParticles.addAll(preliminaryParticle);
 						}
@@ -1441,6 +2362,7 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 	
 	if(fuseParticles) {
 		adipos.add(new Adipocyte(tempParticles, refImp, channelID, false, 0.0));
+		if(objectLabels != null) objectLabels.addParticle(tempParticles, 1);
 	}
 	
 	progress.updateBarText("Reconstruction of particles complete: " + df3.format(((double)(floodFilledPc)/(double)(nrOfPoints))*100) + "%");
@@ -1450,12 +2372,12 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 	//write back to image
 		{
 			for(int j = 0; j < tempParticles.size(); j++){
-				imp.getStack().setVoxel(tempParticles.get(j).x,
-					tempParticles.get(j).y, 
-					imp.getStackIndex(c, tempParticles.get(j).z+1, 
-					tempParticles.get(j).t+1)-1, 
-					refImp.getStack().getVoxel(tempParticles.get(j).x, tempParticles.get(j).y, 
-							imp.getStackIndex(c, tempParticles.get(j).z+1, tempParticles.get(j).t+1)-1));
+				imp.getStack().setVoxel(tempParticles.getX(j),
+					tempParticles.getY(j), 
+					imp.getStackIndex(c, tempParticles.getZ(j)+1, 
+					tempParticles.getT(j)+1)-1, 
+					refImp.getStack().getVoxel(tempParticles.getX(j), tempParticles.getY(j), 
+							imp.getStackIndex(c, tempParticles.getZ(j)+1, tempParticles.getT(j)+1)-1));
 			}
 		}
 	//write back to image
@@ -1463,22 +2385,130 @@ ArrayList<Adipocyte> analyzeAdipocytes (ImagePlus imp, int c){
 	return adipos;
 }
 
+/**
+ * @return points of the current particle of the labeler
+ * */
+private static AdipoParticle getParticle(AdipoLabeler labeler, AdipoChannel mask) {
+	AdipoParticle particle = new AdipoParticle(labeler.getParticleSize(), mask);
+	for(int p = 0; p < labeler.getParticleSize(); p++) {
+		particle.add(labeler.getX(p), labeler.getY(p), labeler.getZ(p), labeler.getT(p));
+	}
+	return particle;
+}
+
+/**
+ * Checks whether the current particle of the run-length labeler fulfills the minimum size (in all frames it is present in)
+ * and the exclude option, based on the runs of the particle
+ * @param frameCounter: array with imp.getNFrames() entries used for counting the points per frame
+ * */
+private boolean isParticleIncluded(AdipoRunLengthLabeler labeler, ImagePlus imp, int [] frameCounter) {
+	if(imp.getNFrames()>1) {
+		labeler.countVoxelsPerFrame(frameCounter);
+		for(int ti = 0; ti < frameCounter.length; ti++){
+			if(frameCounter[ti] < minSize && frameCounter [ti] != 0){
+				return false;
+			}
+		}
+	}else if(labeler.getParticleSize()<minSize) {
+		return false;
+	}
+	
+	if(excludeSelection.equals(excludeOptions[0])){
+		return true;
+	}
+	int [] box = labeler.getBoundingBox();
+	if(box [0] == 0 || box [1] == imp.getWidth()-1 || box [2] == 0 || box [3] == imp.getHeight()-1) {
+		return false;
+	}
+	if(excludeSelection.equals(excludeOptions[2]) && (box [4] == 0 || box [5] == imp.getNSlices()-1)) {
+		return false;
+	}
+	return true;
+}
+
+/**
+ * Checks whether a reconstructed particle fulfills the minimum size (in all frames it is present in)
+ * and the exclude option
+ * @param frameCounter: array with imp.getNFrames() entries used for counting the points per frame
+ * */
+private boolean isParticleIncluded(AdipoParticle preliminaryParticle, ImagePlus imp, int [] frameCounter) {
+	boolean keep = true;
+	if(imp.getNFrames()>1) {
+		/**
+		 * Test size of particle in all t
+		 * */
+		
+		Arrays.fill(frameCounter, 0);
+		for(int p = 0; p < preliminaryParticle.size(); p++){
+			frameCounter[preliminaryParticle.getT(p)]++;
+		}
+		
+		for(int ti = 0; ti < frameCounter.length; ti++){
+			if(frameCounter[ti] < minSize && frameCounter [ti] != 0){
+				keep = false;
+				break;
+			}
+		}
+	}else if(preliminaryParticle.size()<minSize) {
+		keep = false;
+	}
+	
+	/**
+	 * Check for touching XYZ
+	 * */
+	if(excludeSelection.equals(excludeOptions[1])){
+		for(int p = 0; p < preliminaryParticle.size(); p++){
+			if(preliminaryParticle.getX(p)==0) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getX(p)==imp.getWidth()-1) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getY(p)==0) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getY(p)==imp.getHeight()-1) {
+				keep = false;
+				break;
+			}								
+		}
+	}else if(excludeSelection.equals(excludeOptions[2])) {
+		for(int p = 0; p < preliminaryParticle.size(); p++){
+			if(preliminaryParticle.getX(p)==0) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getX(p)==imp.getWidth()-1) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getY(p)==0) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getY(p)==imp.getHeight()-1) {
+				keep = false;
+				break;
+			}
+			
+			if(preliminaryParticle.getZ(p)==0) {
+				keep = false;
+				break;
+			}else if(preliminaryParticle.getZ(p)==imp.getNSlices()-1) {
+				keep = false;
+				break;
+			}	
+		}
+	}
+	return keep;
+}
+
 /**
  * @param channel: 1 <= channel <= # channels
  * */
 private static ImagePlus copyChannel(ImagePlus imp, int channel, boolean adjustDisplayRangeTo16bit, boolean copyOverlay){
 	ImagePlus impNew = IJ.createHyperStack("channel image", imp.getWidth(), imp.getHeight(), 1, imp.getNSlices(), imp.getNFrames(), imp.getBitDepth());
-	int index = 0, indexNew = 0;
-	
-	for(int x = 0; x < imp.getWidth(); x++){
-		for(int y = 0; y < imp.getHeight(); y++){
-			for(int s = 0; s < imp.getNSlices(); s++){
-				for(int f = 0; f < imp.getNFrames(); f++){
-					index = imp.getStackIndex(channel, s+1, f+1)-1;
-					indexNew = impNew.getStackIndex(1, s+1, f+1)-1;
-					impNew.getStack().setVoxel(x, y, indexNew, imp.getStack().getVoxel(x, y, index));
-				}					
-			}
+	AdipoChannel source = new AdipoChannel(imp, channel), target = new AdipoChannel(impNew, 1);
+	for(int plane = 0; plane < source.getNPlanes(); plane++){
+		for(int index = 0; index < source.planeSize; index++){
+			target.setValue(plane, index, source.getValue(plane, index));
 		}
 	}
 	if(adjustDisplayRangeTo16bit)	impNew.setDisplayRange(0, 4095);
@@ -1496,20 +2526,13 @@ private static ImagePlus copyChannel(ImagePlus imp, int channel, boolean adjustD
  * */
 private static ImagePlus copyChannelAsBinary(ImagePlus imp, int channel, boolean copyOverlay){
 	ImagePlus impNew = IJ.createHyperStack("channel image", imp.getWidth(), imp.getHeight(), 1, imp.getNSlices(), imp.getNFrames(), 8);
-	int index = 0, indexNew = 0;
-	
-	for(int x = 0; x < imp.getWidth(); x++){
-		for(int y = 0; y < imp.getHeight(); y++){
-			for(int s = 0; s < imp.getNSlices(); s++){
-				for(int f = 0; f < imp.getNFrames(); f++){
-					index = imp.getStackIndex(channel, s+1, f+1)-1;
-					indexNew = impNew.getStackIndex(1, s+1, f+1)-1;
-					if(imp.getStack().getVoxel(x, y, index) > 0.0) {
-						impNew.getStack().setVoxel(x, y, indexNew, 255.0);
-					}else {
-						impNew.getStack().setVoxel(x, y, indexNew, 0.0);
-					}
-				}					
+	AdipoChannel source = new AdipoChannel(imp, channel), target = new AdipoChannel(impNew, 1);
+	for(int plane = 0; plane < source.getNPlanes(); plane++){
+		for(int index = 0; index < source.planeSize; index++){
+			if(source.isForeground(plane, index)) {
+				target.setValue(plane, index, 255.0);
+			}else {
+				target.setValue(plane, index, 0.0);
 			}
 		}
 	}
@@ -1527,40 +2550,39 @@ private static ImagePlus copyChannelAsBinary(ImagePlus imp, int channel, boolean
  * @param channel: 1 <= channel <= # channels
  * */
 private static void emptyChannel(ImagePlus imp, int channel){
-	int index = 0;
-	for(int x = 0; x < imp.getWidth(); x++){
-		for(int y = 0; y < imp.getHeight(); y++){
-			for(int s = 0; s < imp.getNSlices(); s++){
-				for(int f = 0; f < imp.getNFrames(); f++){
-					index = imp.getStackIndex(channel, s+1, f+1)-1;
-					imp.getStack().setVoxel(x, y, index, 0.0);
-				}					
-			}
+	AdipoChannel pixels = new AdipoChannel(imp, channel);
+	for(int plane = 0; plane < pixels.getNPlanes(); plane++){
+		for(int index = 0; index < pixels.planeSize; index++){
+			pixels.clear(plane, index);
 		}
 	}
 }
 
 ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String filePrefix, boolean labelImage){
 	if(keepAwake) stayAwake();
-	ImagePlus refImp;
+	boolean tiled = tileSize > 0;
+	ImagePlus refImp = null;
 	if(labelImage){
 		progress.notifyMessage("Input is label image", ProgressDialog.LOG);
-		refImp = copyChannel(imp,c,false,false);
+		if(!tiled) refImp = copyChannel(imp,c,false,false);
 	}else {
 		progress.notifyMessage("Input is binary or semibinary", ProgressDialog.LOG);
-		refImp = copyChannelAsBinary(imp, c, false);
+		if(!tiled) refImp = copyChannelAsBinary(imp, c, false);
 	}
 	ImagePlus refImp2 = copyChannel(imp,c, false, false);
+	AdipoChannel mask = new AdipoChannel(refImp2, 1);
 	Prefs.blackBackground = true;
-	
-	//Reset ROIManager
-	RoiManager rm = RoiManager.getInstance();
-	if (rm==null) rm = new RoiManager();
-	rm.setVisible(false);	
-	rm.reset();
 
 	int nrOfPoints = 0;
-	{
+	AdipoTiledLabeler tiledLabeler = null;
+	if(tiled) {
+		//Label tiles and merge components at the seams
+		progress.notifyMessage("Processing in tiles of " + tileSize + " x " + tileSize + " px", ProgressDialog.LOG);
+		progress.updateBarText("Labeling tiles...");
+		tiledLabeler = new AdipoTiledLabeler(mask, tileSize, labelImage, increaseRange);
+		tiledLabeler.label(nrOfThreads);
+		nrOfPoints = (int) tiledLabeler.getNrOfPoints();
+	}else{
 		//Count
 		progress.updateBarText("Detecting point number...");
 	
@@ -1579,11 +2601,10 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 	int pc1000 = nrOfPoints/1000; if (pc1000==0){pc1000 = 1;}
 //	int pointsAdded = 0;
 	
-	ArrayList<AdipoPoint> preliminaryParticle;
-//	ArrayList<AdipoPoint> tempParticleFill, tempParticleDel;
-	ArrayList<AdipoPoint> fusedParticles = new ArrayList<AdipoPoint>(0);
+	AdipoParticle preliminaryParticle;
+	AdipoParticle fusedParticles = new AdipoParticle(0, mask);
 	if(fuseParticles) {
-		fusedParticles = new ArrayList<AdipoPoint>(nrOfPoints);
+		fusedParticles = new AdipoParticle(nrOfPoints, mask);
 	}
 		
 	int included = 0;
@@ -1594,7 +2615,14 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 	PolygonRoi rois [];
 	Point tempPoints [];
 			
-	if(labelImage){
+	if(tiled){
+		progress.updateBarText("Outlining " + tiledLabeler.getNComponents() + " components...");
+		ArrayList<PolygonRoi> tiledRois = tiledLabeler.getParticleRois(minSize, 
+				excludeSelection.equals(excludeOptions[1]) || excludeSelection.equals(excludeOptions[2]));
+		tiledLabeler = null;
+		rois = tiledRois.toArray(new PolygonRoi [tiledRois.size()]);
+		progress.addToBar(0.2);
+	}else if(labelImage){
 		//Go through image and retrieve ROIs with Wand tool, add the tools to the Manager, then retrieve an ROI array
 		Wand wand;
 		int wandMode = Wand.FOUR_CONNECTED;
@@ -1621,10 +2649,6 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 			}
 		}
 		
-		refImp.changes = false;
-		refImp.close();		
-		refImp = copyChannel(imp,c,false,false);
-		
 		tempRois.trimToSize();
 		rois = new PolygonRoi [tempRois.size()];
 		for(int rI = 0; rI < tempRois.size(); rI++) {
@@ -1643,21 +2667,29 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 			optionsForPA += ParticleAnalyzer.FOUR_CONNECTED;
 			optionsForPA += ParticleAnalyzer.INCLUDE_HOLES;	
 		}
-		optionsForPA += ParticleAnalyzer.ADD_TO_MANAGER;
 		if(excludeSelection.equals(excludeOptions[1]) || excludeSelection.equals(excludeOptions[2])){
 			optionsForPA += ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES;
 		}
 		
-		ParticleAnalyzer pA = new ParticleAnalyzer(optionsForPA, 0, null, minSize, Integer.MAX_VALUE, 0.0, 1.0);
-		pA.analyze(refImp);
+		ParticleAnalyzer pA;
+		final ArrayList<Roi> particleRoiList = new ArrayList<Roi>();
+		synchronized(PARTICLE_ANALYZER_LOCK) {
+			// collect the particle outlines without a ROI manager; traced ROIs share the point arrays of the wand, so keep copies
+			pA = new ParticleAnalyzer(optionsForPA, 0, null, minSize, Integer.MAX_VALUE, 0.0, 1.0) {
+				protected void saveResults(ImageStatistics stats, Roi roi) {
+					particleRoiList.add((Roi) roi.clone());
+				}
+			};
+			pA.analyze(refImp);
+		}
 				
 //		refImp.show();
 //		new WaitForUserDialog("Test").show();
 //		refImp.hide();
 		
-		rois = new PolygonRoi [rm.getRoisAsArray().length];
-		for(int rI = 0; rI < rm.getRoisAsArray().length; rI++) {
-			rois [rI] = (PolygonRoi) rm.getRoisAsArray()[rI];
+		rois = new PolygonRoi [particleRoiList.size()];
+		for(int rI = 0; rI < rois.length; rI++) {
+			rois [rI] = (PolygonRoi) particleRoiList.get(rI);
 			if(rI%20==0){
 				progress.updateBarText("Converting particles: " + df3.format(((double)(rI)/(double)(rois.length))*100) + "%");
 				progress.addToBar(0.2/(rois.length));
@@ -1666,105 +2698,203 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 		pA = null;
 	}
 	progress.notifyMessage("Particles obtained. Detected " + rois.length + " particles!", ProgressDialog.LOG);
-	rm.reset();
+	if(refImp != null) {
+		refImp.changes = false;
+		refImp.close();
+		refImp = null;
+	}
 	
-	preliminaryParticle = new ArrayList<AdipoPoint>(0);
 	ArrayList<Adipocyte> adipos = new ArrayList<Adipocyte>(rois.length);
 	
 	
-	ImagePlus [] SurrMapAverage = new ImagePlus [imp.getNChannels()];
-	ImagePlus [] SurrMapSD = new ImagePlus [imp.getNChannels()];
+	/**
+	 * The surroundings maps are created from an object-ID raster (shared with the label image output) when they are written
+	 * */
+	AdipoLabelImage surrMapLabels = null;
 	if(saveSurrMaps) {
-		for(int ci = 0; ci < SurrMapAverage.length; ci++) {
-			if(ci == c-1) {
-				SurrMapAverage [ci] = new ImagePlus();
-				SurrMapSD [ci] = new ImagePlus();
-				continue;
-			}
-			SurrMapAverage [ci] = IJ.createHyperStack("Surr-Map Average", imp.getWidth(), imp.getHeight(), 1, imp.getNSlices(), imp.getNFrames(), imp.getBitDepth());
-			SurrMapAverage [ci].setCalibration(imp.getCalibration());
-			SurrMapSD [ci] = SurrMapAverage [ci].duplicate();
-		}		
+		if(objectLabels != null && !fuseParticles) {
+			surrMapLabels = objectLabels;
+		}else {
+			surrMapLabels = new AdipoLabelImage(imp.getWidth(), imp.getHeight(), imp.getNSlices(), imp.getNFrames());
+		}
+	}
+	
+	/**
+	 * Exclusive surroundings are determined from one map of all included objects after all objects are known
+	 * */
+	boolean exclusiveSurroundings = quantifySurroundings && !fuseParticles && chosenSurroundingsMode.equals(surroundingsModes[1]);
+	AdipoSurroundingsMap surroundingsMap = null;
+	if(exclusiveSurroundings && !tiled) {
+		surroundingsMap = new AdipoSurroundingsMap(imp.getWidth(), imp.getHeight());
 	}
 	
 	//Empty channel first, then write back
 	emptyChannel(imp, c);
+	AdipoChannel segmentedChannel = new AdipoChannel(imp, c);
+	
+	/**
+	 * Collect the included particles in ROI order
+	 * */
+	ArrayList<AdipoParticle> includedParticles = new ArrayList<AdipoParticle>(rois.length);
+	ArrayList<Roi> includedRois = new ArrayList<Roi>(rois.length);
 	for(int r = 0; r < rois.length; r++) {
 		roi = rois [r];
-				
-		preliminaryParticle.ensureCapacity(roi.getContainedPoints().length);
 		
 		tempPoints = roi.getContainedPoints();
+		preliminaryParticle = new AdipoParticle(tempPoints.length, mask);
 		for(int tp = 0; tp < tempPoints.length; tp++) {
-			if(refImp.getStack().getVoxel(tempPoints[tp].x, tempPoints[tp].y, 0) > 0.0){
-				preliminaryParticle.add(new AdipoPoint(tempPoints[tp].x, tempPoints[tp].y,0,0, refImp2, 1));
+			if(mask.isForeground(0, tempPoints[tp].y * mask.width + tempPoints[tp].x)){
+				preliminaryParticle.add(tempPoints[tp].x, tempPoints[tp].y, 0, 0);
 			}			
 		}
-		
-		//Analysis
 		preliminaryParticle.trimToSize();
 				
 		if(preliminaryParticle.size()>=minSize) {
+			includedParticles.add(preliminaryParticle);
+			includedRois.add(roi);
+			if(fuseParticles) {
+				fusedParticles.addAll(preliminaryParticle);
+			}
+		}
+		
+		if(r%20==0){
+			progress.updateBarText("Reconstruction of particles complete: " + df3.format(((double)(r)/(double)(rois.length))*100) + "%");
+			progress.addToBar(0.1/(rois.length));
+		}
+	}
+	
+	/**
+	 * Quantify the objects in parallel. All writes to images and the ROI file happen in the ordered phase below, 
+	 * so IDs and results are independent of the number of threads. Channel c is written back object by object in the ordered phase, 
+	 * so its intensities are determined there, right before the object is written back (like in sequential processing).
+	 * */
+	ForkJoinPool pool = null;
+	ArrayList<ForkJoinTask<Adipocyte>> adipoTasks = new ArrayList<ForkJoinTask<Adipocyte>>(includedParticles.size());
+	if(!fuseParticles) {
+		pool = new ForkJoinPool(Math.max(1, nrOfThreads));
+		for(int i = 0; i < includedParticles.size(); i++) {
+			final AdipoParticle particle = includedParticles.get(i);
+			final Roi particleRoi = includedRois.get(i);
+			final boolean quantifyRings = quantifySurroundings && !exclusiveSurroundings;
+			adipoTasks.add(pool.submit(new Callable<Adipocyte>() {
+				public Adipocyte call() {
+					return new Adipocyte(particle, imp, channelID, quantifyRings, refDistance, particleRoi, true);
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * The ROIs of the objects are written into the zip file as the objects are accepted
+	 * */
+	AdipoRoiZipWriter roiZip = null;
+	if(saveRois) {
+		try {
+			roiZip = new AdipoRoiZipWriter(filePrefix+"r.zip");
+			taskOutputs.add(roiZip.getPath());
+		}catch(IOException e) {
+			getWriter().fail(currentTask, "ROIs could not be saved to " + filePrefix + "r.zip - " + e.getMessage());
+		}
+	}
+	
+	try {
+		for(int i = 0; i < includedParticles.size(); i++) {
+			preliminaryParticle = includedParticles.get(i);
+			roi = includedRois.get(i);
 			included++;
 			if(!fuseParticles) {
-				progress.updateBarText("Making adipocyte: " + df3.format(((double)(r)/(double)(rois.length))*100) + "%");
-				adipos.add(new Adipocyte(preliminaryParticle, imp, channelID, quantifySurroundings, refDistance, roi));	
-				progress.updateBarText("Made adipocyte: " + df3.format(((double)(r)/(double)(rois.length))*100) + "%");		
+				try {
+					adipos.add(adipoTasks.get(i).get());
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Quantification of adipocytes was interrupted", e);
+				}catch(ExecutionException e) {
+					throw new RuntimeException("Quantification of adipocyte " + included + " failed", e.getCause());
+				}
+				adipoTasks.set(i, null);
+				adipos.get(adipos.size()-1).quantifyMaskChannel(preliminaryParticle, imp, c);
+				progress.updateBarText("Made adipocyte: " + df3.format(((double)(i)/(double)(includedParticles.size()))*100) + "%");
 				
-				// Create Surroundings Maps
-				if(saveSurrMaps) {
-					for(int ci = 0; ci < imp.getNChannels(); ci++) {
-						if(ci == c-1) continue;
-						for(int j = 0; j < preliminaryParticle.size(); j++){
-							SurrMapAverage [ci].getStack().setVoxel(preliminaryParticle.get(j).x, preliminaryParticle.get(j).y,
-								imp.getStackIndex(1, preliminaryParticle.get(j).z+1, preliminaryParticle.get(j).t+1)-1, 
-									adipos.get(adipos.size()-1).averageIntensitySurr[preliminaryParticle.get(j).t][ci]);
-							
-							SurrMapSD [ci].getStack().setVoxel(preliminaryParticle.get(j).x, preliminaryParticle.get(j).y,
-									imp.getStackIndex(1, preliminaryParticle.get(j).z+1, preliminaryParticle.get(j).t+1)-1, 
-										adipos.get(adipos.size()-1).sdIntensitySurr[preliminaryParticle.get(j).t][ci]);
-						}
+				if(surroundingsMap != null) {
+					// like the rings, the surroundings exclude all pixels within the outline (holes, rejected particles)
+					tempPoints = roi.getContainedPoints();
+					for(int j = 0; j < tempPoints.length; j++){
+						surroundingsMap.setObject(tempPoints[j].x, tempPoints[j].y, adipos.size());
 					}
 				}
-			}else {
-				fusedParticles.addAll(preliminaryParticle);
+				if(objectLabels != null) {
+					objectLabels.addParticle(preliminaryParticle, adipos.size());
+				}
+				if(surrMapLabels != null && surrMapLabels != objectLabels) {
+					surrMapLabels.addParticle(preliminaryParticle, adipos.size());
+				}
 			}
-			if(saveRois) {
+			if(roiZip != null) {
 				roi.setName("ID " + included);
-				rm.addRoi(roi);
+				try {
+					roiZip.add(roi);
+				}catch(IOException e) {
+					getWriter().fail(currentTask, "ROIs could not be saved to " + roiZip.getPath() + " - " + e.getMessage());
+					try {roiZip.close();} catch (IOException e2) {}
+					roiZip = null;
+				}
+			}
+			if(fuseParticles && objectLabels != null) {
+				objectLabels.addParticle(preliminaryParticle, 1);	// all particles form the object with ID 1
 			}
 			
 			//Write to original image
 			for(int j = 0; j < preliminaryParticle.size(); j++){
-//				try {
-					imp.getStack().setVoxel(preliminaryParticle.get(j).x,
-							preliminaryParticle.get(j).y,
-							imp.getStackIndex(c, preliminaryParticle.get(j).z+1, 
-							preliminaryParticle.get(j).t+1)-1, 
-							refImp2.getStack().getVoxel(preliminaryParticle.get(j).x, 
-									preliminaryParticle.get(j).y, 
-									refImp2.getStackIndex(1, preliminaryParticle.get(j).z+1, 
-											preliminaryParticle.get(j).t+1)-1));					
-//				}catch(Exception e) {
-//					IJ.log("PROBLEM " + preliminaryParticle.get(j).x + " - " + preliminaryParticle.get(j).y 
-//							+ " - " + preliminaryParticle.get(j).z + " - " + preliminaryParticle.get(j).t);
-//				}
+				segmentedChannel.setValue(preliminaryParticle.getT(j) * segmentedChannel.nSlices + preliminaryParticle.getZ(j),
+						preliminaryParticle.getY(j) * segmentedChannel.width + preliminaryParticle.getX(j), 
+						refImp2.getStack().getVoxel(preliminaryParticle.getX(j), 
+								preliminaryParticle.getY(j), 
+								refImp2.getStackIndex(1, preliminaryParticle.getZ(j)+1, 
+										preliminaryParticle.getT(j)+1)-1));
+			}
+			includedParticles.set(i, null);
+			
+			if(i%20==0){
+				progress.addToBar(0.1/(includedParticles.size()));
 			}
 		}
-		preliminaryParticle.clear();
-		
-		if(r%20==0){
-			progress.updateBarText("Reconstruction of particles complete: " + df3.format(((double)(r)/(double)(rois.length))*100) + "%");
-			progress.addToBar(0.2/(rois.length));
-//			progress.notifyMessage("Particle conversion done:" + df3.format(((double)(r)/(double)(rois.length))*100) + "%", ProgressDialog.LOG);
-//			if(r%60==0){
-//				IJ.log("Particle reconstruction done:" + df3.format(((double)(r)/(double)(rois.length))*100) + "%");				
-//			}
+	}finally {
+		if(pool != null) pool.shutdownNow();
+		if(roiZip != null) {
+			try {
+				roiZip.close();
+				getWriter().addWrittenFile(roiZip.getPath());
+			}catch(IOException e) {
+				getWriter().fail(currentTask, "ROIs could not be saved to " + roiZip.getPath() + " - " + e.getMessage());
+			}
 		}
 	}
+	Roi [] objectRois = null;
+	if(exclusiveSurroundings && tiled) {
+		objectRois = includedRois.toArray(new Roi [includedRois.size()]);
+	}
+	includedParticles = null;
+	includedRois = null;
 	preliminaryParticle = null;			
-	refImp.changes = false;
-	refImp.close();
+	
+	if(exclusiveSurroundings) {
+		progress.updateBarText("Quantifying exclusive surroundings...");
+		AdipoParticle [] surroundings;
+		if(tiled) {
+			surroundings = new AdipoTiledSurroundings(imp.getWidth(), imp.getHeight(), tileSize, imp.getCalibration().pixelWidth, 
+					imp.getCalibration().pixelHeight, refDistance).getSurroundings(objectRois, nrOfThreads);
+		}else {
+			surroundings = surroundingsMap.getSurroundings(imp.getCalibration().pixelWidth, imp.getCalibration().pixelHeight, refDistance);
+		}
+		for(int a = 0; a < adipos.size(); a++) {
+			adipos.get(a).quantifySurroundings(surroundings [a], imp, channelID);
+			surroundings [a] = null;
+		}
+		surroundings = null;
+		
+		objectRois = null;
+		surroundingsMap = null;
+	}
 		
 	if(fuseParticles) {
 		fusedParticles.trimToSize();
@@ -1774,27 +2904,54 @@ ArrayList<Adipocyte> analyzeAdipocytesWithIn2D (ImagePlus imp, int c, String fil
 	}
 	
 	if(saveSurrMaps) {
-		for(int ci = 0; ci < SurrMapAverage.length; ci++) {
-			progress.updateBarText("Saving surroundings maps now... C" + (ci+1));
-			if(ci == c-1) continue;
-						
-			IJ.run(SurrMapAverage [ci], "Fire","");
-			IJ.run(SurrMapSD [ci], "Fire","");
-			
-			IJ.saveAsTiff(SurrMapAverage [ci],filePrefix+"_SurrAVG_C" + (ci+1) + ".tif");
-			IJ.saveAsTiff(SurrMapSD [ci],filePrefix+"_SurrSD_C" + (ci+1) + ".tif");
-			
-		}
-		for(int ci = 0; ci < SurrMapAverage.length; ci++) {
-			SurrMapAverage [ci].changes = false;
-			SurrMapSD [ci].changes = false;
-			SurrMapAverage [ci].close();
-			SurrMapSD [ci].close();	
-		}
+		progress.updateBarText("Saving surroundings maps now...");
+		saveSurroundingsMaps(currentTask, surrMapLabels, adipos, imp, c, filePrefix);
 	}
 	return adipos;
 }
 
+/**
+ * Saves the maps of the surrounding average intensity and SD of each channel except the segmented one (_SurrAVG_C{n}, _SurrSD_C{n}).
+ * Each map is only created from the object-ID raster and the values of the objects when it is written, plane by plane while it is saved, so that at most one plane of a map is in memory.
+ * @param labels: object-ID raster of the adipocytes
+ * */
+private void saveSurroundingsMaps(int task, final AdipoLabelImage labels, ArrayList<Adipocyte> adipocytes, ImagePlus imp, int c, String filePrefix){
+	final int bitDepth = imp.getBitDepth();
+	final Calibration calibration = imp.getCalibration().copy();
+	String extension = compressSurrMaps ? ".zip" : ".tif";
+	for(int ci = 0; ci < imp.getNChannels(); ci++) {
+		if(ci == c-1) continue;
+		final double [] averages = new double [adipocytes.size()], sds = new double [adipocytes.size()];
+		for(int a = 0; a < adipocytes.size(); a++) {
+			averages [a] = adipocytes.get(a).averageIntensitySurr[0][ci];
+			sds [a] = adipocytes.get(a).sdIntensitySurr[0][ci];
+		}
+		saveValueMap(task, labels, "Surr-Map Average", averages, bitDepth, calibration, filePrefix+"_SurrAVG_C" + (ci+1) + extension);
+		saveValueMap(task, labels, "Surr-Map SD", sds, bitDepth, calibration, filePrefix+"_SurrSD_C" + (ci+1) + extension);
+		taskOutputs.add(filePrefix+"_SurrAVG_C" + (ci+1) + extension);
+		taskOutputs.add(filePrefix+"_SurrSD_C" + (ci+1) + extension);
+	}
+}
+
+/**
+ * Creates a map of object values (see AdipoLabelImage.createValueMap) with the Fire LUT and saves it (as .tif or, if the path ends with .zip, zip-compressed)
+ * */
+private void saveValueMap(int task, final AdipoLabelImage labels, final String title, final double [] values, final int bitDepth, 
+		final Calibration calibration, final String path){
+	getWriter().write(task, path, new AdipoOutputWriter.Output() {
+		public void write() throws IOException {
+			ImagePlus map = labels.createValueMap(title, values, bitDepth, calibration);
+			applyFireLut(map);
+			try {
+				writeImage(map, path);
+			}finally {
+				map.changes = false;
+				map.close();
+			}
+		}
+	});
+}
+
 private void stayAwake() {
 	try {
 		robo.mouseMove(MouseInfo.getPointerInfo().getLocation().x, MouseInfo.getPointerInfo().getLocation().y);
@@ -1808,8 +2965,7 @@ static double getMaxPercentFromSortedArray(double [] sortedList, double percent)
 
 static double getMaxPercent(double [] list, double percent){			
 	double [] array = Arrays.copyOf(list, list.length);
-	Arrays.sort(array);
-	double maxTenPercent = getAverageOfRange(array,list.length-(int)Math.round(list.length/100.0*percent), list.length-1);
+	double maxTenPercent = new AdipoQuantiles(array, 32, Double.NaN, Double.NaN).getMaxPercentAverage(percent);
 	array = null;
 	return maxTenPercent;
 }
@@ -1820,8 +2976,7 @@ static double getMinPercentFromSortedArray(double [] sortedList, double percent)
 
 static double getMinPercent(double [] list, double percent){			
 	double [] array = Arrays.copyOf(list, list.length);
-	Arrays.sort(array);
-	double minTenPercent = getAverageOfRange(array,0,(int)Math.round(array.length/100.0*percent)-1);
+	double minTenPercent = new AdipoQuantiles(array, 32, Double.NaN, Double.NaN).getMinPercentAverage(percent);
 	array = null;
 	return minTenPercent;
 }
@@ -0,0 +1,210 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.Arrays;
+
+/**
+ * Median and trimmed-tail averages of a set of intensities without sorting the whole set.
+ *
+ * Integer data (8-bit and 16-bit images) is counted into a histogram over the value range. Other data is
+ * partially ordered by introselect; only the tails that are averaged are sorted, so that they are summed in
+ * ascending order like in getAverageOfRange(...). Results are identical to those obtained from a sorted array.
+ * Values are ordered like Arrays.sort(double []) orders them (-0.0 before 0.0, NaN last).
+ * */
+class AdipoQuantiles{
+	private static final int HISTOGRAM_RANGE_PER_VALUE = 4;
+
+	private final int n;
+	
+	// histogram mode
+	private int [] histogram = null;
+	private int histogramOffset;
+	
+	// selection mode: values [0, sortedLow) and values [n - sortedHigh, n) are sorted and in their final position
+	private double [] values = null;
+	private int sortedLow = 0, sortedHigh = 0;
+
+	/**
+	 * @param values: intensities, the array is reordered
+	 * @param bitDepth: bit depth of the image the values were read from
+	 * @param min: minimum of the values
+	 * @param max: maximum of the values
+	 * */
+	public AdipoQuantiles(double [] values, int bitDepth, double min, double max){
+		n = values.length;
+		if((bitDepth == 8 || bitDepth == 16) && n > 0 && max - min < (double) HISTOGRAM_RANGE_PER_VALUE * n + 256.0) {
+			histogramOffset = (int) min;
+			histogram = new int [(int) max - histogramOffset + 1];
+			for(int i = 0; i < n; i++) {
+				histogram [(int) values [i] - histogramOffset]++;
+			}
+		}else {
+			this.values = values;
+		}
+	}
+
+	/**
+	 * @return the median, the average of the two central values for an even number of values, NaN if there are no values
+	 * */
+	double getMedian() {
+		if(n == 0) return Double.NaN;
+		if(n%2==0) {
+			return (getValueAtRank(n/2-1) + getValueAtRank(n/2))/2.0;
+		}
+		return getValueAtRank(n/2);
+	}
+
+	/**
+	 * Equivalent to AdipoQAnalyzerMain.getMinPercentFromSortedArray(...) on the sorted values
+	 * @return average of the lowest percent of values
+	 * */
+	double getMinPercentAverage(double percent) {
+		int k = (int) Math.round(n/100.0*percent);
+		if(histogram != null) {
+			return getHistogramSum(0, k) / (double) k;
+		}
+		sortLow(k);
+		return AdipoQAnalyzerMain.getAverageOfRange(values, 0, k-1);
+	}
+
+	/**
+	 * Equivalent to AdipoQAnalyzerMain.getMaxPercentFromSortedArray(...) on the sorted values
+	 * @return average of the highest percent of values
+	 * */
+	double getMaxPercentAverage(double percent) {
+		int k = (int) Math.round(n/100.0*percent);
+		if(histogram != null) {
+			return getHistogramSum(n - k, n) / (double) k;
+		}
+		sortHigh(k);
+		return AdipoQAnalyzerMain.getAverageOfRange(values, n - k, n - 1);
+	}
+
+	private double getValueAtRank(int rank) {
+		if(histogram != null) {
+			int cumulative = 0;
+			for(int v = 0; v < histogram.length; v++) {
+				cumulative += histogram [v];
+				if(cumulative > rank) return v + histogramOffset;
+			}
+			return Double.NaN;
+		}
+		if(rank >= sortedLow && rank < n - sortedHigh) {
+			select(values, sortedLow, n - sortedHigh - 1, rank);
+		}
+		return values [rank];
+	}
+
+	/**
+	 * @return sum of the values with rank from (inclusive) to rank to (exclusive); exact since values are integers
+	 * */
+	private double getHistogramSum(int from, int to) {
+		double sum = 0.0;
+		int cumulative = 0, count;
+		for(int v = 0; v < histogram.length && cumulative < to; v++) {
+			count = Math.min(cumulative + histogram [v], to) - Math.max(cumulative, from);
+			if(count > 0) sum += (double) (v + histogramOffset) * count;
+			cumulative += histogram [v];
+		}
+		return sum;
+	}
+
+	/**
+	 * Moves the k lowest values in ascending order to the beginning of the array
+	 * */
+	private void sortLow(int k) {
+		if(k <= sortedLow) return;
+		if(k > n - sortedHigh) {
+			sortAll();
+			return;
+		}
+		select(values, sortedLow, n - sortedHigh - 1, k - 1);
+		Arrays.sort(values, sortedLow, k);
+		sortedLow = k;
+	}
+
+	/**
+	 * Moves the k highest values in ascending order to the end of the array
+	 * */
+	private void sortHigh(int k) {
+		if(k <= sortedHigh) return;
+		if(n - k < sortedLow) {
+			sortAll();
+			return;
+		}
+		select(values, sortedLow, n - sortedHigh - 1, n - k);
+		Arrays.sort(values, n - k, n - sortedHigh);
+		sortedHigh = k;
+	}
+
+	private void sortAll() {
+		Arrays.sort(values, sortedLow, n - sortedHigh);
+		sortedLow = n;
+		sortedHigh = n;
+	}
+
+	/**
+	 * Introselect: reorders values [left, right] so that position rank holds the value of that rank,
+	 * smaller values before and larger values after it. Falls back to sorting if partitioning degenerates.
+	 * */
+	static void select(double [] values, int left, int right, int rank) {
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(right - left + 1));
+		while(right > left) {
+			if(depth-- == 0 || right - left < 16) {
+				Arrays.sort(values, left, right + 1);
+				return;
+			}
+			// median of three as pivot
+			int middle = (left + right) >>> 1;
+			if(Double.compare(values [middle], values [left]) < 0)	swap(values, middle, left);
+			if(Double.compare(values [right], values [left]) < 0)	swap(values, right, left);
+			if(Double.compare(values [right], values [middle]) < 0)	swap(values, right, middle);
+			double pivot = values [middle];
+
+			// Hoare partitioning
+			int i = left, j = right;
+			while(i <= j) {
+				while(Double.compare(values [i], pivot) < 0) i++;
+				while(Double.compare(values [j], pivot) > 0) j--;
+				if(i <= j) {
+					swap(values, i, j);
+					i++;
+					j--;
+				}
+			}
+			if(rank <= j) {
+				right = j;
+			}else if(rank >= i) {
+				left = i;
+			}else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(double [] values, int a, int b) {
+		double temp = values [a];
+		values [a] = values [b];
+		values [b] = temp;
+	}
+}
@@ -0,0 +1,142 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * Content-addressed index of analyzed images, used to skip images whose analysis would not change on a re-run.
+ *
+ * The key of an image is the SHA-256 hash of the effective settings and the image file content. For each analyzed image,
+ * a line (key, image name, output files with their sizes) is appended to the index file in the directory of the image.
+ * Lines are only appended, so tasks running in parallel or on other machines never rewrite the entries of each other.
+ * */
+class AdipoResultCache{
+	static final String INDEX_FILE_NAME = "AQA_index.txt";
+
+	/**
+	 * @param settings: text describing all settings that influence the outputs
+	 * @return the key of the image
+	 * */
+	static String getKey(File image, String settings) throws IOException {
+		return getSHA256(settings, image);
+	}
+
+	/**
+	 * @return true if the index contains the key for the image and all output files listed for it exist with the recorded size
+	 * */
+	static boolean hasCompleteOutputs(String directory, String imageName, String key) throws IOException {
+		File index = new File(directory, INDEX_FILE_NAME);
+		if(!index.isFile()) return false;
+
+		String [] entry = null;
+		String [] fields;
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(index), "UTF-8"));
+		try {
+			String line;
+			while((line = br.readLine()) != null) {
+				fields = line.split("	");
+				if(fields.length >= 2 && fields [0].equals(key) && fields [1].equals(imageName)) {
+					entry = fields;
+				}
+			}
+		}finally {
+			br.close();
+		}
+		if(entry == null || entry.length < 4) return false;
+
+		File output;
+		for(int i = 2; i + 1 < entry.length; i += 2) {
+			output = new File(directory, entry [i]);
+			if(!output.isFile() || output.length() != Long.parseLong(entry [i+1])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends an entry for the image to the index. Nothing is recorded if an output file does not exist.
+	 * @param outputs: paths of all output files of the image
+	 * @return false if no entry was recorded
+	 * */
+	static synchronized boolean record(String directory, String imageName, String key, ArrayList<String> outputs) throws IOException {
+		if(outputs.isEmpty()) return false;
+		StringBuilder line = new StringBuilder(key).append("	").append(imageName);
+		File output;
+		for(int i = 0; i < outputs.size(); i++) {
+			output = new File(outputs.get(i));
+			if(!output.isFile()) return false;
+			line.append("	").append(output.getName()).append("	").append(output.length());
+		}
+		line.append(System.getProperty("line.separator"));
+
+		// a single write in append mode, so that entries of other processes are not interleaved
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, INDEX_FILE_NAME), true), "UTF-8");
+		try {
+			writer.write(line.toString());
+		}finally {
+			writer.close();
+		}
+		return true;
+	}
+
+	/**
+	 * @param text: text hashed before the file content; null to hash only the file
+	 * @return hexadecimal SHA-256 hash of the text and the file content
+	 * */
+	static String getSHA256(String text, File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		if(text != null) {
+			digest.update(text.getBytes("UTF-8"));
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte [] buffer = new byte [65536];
+			int read;
+			while((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}finally {
+			in.close();
+		}
+		StringBuilder hex = new StringBuilder(64);
+		byte [] hash = digest.digest();
+		for(int i = 0; i < hash.length; i++) {
+			hex.append(Character.forDigit((hash [i] >> 4) & 0xF, 16)).append(Character.forDigit(hash [i] & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
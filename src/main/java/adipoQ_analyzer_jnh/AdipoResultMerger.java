@@ -0,0 +1,235 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Merges the per-image results (*_AQA.txt / *_AQAs.txt) of all images (or of all series of multi-series files) of a manifest into one consolidated table,
+ * e.g., after the shards of a study were processed on different machines. Gzip-compressed results (*.txt.gz) are read as well.
+ *
+ * The rows of all short result files (*_AQAs.txt) are combined under one header in manifest order. Images whose results
+ * are missing, whose columns differ from the first image, or that were analyzed with different preferences (read from *_AQA.txt)
+ * are reported and left out. SHA-256 checksums of all merged files and of the merged table are written to <merged file>.sha256.
+ * */
+class AdipoResultMerger{
+	static final String FOOTER_START = "		Datafile was generated on ";
+
+	/**
+	 * @param oneRowFooter: footer appended to the header of the merged table
+	 * @return number of images that were left out
+	 * */
+	static int merge(ArrayList<File> images, File mergedFile, String oneRowFooter, PrintStream log) throws IOException {
+		int problems = 0;
+		String columns = null;
+		ArrayList<String> preferences = null, imagePreferences;
+		ArrayList<File> mergedSources = new ArrayList<File>();
+		PrintWriter pw = null;
+		BufferedReader br;
+		String line;
+		File [] results;
+		ArrayList<File []> imageResults;
+		try {
+			for(int i = 0; i < images.size(); i++) {
+				imageResults = findAllResults(images.get(i));
+				if(imageResults.isEmpty()) {
+					log.println("ERROR: No results found for " + images.get(i).getPath());
+					problems++;
+					continue;
+				}
+
+				for(int r = 0; r < imageResults.size(); r++) {
+					results = imageResults.get(r);
+					imagePreferences = readPreferences(results [0]);
+					if(preferences == null) {
+						preferences = imagePreferences;
+					}else if(!preferences.equals(imagePreferences)) {
+						log.println("ERROR: " + results [0].getPath() + " was analyzed with different preferences - not merged");
+						problems++;
+						continue;
+					}
+
+					br = openResults(results [1]);
+					try {
+						line = br.readLine();
+						if(line == null) {
+							log.println("ERROR: " + results [1].getPath() + " is empty - not merged");
+							problems++;
+							continue;
+						}
+						if(line.contains(FOOTER_START)) line = line.substring(0, line.indexOf(FOOTER_START));
+						if(columns == null) {
+							columns = line;
+							pw = new PrintWriter(new BufferedOutputStream(new FileOutputStream(mergedFile)));
+							pw.println(columns + oneRowFooter);
+						}else if(!columns.equals(line)) {
+							log.println("ERROR: " + results [1].getPath() + " contains different columns - not merged");
+							problems++;
+							continue;
+						}
+						while((line = br.readLine()) != null) {
+							if(line.equals("")) continue;
+							pw.println(line);
+						}
+					}finally {
+						br.close();
+					}
+					mergedSources.add(results [0]);
+					mergedSources.add(results [1]);
+				}
+			}
+		}finally {
+			if(pw != null) pw.close();
+		}
+
+		if(columns == null) {
+			log.println("ERROR: No results to merge");
+			return problems;
+		}
+
+		mergedSources.add(mergedFile);
+		pw = new PrintWriter(new BufferedOutputStream(new FileOutputStream(mergedFile.getPath() + ".sha256")));
+		try {
+			for(int i = 0; i < mergedSources.size(); i++) {
+				pw.println(getSHA256(mergedSources.get(i)) + "  " + mergedSources.get(i).getAbsolutePath());
+			}
+		}finally {
+			pw.close();
+		}
+		log.println("Merged results of " + (mergedSources.size()-1)/2 + " images into " + mergedFile.getPath());
+		return problems;
+	}
+
+	/**
+	 * Finds the output files of an image or, for files with several series read via Bio-Formats, of all its series ({name}_S{n}_AQA...)
+	 * @return {long results file, short results file} of the image or of each series; empty if not found
+	 * */
+	static ArrayList<File []> findAllResults(File image) {
+		ArrayList<File []> allResults = new ArrayList<File []>();
+		File [] results = findResults(image, "");
+		if(results != null) {
+			allResults.add(results);
+			return allResults;
+		}
+		for(int series = 1; (results = findResults(image, "_S" + series)) != null; series++) {
+			allResults.add(results);
+		}
+		return allResults;
+	}
+
+	/**
+	 * Finds the output files of an image: {name}_AQA.txt and {name}_AQAs.txt or, if saved with date, the latest {name}_AQA_{date}.txt
+	 * (or the gzip-compressed files *.txt.gz)
+	 * @param seriesSuffix: suffix of the series in the output file names (_S{n}) or ""
+	 * @return {long results file, short results file} or null if not found
+	 * */
+	static File [] findResults(File image, String seriesSuffix) {
+		File [] results = findResults(image, seriesSuffix, ".txt");
+		if(results == null) results = findResults(image, seriesSuffix, ".txt" + AdipoTableWriter.GZIP_SUFFIX);
+		return results;
+	}
+
+	/**
+	 * @param extension: extension of the output files (.txt or .txt.gz)
+	 * */
+	private static File [] findResults(File image, String seriesSuffix, String extension) {
+		String prefix = image.getName();
+		if(prefix.contains(".")) prefix = prefix.substring(0, prefix.lastIndexOf("."));
+		prefix += seriesSuffix + "_AQA";
+		File directory = image.getAbsoluteFile().getParentFile();
+
+		File [] results = {new File(directory, prefix + extension), new File(directory, prefix + "s" + extension)};
+		if(results [0].isFile() && results [1].isFile()) return results;
+
+		// date-suffixed outputs (prefix_yyMMdd_HHmmss.txt) - the names sort chronologically
+		String latest = null;
+		String [] content = directory.list();
+		if(content == null) return null;
+		for(int i = 0; i < content.length; i++) {
+			if(content [i].length() == prefix.length() + 14 + extension.length() && content [i].startsWith(prefix + "_") && content [i].endsWith(extension)
+					&& content [i].substring(prefix.length()+1, prefix.length()+14).matches("[0-9]{6}_[0-9]{6}")
+					&& (latest == null || content [i].compareTo(latest) > 0)
+					&& new File(directory, content [i].substring(0, content [i].length()-extension.length()) + "s" + extension).isFile()) {
+				latest = content [i];
+			}
+		}
+		if(latest == null) return null;
+		results [0] = new File(directory, latest);
+		results [1] = new File(directory, latest.substring(0, latest.length()-extension.length()) + "s" + extension);
+		return results;
+	}
+
+	/**
+	 * @return reader for a results file, decompressing gzip-compressed files
+	 * */
+	private static BufferedReader openResults(File resultsFile) throws IOException {
+		InputStream in = new FileInputStream(resultsFile);
+		if(resultsFile.getName().endsWith(AdipoTableWriter.GZIP_SUFFIX)) {
+			try {
+				in = new GZIPInputStream(in, 65536);
+			}catch(IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return new BufferedReader(new InputStreamReader(in));
+	}
+
+	/**
+	 * @return the lines of the preferences block of a long results file; the minimum particle size in pixel is left out since it depends on the calibration of each image
+	 * */
+	private static ArrayList<String> readPreferences(File resultsFile) throws IOException {
+		ArrayList<String> preferences = new ArrayList<String>();
+		BufferedReader br = openResults(resultsFile);
+		try {
+			String line;
+			boolean reading = false;
+			while((line = br.readLine()) != null) {
+				if(line.startsWith("Preferences:")) {
+					reading = true;
+				}else if(reading && line.equals("")) {
+					break;
+				}
+				if(!reading) continue;
+				if(line.contains("	Minimum particle size (px):")) line = line.substring(0, line.indexOf("	Minimum particle size (px):"));
+				preferences.add(line);
+			}
+		}finally {
+			br.close();
+		}
+		return preferences;
+	}
+
+	static String getSHA256(File file) throws IOException {
+		return AdipoResultCache.getSHA256(null, file);
+	}
+}
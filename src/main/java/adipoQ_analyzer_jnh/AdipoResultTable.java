@@ -0,0 +1,302 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Result table of an image read from a columnar results file (*_AQA.aqac, see AdipoColumnarWriter for the file layout):
+ * typed columns (ID, frame, centers, voxels, area / volume, surface, intensity parameters of each channel and its surroundings)
+ * and the metadata of the analysis (preferences block, footer).
+ * 
+ * Example: AdipoResultTable table = AdipoResultTable.read(new File("img_AQA.aqac"));
+ * 	double [] areas = table.getColumn(table.getColumnNames() [6]);
+ * 
+ * A table can be written back into the text format of the long (*_AQA.txt) and short (*_AQAs.txt) result tables, which are 
+ * written from the same columns during the analysis (see getTextHeader and appendTextRow).
+ * */
+public class AdipoResultTable{
+	public static final String EXTENSION = ".aqac";
+	public static final byte INT = 0, DOUBLE = 1;
+	
+	/**
+	 * Keys of the metadata
+	 * */
+	public static final String IMAGE_NAME = "image name", SETTINGS = "settings", FOOTER = "footer", ONE_ROW_FOOTER = "one-row footer";
+	
+	static final byte [] MAGIC = {'A', 'Q', 'A', 'C'};
+	static final int VERSION = 1;
+	
+	private final LinkedHashMap<String,String> metadata;
+	private final String [] columns;
+	private final byte [] types;
+	private final Object [] values;	// int [] or double [] for each column
+	private final int rows;
+	
+	private AdipoResultTable(LinkedHashMap<String,String> metadata, String [] columns, byte [] types, Object [] values, int rows) {
+		this.metadata = metadata;
+		this.columns = columns;
+		this.types = types;
+		this.values = values;
+		this.rows = rows;
+	}
+	
+	public static AdipoResultTable read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		try {
+			byte [] magic = new byte [MAGIC.length];
+			in.readFully(magic);
+			for(int i = 0; i < MAGIC.length; i++) {
+				if(magic [i] != MAGIC [i]) throw new IOException(file.getPath() + " is no columnar results file");
+			}
+			int version = in.readInt();
+			if(version != VERSION) throw new IOException(file.getPath() + " has the unsupported format version " + version);
+			
+			LinkedHashMap<String,String> metadata = new LinkedHashMap<String,String>();
+			int nEntries = in.readInt();
+			for(int i = 0; i < nEntries; i++) {
+				metadata.put(readString(in), readString(in));
+			}
+			
+			int nColumns = in.readInt();
+			String [] columns = new String [nColumns];
+			byte [] types = new byte [nColumns];
+			Object [] values = new Object [nColumns];
+			for(int c = 0; c < nColumns; c++) {
+				columns [c] = readString(in);
+				types [c] = in.readByte();
+				if(types [c] == INT) {
+					values [c] = new int [AdipoColumnarWriter.BLOCK_ROWS];
+				}else if(types [c] == DOUBLE) {
+					values [c] = new double [AdipoColumnarWriter.BLOCK_ROWS];
+				}else {
+					throw new IOException(file.getPath() + ": unknown type of column " + columns [c]);
+				}
+			}
+			
+			Inflater inflater = new Inflater();
+			try {
+				int rows = 0, blockRows;
+				byte [] compressed = new byte [0], shuffled = new byte [0];
+				while((blockRows = in.readInt()) > 0) {
+					for(int c = 0; c < nColumns; c++) {
+						int length = in.readInt();
+						if(compressed.length < length) compressed = new byte [length];
+						in.readFully(compressed, 0, length);
+						
+						int size = types [c] == INT ? 4 : 8;
+						if(shuffled.length < blockRows * size) shuffled = new byte [blockRows * size];
+						inflater.reset();
+						inflater.setInput(compressed, 0, length);
+						int inflated = 0;
+						try {
+							while(inflated < blockRows * size && !inflater.finished()) {
+								inflated += inflater.inflate(shuffled, inflated, blockRows * size - inflated);
+								if(inflater.needsInput()) break;
+							}
+						}catch(DataFormatException e) {
+							throw new IOException(file.getPath() + " is corrupted", e);
+						}
+						if(inflated != blockRows * size) throw new IOException(file.getPath() + " is corrupted");
+						
+						ByteBuffer buffer = ByteBuffer.wrap(unshuffle(shuffled, blockRows, size));
+						if(types [c] == INT) {
+							int [] column = (int []) values [c];
+							if(column.length < rows + blockRows) {
+								column = Arrays.copyOf(column, Math.max(rows + blockRows, 2 * column.length));
+								values [c] = column;
+							}
+							for(int r = 0; r < blockRows; r++) column [rows + r] = buffer.getInt();
+						}else {
+							double [] column = (double []) values [c];
+							if(column.length < rows + blockRows) {
+								column = Arrays.copyOf(column, Math.max(rows + blockRows, 2 * column.length));
+								values [c] = column;
+							}
+							for(int r = 0; r < blockRows; r++) column [rows + r] = buffer.getDouble();
+						}
+					}
+					rows += blockRows;
+				}
+				return new AdipoResultTable(metadata, columns, types, values, rows);
+			}finally {
+				inflater.end();
+			}
+		}catch(EOFException e) {
+			throw new IOException(file.getPath() + " is incomplete", e);
+		}finally {
+			in.close();
+		}
+	}
+	
+	public String getMetadata(String key) {
+		return metadata.get(key);
+	}
+	
+	public String [] getColumnNames() {
+		return columns.clone();
+	}
+	
+	public byte getType(String name) {
+		return types [indexOf(name)];
+	}
+	
+	public int getRowCount() {
+		return rows;
+	}
+	
+	/**
+	 * @return the values of a column (also of INT columns)
+	 * */
+	public double [] getColumn(String name) {
+		int c = indexOf(name);
+		double [] column = new double [rows];
+		if(types [c] == INT) {
+			for(int r = 0; r < rows; r++) column [r] = ((int []) values [c]) [r];
+		}else {
+			System.arraycopy((double []) values [c], 0, column, 0, rows);
+		}
+		return column;
+	}
+	
+	/**
+	 * @return the values of an INT column
+	 * */
+	public int [] getIntColumn(String name) {
+		int c = indexOf(name);
+		if(types [c] != INT) throw new IllegalArgumentException("Column " + name + " contains no integers");
+		return Arrays.copyOf((int []) values [c], rows);
+	}
+	
+	private int indexOf(String name) {
+		for(int c = 0; c < columns.length; c++) {
+			if(columns [c].equals(name)) return c;
+		}
+		throw new IllegalArgumentException("No column " + name);
+	}
+	
+	/**
+	 * Writes the table in the text format of the long and short result tables
+	 * @param symbols: symbols of the number format of the text tables
+	 * */
+	public void writeText(String longPath, String shortPath, DecimalFormatSymbols symbols) throws IOException {
+		AdipoNumberFormat nf6 = new AdipoNumberFormat(symbols);
+		String header = getTextHeader(columns);
+		String imageName = metadata.get(IMAGE_NAME);
+		double [] row = new double [columns.length];
+		StringBuilder text = new StringBuilder(1024);
+		
+		AdipoTableWriter tp1 = null, tp2 = null;
+		try {
+			tp1 = new AdipoTableWriter(longPath, false);
+			tp2 = new AdipoTableWriter(shortPath, false);
+			appendLines(tp1, metadata.get(SETTINGS));
+			tp1.append("");
+			tp1.append("Results");
+			tp1.append(header);
+			tp2.append(header + metadata.get(ONE_ROW_FOOTER));
+			for(int r = 0; r < rows; r++) {
+				for(int c = 0; c < columns.length; c++) {
+					row [c] = types [c] == INT ? ((int []) values [c]) [r] : ((double []) values [c]) [r];
+				}
+				text.setLength(0);
+				appendTextRow(text, imageName, row, types, nf6);
+				tp1.append(text);
+				tp2.append(text);
+			}
+			tp1.append("");
+			appendLines(tp1, metadata.get(FOOTER));
+		}finally {
+			try {
+				if(tp1 != null) tp1.close();
+			}finally {
+				if(tp2 != null) tp2.close();
+			}
+		}
+	}
+	
+	private static void appendLines(AdipoTableWriter tp, String lines) throws IOException {
+		if(lines == null) return;
+		String [] split = lines.split("\n", -1);
+		for(int i = 0; i < split.length; i++) {
+			tp.append(split [i]);
+		}
+	}
+	
+	/**
+	 * @return the header of the text result tables for the columns: the image name and an empty custom column are added in front of and after the ID
+	 * */
+	static String getTextHeader(String [] columns) {
+		StringBuilder header = new StringBuilder("Image name");
+		for(int c = 0; c < columns.length; c++) {
+			header.append('	').append(columns [c]);
+			if(c == 0) header.append('	').append("Custom");
+		}
+		return header.toString();
+	}
+	
+	/**
+	 * Appends a row of the text result tables: integers as such, other values with six decimals
+	 * */
+	static void appendTextRow(StringBuilder text, String imageName, double [] row, byte [] types, AdipoNumberFormat nf6) {
+		text.append(imageName);
+		for(int c = 0; c < row.length; c++) {
+			text.append('	');
+			if(types [c] == INT) {
+				text.append((long) row [c]);
+			}else {
+				nf6.append(text, row [c]);
+			}
+			if(c == 0) text.append('	');
+		}
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		byte [] bytes = new byte [in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+	
+	/**
+	 * Reverts the byte shuffling of AdipoColumnarWriter.shuffle
+	 * */
+	private static byte [] unshuffle(byte [] shuffled, int n, int size) {
+		byte [] bytes = new byte [n * size];
+		for(int b = 0; b < size; b++) {
+			for(int j = 0; j < n; j++) {
+				bytes [j * size + b] = shuffled [b * n + j];
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,75 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import ij.gui.Roi;
+import ij.io.RoiEncoder;
+
+/**
+ * Writes ROIs one by one into a zip file in the format of the ROI manager ({name}.roi entries encoded by RoiEncoder), 
+ * without using a ROI manager. ROIs are written when they are added, so they do not need to be kept until the file is saved.
+ * */
+class AdipoRoiZipWriter{
+	private final String path;
+	private final ZipOutputStream zos;
+	private final DataOutputStream out;
+	private final RoiEncoder re;
+	private int nRois = 0;
+	
+	public AdipoRoiZipWriter(String path) throws IOException {
+		this.path = path;
+		zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		out = new DataOutputStream(new BufferedOutputStream(zos));
+		re = new RoiEncoder(out);
+	}
+	
+	/**
+	 * @return the path of the written file
+	 * */
+	String getPath() {
+		return path;
+	}
+	
+	/**
+	 * Writes the ROI into an entry named by the ROI or, if the ROI is unnamed, by its position in the file
+	 * */
+	void add(Roi roi) throws IOException {
+		nRois++;
+		String label = roi.getName();
+		if(label == null) label = "" + nRois;
+		if(!label.endsWith(".roi")) label += ".roi";
+		zos.putNextEntry(new ZipEntry(label));
+		re.write(roi);
+		out.flush();
+	}
+	
+	void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,337 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.Arrays;
+
+/**
+ * Connected-component labeling based on runs: each column (fixed plane and x, since y is the innermost
+ * scan dimension) of the segmented channel is run-length encoded and runs are connected to overlapping runs
+ * in the neighbouring columns of the same slice, the previous slice and the previous frame.
+ *
+ * Particles are stored as lists of runs. Voxel numbers and bounding boxes are determined per run, points are
+ * only created when requested. Particles and their points are returned in the scan order t, z, x, y.
+ * */
+class AdipoRunLengthLabeler implements AdipoLabeler{
+	private final AdipoChannel mask;
+	private final int width, height, nSlices, nFrames, nPlanes;
+
+	// neighbouring columns that precede a column in scan order: plane offset, x offset, extension in y
+	private final int [] cPlane, cZ, cT, cX, cExtension;
+
+	// runs in scan order: column (= plane * width + x), first y, last y + 1
+	private int [] runColumns = new int [1024], runStarts = new int [1024], runEnds = new int [1024];
+	private int nRuns = 0;
+	private long nrOfForeground = 0;
+
+	// runs sorted by particle
+	private int [] particleRuns, particleStarts;
+	private int nParticles = 0, currentParticle = -1, currentSize = 0;
+
+	// points of the current particle, only created on request
+	private int [] pointPlanes = new int [1024], pointIndices = new int [1024];
+	private boolean pointsCreated = false;
+
+	/**
+	 * @param mask: segmented channel, voxels > 0.0 are foreground
+	 * @param connectivity: AdipoFloodFiller.CONNECTIVITY_6, CONNECTIVITY_18, or CONNECTIVITY_26
+	 * */
+	public AdipoRunLengthLabeler(AdipoChannel mask, int connectivity){
+		this.mask = mask;
+		width = mask.width;
+		height = mask.height;
+		nSlices = mask.nSlices;
+		nFrames = mask.nFrames;
+		nPlanes = mask.getNPlanes();
+
+		/**
+		 * Collapse the neighbour offsets into neighbouring columns; a column neighbour that is connected via
+		 * a diagonal in y also connects runs that only touch at their ends (extension 1).
+		 * */
+		int [][] offsets = AdipoFloodFiller.getNeighbourOffsets(connectivity);
+		int [][] columns = new int [offsets.length][];
+		int nr = 0;
+		search: for(int n = 0; n < offsets.length; n++) {
+			int [] o = offsets [n];
+			if(o [0] == 0 && o [2] == 0 && o [3] == 0) continue;	// same column, covered by the runs
+			if(o [3] > 0 || (o [3] == 0 && (o [2] > 0 || (o [2] == 0 && o [0] > 0)))) continue;	// succeeding column
+			for(int i = 0; i < nr; i++) {
+				if(columns [i][0] == o [0] && columns [i][2] == o [2] && columns [i][3] == o [3]) {
+					columns [i][1] = Math.max(columns [i][1], Math.abs(o [1]));
+					continue search;
+				}
+			}
+			columns [nr++] = new int [] {o [0], Math.abs(o [1]), o [2], o [3]};
+		}
+		cX = new int [nr];
+		cExtension = new int [nr];
+		cZ = new int [nr];
+		cT = new int [nr];
+		cPlane = new int [nr];
+		for(int i = 0; i < nr; i++) {
+			cX [i] = columns [i][0];
+			cExtension [i] = columns [i][1];
+			cZ [i] = columns [i][2];
+			cT [i] = columns [i][3];
+			cPlane [i] = cT [i] * nSlices + cZ [i];
+		}
+	}
+
+	/**
+	 * Encodes the runs and labels them. Needs to be called before any particle is requested.
+	 * */
+	void label() {
+		if((long) nPlanes * width >= Integer.MAX_VALUE) {
+			throw new IllegalStateException("Image too large for run-length labeling");
+		}
+		int [] columnStarts = new int [nPlanes * width + 1];
+		int column = 0, y0;
+		for(int p = 0; p < nPlanes; p++) {
+			for(int x = 0; x < width; x++) {
+				columnStarts [column] = nRuns;
+				for(int y = 0; y < height; y++) {
+					if(!mask.isForeground(p, y * width + x)) continue;
+					y0 = y;
+					while(y + 1 < height && mask.isForeground(p, (y + 1) * width + x)) y++;
+					addRun(column, y0, y + 1);
+				}
+				column++;
+			}
+		}
+		columnStarts [column] = nRuns;
+
+		// connect runs of neighbouring columns, the root of a particle is always its first run in scan order
+		int [] parent = new int [nRuns];
+		for(int r = 0; r < nRuns; r++) parent [r] = r;
+		int p, x, z, t, nColumn, j, jEnd;
+		for(column = 0; column < nPlanes * width; column++) {
+			if(columnStarts [column] == columnStarts [column+1]) continue;
+			p = column / width;
+			x = column % width;
+			z = p % nSlices;
+			t = p / nSlices;
+			for(int c = 0; c < cX.length; c++) {
+				if(x + cX [c] < 0 || x + cX [c] >= width) continue;
+				if(z + cZ [c] < 0 || t + cT [c] < 0) continue;
+				nColumn = (p + cPlane [c]) * width + x + cX [c];
+				j = columnStarts [nColumn];
+				jEnd = columnStarts [nColumn+1];
+				for(int r = columnStarts [column]; r < columnStarts [column+1] && j < jEnd; r++) {
+					while(j < jEnd && runEnds [j] + cExtension [c] <= runStarts [r]) j++;
+					for(int k = j; k < jEnd && runStarts [k] < runEnds [r] + cExtension [c]; k++) {
+						union(parent, r, k);
+					}
+				}
+			}
+		}
+		columnStarts = null;
+
+		/**
+		 * Sort runs by particle, particles are ordered by their root. Since runs only point to runs
+		 * before them, the parent of a run already holds the particle index when the run is reached.
+		 * */
+		int [] particleOfRun = parent;
+		nParticles = 0;
+		for(int r = 0; r < nRuns; r++) {
+			if(parent [r] == r) {
+				particleOfRun [r] = nParticles++;
+			}else {
+				particleOfRun [r] = particleOfRun [parent [r]];
+			}
+		}
+		particleStarts = new int [nParticles + 1];
+		for(int r = 0; r < nRuns; r++) particleStarts [particleOfRun [r] + 1]++;
+		for(int i = 0; i < nParticles; i++) particleStarts [i+1] += particleStarts [i];
+		int [] cursor = Arrays.copyOf(particleStarts, nParticles);
+		particleRuns = new int [nRuns];
+		for(int r = 0; r < nRuns; r++) {
+			particleRuns [cursor [particleOfRun [r]]++] = r;
+		}
+		currentParticle = -1;
+	}
+
+	private void addRun(int column, int y0, int y1) {
+		if(nRuns == runColumns.length) {
+			runColumns = Arrays.copyOf(runColumns, nRuns * 2);
+			runStarts = Arrays.copyOf(runStarts, nRuns * 2);
+			runEnds = Arrays.copyOf(runEnds, nRuns * 2);
+		}
+		runColumns [nRuns] = column;
+		runStarts [nRuns] = y0;
+		runEnds [nRuns] = y1;
+		nRuns++;
+		nrOfForeground += y1 - y0;
+	}
+
+	/**
+	 * Union-find with path halving; roots are always linked to the smaller root, so runs only point to runs before them
+	 * */
+	private static int find(int [] parent, int r) {
+		while(parent [r] != r) {
+			parent [r] = parent [parent [r]];
+			r = parent [r];
+		}
+		return r;
+	}
+
+	private static void union(int [] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if(a < b) {
+			parent [b] = a;
+		}else if(b < a) {
+			parent [a] = b;
+		}
+	}
+
+	public long countForeground() {
+		return nrOfForeground;
+	}
+
+	public boolean nextParticle() {
+		if(currentParticle < nParticles) currentParticle++;
+		pointsCreated = false;
+		currentSize = 0;
+		if(currentParticle == nParticles) return false;
+		for(int i = particleStarts [currentParticle]; i < particleStarts [currentParticle+1]; i++) {
+			currentSize += runEnds [particleRuns [i]] - runStarts [particleRuns [i]];
+		}
+		return true;
+	}
+
+	public int getParticleSize() {
+		return currentSize;
+	}
+
+	/**
+	 * @return number of runs of the current particle
+	 * */
+	int getNRuns() {
+		return particleStarts [currentParticle+1] - particleStarts [currentParticle];
+	}
+
+	int getRunX(int i) {
+		return runColumns [particleRuns [particleStarts [currentParticle] + i]] % width;
+	}
+
+	int getRunZ(int i) {
+		return (runColumns [particleRuns [particleStarts [currentParticle] + i]] / width) % nSlices;
+	}
+
+	int getRunT(int i) {
+		return (runColumns [particleRuns [particleStarts [currentParticle] + i]] / width) / nSlices;
+	}
+
+	/**
+	 * @return first y of run i
+	 * */
+	int getRunStart(int i) {
+		return runStarts [particleRuns [particleStarts [currentParticle] + i]];
+	}
+
+	/**
+	 * @return last y of run i + 1
+	 * */
+	int getRunEnd(int i) {
+		return runEnds [particleRuns [particleStarts [currentParticle] + i]];
+	}
+
+	/**
+	 * Counts the voxels of the current particle per frame
+	 * @param frameCounter: array with nFrames entries, entries are overwritten
+	 * */
+	void countVoxelsPerFrame(int [] frameCounter) {
+		Arrays.fill(frameCounter, 0);
+		for(int i = 0; i < getNRuns(); i++) {
+			frameCounter [getRunT(i)] += getRunEnd(i) - getRunStart(i);
+		}
+	}
+
+	/**
+	 * @return bounding box of the current particle as {xMin, xMax, yMin, yMax, zMin, zMax}
+	 * */
+	int [] getBoundingBox() {
+		int [] box = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		int x, z;
+		for(int i = 0; i < getNRuns(); i++) {
+			x = getRunX(i);
+			z = getRunZ(i);
+			if(x < box [0])	box [0] = x;
+			if(x > box [1])	box [1] = x;
+			if(getRunStart(i) < box [2])	box [2] = getRunStart(i);
+			if(getRunEnd(i) - 1 > box [3])	box [3] = getRunEnd(i) - 1;
+			if(z < box [4])	box [4] = z;
+			if(z > box [5])	box [5] = z;
+		}
+		return box;
+	}
+
+	private void createPoints() {
+		if(pointsCreated) return;
+		if(pointPlanes.length < currentSize) {
+			pointPlanes = new int [currentSize];
+			pointIndices = new int [currentSize];
+		}
+		int n = 0, plane, x;
+		for(int i = 0; i < getNRuns(); i++) {
+			plane = runColumns [particleRuns [particleStarts [currentParticle] + i]] / width;
+			x = getRunX(i);
+			for(int y = getRunStart(i); y < getRunEnd(i); y++) {
+				pointPlanes [n] = plane;
+				pointIndices [n] = y * width + x;
+				n++;
+			}
+		}
+		pointsCreated = true;
+	}
+
+	public int getX(int i) {
+		createPoints();
+		return pointIndices [i] % width;
+	}
+
+	public int getY(int i) {
+		createPoints();
+		return pointIndices [i] / width;
+	}
+
+	public int getZ(int i) {
+		createPoints();
+		return pointPlanes [i] % nSlices;
+	}
+
+	public int getT(int i) {
+		createPoints();
+		return pointPlanes [i] / nSlices;
+	}
+
+	public void clearParticle() {
+		int plane, x;
+		for(int i = 0; i < getNRuns(); i++) {
+			plane = runColumns [particleRuns [particleStarts [currentParticle] + i]] / width;
+			x = getRunX(i);
+			for(int y = getRunStart(i); y < getRunEnd(i); y++) {
+				mask.clear(plane, y * width + x);
+			}
+		}
+	}
+}
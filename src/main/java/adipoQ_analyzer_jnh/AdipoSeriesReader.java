@@ -0,0 +1,200 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import ij.CompositeImage;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.measure.Calibration;
+import ij.process.ImageProcessor;
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.MetadataTools;
+import loci.formats.meta.IMetadata;
+import loci.plugins.util.ImageProcessorReader;
+import loci.plugins.util.LociPrefs;
+import ome.units.UNITS;
+import ome.units.quantity.Length;
+
+/**
+ * Reads the series of multi-series files (e.g., .czi, .lif, .vsi, pyramidal OME-TIFF) via Bio-Formats, so that each series can be
+ * analyzed as an image of its own without exporting it. Of pyramidal images, a lower resolution level can be read instead of the
+ * full resolution.
+ * 
+ * Only the planes of the opened series and resolution level are read. If opened disk-backed, planes are read when they are accessed
+ * and kept in the plane cache of an AdipoVirtualStack; the file stays open until the stack is closed.
+ * 
+ * This class requires Bio-Formats on the class path; which files are read via Bio-Formats is decided by AdipoQAnalyzerMain.isSeriesFile(...).
+ * */
+class AdipoSeriesReader{
+	/**
+	 * Indices of the information on a series returned by listSeries(...)
+	 * */
+	static final int SERIES = 0, NSERIES = 1, RESOLUTION = 2, WIDTH = 3, HEIGHT = 4, NCHANNELS = 5, NPLANES = 6, BYTESPERPIXEL = 7;
+	
+	/**
+	 * Reads only the metadata of the file
+	 * @param resolution: requested resolution level (0 = full resolution); series with less levels are read at their lowest resolution
+	 * @return for each series of the file {series, number of series, resolution level, width, height, channels, slices * frames, bytes per pixel}
+	 * */
+	static ArrayList<int []> listSeries(String path, int resolution) throws FormatException, IOException {
+		ArrayList<int []> series = new ArrayList<int []>();
+		ImageProcessorReader reader = createReader();
+		try {
+			reader.setId(path);
+			for(int s = 0; s < reader.getSeriesCount(); s++) {
+				reader.setSeries(s);
+				reader.setResolution(Math.min(resolution, reader.getResolutionCount()-1));
+				series.add(new int [] {s, reader.getSeriesCount(), reader.getResolution(), reader.getSizeX(), reader.getSizeY(), reader.getSizeC(), 
+						reader.getSizeZ() * reader.getSizeT(), getBitDepth(reader.getPixelType()) / 8});
+			}
+		}finally {
+			reader.close();
+		}
+		return series;
+	}
+	
+	/**
+	 * Opens one series of the file as hyperstack
+	 * @param resolution: resolution level (0 = full resolution)
+	 * @param cacheBytes: memory for cached planes in bytes if the series shall be read disk-backed, 0 = all planes are read into memory
+	 * */
+	static ImagePlus openSeries(String path, int series, int resolution, long cacheBytes) throws FormatException, IOException {
+		IMetadata meta = MetadataTools.createOMEXMLMetadata();
+		ImageProcessorReader reader = createReader();
+		reader.setMetadataStore(meta);
+		boolean keepOpen = false;
+		try {
+			reader.setId(path);
+			reader.setSeries(series);
+			int fullWidth = reader.getSizeX(), fullHeight = reader.getSizeY();
+			reader.setResolution(Math.min(resolution, reader.getResolutionCount()-1));
+			SeriesStack stack = new SeriesStack(reader);
+			
+			String title = reader.getCurrentFile();
+			if(title.contains(System.getProperty("file.separator"))) title = title.substring(title.lastIndexOf(System.getProperty("file.separator"))+1);
+			if(reader.getSeriesCount() > 1) title += " - series " + (series+1);
+			
+			ImagePlus imp;
+			if(cacheBytes > 0) {
+				imp = new ImagePlus(title, stack);
+			}else {
+				ImageStack loadedStack = new ImageStack(reader.getSizeX(), reader.getSizeY());
+				for(int n = 1; n <= stack.getSize(); n++) {
+					loadedStack.addSlice(stack.getSliceLabel(n), stack.getProcessor(n));
+				}
+				imp = new ImagePlus(title, loadedStack);
+			}
+			imp.setDimensions(reader.getSizeC(), reader.getSizeZ(), reader.getSizeT());
+			imp.setOpenAsHyperStack(true);
+			
+			Calibration cal = imp.getCalibration();
+			Length physicalSize = meta.getPixelsPhysicalSizeX(series);
+			if(physicalSize != null && physicalSize.value(UNITS.MICROMETER) != null) {
+				cal.pixelWidth = physicalSize.value(UNITS.MICROMETER).doubleValue() * fullWidth / reader.getSizeX();
+				cal.setUnit("micron");
+			}
+			physicalSize = meta.getPixelsPhysicalSizeY(series);
+			if(physicalSize != null && physicalSize.value(UNITS.MICROMETER) != null) {
+				cal.pixelHeight = physicalSize.value(UNITS.MICROMETER).doubleValue() * fullHeight / reader.getSizeY();
+			}
+			physicalSize = meta.getPixelsPhysicalSizeZ(series);
+			if(physicalSize != null && physicalSize.value(UNITS.MICROMETER) != null) {
+				cal.pixelDepth = physicalSize.value(UNITS.MICROMETER).doubleValue();
+			}
+			
+			if(cacheBytes > 0) {
+				AdipoVirtualStack.wrap(imp, cacheBytes);
+				keepOpen = true;	// the reader is closed with the disk-backed stack
+			}
+			if(reader.getSizeC() > 1) {
+				imp = new CompositeImage(imp, CompositeImage.COLOR);
+				imp.setCalibration(cal);
+			}
+			return imp;
+		}finally {
+			if(!keepOpen) reader.close();
+		}
+	}
+	
+	private static ImageProcessorReader createReader(){
+		ImageProcessorReader reader = new ImageProcessorReader(new ChannelSeparator(LociPrefs.makeImageReader()));
+		reader.setFlattenedResolutions(false);
+		return reader;
+	}
+	
+	/**
+	 * @return bit depth of the ImageJ processors for a Bio-Formats pixel type
+	 * */
+	private static int getBitDepth(int pixelType){
+		switch(FormatTools.getBytesPerPixel(pixelType)) {
+			case 1: return 8;
+			case 2: return 16;
+			default: return 32;
+		}
+	}
+	
+	/**
+	 * Stack that reads the planes of the current series and resolution level of a reader in ImageJ hyperstack order (czt)
+	 * */
+	private static class SeriesStack extends VirtualStack implements Closeable{
+		private final ImageProcessorReader reader;
+		private final int nChannels, nSlices;
+		
+		SeriesStack(ImageProcessorReader reader){
+			super(reader.getSizeX(), reader.getSizeY(), null, null);
+			this.reader = reader;
+			nChannels = reader.getSizeC();
+			nSlices = reader.getSizeZ();
+			setBitDepth(AdipoSeriesReader.getBitDepth(reader.getPixelType()));
+		}
+		
+		public int getSize() {
+			return reader.getImageCount();
+		}
+		
+		public String getSliceLabel(int n) {
+			return null;
+		}
+		
+		public synchronized ImageProcessor getProcessor(int n) {
+			int c = (n-1) % nChannels, z = ((n-1) / nChannels) % nSlices, t = (n-1) / (nChannels * nSlices);
+			try {
+				return reader.openProcessors(reader.getIndex(z, c, t)) [0];
+			}catch(FormatException e) {
+				throw new RuntimeException("Plane " + n + " could not be read from " + reader.getCurrentFile(), e);
+			}catch(IOException e) {
+				throw new RuntimeException("Plane " + n + " could not be read from " + reader.getCurrentFile(), e);
+			}
+		}
+		
+		public synchronized void close() throws IOException {
+			reader.close();
+		}
+	}
+}
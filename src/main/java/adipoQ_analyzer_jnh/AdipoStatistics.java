@@ -0,0 +1,102 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+/**
+ * Single-pass accumulator for count, sum, min, max, and variance of intensity values (Welford's algorithm).
+ * Accumulators of disjoint parts of an object (e.g., chunks or tiles) can be merged exactly (Chan et al.).
+ * */
+class AdipoStatistics{
+	private long count = 0;
+	private double sum = 0.0, mean = 0.0, m2 = 0.0;
+	private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+	void add(double value) {
+		count++;
+		sum += value;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if(value < min)	min = value;
+		if(value > max)	max = value;
+	}
+
+	/**
+	 * Adds the values accumulated in other to this accumulator
+	 * */
+	void merge(AdipoStatistics other) {
+		if(other.count == 0) return;
+		if(count == 0) {
+			count = other.count;
+			sum = other.sum;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+			return;
+		}
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * ((double) other.count / n);
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		sum += other.sum;
+		count = n;
+		if(other.min < min)	min = other.min;
+		if(other.max > max)	max = other.max;
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	double getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return sum / count, NaN if empty
+	 * */
+	double getAverage() {
+		return sum / count;
+	}
+
+	/**
+	 * @return sample standard deviation (n-1), NaN if count is 1, -0.0 if empty
+	 * */
+	double getSD() {
+		return Math.sqrt(m2 / (count - 1.0));
+	}
+
+	/**
+	 * @return minimum, +Infinity if empty
+	 * */
+	double getMin() {
+		return min;
+	}
+
+	/**
+	 * @return maximum, -Infinity if empty
+	 * */
+	double getMax() {
+		return max;
+	}
+}
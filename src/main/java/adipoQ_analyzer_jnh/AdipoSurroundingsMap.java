@@ -0,0 +1,96 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.util.Arrays;
+
+/**
+ * Surroundings of all objects of a 2D image from one global distance map: each pixel that lies within the outline of no object
+ * is assigned to the nearest object (multi-source distance transform) if it is closer than the reference distance.
+ * Objects are given by all pixels within their outlines, so that holes and rejected particles within an outline are no surroundings.
+ * The resulting surroundings are exclusive, i.e., each pixel is counted for one object only.
+ * */
+class AdipoSurroundingsMap{
+	private final int width, height;
+	private final int [] labels;	// index = y * width + x, 0 = no object
+	private int nObjects = 0;
+
+	public AdipoSurroundingsMap(int width, int height){
+		this.width = width;
+		this.height = height;
+		labels = new int [width * height];
+	}
+
+	/**
+	 * Assigns the pixel to the object
+	 * @param id: 1 <= id, ids should be assigned consecutively
+	 * */
+	void setObject(int x, int y, int id) {
+		labels [y * width + x] = id;
+		if(id > nObjects) nObjects = id;
+	}
+
+	int getObject(int x, int y) {
+		return labels [y * width + x];
+	}
+
+	/**
+	 * @param calX, calY: pixel width and height
+	 * @param refDist: reference distance (calibrated), pixels with a distance below refDist to the nearest object pixel are included
+	 * @return surroundings points of each object, index = id - 1; points are listed in the order x, y
+	 * */
+	AdipoParticle [] getSurroundings(double calX, double calY, double refDist) {
+		double [] grid = new double [labels.length];
+		int [] nearest = Arrays.copyOf(labels, labels.length);
+		for(int i = 0; i < labels.length; i++) {
+			if(labels [i] != 0) {
+				grid [i] = 0.0;
+			}else {
+				grid [i] = Double.POSITIVE_INFINITY;
+			}
+		}
+		new AdipoDistanceTransform().transform(grid, nearest, width, height, 1, calX, calY, 1.0);
+
+		int [] counts = new int [nObjects];
+		for(int i = 0; i < labels.length; i++) {
+			if(labels [i] == 0 && Math.sqrt(grid [i]) < refDist) {
+				counts [nearest [i] - 1]++;
+			}else {
+				nearest [i] = 0;
+			}
+		}
+		grid = null;
+
+		AdipoParticle [] surroundings = new AdipoParticle [nObjects];
+		for(int o = 0; o < nObjects; o++) {
+			surroundings [o] = new AdipoParticle(counts [o], null);
+		}
+		for(int x = 0; x < width; x++) {
+			for(int y = 0; y < height; y++) {
+				if(nearest [y * width + x] != 0) {
+					surroundings [nearest [y * width + x] - 1].add(x, y, 0, 0);
+				}
+			}
+		}
+		return surroundings;
+	}
+}
@@ -0,0 +1,78 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output text file (results and metadata) whose lines are written straight to a buffered file instead of being collected in memory,
+ * optionally gzip-compressed. No AWT components are created, so output files can also be written in headless mode. 
+ * Lines are written in the same way as by TextPanel.saveAs (platform encoding and line separator).
+ * */
+class AdipoTableWriter{
+	static final String GZIP_SUFFIX = ".gz";
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	
+	private final Writer writer;
+	private final String path;
+	
+	/**
+	 * @param path: path of the file; if gzip is true, GZIP_SUFFIX is appended
+	 * */
+	public AdipoTableWriter(String path, boolean gzip) throws IOException {
+		this.path = gzip ? path + GZIP_SUFFIX : path;
+		OutputStream out = new FileOutputStream(this.path);
+		if(gzip) {
+			out = new GZIPOutputStream(out, 65536);
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(out), 65536);
+	}
+	
+	/**
+	 * @return the path of the written file
+	 * */
+	String getPath() {
+		return path;
+	}
+	
+	void append(CharSequence line) throws IOException {
+		writer.append(line);
+		writer.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Writes the buffered lines to the file, so that an uncompressed file can be read while lines are still appended
+	 * */
+	void flush() throws IOException {
+		writer.flush();
+	}
+	
+	void close() throws IOException {
+		writer.close();
+	}
+}
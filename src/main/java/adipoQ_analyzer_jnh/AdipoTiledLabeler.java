@@ -0,0 +1,559 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.gui.Wand;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Particle detection in the segmented channel of a 2D image that is processed tile by tile, so that the particle analyzer and its binary
+ * full-size copy of the channel are not needed. The image itself is held in memory as a whole: tiling reduces the number of full-size
+ * working copies, it does not make images addressable that do not fit into memory.
+ *
+ * Tiles are labeled concurrently (connected foreground pixels or, in label images, connected pixels of the same value); only the labels of the
+ * border rows and columns of each tile are kept. Components crossing tile borders are merged through label equivalences at the seams.
+ * Each component is then outlined with the wand on a crop of its bounding box. Components are selected and ordered like in the untiled
+ * detection (particle analyzer for binary masks, wand tracing in the order x, y for label images), so the same particle outlines are returned.
+ * */
+class AdipoTiledLabeler{
+	private final AdipoChannel mask;
+	private final int width, height, tileSize, nTilesX, nTilesY;
+	private final boolean labelImage, eightConnected;
+
+	private Tile [] tiles;
+	private int [] parent;
+
+	// components, sorted by the key of their first pixel in scan order
+	private int nComponents = 0;
+	private long [] firstKeys;
+	private int [] minX, minY, maxX, maxY, sizes;
+	private long nrOfPoints = 0;
+
+	private static class Tile{
+		int x0, y0, x1, y1;	// x1, y1 exclusive
+		int offset, nLabels;
+		long [] firstKeys;
+		int [] minX, minY, maxX, maxY, sizes;
+		int [] top, bottom, left, right;	// labels of the border pixels, -1 = background
+	}
+
+	/**
+	 * @param mask: segmented channel of a 2D image, pixels > 0.0 are foreground
+	 * @param tileSize: width and height of the tiles in pixels
+	 * @param labelImage: true if objects are regions of the same value, false if objects are connected foreground pixels
+	 * @param eightConnected: true if pixels touching at corners are connected
+	 * */
+	public AdipoTiledLabeler(AdipoChannel mask, int tileSize, boolean labelImage, boolean eightConnected){
+		this.mask = mask;
+		width = mask.width;
+		height = mask.height;
+		this.tileSize = Math.max(1, tileSize);
+		this.labelImage = labelImage;
+		this.eightConnected = eightConnected;
+		nTilesX = (width + this.tileSize - 1) / this.tileSize;
+		nTilesY = (height + this.tileSize - 1) / this.tileSize;
+	}
+
+	/**
+	 * Key of a pixel in scan order: y, x for binary masks (particle analyzer), x, y for label images
+	 * */
+	private long getKey(int x, int y) {
+		if(labelImage) return (long) x * height + y;
+		return (long) y * width + x;
+	}
+
+	private int getKeyX(long key) {
+		if(labelImage) return (int) (key / height);
+		return (int) (key % width);
+	}
+
+	private int getKeyY(long key) {
+		if(labelImage) return (int) (key % height);
+		return (int) (key / width);
+	}
+
+	/**
+	 * @return true if the foreground pixels at index1 and index2 belong to the same object
+	 * */
+	private boolean isConnected(int index1, int index2) {
+		if(!labelImage) return true;
+		return mask.getValue(0, index1) == mask.getValue(0, index2);
+	}
+
+	/**
+	 * Labels all tiles and merges the components at the seams. Needs to be called before the particles are requested.
+	 * */
+	void label(int nThreads) {
+		tiles = new Tile [nTilesX * nTilesY];
+		for(int ty = 0; ty < nTilesY; ty++) {
+			for(int tx = 0; tx < nTilesX; tx++) {
+				Tile tile = new Tile();
+				tile.x0 = tx * tileSize;
+				tile.y0 = ty * tileSize;
+				tile.x1 = Math.min(width, tile.x0 + tileSize);
+				tile.y1 = Math.min(height, tile.y0 + tileSize);
+				tiles [ty * nTilesX + tx] = tile;
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, nThreads));
+		try {
+			ArrayList<ForkJoinTask<Tile>> tasks = new ArrayList<ForkJoinTask<Tile>>(tiles.length);
+			for(int t = 0; t < tiles.length; t++) {
+				final Tile tile = tiles [t];
+				tasks.add(pool.submit(new Callable<Tile>() {
+					public Tile call() {
+						labelTile(tile);
+						return tile;
+					}
+				}));
+			}
+			for(int t = 0; t < tasks.size(); t++) {
+				try {
+					tasks.get(t).get();
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Labeling of tiles was interrupted", e);
+				}catch(ExecutionException e) {
+					throw new RuntimeException("Labeling of tile " + (t+1) + " failed", e.getCause());
+				}
+			}
+		}finally {
+			pool.shutdownNow();
+		}
+
+		long nLabels = 0;
+		for(int t = 0; t < tiles.length; t++) {
+			tiles [t].offset = (int) nLabels;
+			nLabels += tiles [t].nLabels;
+		}
+		if(nLabels > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Too many components for tiled labeling (" + nLabels + ")");
+		}
+		parent = new int [(int) nLabels];
+		for(int i = 0; i < parent.length; i++) {
+			parent [i] = i;
+		}
+		mergeSeams();
+		collectComponents();
+		tiles = null;
+		parent = null;
+	}
+
+	/**
+	 * Two-pass labeling of a tile with a local union-find; keeps the component properties and the labels of the border pixels
+	 * */
+	private void labelTile(Tile tile) {
+		int tw = tile.x1 - tile.x0, th = tile.y1 - tile.y0;
+		int [] labels = new int [tw * th];
+		int [] localParent = new int [64];
+		int nProvisional = 0;
+		int index, label, neighbour;
+		for(int ly = 0; ly < th; ly++) {
+			for(int lx = 0; lx < tw; lx++) {
+				index = (tile.y0 + ly) * width + tile.x0 + lx;
+				if(!mask.isForeground(0, index)) continue;
+				label = 0;
+				if(lx > 0) {
+					neighbour = labels [ly * tw + lx - 1];
+					if(neighbour != 0 && isConnected(index, index - 1)) label = join(localParent, label, neighbour);
+				}
+				if(ly > 0) {
+					neighbour = labels [(ly - 1) * tw + lx];
+					if(neighbour != 0 && isConnected(index, index - width)) label = join(localParent, label, neighbour);
+					if(eightConnected && lx > 0) {
+						neighbour = labels [(ly - 1) * tw + lx - 1];
+						if(neighbour != 0 && isConnected(index, index - width - 1)) label = join(localParent, label, neighbour);
+					}
+					if(eightConnected && lx < tw - 1) {
+						neighbour = labels [(ly - 1) * tw + lx + 1];
+						if(neighbour != 0 && isConnected(index, index - width + 1)) label = join(localParent, label, neighbour);
+					}
+				}
+				if(label == 0) {
+					nProvisional++;
+					if(nProvisional == localParent.length) {
+						localParent = Arrays.copyOf(localParent, localParent.length * 2);
+					}
+					localParent [nProvisional] = nProvisional;
+					label = nProvisional;
+				}
+				labels [ly * tw + lx] = label;
+			}
+		}
+
+		// renumber the roots consecutively from 0
+		int [] compact = new int [nProvisional + 1];
+		int n = 0;
+		for(int l = 1; l <= nProvisional; l++) {
+			if(find(localParent, l) == l) compact [l] = n++;
+		}
+		for(int l = 1; l <= nProvisional; l++) {
+			compact [l] = compact [find(localParent, l)];
+		}
+		localParent = null;
+
+		tile.nLabels = n;
+		tile.firstKeys = new long [n];
+		tile.minX = new int [n];
+		tile.minY = new int [n];
+		tile.maxX = new int [n];
+		tile.maxY = new int [n];
+		tile.sizes = new int [n];
+		Arrays.fill(tile.firstKeys, Long.MAX_VALUE);
+		Arrays.fill(tile.minX, Integer.MAX_VALUE);
+		Arrays.fill(tile.minY, Integer.MAX_VALUE);
+		Arrays.fill(tile.maxX, -1);
+		Arrays.fill(tile.maxY, -1);
+		int x, y;
+		long key;
+		for(int ly = 0; ly < th; ly++) {
+			for(int lx = 0; lx < tw; lx++) {
+				if(labels [ly * tw + lx] == 0) continue;
+				label = compact [labels [ly * tw + lx]];
+				labels [ly * tw + lx] = label + 1;
+				x = tile.x0 + lx;
+				y = tile.y0 + ly;
+				key = getKey(x, y);
+				if(key < tile.firstKeys [label]) tile.firstKeys [label] = key;
+				if(x < tile.minX [label]) tile.minX [label] = x;
+				if(x > tile.maxX [label]) tile.maxX [label] = x;
+				if(y < tile.minY [label]) tile.minY [label] = y;
+				if(y > tile.maxY [label]) tile.maxY [label] = y;
+				tile.sizes [label]++;
+			}
+		}
+
+		tile.top = new int [tw];
+		tile.bottom = new int [tw];
+		for(int lx = 0; lx < tw; lx++) {
+			tile.top [lx] = labels [lx] - 1;
+			tile.bottom [lx] = labels [(th - 1) * tw + lx] - 1;
+		}
+		tile.left = new int [th];
+		tile.right = new int [th];
+		for(int ly = 0; ly < th; ly++) {
+			tile.left [ly] = labels [ly * tw] - 1;
+			tile.right [ly] = labels [ly * tw + tw - 1] - 1;
+		}
+	}
+
+	private static int find(int [] parents, int label) {
+		while(parents [label] != label) {
+			parents [label] = parents [parents [label]];
+			label = parents [label];
+		}
+		return label;
+	}
+
+	/**
+	 * Unites the sets of label and other
+	 * @param label: 0 if the pixel has no label yet
+	 * @return root of the united set
+	 * */
+	private static int join(int [] parents, int label, int other) {
+		other = find(parents, other);
+		if(label == 0) return other;
+		label = find(parents, label);
+		if(label == other) return label;
+		if(other < label) {
+			parents [label] = other;
+			return other;
+		}
+		parents [other] = label;
+		return label;
+	}
+
+	private void unite(int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if(a < b) {
+			parent [b] = a;
+		}else if(b < a) {
+			parent [a] = b;
+		}
+	}
+
+	/**
+	 * @return global label of a pixel on the border of its tile, -1 for background
+	 * */
+	private int getBorderLabel(int x, int y) {
+		Tile tile = tiles [(y / tileSize) * nTilesX + x / tileSize];
+		int label;
+		if(x == tile.x0) {
+			label = tile.left [y - tile.y0];
+		}else if(x == tile.x1 - 1) {
+			label = tile.right [y - tile.y0];
+		}else if(y == tile.y0) {
+			label = tile.top [x - tile.x0];
+		}else {
+			label = tile.bottom [x - tile.x0];
+		}
+		if(label < 0) return -1;
+		return tile.offset + label;
+	}
+
+	/**
+	 * Unites the components of neighbouring pixels on both sides of the right and bottom border of each tile
+	 * */
+	private void mergeSeams() {
+		int dMax = eightConnected ? 1 : 0;
+		int a, b;
+		for(int t = 0; t < tiles.length; t++) {
+			Tile tile = tiles [t];
+			if(tile.x1 < width) {
+				for(int y = tile.y0; y < tile.y1; y++) {
+					a = getBorderLabel(tile.x1 - 1, y);
+					if(a < 0) continue;
+					for(int d = -dMax; d <= dMax; d++) {
+						if(y + d < 0 || y + d >= height) continue;
+						b = getBorderLabel(tile.x1, y + d);
+						if(b >= 0 && isConnected(y * width + tile.x1 - 1, (y + d) * width + tile.x1)) unite(a, b);
+					}
+				}
+			}
+			if(tile.y1 < height) {
+				for(int x = tile.x0; x < tile.x1; x++) {
+					a = getBorderLabel(x, tile.y1 - 1);
+					if(a < 0) continue;
+					for(int d = -dMax; d <= dMax; d++) {
+						if(x + d < 0 || x + d >= width) continue;
+						b = getBorderLabel(x + d, tile.y1);
+						if(b >= 0 && isConnected((tile.y1 - 1) * width + x, tile.y1 * width + x + d)) unite(a, b);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Combines the properties of all labels of a component and sorts the components by their first pixel in scan order
+	 * */
+	private void collectComponents() {
+		int [] roots = new int [parent.length];
+		Arrays.fill(roots, -1);
+		int root;
+		for(int i = 0; i < parent.length; i++) {
+			root = find(parent, i);
+			if(roots [root] < 0) roots [root] = nComponents++;
+			roots [i] = roots [root];
+		}
+
+		long [] keys = new long [nComponents];
+		int [] cMinX = new int [nComponents], cMinY = new int [nComponents], cMaxX = new int [nComponents], 
+				cMaxY = new int [nComponents], cSizes = new int [nComponents];
+		Arrays.fill(keys, Long.MAX_VALUE);
+		Arrays.fill(cMinX, Integer.MAX_VALUE);
+		Arrays.fill(cMinY, Integer.MAX_VALUE);
+		Arrays.fill(cMaxX, -1);
+		Arrays.fill(cMaxY, -1);
+		int c;
+		for(int t = 0; t < tiles.length; t++) {
+			Tile tile = tiles [t];
+			for(int l = 0; l < tile.nLabels; l++) {
+				c = roots [tile.offset + l];
+				keys [c] = Math.min(keys [c], tile.firstKeys [l]);
+				cMinX [c] = Math.min(cMinX [c], tile.minX [l]);
+				cMinY [c] = Math.min(cMinY [c], tile.minY [l]);
+				cMaxX [c] = Math.max(cMaxX [c], tile.maxX [l]);
+				cMaxY [c] = Math.max(cMaxY [c], tile.maxY [l]);
+				cSizes [c] += tile.sizes [l];
+			}
+			tiles [t] = null;
+		}
+		roots = null;
+
+		// keys are below 2^31 (pixels of one plane), so the key and the component index can be sorted as one long
+		long [] order = new long [nComponents];
+		for(int i = 0; i < nComponents; i++) {
+			order [i] = (keys [i] << 31) | i;
+		}
+		Arrays.sort(order);
+		firstKeys = new long [nComponents];
+		minX = new int [nComponents];
+		minY = new int [nComponents];
+		maxX = new int [nComponents];
+		maxY = new int [nComponents];
+		sizes = new int [nComponents];
+		for(int i = 0; i < nComponents; i++) {
+			c = (int) (order [i] & 0x7FFFFFFFL);
+			firstKeys [i] = keys [c];
+			minX [i] = cMinX [c];
+			minY [i] = cMinY [c];
+			maxX [i] = cMaxX [c];
+			maxY [i] = cMaxY [c];
+			sizes [i] = cSizes [c];
+			nrOfPoints += cSizes [c];
+		}
+	}
+
+	int getNComponents() {
+		return nComponents;
+	}
+
+	/**
+	 * @return number of foreground pixels
+	 * */
+	long getNrOfPoints() {
+		return nrOfPoints;
+	}
+
+	/**
+	 * Outlines the components in scan order and selects them like the untiled detection:
+	 * For binary masks like the particle analyzer - with 4-connectivity, holes are included and components within the outline of an earlier
+	 * component are skipped; particles touching the image border and particles below the minimum size are left out.
+	 * For label images like the wand tracing - components within the outline of an earlier component are skipped.
+	 * @param minSize: minimum particle size in pixels (binary masks only)
+	 * @param excludeEdgeParticles: leave out particles touching the image border (binary masks only)
+	 * @return outlines of the particles in the order of the untiled detection
+	 * */
+	ArrayList<PolygonRoi> getParticleRois(double minSize, boolean excludeEdgeParticles) {
+		ArrayList<PolygonRoi> rois = new ArrayList<PolygonRoi>();
+		boolean includeHoles = labelImage || !eightConnected;
+		boolean [] skipped = new boolean [nComponents];
+		PolygonRoi roi;
+		Rectangle bounds;
+		ImageProcessor outlineMask;
+		long area;
+		for(int i = 0; i < nComponents; i++) {
+			if(skipped [i]) continue;
+			roi = outline(i);
+			bounds = roi.getBounds();
+			outlineMask = roi.getMask();
+			if(includeHoles) {
+				skipEnclosedComponents(i, bounds, outlineMask, skipped);
+			}
+			if(labelImage) {
+				rois.add(roi);
+				continue;
+			}
+
+			if(excludeEdgeParticles && (bounds.x == 0 || bounds.y == 0 || bounds.x + bounds.width == width || bounds.y + bounds.height == height)) {
+				continue;
+			}
+			if(includeHoles) {
+				area = countPixels(bounds, outlineMask);
+			}else {
+				area = sizes [i];
+			}
+			if(area < minSize) continue;
+			rois.add(roi);
+		}
+		return rois;
+	}
+
+	private static long countPixels(Rectangle bounds, ImageProcessor outlineMask) {
+		if(outlineMask == null) return (long) bounds.width * bounds.height;
+		long count = 0;
+		for(int y = 0; y < bounds.height; y++) {
+			for(int x = 0; x < bounds.width; x++) {
+				if(outlineMask.get(x, y) != 0) count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Marks all later components whose first pixel lies within the outline of component i as skipped
+	 * */
+	private void skipEnclosedComponents(int i, Rectangle bounds, ImageProcessor outlineMask, boolean [] skipped) {
+		int lines = labelImage ? bounds.width : bounds.height;
+		long fromKey, toKey;
+		int j, x, y;
+		for(int l = 0; l < lines; l++) {
+			if(labelImage) {
+				fromKey = getKey(bounds.x + l, bounds.y);
+				toKey = getKey(bounds.x + l, bounds.y + bounds.height - 1);
+			}else {
+				fromKey = getKey(bounds.x, bounds.y + l);
+				toKey = getKey(bounds.x + bounds.width - 1, bounds.y + l);
+			}
+			j = Arrays.binarySearch(firstKeys, i + 1, nComponents, fromKey);
+			if(j < 0) j = -j - 1;
+			for(; j < nComponents && firstKeys [j] <= toKey; j++) {
+				x = getKeyX(firstKeys [j]);
+				y = getKeyY(firstKeys [j]);
+				if(outlineMask == null || outlineMask.get(x - bounds.x, y - bounds.y) != 0) {
+					skipped [j] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Traces the outline of component i with the wand on a crop of its bounding box that only contains the component,
+	 * with the same wand mode and start pixel as the untiled detection.
+	 * */
+	private PolygonRoi outline(int i) {
+		int cropX = minX [i] - 1, cropY = minY [i] - 1;
+		int cropWidth = maxX [i] - minX [i] + 3, cropHeight = maxY [i] - minY [i] + 3;
+		ByteProcessor crop = new ByteProcessor(cropWidth, cropHeight);
+		int startX = getKeyX(firstKeys [i]), startY = getKeyY(firstKeys [i]);
+
+		// flood fill the component from its first pixel within its bounding box
+		int [] stack = new int [Math.max(16, Math.min(sizes [i], 1 << 20))];
+		int stackSize = 0;
+		stack [stackSize++] = startY * width + startX;
+		crop.set(startX - cropX, startY - cropY, 255);
+		int index, x, y, nx, ny;
+		while(stackSize > 0) {
+			index = stack [--stackSize];
+			x = index % width;
+			y = index / width;
+			for(ny = y - 1; ny <= y + 1; ny++) {
+				for(nx = x - 1; nx <= x + 1; nx++) {
+					if(nx < minX [i] || nx > maxX [i] || ny < minY [i] || ny > maxY [i]) continue;
+					if(nx != x && ny != y && !eightConnected) continue;
+					if(crop.get(nx - cropX, ny - cropY) != 0) continue;
+					if(!mask.isForeground(0, ny * width + nx) || !isConnected(index, ny * width + nx)) continue;
+					crop.set(nx - cropX, ny - cropY, 255);
+					if(stackSize == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+					stack [stackSize++] = ny * width + nx;
+				}
+			}
+		}
+		stack = null;
+
+		Wand wand = new Wand(crop);
+		if(labelImage) {
+			wand.autoOutline(startX - cropX, startY - cropY, 0.0, eightConnected ? Wand.EIGHT_CONNECTED : Wand.FOUR_CONNECTED);
+		}else {
+			wand.autoOutline(startX - cropX, startY - cropY, 255.0, 255.0, eightConnected ? Wand.LEGACY_MODE : Wand.FOUR_CONNECTED);
+		}
+		int [] xPoints = new int [wand.npoints], yPoints = new int [wand.npoints];
+		for(int p = 0; p < wand.npoints; p++) {
+			xPoints [p] = wand.xpoints [p] + cropX;
+			yPoints [p] = wand.ypoints [p] + cropY;
+		}
+		return new PolygonRoi(xPoints, yPoints, wand.npoints, Wand.allPoints() ? Roi.FREEROI : Roi.TRACED_ROI);
+	}
+}
@@ -0,0 +1,228 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+
+/**
+ * Exclusive surroundings of the objects of a 2D image (see AdipoSurroundingsMap), determined tile by tile.
+ * 
+ * Each tile is extended by a halo of at least the reference distance, so all object pixels closer than the reference distance to a pixel
+ * of the tile lie within the tile and its halo. The distance transform of the extended tile therefore assigns the pixels of the tile
+ * to the same objects as one global distance map, while only the buffers of a few tiles are held in memory.
+ * */
+class AdipoTiledSurroundings{
+	private final int width, height, tileSize, halo, nTilesX, nTilesY;
+	private final double calX, calY, refDist;
+
+	private static class TileResult{
+		int size = 0;
+		int [] objects = new int [64];
+		long [] keys = new long [64];
+
+		void add(int object, long key) {
+			if(size == objects.length) {
+				objects = Arrays.copyOf(objects, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			objects [size] = object;
+			keys [size] = key;
+			size++;
+		}
+	}
+
+	/**
+	 * @param calX, calY: pixel width and height
+	 * @param refDist: reference distance (calibrated), pixels with a distance below refDist to the nearest object pixel are included
+	 * */
+	public AdipoTiledSurroundings(int width, int height, int tileSize, double calX, double calY, double refDist){
+		this.width = width;
+		this.height = height;
+		this.tileSize = Math.max(1, tileSize);
+		this.calX = calX;
+		this.calY = calY;
+		this.refDist = refDist;
+		halo = (int) Math.min(Math.max(width, height), Math.ceil(refDist / Math.min(calX, calY)) + 1);
+		nTilesX = (width + this.tileSize - 1) / this.tileSize;
+		nTilesY = (height + this.tileSize - 1) / this.tileSize;
+	}
+
+	/**
+	 * @param objects: outlines of the objects, index = id - 1; an object consists of all pixels within its outline,
+	 * pixels within the outlines of several objects belong to the object with the highest id
+	 * @return surroundings points of each object, index = id - 1; points are listed in the order x, y
+	 * */
+	AdipoParticle [] getSurroundings(final Roi [] objects, int nThreads) {
+		// objects overlapping each tile including its halo, in the order of their ids
+		int [] tileStarts = new int [nTilesX * nTilesY + 1];
+		Rectangle [] bounds = new Rectangle [objects.length];
+		for(int o = 0; o < objects.length; o++) {
+			bounds [o] = objects [o].getBounds();
+			for(int ty = getFirstTile(bounds [o].y); ty <= getLastTile(bounds [o].y + bounds [o].height - 1, height); ty++) {
+				for(int tx = getFirstTile(bounds [o].x); tx <= getLastTile(bounds [o].x + bounds [o].width - 1, width); tx++) {
+					tileStarts [ty * nTilesX + tx + 1]++;
+				}
+			}
+		}
+		for(int t = 0; t < nTilesX * nTilesY; t++) {
+			tileStarts [t+1] += tileStarts [t];
+		}
+		final int [] tileObjects = new int [tileStarts [nTilesX * nTilesY]];
+		final int [] starts = tileStarts;
+		int [] filled = Arrays.copyOf(tileStarts, nTilesX * nTilesY);
+		for(int o = 0; o < objects.length; o++) {
+			for(int ty = getFirstTile(bounds [o].y); ty <= getLastTile(bounds [o].y + bounds [o].height - 1, height); ty++) {
+				for(int tx = getFirstTile(bounds [o].x); tx <= getLastTile(bounds [o].x + bounds [o].width - 1, width); tx++) {
+					tileObjects [filled [ty * nTilesX + tx]++] = o;
+				}
+			}
+		}
+		filled = null;
+		final Rectangle [] objectBounds = bounds;
+
+		int [] counts = new int [objects.length];
+		long [][] keys = new long [objects.length][];
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, nThreads));
+		try {
+			ArrayList<ForkJoinTask<TileResult>> tasks = new ArrayList<ForkJoinTask<TileResult>>(nTilesX * nTilesY);
+			for(int t = 0; t < nTilesX * nTilesY; t++) {
+				final int tile = t;
+				tasks.add(pool.submit(new Callable<TileResult>() {
+					public TileResult call() {
+						return processTile(tile, objects, objectBounds, tileObjects, starts [tile], starts [tile+1]);
+					}
+				}));
+			}
+
+			TileResult result;
+			int o;
+			for(int t = 0; t < tasks.size(); t++) {
+				try {
+					result = tasks.get(t).get();
+				}catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Determining surroundings was interrupted", e);
+				}catch(ExecutionException e) {
+					throw new RuntimeException("Determining surroundings of tile " + (t+1) + " failed", e.getCause());
+				}
+				tasks.set(t, null);
+				for(int i = 0; i < result.size; i++) {
+					o = result.objects [i];
+					if(keys [o] == null) {
+						keys [o] = new long [64];
+					}else if(counts [o] == keys [o].length) {
+						keys [o] = Arrays.copyOf(keys [o], counts [o] * 2);
+					}
+					keys [o][counts [o]++] = result.keys [i];
+				}
+			}
+		}finally {
+			pool.shutdownNow();
+		}
+
+		// list the points in the order x, y like the global map
+		AdipoParticle [] surroundings = new AdipoParticle [objects.length];
+		for(int o = 0; o < objects.length; o++) {
+			surroundings [o] = new AdipoParticle(counts [o], null);
+			if(keys [o] == null) continue;
+			Arrays.sort(keys [o], 0, counts [o]);
+			for(int i = 0; i < counts [o]; i++) {
+				surroundings [o].add((int) (keys [o][i] / height), (int) (keys [o][i] % height), 0, 0);
+			}
+			keys [o] = null;
+		}
+		return surroundings;
+	}
+
+	/**
+	 * @return index of the first tile whose extended area contains the position
+	 * */
+	private int getFirstTile(int position) {
+		return Math.max(0, position - halo) / tileSize;
+	}
+
+	/**
+	 * @return index of the last tile whose extended area contains the position
+	 * */
+	private int getLastTile(int position, int size) {
+		return Math.min(size - 1, position + halo) / tileSize;
+	}
+
+	private TileResult processTile(int tile, Roi [] objects, Rectangle [] bounds, int [] tileObjects, int from, int to) {
+		int x0 = (tile % nTilesX) * tileSize, y0 = (tile / nTilesX) * tileSize;
+		int x1 = Math.min(width, x0 + tileSize), y1 = Math.min(height, y0 + tileSize);
+		int rx0 = Math.max(0, x0 - halo), ry0 = Math.max(0, y0 - halo);
+		int rx1 = Math.min(width, x1 + halo), ry1 = Math.min(height, y1 + halo);
+		int rw = rx1 - rx0, rh = ry1 - ry0;
+
+		int [] labels = new int [rw * rh];
+		int o;
+		Rectangle r;
+		ImageProcessor outlineMask;
+		for(int i = from; i < to; i++) {
+			o = tileObjects [i];
+			r = bounds [o];
+			synchronized(objects [o]) {
+				outlineMask = objects [o].getMask();
+			}
+			for(int y = Math.max(ry0, r.y); y < Math.min(ry1, r.y + r.height); y++) {
+				for(int x = Math.max(rx0, r.x); x < Math.min(rx1, r.x + r.width); x++) {
+					if(outlineMask != null && outlineMask.get(x - r.x, y - r.y) == 0) continue;
+					labels [(y - ry0) * rw + x - rx0] = o + 1;
+				}
+			}
+		}
+
+		TileResult result = new TileResult();
+		if(to == from) return result;
+
+		double [] grid = new double [labels.length];
+		int [] nearest = Arrays.copyOf(labels, labels.length);
+		for(int i = 0; i < labels.length; i++) {
+			if(labels [i] != 0) {
+				grid [i] = 0.0;
+			}else {
+				grid [i] = Double.POSITIVE_INFINITY;
+			}
+		}
+		new AdipoDistanceTransform().transform(grid, nearest, rw, rh, 1, calX, calY, 1.0, rx0, ry0, 0);
+
+		int i;
+		for(int x = x0; x < x1; x++) {
+			for(int y = y0; y < y1; y++) {
+				i = (y - ry0) * rw + x - rx0;
+				if(labels [i] == 0 && Math.sqrt(grid [i]) < refDist) {
+					result.add(nearest [i] - 1, (long) x * height + y);
+				}
+			}
+		}
+		return result;
+	}
+}
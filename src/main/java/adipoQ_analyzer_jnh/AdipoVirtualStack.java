@@ -0,0 +1,211 @@
+package adipoQ_analyzer_jnh;
+
+/** ===============================================================================
+* AdipoQ Analyzer Version 0.1.1
+*
+* This program is free software; you can redistribute it and/or
+* modify it under the terms of the GNU General Public License
+* as published by the Free Software Foundation (http://www.gnu.org/licenses/gpl.txt )
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* See the GNU General Public License for more details.
+*
+* Copyright (C) Jan Niklas Hansen
+* Date: October 17, 2026 (This Version: October 17, 2026)
+*
+* For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
+* =============================================================================== */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.plugin.FileInfoVirtualStack;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Disk-backed stack of a TIFF file or of a series read via Bio-Formats (AdipoSeriesReader) for images that do not fit into memory. 
+ * Planes are decoded from the file when they are requested and kept in a cache of limited size; the least recently used plane is dropped first.
+ * 
+ * Planes that are pinned (e.g., the segmented channel, which is modified during reconstruction) or replaced via setPixels(...)
+ * stay in memory until the stack is closed, so that changes are never lost and are contained in saved images.
+ * 
+ * What is saved depends on the image: for 3D / time-lapse images, only the pinned planes of the segmented channel and the cache
+ * are held in memory instead of all channels. Each object reads the planes it spans, so the cache should hold the planes of one channel;
+ * otherwise planes are read again for consecutive objects. 2D static images consist of one plane per channel, and the particle analyzer 
+ * works on full copies of the segmented channel - only the other channels are read on demand.
+ * 
+ * ImageStack.getVoxel(...) / setVoxel(...) do not work for virtual stacks - pixels have to be accessed via getPixels(...).
+ * */
+class AdipoVirtualStack extends VirtualStack{
+	private final ImageStack source;
+	private final int cacheCapacity;
+	private final LinkedHashMap<Integer, Object> cache;
+	private final HashMap<Integer, Object> pinned = new HashMap<Integer, Object>();
+	/**
+	 * Plane of the source for each plane of the stack (index 0 = plane 1), planes after a deleted plane move up by one
+	 * */
+	private int [] sourcePlanes;
+	private int size;
+	private long decodedPlanes = 0;
+
+	/**
+	 * @param source: stack from which planes are read, e.g., a FileInfoVirtualStack
+	 * @param cacheCapacity: maximum number of planes kept in the cache (in addition to pinned planes)
+	 * */
+	private AdipoVirtualStack(ImageStack source, int cacheCapacity){
+		super(source.getWidth(), source.getHeight(), source.getColorModel(), null);
+		this.source = source;
+		this.cacheCapacity = Math.max(1, cacheCapacity);
+		cache = new LinkedHashMap<Integer, Object>(16, 0.75f, true);
+		size = source.getSize();
+		sourcePlanes = new int [size];
+		for(int i = 0; i < size; i++) {
+			sourcePlanes [i] = i + 1;
+		}
+	}
+
+	/**
+	 * Opens a TIFF file as disk-backed hyperstack
+	 * @param cacheBytes: memory for cached planes in bytes; at least one plane per channel is cached
+	 * @return the image or null if the file could not be opened
+	 * */
+	static ImagePlus openTiff(String path, long cacheBytes){
+		ImagePlus imp = FileInfoVirtualStack.openVirtual(path);
+		if(imp == null) return null;
+		wrap(imp, cacheBytes);
+		return imp;
+	}
+
+	/**
+	 * Replaces the stack of the image by a disk-backed stack that reads its planes from the current stack of the image
+	 * @param cacheBytes: memory for cached planes in bytes; at least one plane per channel is cached
+	 * */
+	static void wrap(ImagePlus imp, long cacheBytes){
+		int bytesPerPixel = imp.getBitDepth() == 24 ? 4 : imp.getBitDepth() / 8;
+		long planeBytes = (long) imp.getWidth() * imp.getHeight() * bytesPerPixel;
+		int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(imp.getNChannels(), cacheBytes / planeBytes));
+		AdipoVirtualStack stack = new AdipoVirtualStack(imp.getStack(), capacity);
+		stack.setBitDepth(imp.getBitDepth());
+		imp.setStack(stack, imp.getNChannels(), imp.getNSlices(), imp.getNFrames());
+	}
+
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public synchronized String getSliceLabel(int n) {
+		return source.getSliceLabel(sourcePlanes [n-1]);
+	}
+
+	/**
+	 * @return the pixel array of plane n (1 <= n <= getSize()); for planes that are not pinned, the array may be dropped from 
+	 * the cache at any time, so changes to it can be lost
+	 * */
+	public synchronized Object getPixels(int n) {
+		Object pixels = pinned.get(n);
+		if(pixels != null) return pixels;
+		pixels = cache.get(n);
+		if(pixels != null) return pixels;
+
+		pixels = source.getPixels(sourcePlanes [n-1]);
+		decodedPlanes++;
+		cache.put(n, pixels);
+		if(cache.size() > cacheCapacity) {
+			Iterator<Map.Entry<Integer, Object>> eldest = cache.entrySet().iterator();
+			eldest.next();
+			eldest.remove();
+		}
+		return pixels;
+	}
+
+	/**
+	 * Keeps plane n in memory until the stack is closed, so that changes to its pixel array are kept
+	 * @return the pixel array of plane n
+	 * */
+	synchronized Object pin(int n) {
+		Object pixels = getPixels(n);
+		cache.remove(n);
+		pinned.put(n, pixels);
+		return pixels;
+	}
+
+	/**
+	 * Replaces plane n; the plane is pinned
+	 * */
+	public synchronized void setPixels(Object pixels, int n) {
+		cache.remove(n);
+		pinned.put(n, pixels);
+	}
+
+	public ImageProcessor getProcessor(int n) {
+		Object pixels = getPixels(n);
+		if(pixels instanceof byte []) {
+			return new ByteProcessor(getWidth(), getHeight(), (byte []) pixels, getColorModel());
+		}else if(pixels instanceof short []) {
+			return new ShortProcessor(getWidth(), getHeight(), (short []) pixels, getColorModel());
+		}else if(pixels instanceof float []) {
+			return new FloatProcessor(getWidth(), getHeight(), (float []) pixels, getColorModel());
+		}
+		return new ColorProcessor(getWidth(), getHeight(), (int []) pixels);
+	}
+
+	/**
+	 * Removes plane n from the stack (the file is not changed); cached and pinned planes after n move up by one
+	 * */
+	public synchronized void deleteSlice(int n) {
+		if(n < 1 || n > size) throw new IllegalArgumentException("Argument out of range: " + n);
+		System.arraycopy(sourcePlanes, n, sourcePlanes, n-1, size-n);
+		size--;
+		pinned.remove(n);
+		cache.remove(n);
+		HashMap<Integer, Object> shiftedPinned = new HashMap<Integer, Object>(pinned.size());
+		for(Map.Entry<Integer, Object> entry : pinned.entrySet()) {
+			shiftedPinned.put(entry.getKey() > n ? entry.getKey() - 1 : entry.getKey(), entry.getValue());
+		}
+		pinned.clear();
+		pinned.putAll(shiftedPinned);
+		// re-insert in access order so that the least recently used plane stays first
+		LinkedHashMap<Integer, Object> shiftedCache = new LinkedHashMap<Integer, Object>(cache.size());
+		for(Map.Entry<Integer, Object> entry : cache.entrySet()) {
+			shiftedCache.put(entry.getKey() > n ? entry.getKey() - 1 : entry.getKey(), entry.getValue());
+		}
+		cache.clear();
+		cache.putAll(shiftedCache);
+	}
+
+	public synchronized void deleteLastSlice() {
+		if(size > 0) deleteSlice(size);
+	}
+
+	/**
+	 * Drops all planes and closes the source of the stack (e.g., the file of an AdipoSeriesReader)
+	 * */
+	synchronized void close() throws IOException {
+		cache.clear();
+		pinned.clear();
+		if(source instanceof Closeable) ((Closeable) source).close();
+	}
+
+	/**
+	 * @return number of planes that were read from the file so far
+	 * */
+	synchronized long getDecodedPlanes() {
+		return decodedPlanes;
+	}
+}
@@ -20,9 +20,9 @@ package adipoQ_analyzer_jnh;
 * For any questions please feel free to contact me (jan.hansen@uni-bonn.de).
 * =============================================================================== */
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import ij.ImagePlus;
+import ij.ImageStack;
 import ij.gui.Roi;
 import ij.plugin.RoiEnlarger;
 
@@ -62,9 +62,17 @@ class Adipocyte{
 	 * 
 	 * U
 	 * */
-	public Adipocyte(ArrayList<AdipoPoint> points, ImagePlus imp, int maskC, boolean Surr, double refDist, Roi roi){
+	public Adipocyte(AdipoParticle points, ImagePlus imp, int maskC, boolean Surr, double refDist, Roi roi){
+		this(points, imp, maskC, Surr, refDist, roi, false);
+	}
+	
+	/**
+	 * @param deferMaskC: if true, the intensity parameters of the maskC channel are not determined here but by quantifyMaskChannel(...),
+	 * e.g., because the maskC channel is modified while adipocytes are created in parallel
+	 * */
+	Adipocyte(AdipoParticle points, ImagePlus imp, int maskC, boolean Surr, double refDist, Roi roi, boolean deferMaskC){
 		initializeArrays(imp.getNFrames(), imp.getNChannels(), Surr, maskC);
-		determineIntensityParams(points, imp);
+		determineIntensityParams(points, imp, getChannels(imp.getNChannels(), deferMaskC ? maskC-1 : -1, -1));
 		
 		// Quantify Crown Like Structures
 		if(Surr) {
@@ -73,7 +81,6 @@ class Adipocyte{
 			}else {
 				quantifySurroundingStructuresIn3DTimelapse(points,imp,maskC,refDist);				
 			}
-			System.gc();
 		}
 	}
 	
@@ -86,14 +93,13 @@ class Adipocyte{
 	 * 
 	 * Uses a 3D and/or timelapse implementation to quantify Crown-Like structures
 	 * */
-	public Adipocyte(ArrayList<AdipoPoint> points, ImagePlus imp, int maskC, boolean Surr, double refDist){
+	public Adipocyte(AdipoParticle points, ImagePlus imp, int maskC, boolean Surr, double refDist){
 		initializeArrays(imp.getNFrames(), imp.getNChannels(), Surr, maskC);
-		determineIntensityParams(points, imp);
+		determineIntensityParams(points, imp, getChannels(imp.getNChannels(), -1, -1));
 		
 		// Quantify Crown Like Structures
 		if(Surr) {
 			quantifySurroundingStructuresIn3DTimelapse(points,imp,maskC,refDist);			
-			System.gc();
 		}
 	}
 	
@@ -110,22 +116,6 @@ class Adipocyte{
 		sdIntensity  = new double [nFrames][nChannels];	// time, channels
 		minIntensity  = new double [nFrames][nChannels];	// time, channels
 		maxIntensity  = new double [nFrames][nChannels];	// time, channels
-
-		if(Surr) {
-			voxelNumberSurr = new int [nFrames];
-			voxelNumberSurr = new int [nFrames];
-			averageIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			integratedIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			medianIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			sdIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			minIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			maxIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			min25pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			max25pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			min5pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			max5pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
-			
-		}
 		
 		Arrays.fill(voxelNumber, 0);
 		Arrays.fill(xySurface, 0);
@@ -133,9 +123,6 @@ class Adipocyte{
 		Arrays.fill(centerX, 0.0);
 		Arrays.fill(centerY, 0.0);
 		Arrays.fill(centerZ, 0.0);
-		if(Surr) {
-			Arrays.fill(voxelNumberSurr, 0);
-		}
 		for(int t = 0; t < nFrames; t++) {
 			Arrays.fill(averageIntensity [t], 0.0);
 			Arrays.fill(integratedIntensity [t], 0.0);
@@ -143,97 +130,173 @@ class Adipocyte{
 			Arrays.fill(sdIntensity [t], 0.0);
 			Arrays.fill(minIntensity [t], Double.POSITIVE_INFINITY);
 			Arrays.fill(maxIntensity [t], Double.NEGATIVE_INFINITY);
-			
-			if(Surr) {
-				for(int c = 0; c < averageIntensitySurr[0].length; c++) {
-					min25pIntensitySurr [t][c] = Double.NaN;
-					max25pIntensitySurr [t][c] = Double.NaN;
-					min5pIntensitySurr [t][c] = Double.NaN;
-					max5pIntensitySurr [t][c] = Double.NaN;
-					if(c == maskC-1) {
-						averageIntensitySurr [t][c] = Double.NaN;
-						integratedIntensitySurr [t][c] = Double.NaN;
-						medianIntensitySurr [t][c] = Double.NaN;
-						sdIntensitySurr [t][c] = Double.NaN;
-						minIntensitySurr [t][c] = Double.NaN;
-						maxIntensitySurr [t][c] = Double.NaN;
-					}else {
-						averageIntensitySurr [t][c] = 0.0;
-						integratedIntensitySurr [t][c] = 0.0;
-						medianIntensitySurr [t][c] = 0.0;
-						sdIntensitySurr [t][c] = 0.0;
-						minIntensitySurr [t][c] = Double.POSITIVE_INFINITY;
-						maxIntensitySurr [t][c] = Double.NEGATIVE_INFINITY;
-					}
+		}
+		
+		if(Surr) {
+			initializeSurrArrays(nFrames, nChannels, maskC);
+		}
+	}
+	
+	private void initializeSurrArrays(int nFrames, int nChannels, int maskC) {
+		voxelNumberSurr = new int [nFrames];
+		averageIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		integratedIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		medianIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		sdIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		minIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		maxIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		min25pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		max25pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		min5pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		max5pIntensitySurr  = new double [nFrames][nChannels];	// time, channels
+		
+		Arrays.fill(voxelNumberSurr, 0);
+		for(int t = 0; t < nFrames; t++) {
+			for(int c = 0; c < nChannels; c++) {
+				min25pIntensitySurr [t][c] = Double.NaN;
+				max25pIntensitySurr [t][c] = Double.NaN;
+				min5pIntensitySurr [t][c] = Double.NaN;
+				max5pIntensitySurr [t][c] = Double.NaN;
+				if(c == maskC-1) {
+					averageIntensitySurr [t][c] = Double.NaN;
+					integratedIntensitySurr [t][c] = Double.NaN;
+					medianIntensitySurr [t][c] = Double.NaN;
+					sdIntensitySurr [t][c] = Double.NaN;
+					minIntensitySurr [t][c] = Double.NaN;
+					maxIntensitySurr [t][c] = Double.NaN;
+				}else {
+					averageIntensitySurr [t][c] = 0.0;
+					integratedIntensitySurr [t][c] = 0.0;
+					medianIntensitySurr [t][c] = 0.0;
+					sdIntensitySurr [t][c] = 0.0;
+					minIntensitySurr [t][c] = Double.POSITIVE_INFINITY;
+					maxIntensitySurr [t][c] = Double.NEGATIVE_INFINITY;
 				}
 			}
 		}
 	}
 	
-	private void determineIntensityParams(ArrayList<AdipoPoint> points, ImagePlus imp) {
-		double tempInt;
+	/**
+	 * Quantifies surroundings that were determined outside of this object (e.g., exclusive zones from an AdipoSurroundingsMap)
+	 * 1 <= maskC <= imp.getNChannels(); for the maskC channel, no Surr parameters are determined!
+	 * */
+	void quantifySurroundings(AdipoParticle surrPoints, ImagePlus imp, int maskC) {
+		initializeSurrArrays(imp.getNFrames(), imp.getNChannels(), maskC);
+		calculateSurrParameters(surrPoints, imp, maskC);
+	}
+	
+	/**
+	 * Determines the intensity parameters of the maskC channel for an adipocyte that was created with deferMaskC
+	 * 1 <= maskC <= imp.getNChannels()
+	 * */
+	void quantifyMaskChannel(AdipoParticle points, ImagePlus imp, int maskC) {
+		determineChannelParams(points, imp, getChannels(imp.getNChannels(), -1, maskC-1));
+	}
+	
+	/**
+	 * @param skipChannel: index (0-based) of a channel that shall not be read, -1 to read all channels
+	 * @param onlyChannel: index (0-based) of the only channel that shall be read, -1 to read all channels
+	 * @return for each channel, whether it shall be read
+	 * */
+	private static boolean [] getChannels(int nChannels, int skipChannel, int onlyChannel) {
+		boolean [] channels = new boolean [nChannels];
+		for(int c = 0; c < nChannels; c++) {
+			channels [c] = c != skipChannel && (onlyChannel == -1 || c == onlyChannel);
+		}
+		return channels;
+	}
+	
+	private void determineIntensityParams(AdipoParticle points, ImagePlus imp, boolean [] channels) {
 		for(int i = 0; i < points.size(); i++) {
-			voxelNumber [points.get(i).t]++;
-			xySurface [points.get(i).t] += points.get(i).xySurface;
-			xzyzSurface [points.get(i).t] += points.get(i).xzyzSurface;
-			centerX [points.get(i).t] += (double) points.get(i).x;
-			centerY [points.get(i).t] += (double) points.get(i).y;
-			centerZ [points.get(i).t] += (double) points.get(i).z;
-			for(int c = 0; c < averageIntensity[points.get(i).t].length; c++) {
-				tempInt = imp.getStack().getVoxel(points.get(i).x, points.get(i).y, 
-						imp.getStackIndex(c+1, points.get(i).z+1, points.get(i).t+1)-1);
-				averageIntensity [points.get(i).t][c] += tempInt;
-				integratedIntensity [points.get(i).t][c] += tempInt;
-				if(tempInt > maxIntensity [points.get(i).t][c])	maxIntensity [points.get(i).t][c] = tempInt;
-				if(tempInt < minIntensity [points.get(i).t][c])	minIntensity [points.get(i).t][c] = tempInt;
-			}
+			voxelNumber [points.getT(i)]++;
+			xySurface [points.getT(i)] += points.getXYSurface(i);
+			xzyzSurface [points.getT(i)] += points.getXZYZSurface(i);
+			centerX [points.getT(i)] += (double) points.getX(i);
+			centerY [points.getT(i)] += (double) points.getY(i);
+			centerZ [points.getT(i)] += (double) points.getZ(i);
 		}
 		for(int t = 0; t < voxelNumber.length; t++){
 			centerX [t] /= (double) voxelNumber [t];
 			centerY [t] /= (double) voxelNumber [t];
 			centerZ [t] /= (double) voxelNumber [t];
-			for(int c = 0; c < averageIntensity[t].length; c++) {
-				averageIntensity [t][c] /= (double) voxelNumber [t];
-			}
-		}
-		for(int i = 0; i < points.size(); i++) {
-			for(int c = 0; c < sdIntensity[points.get(i).t].length; c++) {
-				tempInt = imp.getStack().getVoxel(points.get(i).x, points.get(i).y, 
-						imp.getStackIndex(c+1, points.get(i).z+1, points.get(i).t+1)-1);
-				sdIntensity [points.get(i).t][c] += Math.pow(tempInt - averageIntensity [points.get(i).t][c], 2.0);
-			}
 		}
+		determineChannelParams(points, imp, channels);
+	}
+	
+	/**
+	 * Determines the intensity parameters of the points in the given channels
+	 * */
+	private void determineChannelParams(AdipoParticle points, ImagePlus imp, boolean [] channels) {
+		AdipoStatistics [][] statistics = new AdipoStatistics [voxelNumber.length][imp.getNChannels()];
+		double [][][] intensities = gatherIntensities(points, imp, voxelNumber, channels, statistics);
 		for(int t = 0; t < voxelNumber.length; t++){
 			for(int c = 0; c < averageIntensity[t].length; c++) {
-				sdIntensity [t][c] /= voxelNumber [t] - 1.0;
-				sdIntensity [t][c] = Math.sqrt(sdIntensity [t][c]);
+				if(!channels [c]) continue;
+				averageIntensity [t][c] = statistics [t][c].getAverage();
+				integratedIntensity [t][c] = statistics [t][c].getSum();
+				sdIntensity [t][c] = statistics [t][c].getSD();
+				minIntensity [t][c] = statistics [t][c].getMin();
+				maxIntensity [t][c] = statistics [t][c].getMax();
 			}
 		}
 		
 		// Calculate median intensity
-		double tempInts [];
-		int counter;
+		AdipoQuantiles quantiles;
 		for(int c = 0; c < imp.getNChannels(); c++) {
+			if(!channels [c]) continue;
 			for(int t = 0; t < voxelNumber.length; t++){
-				tempInts = new double [voxelNumber[t]];
-				counter = 0;
-				for(int i = 0; i < points.size(); i++) {
-					if(points.get(i).t == t) {
-						tempInts [counter] = imp.getStack().getVoxel(points.get(i).x, points.get(i).y, 
-								imp.getStackIndex(c+1, points.get(i).z+1, points.get(i).t+1)-1);
-						counter++;
-					}
-				}
-				Arrays.sort(tempInts);
-				if(tempInts.length%2==0){
-					medianIntensity [t][c] = (tempInts[(int)((double)(tempInts.length)/2.0)-1]+tempInts[(int)((double)(tempInts.length)/2.0)])/2.0;
-				}else{
-					medianIntensity [t][c] = tempInts[(int)((double)(tempInts.length)/2.0)];
+				quantiles = new AdipoQuantiles(intensities [t][c], imp.getBitDepth(), minIntensity [t][c], maxIntensity [t][c]);
+				medianIntensity [t][c] = quantiles.getMedian();
+				intensities [t][c] = null;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the intensity of each point in each channel once, feeds it into the accumulator of its frame and channel,
+	 * and collects it for the median / percentile calculation.
+	 * @param voxelsPerFrame: number of points in each frame
+	 * @param channels: for each channel, whether it shall be read
+	 * @param statistics: array [frames][channels] that is filled with new accumulators
+	 * @return intensities of the points [frame][channel][point], in the order of the points; null for channels that are not read
+	 * */
+	private static double [][][] gatherIntensities(AdipoParticle points, ImagePlus imp, int [] voxelsPerFrame, boolean [] channels, AdipoStatistics [][] statistics) {
+		double [][][] intensities = new double [voxelsPerFrame.length][imp.getNChannels()][];
+		for(int t = 0; t < voxelsPerFrame.length; t++) {
+			for(int c = 0; c < imp.getNChannels(); c++) {
+				statistics [t][c] = new AdipoStatistics();
+				if(!channels [c]) continue;
+				intensities [t][c] = new double [voxelsPerFrame [t]];
+			}
+		}
+		
+		/**
+		 * Channels are read one after the other and the pixel array is only looked up when the plane changes, 
+		 * so that a disk-backed stack needs to provide only the planes of one channel at a time.
+		 * */
+		ImageStack stack = imp.getStack();
+		int [] counter = new int [voxelsPerFrame.length];
+		int t, plane, currentPlane;
+		Object pixels = null;
+		double value;
+		for(int c = 0; c < imp.getNChannels(); c++) {
+			if(!channels [c]) continue;
+			Arrays.fill(counter, 0);
+			currentPlane = -1;
+			for(int i = 0; i < points.size(); i++) {
+				t = points.getT(i);
+				plane = imp.getStackIndex(c+1, points.getZ(i)+1, t+1);
+				if(plane != currentPlane) {
+					pixels = stack.getPixels(plane);
+					currentPlane = plane;
 				}
-				tempInts = null;
-				System.gc();
+				value = AdipoChannel.getValue(pixels, points.getY(i) * imp.getWidth() + points.getX(i));
+				statistics [t][c].add(value);
+				intensities [t][c][counter [t]] = value;
+				counter [t]++;
 			}
 		}
+		return intensities;
 	}
 	
 	/**
@@ -257,13 +320,13 @@ class Adipocyte{
 		if(yMax > imp.getHeight()-1) yMax = imp.getHeight()-1;
 		
 
-		ArrayList<AdipoPoint> surrPoints = new ArrayList<AdipoPoint>((1+xMax-xMin)*(1+yMax-yMin)-voxelNumber[0]);
+		AdipoParticle surrPoints = new AdipoParticle((1+xMax-xMin)*(1+yMax-yMin)-voxelNumber[0], null);
 		for(int x = xMin; x <= xMax; x++) {
 			for(int y = yMin; y <= yMax; y++) {
 				if(!bigRoi.contains(x,y)) continue;
 				if(roi.contains(x, y)) continue;
 				
-				surrPoints.add(new AdipoPoint(x, y, 0, 0, imp, 1));
+				surrPoints.add(x, y, 0, 0);
 			}
 		}
 		surrPoints.trimToSize();
@@ -278,22 +341,22 @@ class Adipocyte{
 	/**
 	 * 
 	 * */
-	private void quantifySurroundingStructuresIn3DTimelapse(ArrayList<AdipoPoint> points, ImagePlus imp, int maskC, double refDist) {
+	private void quantifySurroundingStructuresIn3DTimelapse(AdipoParticle points, ImagePlus imp, int maskC, double refDist) {
 		int xMin = Integer.MAX_VALUE, xMax = 0, yMin = Integer.MAX_VALUE, yMax = 0,
 				zMin = Integer.MAX_VALUE, zMax = 0, tMin = Integer.MAX_VALUE, tMax = 0;
 		
-		ArrayList<AdipoPoint> surfacePoints = new ArrayList<AdipoPoint>(points.size());
+		AdipoParticle surfacePoints = new AdipoParticle(points.size(), null);
 		for(int i = 0; i < points.size(); i++) {
-			if(points.get(i).getSurface(1.0, 1.0) > 0) {
-				surfacePoints.add(points.get(i));
-				if(points.get(i).x < xMin)	xMin = points.get(i).x;
-				if(points.get(i).x > xMax)	xMax = points.get(i).x;
-				if(points.get(i).y < yMin)	yMin = points.get(i).y;
-				if(points.get(i).y > yMax)	yMax = points.get(i).y;
-				if(points.get(i).z < zMin)	zMin = points.get(i).z;
-				if(points.get(i).z > zMax)	zMax = points.get(i).z;
-				if(points.get(i).t < tMin)	tMin = points.get(i).t;
-				if(points.get(i).t > tMax)	tMax = points.get(i).t;
+			if(points.isSurface(i)) {
+				surfacePoints.add(points.getX(i), points.getY(i), points.getZ(i), points.getT(i));
+				if(points.getX(i) < xMin)	xMin = points.getX(i);
+				if(points.getX(i) > xMax)	xMax = points.getX(i);
+				if(points.getY(i) < yMin)	yMin = points.getY(i);
+				if(points.getY(i) > yMax)	yMax = points.getY(i);
+				if(points.getZ(i) < zMin)	zMin = points.getZ(i);
+				if(points.getZ(i) > zMax)	zMax = points.getZ(i);
+				if(points.getT(i) < tMin)	tMin = points.getT(i);
+				if(points.getT(i) > tMax)	tMax = points.getT(i);
 			}
 		}
 
@@ -315,25 +378,46 @@ class Adipocyte{
 		if(zMax > imp.getNSlices()-1) zMax = imp.getNSlices()-1;
 		
 
-		ArrayList<AdipoPoint> surrPoints = new ArrayList<AdipoPoint>((1+xMax-xMin)*(1+yMax-yMin)*(1+zMax-zMin)*(1+tMax-tMin)-points.size());
-		double temp;
+		/**
+		 * Determine for each frame the squared calibrated distance of each voxel in the box to the nearest surface point
+		 * by a distance transform and mark the voxels closer than refDist. Voxels with a distance that is equal to refDist
+		 * within rounding errors are checked directly against the surface points, so the selection is the same as when 
+		 * comparing each voxel with each surface point.
+		 * */
+		double calX = imp.getCalibration().pixelWidth, calY = imp.getCalibration().pixelHeight, calZ = imp.getCalibration().pixelDepth;
+		int nx = Math.max(0, xMax - xMin + 1), ny = Math.max(0, yMax - yMin + 1), nz = Math.max(0, zMax - zMin + 1);
+		boolean [][] inRange = new boolean [Math.max(0, tMax - tMin + 1)][];
+		if(surfacePoints.size() > 0) {
+			AdipoDistanceTransform distanceTransform = new AdipoDistanceTransform();
+			double [] grid = new double [nx * ny * nz];
+			double distance, tolerance = refDist * 1.0E-9;
+			for(int t = tMin; t <= tMax; t++) {
+				Arrays.fill(grid, Double.POSITIVE_INFINITY);
+				for(int i = 0; i < surfacePoints.size(); i++) {
+					if(surfacePoints.getT(i) != t) continue;
+					grid [((surfacePoints.getZ(i) - zMin) * ny + surfacePoints.getY(i) - yMin) * nx + surfacePoints.getX(i) - xMin] = 0.0;
+				}
+				distanceTransform.transform(grid, null, nx, ny, nz, calX, calY, calZ);
+				inRange [t - tMin] = new boolean [grid.length];
+				for(int i = 0; i < grid.length; i++) {
+					distance = Math.sqrt(grid [i]);
+					if(Math.abs(distance - refDist) <= tolerance) {
+						inRange [t - tMin][i] = isCloserToSurface(surfacePoints, i % nx + xMin, (i / nx) % ny + yMin, i / (nx * ny) + zMin, t, calX, calY, calZ, refDist);
+					}else {
+						inRange [t - tMin][i] = distance < refDist;
+					}
+				}
+			}
+			grid = null;
+		}
+		
+		AdipoParticle surrPoints = new AdipoParticle(points.size(), null);
 		for(int x = xMin; x <= xMax; x++) {
 			for(int y = yMin; y <= yMax; y++) {
 				for(int z = zMin; z <= zMax; z++) {
 					for(int t = tMin; t <= tMax; t++) {
-						for(int i = 0; i < surfacePoints.size(); i++) {
-							if(t != surfacePoints.get(i).t) continue;
-							
-							//Determine distance to surface
-							temp = Math.sqrt(Math.pow((x-surfacePoints.get(i).x)*imp.getCalibration().pixelWidth, 2.0)
-									+ Math.pow((y-surfacePoints.get(i).y)*imp.getCalibration().pixelHeight,2.0) 
-											+ Math.pow((z-surfacePoints.get(i).z)*imp.getCalibration().pixelDepth, 2.0));
-							
-							//Add if within user-defined range
-							if(temp < refDist) {
-								surrPoints.add(new AdipoPoint(x, y, z, t, imp, 1));
-								break;
-							}
+						if(inRange [t - tMin][((z - zMin) * ny + y - yMin) * nx + x - xMin]) {
+							surrPoints.add(x, y, z, t);
 						}
 					}
 				}
@@ -350,78 +434,56 @@ class Adipocyte{
 		surrPoints = null;
 	}
 	
-	private void calculateSurrParameters (ArrayList<AdipoPoint> surrPoints, ImagePlus imp, int maskC) {
-		double temp;
-		for(int i = 0; i < surrPoints.size(); i++) {
-			voxelNumberSurr [surrPoints.get(i).t]++;
-			for(int c = 0; c < averageIntensitySurr[surrPoints.get(i).t].length; c++) {
-				if(c == maskC-1) continue;
-				
-				temp = imp.getStack().getVoxel(surrPoints.get(i).x, surrPoints.get(i).y, 
-						imp.getStackIndex(c+1, surrPoints.get(i).z+1, surrPoints.get(i).t+1)-1);
-				averageIntensitySurr [surrPoints.get(i).t][c] += temp;
-				integratedIntensitySurr [surrPoints.get(i).t][c] += temp;
-				if(temp > maxIntensitySurr [surrPoints.get(i).t][c])	maxIntensitySurr [surrPoints.get(i).t][c] = temp;
-				if(temp < minIntensitySurr [surrPoints.get(i).t][c])	minIntensitySurr [surrPoints.get(i).t][c] = temp;
-			}
-		}
-		for(int t = 0; t < voxelNumberSurr.length; t++){
-			for(int c = 0; c < averageIntensitySurr[t].length; c++) {
-				if(c == maskC-1) continue;
-				
-				averageIntensitySurr [t][c] /= (double) voxelNumberSurr [t];
+	/**
+	 * @return true if the voxel has a calibrated distance below refDist to any surface point in frame t
+	 * */
+	private static boolean isCloserToSurface(AdipoParticle surfacePoints, int x, int y, int z, int t, double calX, double calY, double calZ, double refDist) {
+		for(int i = 0; i < surfacePoints.size(); i++) {
+			if(t != surfacePoints.getT(i)) continue;
+			if(Math.sqrt(Math.pow((x-surfacePoints.getX(i))*calX, 2.0)
+					+ Math.pow((y-surfacePoints.getY(i))*calY,2.0) 
+					+ Math.pow((z-surfacePoints.getZ(i))*calZ, 2.0)) < refDist) {
+				return true;
 			}
 		}
+		return false;
+	}
+	
+	private void calculateSurrParameters (AdipoParticle surrPoints, ImagePlus imp, int maskC) {
 		for(int i = 0; i < surrPoints.size(); i++) {
-			for(int c = 0; c < sdIntensitySurr[surrPoints.get(i).t].length; c++) {
-				if(c == maskC-1) continue;
-				
-				temp = imp.getStack().getVoxel(surrPoints.get(i).x, surrPoints.get(i).y, 
-						imp.getStackIndex(c+1, surrPoints.get(i).z+1, surrPoints.get(i).t+1)-1);
-				sdIntensitySurr [surrPoints.get(i).t][c] += Math.pow(temp - averageIntensitySurr [surrPoints.get(i).t][c], 2.0);
-			}
+			voxelNumberSurr [surrPoints.getT(i)]++;
 		}
+		
+		AdipoStatistics [][] statistics = new AdipoStatistics [voxelNumberSurr.length][imp.getNChannels()];
+		double [][][] intensities = gatherIntensities(surrPoints, imp, voxelNumberSurr, getChannels(imp.getNChannels(), maskC-1, -1), statistics);
 		for(int t = 0; t < voxelNumberSurr.length; t++){
 			for(int c = 0; c < averageIntensitySurr[t].length; c++) {
 				if(c == maskC-1) continue;
 				
-				sdIntensitySurr [t][c] /= voxelNumberSurr [t] - 1.0;
-				sdIntensitySurr [t][c] = Math.sqrt(sdIntensitySurr [t][c]);
+				averageIntensitySurr [t][c] = statistics [t][c].getAverage();
+				integratedIntensitySurr [t][c] = statistics [t][c].getSum();
+				sdIntensitySurr [t][c] = statistics [t][c].getSD();
+				minIntensitySurr [t][c] = statistics [t][c].getMin();
+				maxIntensitySurr [t][c] = statistics [t][c].getMax();
 			}
 		}
 		
 		// Calculate median IntensitySurr
-		double [] tempArray;
-		int counter;
+		AdipoQuantiles quantiles;
 		for(int c = 0; c < imp.getNChannels(); c++) {
 			if(c == maskC-1) continue;
 			for(int t = 0; t < voxelNumberSurr.length; t++){
-				tempArray = new double [voxelNumberSurr[t]];
-				System.gc();
-				
-				counter = 0;
-				for(int i = 0; i < surrPoints.size(); i++) {
-					if(surrPoints.get(i).t == t) {
-						tempArray [counter] = imp.getStack().getVoxel(surrPoints.get(i).x, surrPoints.get(i).y, 
-								imp.getStackIndex(c+1, surrPoints.get(i).z+1, surrPoints.get(i).t+1)-1);
-						counter++;
-					}
-				}
-				Arrays.sort(tempArray);
-				if(tempArray.length%2==0){
-					medianIntensitySurr [t][c] = (tempArray[(int)((double)(tempArray.length)/2.0)-1]+tempArray[(int)((double)(tempArray.length)/2.0)])/2.0;
-				}else{
-					medianIntensitySurr [t][c] = tempArray[(int)((double)(tempArray.length)/2.0)];
-				}
+				quantiles = new AdipoQuantiles(intensities [t][c], imp.getBitDepth(), minIntensitySurr [t][c], maxIntensitySurr [t][c]);
+				medianIntensitySurr [t][c] = quantiles.getMedian();
 				
-				min25pIntensitySurr [t][c] = AdipoQAnalyzerMain.getMinPercentFromSortedArray(tempArray, 25.0);
-				min5pIntensitySurr [t][c] = AdipoQAnalyzerMain.getMinPercentFromSortedArray(tempArray, 5.0); 
+				min25pIntensitySurr [t][c] = quantiles.getMinPercentAverage(25.0);
+				min5pIntensitySurr [t][c] = quantiles.getMinPercentAverage(5.0); 
 
-				max25pIntensitySurr [t][c] = AdipoQAnalyzerMain.getMaxPercentFromSortedArray(tempArray, 25.0);
-				max5pIntensitySurr [t][c] = AdipoQAnalyzerMain.getMaxPercentFromSortedArray(tempArray, 5.0);
+				max25pIntensitySurr [t][c] = quantiles.getMaxPercentAverage(25.0);
+				max5pIntensitySurr [t][c] = quantiles.getMaxPercentAverage(5.0);
+				intensities [t][c] = null;
 			}
 		}
-		tempArray = null;
 	}
 	
 	double getSurface(double calX, double calY, double zcal, int frame){
@@ -38,8 +38,9 @@ import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.ListModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
-public class ProgressDialog extends javax.swing.JFrame implements ActionListener{
+public class ProgressDialog extends javax.swing.JFrame implements ActionListener, AdipoProgress{
 	String dataLeft [], dataRight[], notifications [];
 	public boolean notificationsAvailable = false, errorsAvailable = false;
 	int task, tasks;
@@ -47,26 +48,50 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 	static final int ERROR = 0, NOTIFICATION = 1, LOG = 2;;
 	JPanel bgPanel;
 	JScrollPane jScrollPaneLeft, jScrollPaneRight, jScrollPaneBottom;
-	JList ListeLeft, ListeRight, ListeBottom;
+	JList<String> ListeLeft, ListeRight, ListeBottom;
 	
 	private JProgressBar progressBar = new JProgressBar();
 	private double taskFraction = 0.0;
 	
+	// Routing of progress and notifications if several tasks are processed in parallel
+	private final ThreadLocal<Integer> boundTask = new ThreadLocal<Integer>();
+	private String [] taskLabels, taskNames;
+	private double [] taskFractions = null;
+	private int finishedTasks = 0;
+	
 	public ProgressDialog(String [] taskList, int newTasks) {
 		super();
 		initGUI();
 		dataLeft = taskList.clone();
+		taskNames = taskList.clone();
 		tasks = newTasks;
 		for(int i = 0; i < tasks; i++){
 			if(dataLeft[i]!=""){
 				dataLeft [i] = (i+1) + ": " + dataLeft [i]; 
 			}			
 		}
-		ListeLeft.setListData(dataLeft);
+		showList(ListeLeft, jScrollPaneLeft, dataLeft);
+		taskLabels = dataLeft.clone();
 		taskFraction = 0.0;
 		task = 1;
 	}
 	
+	/**
+	 * Routes all progress updates of the calling thread to the given task, so that several tasks can be processed in parallel.
+	 * Once a task is bound, tasks may be finished (moveTask) in any order.
+	 * @param taskIndex: 0 <= taskIndex < tasks
+	 * */
+	public synchronized void bindTask(int taskIndex){
+		if(taskFractions == null){
+			taskFractions = new double [tasks];
+		}
+		boundTask.set(taskIndex);
+	}
+	
+	public void unbindTask(){
+		boundTask.remove();
+	}
+	
 	private void initGUI() {
 		int prefXSize = 600, prefYSize = 500;
 		this.setMinimumSize(new java.awt.Dimension(prefXSize, prefYSize+40));
@@ -102,8 +127,8 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 						jScrollPaneLeft.setPreferredSize(new java.awt.Dimension((int)((double)(subXSize/2.0)-10), subYSize-60));
 						imPanel.add(jScrollPaneLeft,BorderLayout.CENTER); 
 						{
-							ListModel ListeModel = new DefaultComboBoxModel(new String[] { "" });
-							ListeLeft = new JList();
+							ListModel<String> ListeModel = new DefaultComboBoxModel<String>(new String[] { "" });
+							ListeLeft = new JList<String>();
 							jScrollPaneLeft.setViewportView(ListeLeft);
 							ListeLeft.setModel(ListeModel);
 						}
@@ -128,8 +153,8 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 						jScrollPaneRight.setPreferredSize(new java.awt.Dimension((int)((double)(subXSize/2.0)-10), subYSize-60));
 						imPanel.add(jScrollPaneRight,BorderLayout.CENTER); 
 						{
-							ListModel ListeModel = new DefaultComboBoxModel(new String[] { "" });
-							ListeRight = new JList();
+							ListModel<String> ListeModel = new DefaultComboBoxModel<String>(new String[] { "" });
+							ListeRight = new JList<String>();
 							jScrollPaneRight.setViewportView(ListeRight);
 							ListeRight.setModel(ListeModel);
 						}
@@ -177,8 +202,8 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 					jScrollPaneBottom.setPreferredSize(new java.awt.Dimension(prefXSize, 100));
 					imPanel.add(jScrollPaneBottom, BorderLayout.CENTER);
 					{
-						ListModel ListeModel = new DefaultComboBoxModel(new String[] { "" });
-						ListeBottom = new JList();
+						ListModel<String> ListeModel = new DefaultComboBoxModel<String>(new String[] { "" });
+						ListeBottom = new JList<String>();
 						jScrollPaneBottom.setViewportView(ListeBottom);
 						ListeBottom.setModel(ListeModel);
 					}
@@ -197,7 +222,11 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 //		}	
 	}
 	
-	public void moveTask(int i){		
+	public synchronized void moveTask(int i){
+		if(taskFractions != null){
+			moveTaskOutOfOrder(i);
+			return;
+		}
 		if(dataRight == null){
 			dataRight = new String [2];
 			dataRight [0] = "" + dataLeft[0];
@@ -229,36 +258,68 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 				dataLeft[j-1] = dataLeftCopy[j];
 			}			
 		}	
-		ListeLeft.setListData(dataLeft);
-		ListeRight.setListData(dataRight);
-		jScrollPaneLeft.updateUI();
-		jScrollPaneRight.updateUI();
-		bgPanel.updateUI();
+		showList(ListeLeft, jScrollPaneLeft, dataLeft);
+		showList(ListeRight, jScrollPaneRight, dataRight);
 		
 		if(task == tasks){
-			if(errorsAvailable){
-				replaceBarText("processing done but some tasks failed (see notifications)!");
-				progressBar.setValue(100); 		
-				progressBar.setStringPainted(true);
-				progressBar.setForeground(Color.red);
-			}else if(notificationsAvailable){
-				replaceBarText("processing done, but some notifications are available!");
-				progressBar.setValue(100); 
-				progressBar.setStringPainted(true);
-				progressBar.setForeground(new Color(255,130,0));
-			}else{
-				replaceBarText("analysis done!");
-				progressBar.setStringPainted(true);
-				progressBar.setForeground(new Color(0,140,0));
-			}
-			progressBar.setValue(100);
+			showBarDone();
 		}else{
 			taskFraction = 0.0;
 			task++;
 		}
 	}
 	
-	public void notifyMessage(String message, int type){
+	/**
+	 * Moves the task i from the remaining to the processed tasks if tasks are processed in parallel and finish in any order
+	 * */
+	private void moveTaskOutOfOrder(int i){
+		String [] dataLeftCopy = dataLeft;
+		dataLeft = new String [Math.max(dataLeftCopy.length-1, 0)];
+		int j = 0;
+		boolean found = false;
+		for(int k = 0; k < dataLeftCopy.length; k++){
+			if(!found && dataLeftCopy [k] != null && dataLeftCopy [k].equals(taskLabels [i])){
+				found = true;
+				continue;
+			}
+			if(j < dataLeft.length) dataLeft [j++] = dataLeftCopy [k];
+		}
+		
+		if(dataRight == null){
+			dataRight = new String [] {taskLabels [i]};
+		}else{
+			String [] dataRightCopy = dataRight;
+			dataRight = new String [dataRightCopy.length+1];
+			System.arraycopy(dataRightCopy, 0, dataRight, 1, dataRightCopy.length);
+			dataRight [0] = taskLabels [i];
+		}
+		showList(ListeLeft, jScrollPaneLeft, dataLeft);
+		showList(ListeRight, jScrollPaneRight, dataRight);
+		
+		taskFractions [i] = 0.0;
+		finishedTasks++;
+		if(finishedTasks == tasks){
+			task = tasks;
+			showBarDone();
+		}else{
+			task = finishedTasks + 1;
+			updateParallelBar();
+		}
+	}
+	
+	private void updateParallelBar(){
+		double done = finishedTasks;
+		for(int i = 0; i < taskFractions.length; i++){
+			done += taskFractions [i];
+		}
+		showBar((int)Math.round(done / tasks * 100.0));
+	}
+	
+	public synchronized void notifyMessage(String message, int type){
+		Integer bound = boundTask.get();
+		if(bound != null){
+			message = getTaskPrefix(bound, tasks, taskNames [bound], message) + message;
+		}
 		if(type == ERROR){
 			errorsAvailable = true;
 		}else if(type == NOTIFICATION){
@@ -276,41 +337,117 @@ public class ProgressDialog extends javax.swing.JFrame implements ActionListener
 			}
 			notifications [0] = message;
 		}
-		ListeBottom.setListData(notifications);
-		jScrollPaneBottom.updateUI();
-		bgPanel.updateUI();
+		showList(ListeBottom, jScrollPaneBottom, notifications);
+	}
+	
+	/**
+	 * @return prefix that attributes a message to a task processed in parallel, empty if the message starts with the number of the task
+	 * @param taskIndex: 0 <= taskIndex < tasks
+	 * */
+	static String getTaskPrefix(int taskIndex, int tasks, String taskName, String message){
+		if(message.startsWith("Task " + (taskIndex+1) + "/") || message.startsWith("Task " + (taskIndex+1) + ":")){
+			return "";
+		}
+		return "Task " + (taskIndex+1) + "/" + tasks + " (" + taskName + "): ";
 	}
 	
-	public void addToBar(double addFractionOfTask){
+	public synchronized void addToBar(double addFractionOfTask){
+		Integer bound = boundTask.get();
+		if(bound != null){
+			taskFractions [bound] = Math.min(taskFractions [bound] + addFractionOfTask, 0.9);
+			updateParallelBar();
+			return;
+		}
 		taskFraction += addFractionOfTask;
 		if(taskFraction >= 1.0){
 			taskFraction = 0.9;
 		}
-		progressBar.setValue((int)Math.round(((double)(task-1)/tasks)*100.0+taskFraction*(100/tasks)));
-		bgPanel.updateUI();
+		showBar((int)Math.round(((double)(task-1)/tasks)*100.0+taskFraction*(100/tasks)));
 	}
 	
-	public void setBar(double fractionOfTask){
+	public synchronized void setBar(double fractionOfTask){
+		Integer bound = boundTask.get();
+		if(bound != null){
+			taskFractions [bound] = fractionOfTask > 1.0 ? 0.9 : fractionOfTask;
+			updateParallelBar();
+			return;
+		}
 		taskFraction = fractionOfTask;
 		if(taskFraction > 1.0){
 			taskFraction = 0.9;
 		}
-		progressBar.setValue((int)Math.round(((double)(task-1)/tasks)*100.0+taskFraction*(100/tasks)));
-		bgPanel.updateUI();
+		showBar((int)Math.round(((double)(task-1)/tasks)*100.0+taskFraction*(100/tasks)));
+	}
+	
+	public synchronized void updateBarText(String text){
+		Integer bound = boundTask.get();
+		if(bound != null){
+			replaceBarText("Task " + (bound+1) + "/" + tasks + ": " + text);
+			return;
+		}
+		replaceBarText("Task " + task + "/" + tasks + ": " + text);
 	}
 	
-	public void updateBarText(String text){
-		progressBar.setString("Task " + task + "/" + tasks + ": " + text);
-		bgPanel.updateUI();
+	public synchronized void updateBarText(int task, String text){
+		replaceBarText("Task " + task + "/" + tasks + ": " + text);
 	}
 	
-	public void updateBarText(int task, String text){
-		progressBar.setString("Task " + task + "/" + tasks + ": " + text);
-		bgPanel.updateUI();
+	public synchronized void replaceBarText(final String text){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				progressBar.setString(text);
+				bgPanel.updateUI();
+			}
+		});
+	}
+	
+	/**
+	 * The Swing components are only modified on the event dispatch thread, since tasks report their progress from their own threads.
+	 * The data arrays are replaced, not modified, so the array passed here is not changed before it is shown.
+	 * */
+	private void showList(final JList<String> list, final JScrollPane scrollPane, final String [] data){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				list.setListData(data);
+				scrollPane.updateUI();
+				bgPanel.updateUI();
+			}
+		});
 	}
 	
-	public void replaceBarText(String text){			
-		progressBar.setString(text);
-		bgPanel.updateUI();
+	private void showBar(final int value){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				progressBar.setValue(value);
+				bgPanel.updateUI();
+			}
+		});
+	}
+	
+	/**
+	 * Shows that all tasks are finished, colored by whether errors or notifications are available
+	 * */
+	private void showBarDone(){
+		final String text;
+		final Color color;
+		if(errorsAvailable){
+			text = "processing done but some tasks failed (see notifications)!";
+			color = Color.red;
+		}else if(notificationsAvailable){
+			text = "processing done, but some notifications are available!";
+			color = new Color(255,130,0);
+		}else{
+			text = "analysis done!";
+			color = new Color(0,140,0);
+		}
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				progressBar.setString(text);
+				progressBar.setStringPainted(true);
+				progressBar.setForeground(color);
+				progressBar.setValue(100);
+				bgPanel.updateUI();
+			}
+		});
 	}
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class AdipoConsoleProgressTest{
+	/**
+	 * @return the lines printed to System.out by the messages of a thread bound to task 2 of 3 and of an unbound thread
+	 * */
+	private static String [] printMessages(final String... messages) throws InterruptedException {
+		final AdipoConsoleProgress progress = new AdipoConsoleProgress(new String [] {"a.tif", "b.tif", "c.tif"}, 3, false);
+		PrintStream out = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed, true));
+		try {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					progress.bindTask(1);
+					for(String message : messages) {
+						progress.notifyMessage(message, ProgressDialog.LOG);
+					}
+					progress.unbindTask();
+				}
+			});
+			worker.start();
+			worker.join();
+			progress.notifyMessage(messages [0], ProgressDialog.LOG);
+		}finally {
+			System.setOut(out);
+		}
+		return printed.toString().split("\\R");
+	}
+
+	@Test
+	public void testMessagesOfBoundTasksAreAttributed() throws InterruptedException {
+		String [] lines = printMessages("Input is binary or semibinary", "Task 2/3: Could not be processed.", "Task 2: Minimum size",
+				"Task 20: other");
+		assertEquals(5, lines.length);
+		assertEquals("Task 2/3 (b.tif): Input is binary or semibinary", lines [0]);
+		assertEquals("Task 2/3: Could not be processed.", lines [1]);
+		assertEquals("Task 2: Minimum size", lines [2]);
+		assertEquals("Task 2/3 (b.tif): Task 20: other", lines [3]);
+		assertEquals("unbound thread", "Input is binary or semibinary", lines [4]);
+	}
+}
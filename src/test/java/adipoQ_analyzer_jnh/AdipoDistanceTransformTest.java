@@ -0,0 +1,138 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the distance transform with brute force distances to all sites
+ * */
+public class AdipoDistanceTransformTest{
+	private static final double TOLERANCE = 1e-9;
+
+	private static double getSquaredDistance(int x, int y, int z, int sx, int sy, int sz, double calX, double calY, double calZ) {
+		return (Math.pow((x - sx) * calX, 2.0) + Math.pow((y - sy) * calY, 2.0)) + Math.pow((z - sz) * calZ, 2.0);
+	}
+
+	/**
+	 * @return grid with random sites (0.0), labels of the sites are 1, 2, ...
+	 * */
+	private static double [] createGrid(int [] labels, double density, Random random) {
+		double [] grid = new double [labels.length];
+		Arrays.fill(grid, Double.POSITIVE_INFINITY);
+		int label = 0;
+		for(int i = 0; i < grid.length; i++) {
+			if(random.nextDouble() < density) {
+				grid [i] = 0.0;
+				labels [i] = ++label;
+			}
+		}
+		return grid;
+	}
+
+	private static void assertSameAsBruteForce(String message, int nx, int ny, int nz, double calX, double calY, double calZ, double density, long seed) {
+		assertSameAsBruteForce(message, nx, ny, nz, calX, calY, calZ, density, seed, 0, 0, 0);
+	}
+
+	private static void assertSameAsBruteForce(String message, int nx, int ny, int nz, double calX, double calY, double calZ, double density, long seed,
+			int originX, int originY, int originZ) {
+		int [] labels = new int [nx * ny * nz];
+		double [] sites = createGrid(labels, density, new Random(seed));
+		int [] siteLabels = Arrays.copyOf(labels, labels.length);
+		double [] grid = Arrays.copyOf(sites, sites.length);
+		new AdipoDistanceTransform().transform(grid, labels, nx, ny, nz, calX, calY, calZ, originX, originY, originZ);
+
+		for(int z = 0; z < nz; z++) {
+			for(int y = 0; y < ny; y++) {
+				for(int x = 0; x < nx; x++) {
+					double min = Double.POSITIVE_INFINITY, labelDistance = Double.NaN;
+					int i = (z * ny + y) * nx + x;
+					for(int sz = 0; sz < nz; sz++) {
+						for(int sy = 0; sy < ny; sy++) {
+							for(int sx = 0; sx < nx; sx++) {
+								int s = (sz * ny + sy) * nx + sx;
+								if(sites [s] != 0.0) continue;
+								double distance = getSquaredDistance(x, y, z, sx, sy, sz, calX, calY, calZ);
+								if(distance < min) min = distance;
+								if(siteLabels [s] == labels [i]) labelDistance = distance;
+							}
+						}
+					}
+					String m = message + " at " + x + "/" + y + "/" + z;
+					assertEquals(m + " distance", min, grid [i], min * TOLERANCE);
+					if(min != Double.POSITIVE_INFINITY) {
+						// the label has to belong to one of the nearest sites
+						assertEquals(m + " label", min, labelDistance, min * TOLERANCE);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void isotropic() {
+		assertSameAsBruteForce("2D", 23, 17, 1, 1.0, 1.0, 1.0, 0.02, 1L);
+		assertSameAsBruteForce("3D", 11, 9, 7, 1.0, 1.0, 1.0, 0.01, 2L);
+	}
+
+	@Test
+	public void anisotropic() {
+		assertSameAsBruteForce("2D", 23, 17, 1, 0.7, 1.3, 1.0, 0.02, 3L);
+		assertSameAsBruteForce("3D", 11, 9, 7, 0.31, 0.27, 2.9, 0.01, 4L);
+		assertSameAsBruteForce("3D dense", 8, 7, 6, 0.5, 0.5, 3.0, 0.2, 5L);
+		assertSameAsBruteForce("3D single line", 1, 1, 13, 0.5, 0.5, 3.0, 0.2, 6L);
+	}
+
+	@Test
+	public void noSites() {
+		assertSameAsBruteForce("3D", 5, 4, 3, 0.5, 0.5, 3.0, 0.0, 7L);
+	}
+
+	@Test
+	public void anisotropicWithOrigin() {
+		assertSameAsBruteForce("2D", 23, 17, 1, 0.7, 1.3, 1.0, 0.02, 12L, 101, 37, 0);
+		assertSameAsBruteForce("3D", 11, 9, 7, 0.31, 0.27, 2.9, 0.01, 13L, 5, 1000, 3);
+	}
+
+	/**
+	 * A grid cut out at an origin has to give the same distances and labels (including ties) as the larger grid around it
+	 * */
+	@Test
+	public void nonzeroOrigin() {
+		int nx = 17, ny = 13, nz = 5, ox = 9, oy = 4, oz = 3, bx = nx + ox + 6, by = ny + oy + 2, bz = nz + oz + 1;
+		for(long seed = 8L; seed < 12L; seed++) {
+			int [] labels = new int [nx * ny * nz];
+			// integer calibration produces many equidistant sites
+			double [] grid = createGrid(labels, 0.03, new Random(seed));
+			double [] large = new double [bx * by * bz];
+			int [] largeLabels = new int [large.length];
+			Arrays.fill(large, Double.POSITIVE_INFINITY);
+			for(int z = 0; z < nz; z++) {
+				for(int y = 0; y < ny; y++) {
+					for(int x = 0; x < nx; x++) {
+						large [((z + oz) * by + y + oy) * bx + x + ox] = grid [(z * ny + y) * nx + x];
+						largeLabels [((z + oz) * by + y + oy) * bx + x + ox] = labels [(z * ny + y) * nx + x];
+					}
+				}
+			}
+			new AdipoDistanceTransform().transform(large, largeLabels, bx, by, bz, 1.0, 2.0, 3.0);
+			new AdipoDistanceTransform().transform(grid, labels, nx, ny, nz, 1.0, 2.0, 3.0, ox, oy, oz);
+			double [] cropped = new double [grid.length];
+			int [] croppedLabels = new int [grid.length];
+			for(int z = 0; z < nz; z++) {
+				for(int y = 0; y < ny; y++) {
+					for(int x = 0; x < nx; x++) {
+						cropped [(z * ny + y) * nx + x] = large [((z + oz) * by + y + oy) * bx + x + ox];
+						croppedLabels [(z * ny + y) * nx + x] = largeLabels [((z + oz) * by + y + oy) * bx + x + ox];
+					}
+				}
+			}
+			assertArrayEquals("seed " + seed + " distances", cropped, grid, 0.0);
+			assertArrayEquals("seed " + seed + " labels", croppedLabels, labels);
+		}
+	}
+}
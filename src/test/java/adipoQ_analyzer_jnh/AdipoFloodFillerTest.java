@@ -0,0 +1,118 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+/**
+ * Compares the primitive flood fill with the legacy flood fill (ImageStack.getVoxel(...) / setVoxel(...)).
+ * */
+public class AdipoFloodFillerTest{
+	/**
+	 * Compares analyzeAdipocytes(...) with the given reconstruction method to the legacy flood fill for 6- and 26-connectivity,
+	 * all exclude options and two minimum sizes; also the mask channel left behind has to be the same
+	 * @param sdTolerance: relative tolerance for SDs, for labelers that list the points of a particle in a different order
+	 * */
+	static void assertSameAsLegacy(String reconstruction, ImageFactory factory, double sdTolerance) {
+		for(boolean increaseRange : new boolean [] {false, true}) {
+			for(String exclude : AdipoQAnalyzerMain.excludeOptions) {
+				for(double minSize : new double [] {1.0, 3.0}) {
+					String message = reconstruction + ", increaseRange " + increaseRange + ", exclude " + exclude + ", minSize " + minSize;
+					ImagePlus legacyImp = factory.create(), imp = factory.create();
+					ArrayList<Adipocyte> legacy = AdipoTestImages.createAnalyzer(AdipoQAnalyzerMain.reconstructionMethod [3],
+							increaseRange, exclude, minSize).analyzeAdipocytes(legacyImp, 1);
+					ArrayList<Adipocyte> adipos = AdipoTestImages.createAnalyzer(reconstruction,
+							increaseRange, exclude, minSize).analyzeAdipocytes(imp, 1);
+					AdipoTestImages.assertSameAdipocytes(message, legacy, adipos, sdTolerance);
+					AdipoTestImages.assertSameChannel(message, legacyImp, imp, 1);
+				}
+			}
+		}
+	}
+
+	interface ImageFactory{
+		ImagePlus create();
+	}
+
+	static final ImageFactory [] FIXED_IMAGES = {
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createImage(AdipoTestImages.MASK_2D, 1, 1);
+			}
+		},
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createImage(AdipoTestImages.MASK_3D, 3, 1);
+			}
+		},
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2);
+			}
+		}
+	};
+
+	static final ImageFactory [] RANDOM_IMAGES = {
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createRandomImage(23, 17, 1, 1, 0.45, 1L);
+			}
+		},
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createRandomImage(13, 11, 5, 1, 0.3, 2L);
+			}
+		},
+		new ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createRandomImage(9, 8, 3, 3, 0.35, 3L);
+			}
+		}
+	};
+
+	@Test
+	public void sameAsLegacyOnFixedMasks() {
+		for(ImageFactory factory : FIXED_IMAGES) {
+			assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [0], factory, 0.0);
+		}
+	}
+
+	@Test
+	public void sameAsLegacyOnRandomMasks() {
+		for(ImageFactory factory : RANDOM_IMAGES) {
+			assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [0], factory, 0.0);
+		}
+	}
+
+	/**
+	 * Particle sizes in MASK_2D in scan order (t, z, x, y)
+	 * */
+	@Test
+	public void particlesOfFixedMask() {
+		AdipoChannel mask = new AdipoChannel(AdipoTestImages.createImage(AdipoTestImages.MASK_2D, 1, 1), 1);
+		assertParticleSizes(new AdipoFloodFiller(mask, AdipoFloodFiller.CONNECTIVITY_6),
+				new int [] {4, 2, 3, 1, 1, 1, 3, 1, 3, 1, 12, 1, 3, 1, 1, 2, 1});
+		assertParticleSizes(new AdipoFloodFiller(mask, AdipoFloodFiller.CONNECTIVITY_26),
+				new int [] {4, 2, 3, 3, 11, 1, 12, 1, 1, 2, 1});
+	}
+
+	private static void assertParticleSizes(AdipoLabeler labeler, int [] sizes) {
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		long total = 0;
+		while(labeler.nextParticle()) {
+			found.add(labeler.getParticleSize());
+			total += labeler.getParticleSize();
+		}
+		assertEquals(sizes.length + " particles expected, found " + found, sizes.length, found.size());
+		long expectedTotal = 0;
+		for(int i = 0; i < sizes.length; i++) {
+			assertEquals("particle " + (i+1) + " of " + found, sizes [i], (int) found.get(i));
+			expectedTotal += sizes [i];
+		}
+		assertEquals(expectedTotal, total);
+	}
+}
@@ -0,0 +1,130 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.io.FileSaver;
+import ij.measure.Calibration;
+
+public class AdipoLabelImageTest{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static AdipoParticle createParticle(int... xyzt) {
+		AdipoParticle particle = new AdipoParticle(0, null);
+		for(int i = 0; i < xyzt.length; i += 4) {
+			particle.add(xyzt [i], xyzt [i+1], xyzt [i+2], xyzt [i+3]);
+		}
+		return particle;
+	}
+
+	@Test
+	public void writesIdsOfAllPlanes() {
+		AdipoLabelImage labels = new AdipoLabelImage(4, 3, 2, 3);
+		labels.addParticle(createParticle(0, 0, 0, 0, 3, 2, 1, 0), 1);
+		labels.addParticle(createParticle(1, 1, 1, 2), 2);
+		Calibration calibration = new Calibration();
+		calibration.pixelWidth = 0.5;
+		ImagePlus imp = labels.toImagePlus("labels", calibration);
+		assertEquals(16, imp.getBitDepth());
+		assertEquals(1, imp.getNChannels());
+		assertEquals(2, imp.getNSlices());
+		assertEquals(3, imp.getNFrames());
+		assertTrue(imp.isHyperStack());
+		assertEquals(0.5, imp.getCalibration().pixelWidth, 0.0);
+		assertEquals(1.0, imp.getStack().getVoxel(0, 0, imp.getStackIndex(1, 1, 1)-1), 0.0);
+		assertEquals(1.0, imp.getStack().getVoxel(3, 2, imp.getStackIndex(1, 2, 1)-1), 0.0);
+		assertEquals(2.0, imp.getStack().getVoxel(1, 1, imp.getStackIndex(1, 2, 3)-1), 0.0);
+		assertEquals(0.0, imp.getStack().getVoxel(1, 1, imp.getStackIndex(1, 2, 2)-1), 0.0);
+	}
+
+	@Test
+	public void writesLargeIdsAs32Bit() {
+		AdipoLabelImage labels = new AdipoLabelImage(2, 1, 1, 1);
+		labels.addParticle(createParticle(0, 0, 0, 0), 65535);
+		assertEquals(16, labels.toImagePlus("labels", new Calibration()).getBitDepth());
+		labels.addParticle(createParticle(1, 0, 0, 0), AdipoLabelImage.MAX_FLOAT_LABEL);
+		ImagePlus imp = labels.toImagePlus("labels", new Calibration());
+		assertEquals(32, imp.getBitDepth());
+		assertEquals(65535.0, imp.getStack().getVoxel(0, 0, 0), 0.0);
+		assertEquals(AdipoLabelImage.MAX_FLOAT_LABEL, imp.getStack().getVoxel(1, 0, 0), 0.0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsIdsThatAreNotExactAsFloat() {
+		AdipoLabelImage labels = new AdipoLabelImage(1, 1, 1, 1);
+		labels.addParticle(createParticle(0, 0, 0, 0), AdipoLabelImage.MAX_FLOAT_LABEL + 1);
+		labels.toImagePlus("labels", new Calibration());
+	}
+
+	@Test
+	public void keepsLabelsOfLargeIdsAddedLater() {
+		AdipoLabelImage labels = new AdipoLabelImage(3, 1, 2, 1);
+		labels.addParticle(createParticle(0, 0, 0, 0, 1, 0, 1, 0), 65535);
+		labels.addParticle(createParticle(2, 0, 1, 0), 70000);
+		ImagePlus imp = labels.toImagePlus("labels", new Calibration());
+		assertEquals(32, imp.getBitDepth());
+		assertEquals(65535.0, imp.getStack().getVoxel(0, 0, 0), 0.0);
+		assertEquals(65535.0, imp.getStack().getVoxel(1, 0, 1), 0.0);
+		assertEquals(70000.0, imp.getStack().getVoxel(2, 0, 1), 0.0);
+		assertEquals(0.0, imp.getStack().getVoxel(1, 0, 0), 0.0);
+	}
+
+	@Test
+	public void convertsMapValuesLikeSetVoxel() {
+		AdipoLabelImage labels = new AdipoLabelImage(4, 1, 1, 1);
+		labels.addParticle(createParticle(0, 0, 0, 0), 1);
+		labels.addParticle(createParticle(1, 0, 0, 0), 2);
+		labels.addParticle(createParticle(2, 0, 0, 0), 3);
+		double [] values = {300.0, -2.0, 17.6};
+		for(int bitDepth : new int [] {8, 16, 32}) {
+			ImagePlus map = labels.createValueMap("map", values, bitDepth, new Calibration());
+			ImagePlus expected = IJ.createImage("expected", 4, 1, 1, bitDepth);
+			for(int x = 0; x < values.length; x++) {
+				expected.getStack().setVoxel(x, 0, 0, values [x]);
+			}
+			assertEquals(bitDepth, map.getBitDepth());
+			for(int x = 0; x < 4; x++) {
+				assertEquals(bitDepth + " bit, x " + x, expected.getProcessor().getPixelValue(x, 0), map.getStack().getProcessor(1).getPixelValue(x, 0), 0.0);
+			}
+		}
+		ImagePlus map = labels.createValueMap("map", new double [] {Double.NaN, 1.0, 2.0}, 32, new Calibration());
+		assertTrue(Float.isNaN(map.getStack().getProcessor(1).getPixelValue(0, 0)));
+	}
+
+	@Test
+	public void savesAllPlanesOfValueMaps() throws IOException {
+		AdipoLabelImage labels = new AdipoLabelImage(4, 3, 2, 3);
+		labels.addParticle(createParticle(0, 0, 0, 0, 3, 2, 1, 0), 1);
+		labels.addParticle(createParticle(1, 1, 1, 2), 2);
+		Calibration calibration = new Calibration();
+		calibration.pixelWidth = 0.5;
+		for(String name : new String [] {"map.tif", "map.zip"}) {
+			ImagePlus map = labels.createValueMap("map", new double [] {10.0, 20.0}, 16, calibration);
+			String path = new File(folder.getRoot(), name).getPath();
+			if(name.endsWith(".zip")) {
+				assertTrue(new FileSaver(map).saveAsZip(path));
+			}else {
+				assertTrue(IJ.saveAsTiff(map, path));
+			}
+			ImagePlus imp = IJ.openImage(path);
+			assertEquals(name, 6, imp.getStackSize());
+			assertEquals(2, imp.getNSlices());
+			assertEquals(3, imp.getNFrames());
+			assertEquals(0.5, imp.getCalibration().pixelWidth, 0.0);
+			assertEquals(10.0, imp.getStack().getVoxel(0, 0, imp.getStackIndex(1, 1, 1)-1), 0.0);
+			assertEquals(10.0, imp.getStack().getVoxel(3, 2, imp.getStackIndex(1, 2, 1)-1), 0.0);
+			assertEquals(20.0, imp.getStack().getVoxel(1, 1, imp.getStackIndex(1, 2, 3)-1), 0.0);
+			assertEquals(0.0, imp.getStack().getVoxel(1, 1, imp.getStackIndex(1, 2, 2)-1), 0.0);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AdipoNumberFormatTest{
+	private static final Locale [] LOCALES = {Locale.US, Locale.GERMANY};
+
+	private static void assertSameAsDecimalFormat(double... values) {
+		for(Locale locale : LOCALES) {
+			DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+			DecimalFormat expected = new DecimalFormat("0.000000", symbols);
+			AdipoNumberFormat format = new AdipoNumberFormat(symbols);
+			StringBuilder text = new StringBuilder();
+			for(double value : values) {
+				assertEquals(locale + ", " + value, expected.format(value), format.format(value));
+				text.setLength(0);
+				text.append('|');
+				format.append(text, value);
+				assertEquals(locale + ", " + value, "|" + expected.format(value), text.toString());
+			}
+		}
+	}
+
+	@Test
+	public void specialValues() {
+		assertSameAsDecimalFormat(0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 
+				Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, 1E-7, -1E-7, 4.9E-7, -4.9E-7, 
+				5E-7, -5E-7, 1.5E-6, 2.5E-6, 1E7, -1E7, Math.nextDown(1E7), -Math.nextDown(1E7), 1E15, 123456789.123456789);
+	}
+
+	/**
+	 * Values at and next to the rounding ties of the sixth decimal, including ties that are exact in binary
+	 * */
+	@Test
+	public void nearTies() {
+		Random random = new Random(19L);
+		for(int i = 0; i < 6000; i++) {
+			long units = i < 3000 ? i : (long) (random.nextDouble() * 1E13);
+			double tie = (units + 0.5) / 1E6;
+			double [] values = {tie, Math.nextUp(tie), Math.nextDown(tie), -tie, -Math.nextUp(tie), -Math.nextDown(tie),
+					units / 1E6, -units / 1E6, units + 0.5, units / 8.0, -units / 8.0, units / 64.0};
+			assertSameAsDecimalFormat(values);
+		}
+	}
+
+	@Test
+	public void randomValues() {
+		Random random = new Random(20L);
+		double [] values = new double [1000];
+		for(int i = 0; i < 100; i++) {
+			for(int j = 0; j < values.length; j++) {
+				values [j] = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(20) - 10);
+			}
+			assertSameAsDecimalFormat(values);
+		}
+	}
+}
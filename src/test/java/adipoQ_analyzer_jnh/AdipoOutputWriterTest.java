@@ -0,0 +1,72 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class AdipoOutputWriterTest{
+	private static AdipoConsoleProgress createProgress() {
+		return new AdipoConsoleProgress(new String [] {"a", "b", "c"}, 3, false);
+	}
+
+	@Test(timeout = 10000)
+	public void writesInSubmissionOrder() {
+		AdipoConsoleProgress progress = createProgress();
+		AdipoOutputWriter writer = new AdipoOutputWriter(progress, 3, 2);
+		final ArrayList<Integer> order = new ArrayList<Integer>();
+		for(int i = 0; i < 20; i++) {
+			final int output = i;
+			writer.run(i % 3, new Runnable() {
+				public void run() {
+					synchronized(order) {
+						order.add(output);
+					}
+				}
+			});
+		}
+		assertTrue(writer.flush());
+		assertEquals(20, order.size());
+		for(int i = 0; i < 20; i++) {
+			assertEquals(i, (int) order.get(i));
+		}
+		assertFalse(progress.hasErrors());
+	}
+
+	/**
+	 * Exceptions and errors thrown by an output are failures of its task; later outputs are still written and flush() returns
+	 * */
+	@Test(timeout = 10000)
+	public void recordsFailuresOfTasks() {
+		for(int queueSize : new int [] {0, 1, 4}) {
+			AdipoConsoleProgress progress = createProgress();
+			AdipoOutputWriter writer = new AdipoOutputWriter(progress, 3, queueSize);
+			final boolean [] written = new boolean [1];
+			writer.write(0, null, new AdipoOutputWriter.Output() {
+				public void write() throws IOException {
+					throw new IOException("disk full");
+				}
+			});
+			writer.write(1, null, new AdipoOutputWriter.Output() {
+				public void write() {
+					throw new OutOfMemoryError("test");
+				}
+			});
+			writer.run(2, new Runnable() {
+				public void run() {
+					written [0] = true;
+				}
+			});
+			assertFalse("queue size " + queueSize, writer.flush());
+			assertTrue("queue size " + queueSize, written [0]);
+			assertTrue("queue size " + queueSize, writer.hasFailed(0));
+			assertTrue("queue size " + queueSize, writer.hasFailed(1));
+			assertFalse("queue size " + queueSize, writer.hasFailed(2));
+			assertTrue("queue size " + queueSize, progress.hasErrors());
+		}
+	}
+}
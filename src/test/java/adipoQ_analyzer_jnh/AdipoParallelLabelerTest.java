@@ -0,0 +1,52 @@
+package adipoQ_analyzer_jnh;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+/**
+ * Compares the parallel union-find labeling with the flood fill (particles) and with the legacy flood fill (objects).
+ * Points are listed in scan order instead of flood fill order, so SDs may differ in the last bits.
+ * */
+public class AdipoParallelLabelerTest{
+	@Test
+	public void sameAsLegacyOnFixedMasks() {
+		for(AdipoFloodFillerTest.ImageFactory factory : AdipoFloodFillerTest.FIXED_IMAGES) {
+			AdipoFloodFillerTest.assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [1], factory, 1e-12);
+		}
+	}
+
+	@Test
+	public void sameAsLegacyOnRandomMasks() {
+		for(AdipoFloodFillerTest.ImageFactory factory : AdipoFloodFillerTest.RANDOM_IMAGES) {
+			AdipoFloodFillerTest.assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [1], factory, 1e-12);
+		}
+	}
+
+	/**
+	 * Block seams run through the objects for all thread numbers > 1
+	 * */
+	@Test
+	public void sameParticlesForAllThreadNumbers() {
+		ImagePlus [] images = new ImagePlus [] {
+			AdipoTestImages.createImage(AdipoTestImages.MASK_2D, 1, 1),
+			AdipoTestImages.createImage(AdipoTestImages.MASK_3D, 3, 1),
+			AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2),
+			AdipoTestImages.createRandomImage(31, 19, 6, 2, 0.4, 4L)
+		};
+		for(ImagePlus imp : images) {
+			AdipoChannel mask = new AdipoChannel(imp, 1);
+			for(int connectivity : new int [] {AdipoFloodFiller.CONNECTIVITY_6, AdipoFloodFiller.CONNECTIVITY_18, AdipoFloodFiller.CONNECTIVITY_26}) {
+				String message = imp.getTitle() + " " + imp.getNSlices() + " slices, connectivity " + connectivity;
+				ArrayList<long []> expected = AdipoTestImages.getParticles(new AdipoFloodFiller(mask, connectivity), mask);
+				for(int nThreads = 1; nThreads <= 8; nThreads++) {
+					AdipoParallelLabeler labeler = new AdipoParallelLabeler(mask, connectivity, nThreads);
+					labeler.label();
+					AdipoTestImages.assertSameParticles(message + ", " + nThreads + " threads", expected, AdipoTestImages.getParticles(labeler, mask));
+				}
+			}
+		}
+	}
+}
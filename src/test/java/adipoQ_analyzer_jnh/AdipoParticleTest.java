@@ -0,0 +1,65 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+
+public class AdipoParticleTest{
+	@Test
+	public void keepsPointsWhenGrowing() {
+		AdipoParticle particle = new AdipoParticle(0, null);
+		for(int i = 0; i < 1000; i++) {
+			particle.add(i, i * 2, i % 7, i % 3);
+		}
+		AdipoParticle all = new AdipoParticle(1, null);
+		all.addAll(particle);
+		all.addAll(particle);
+		all.trimToSize();
+		assertEquals(2000, all.size());
+		for(int i = 0; i < all.size(); i++) {
+			int p = i % 1000;
+			assertEquals(p, all.getX(i));
+			assertEquals(p * 2, all.getY(i));
+			assertEquals(p % 7, all.getZ(i));
+			assertEquals(p % 3, all.getT(i));
+		}
+	}
+
+	/**
+	 * Compares the surface bits with the face neighbours read via ImageStack.getVoxel(...), image borders are no surface
+	 * */
+	@Test
+	public void surfaceLikeGetVoxel() {
+		ImagePlus imp = AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2);
+		ImageStack stack = imp.getStack();
+		AdipoParticle particle = new AdipoParticle(0, new AdipoChannel(imp, 1));
+		for(int t = 0; t < imp.getNFrames(); t++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				for(int x = 0; x < imp.getWidth(); x++) {
+					for(int y = 0; y < imp.getHeight(); y++) {
+						if(stack.getVoxel(x, y, imp.getStackIndex(1, z+1, t+1)-1) > 0.0) {
+							particle.add(x, y, z, t);
+						}
+					}
+				}
+			}
+		}
+		for(int i = 0; i < particle.size(); i++) {
+			int x = particle.getX(i), y = particle.getY(i), z = particle.getZ(i), t = particle.getT(i);
+			int xy = 0, xzyz = 0;
+			if(z > 0 && stack.getVoxel(x, y, imp.getStackIndex(1, z, t+1)-1) == 0.0)	xy++;
+			if(z < imp.getNSlices()-1 && stack.getVoxel(x, y, imp.getStackIndex(1, z+2, t+1)-1) == 0.0)	xy++;
+			if(x > 0 && stack.getVoxel(x-1, y, imp.getStackIndex(1, z+1, t+1)-1) == 0.0)	xzyz++;
+			if(x < imp.getWidth()-1 && stack.getVoxel(x+1, y, imp.getStackIndex(1, z+1, t+1)-1) == 0.0)	xzyz++;
+			if(y > 0 && stack.getVoxel(x, y-1, imp.getStackIndex(1, z+1, t+1)-1) == 0.0)	xzyz++;
+			if(y < imp.getHeight()-1 && stack.getVoxel(x, y+1, imp.getStackIndex(1, z+1, t+1)-1) == 0.0)	xzyz++;
+			String point = x + "/" + y + "/" + z + "/" + t;
+			assertEquals(point, xy, particle.getXYSurface(i));
+			assertEquals(point, xzyz, particle.getXZYZSurface(i));
+			assertEquals(point, xy + xzyz > 0, particle.isSurface(i));
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ij.IJ;
+import ij.ImagePlus;
+
+/**
+ * Runs images through the headless runner (AdipoQAnalyzerMain.processTask) and checks the written short results
+ * */
+public class AdipoQAnalyzerHeadlessTest{
+	private static final double PIXEL_WIDTH = 0.5, PIXEL_DEPTH = 1.0;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes a settings file for mask channel 1 with the given minimum size (micron^2), no exclusion, no fusion
+	 * @param refDistance: reference distance for surroundings (micron), 0.0 = surroundings are not quantified
+	 * */
+	private File writeSettings(double minSize, double refDistance) throws IOException {
+		return writeSettings(minSize, refDistance, false, AdipoQAnalyzerMain.excludeOptions [0]);
+	}
+
+	private File writeSettings(double minSize, double refDistance, boolean increaseRange, String excludeOption) throws IOException {
+		return writeSettings(minSize, refDistance, increaseRange, excludeOption, AdipoQAnalyzerMain.surroundingsModes [0]);
+	}
+
+	private File writeSettings(double minSize, double refDistance, boolean increaseRange, String excludeOption, String surroundingsMode)
+			throws IOException {
+		File settings = new File(folder.getRoot(), "settings.txt");
+		String text = "Plugin name:	AdipoQ Analyzer\nPlugin version:	0.1.1\nImage metadata:\n	Voxel width:	" + PIXEL_WIDTH + "\n"
+				+ "	Voxel height:	" + PIXEL_WIDTH + "\n\nPreferences:	\n	Channel Nr:	1\n"
+				+ "	Increase range in particle detection:	" + (increaseRange ? "TRUE" : "FALSE") + "\n"
+				+ "	Minimum particle size (micron^2):	" + minSize + "	Minimum particle size (px):	" + (minSize / PIXEL_WIDTH / PIXEL_WIDTH) + "\n"
+				+ "	Exclude option:	" + excludeOption + "\n";
+		if(refDistance > 0.0) {
+			text += "	Quantify Surrounding:	TRUE\n	Surrounding: reference distance(micron):	" + refDistance + "\n";
+		}else {
+			text += "	Quantify Surrounding:	FALSE\n	Surrounding: reference distance(micron):	0.0\n";
+		}
+		text += "	Fuse included particles into one for quantification:	FALSE\n";
+		if(!surroundingsMode.equals(AdipoQAnalyzerMain.surroundingsModes [0])) {
+			text += "	Surrounding in 2D static images:	" + surroundingsMode + "\n";
+		}
+		Files.write(settings.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return settings;
+	}
+
+	/**
+	 * Saves the image as img.tif into a new directory
+	 * */
+	private File writeImage(String directory, ImagePlus imp) throws IOException {
+		File dir = folder.newFolder(directory);
+		imp.getCalibration().pixelWidth = PIXEL_WIDTH;
+		imp.getCalibration().pixelHeight = PIXEL_WIDTH;
+		imp.getCalibration().pixelDepth = PIXEL_DEPTH;
+		imp.getCalibration().setUnit("micron");
+		File image = new File(dir, "img.tif");
+		assertTrue(IJ.saveAsTiff(imp, image.getPath()));
+		return image;
+	}
+
+	/**
+	 * @return the rows of the short results (without the header) as columns
+	 * */
+	private static List<String []> readShortResults(File image) throws IOException {
+		File results = new File(image.getParentFile(), "img_AQAs.txt");
+		assertTrue("short results written", results.isFile());
+		List<String> lines = Files.readAllLines(results.toPath(), Charset.defaultCharset());
+		List<String []> rows = new ArrayList<String []>();
+		for(String line : lines.subList(1, lines.size())) {
+			if(!line.isEmpty()) rows.add(line.split("\t", -1));
+		}
+		return rows;
+	}
+
+	private static int getColumn(File image, String column) throws IOException {
+		File results = new File(image.getParentFile(), "img_AQAs.txt");
+		String [] header = Files.readAllLines(results.toPath(), Charset.defaultCharset()).get(0).split("\t", -1);
+		for(int i = 0; i < header.length; i++) {
+			if(header [i].equals(column)) return i;
+		}
+		throw new AssertionError("Column missing: " + column);
+	}
+
+	private static void assertSameRows(String message, List<String []> expected, List<String []> actual) {
+		assertEquals(message + ": rows", expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(message + ": row " + (i+1), String.join("\t", expected.get(i)), String.join("\t", actual.get(i)));
+		}
+	}
+
+	/**
+	 * Analyzes a copy of the image in a new directory with the given reconstruction method
+	 * @return the rows of the short results
+	 * */
+	private List<String []> analyze(String directory, ImagePlus imp, File settings, int method, String... options) throws IOException {
+		File image = writeImage(directory, imp.duplicate());
+		List<String> args = new ArrayList<String>();
+		args.add("-settings");
+		args.add(settings.getPath());
+		args.add("-reconstruction");
+		args.add("" + method);
+		for(String option : options) args.add(option);
+		args.add(image.getPath());
+		assertEquals(directory + " " + AdipoQAnalyzerMain.reconstructionMethod [method] + ": exit code", AdipoQAnalyzerHeadless.EXIT_OK,
+				AdipoQAnalyzerHeadless.run(args.toArray(new String [args.size()])));
+		return readShortResults(image);
+	}
+
+	/**
+	 * Analyzes the image with each reconstruction method and compares the results to the legacy flood fill
+	 * */
+	private void assertSameResultsForAllMethods(String message, ImagePlus imp, File settings, String... options) throws IOException {
+		List<String []> legacy = null;
+		for(int m = AdipoQAnalyzerMain.reconstructionMethod.length-1; m >= 0; m--) {
+			List<String []> rows = analyze(message + "_" + m, imp, settings, m, options);
+			if(legacy == null) {
+				legacy = rows;
+				assertFalse(message + ": objects found", legacy.isEmpty());
+			}else {
+				assertSameRows(message + " " + AdipoQAnalyzerMain.reconstructionMethod [m], legacy, rows);
+			}
+		}
+	}
+
+	@Test
+	public void testStackAndTimeLapseImagesAreAnalyzed() throws IOException {
+		File settings = writeSettings(0.5, 0.0);
+		assertSameResultsForAllMethods("3D", AdipoTestImages.createImage(AdipoTestImages.MASK_3D, 3, 1), settings);
+		assertSameResultsForAllMethods("4D", AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2), settings);
+		assertSameResultsForAllMethods("time-lapse", AdipoTestImages.createRandomImage(40, 30, 1, 3, 0.55, 11L), settings);
+		assertSameResultsForAllMethods("random 3D", AdipoTestImages.createRandomImage(40, 30, 4, 2, 0.4, 12L), settings, "-threads", "3");
+	}
+
+	@Test
+	public void testStackResultsListEachFrame() throws IOException {
+		File image = writeImage("frames", AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2));
+		assertEquals(AdipoQAnalyzerHeadless.EXIT_OK, AdipoQAnalyzerHeadless.run(new String [] {"-settings", writeSettings(0.5, 0.0).getPath(),
+				image.getPath()}));
+		List<String []> rows = readShortResults(image);
+		int frame = getColumn(image, "Frame"), totalFrames = getColumn(image, "Total frames");
+		assertEquals("one row per object and frame", 0, rows.size() % 2);
+		for(int i = 0; i < rows.size(); i++) {
+			assertEquals("frame", "" + (i % 2 + 1), rows.get(i) [frame]);
+			assertEquals("total frames", "2", rows.get(i) [totalFrames]);
+		}
+	}
+
+	@Test
+	public void testParallelLabelingMatchesFloodFill() throws IOException {
+		for(boolean increaseRange : new boolean [] {false, true}) {
+			// below the percolation threshold of the connectivity, so that particles not touching the borders remain
+			ImagePlus imp = AdipoTestImages.createRandomImage(80, 60, 6, 2, increaseRange ? 0.07 : 0.25, 21L);
+			File settings = writeSettings(0.5, 0.0, increaseRange, AdipoQAnalyzerMain.excludeOptions [2]);
+			String message = increaseRange ? "26" : "6";
+			List<String []> floodFill = analyze(message + "_flood", imp, settings, 0);
+			assertFalse(message + ": objects found", floodFill.isEmpty());
+			for(int threads = 1; threads <= 4; threads++) {
+				assertSameRows(message + "-connectivity, " + threads + " threads", floodFill,
+						analyze(message + "_parallel" + threads, imp, settings, 1, "-threads", "" + threads));
+			}
+		}
+	}
+
+	@Test
+	public void testRunLengthLabelingMatchesFloodFill() throws IOException {
+		ImagePlus sparse = AdipoTestImages.createRandomImage(90, 70, 4, 2, 0.05, 31L), dense = AdipoTestImages.createRandomImage(50, 40, 3, 2, 0.6, 32L);
+		for(int exclude = 0; exclude < AdipoQAnalyzerMain.excludeOptions.length; exclude++) {
+			for(boolean increaseRange : new boolean [] {false, true}) {
+				File settings = writeSettings(0.75, 0.0, increaseRange, AdipoQAnalyzerMain.excludeOptions [exclude]);
+				String message = "exclude" + exclude + (increaseRange ? "_26" : "_6");
+				assertSameRows(message + " sparse", analyze(message + "_sparse_flood", sparse, settings, 0),
+						analyze(message + "_sparse_rle", sparse, settings, 2));
+				assertSameRows(message + " dense", analyze(message + "_dense_flood", dense, settings, 0),
+						analyze(message + "_dense_rle", dense, settings, 2));
+			}
+		}
+	}
+
+	/**
+	 * Exclusive surroundings exclude the pixels within the outline of an object like the rings: the hole of a ring-shaped object
+	 * and a rejected particle in the hole, which are the only pixels with intensity 4000 in channel 2
+	 * */
+	@Test
+	public void testExclusiveSurroundingsExcludeHoles() throws IOException {
+		ImagePlus imp = AdipoTestImages.createImage(new String [][] {{
+			"..................",
+			"..................",
+			"....##########....",
+			"....##########....",
+			"....##......##....",
+			"....##..#...##....",
+			"....##......##....",
+			"....##########....",
+			"....##########....",
+			"..................",
+			"..................",
+		}}, 1, 1);
+		for(int y = 4; y <= 6; y++) {
+			for(int x = 6; x <= 11; x++) {
+				imp.getStack().setVoxel(x, y, imp.getStackIndex(2, 1, 1)-1, 4000.0);
+			}
+		}
+		for(String mode : AdipoQAnalyzerMain.surroundingsModes) {
+			File settings = writeSettings(1.0, 1.5, false, AdipoQAnalyzerMain.excludeOptions [1], mode);
+			for(String tileSize : new String [] {"0", "6"}) {
+				String message = mode + ", tiles " + tileSize;
+				File image = writeImage("hole" + folder.getRoot().list().length, imp.duplicate());
+				assertEquals(message + ": exit code", AdipoQAnalyzerHeadless.EXIT_OK, AdipoQAnalyzerHeadless.run(new String [] {
+						"-settings", settings.getPath(), "-tileSize", tileSize, image.getPath()}));
+				List<String []> rows = readShortResults(image);
+				assertEquals(message + ": objects", 1, rows.size());
+				double surrMax = Double.parseDouble(rows.get(0) [getColumn(image, "C2: Surr Max Intensity")]);
+				assertTrue(message + ": surroundings found", Double.parseDouble(rows.get(0) [getColumn(image, "Surr Voxels")]) > 0.0);
+				assertTrue(message + ": hole excluded, max " + surrMax, surrMax < 4000.0);
+				
+				String metadata = new String(Files.readAllBytes(new File(image.getParentFile(), "img_AQA.txt").toPath()), Charset.defaultCharset());
+				assertEquals(message + ": surrounding mode written only if not the default", mode.equals(AdipoQAnalyzerMain.surroundingsModes [1]),
+						metadata.contains("Surrounding in 2D static images:"));
+			}
+		}
+	}
+
+	/**
+	 * Planes of 300 x 200 px, so that a 1 MB plane cache holds only a third of the image
+	 * */
+	@Test
+	public void testDiskBackedStackMatchesInMemory() throws IOException {
+		ImagePlus imp = AdipoTestImages.createRandomImage(300, 200, 6, 2, 0.1, 41L);
+		File settings = writeSettings(1.0, 1.0);
+		for(int m = 0; m < AdipoQAnalyzerMain.reconstructionMethod.length-1; m++) {
+			List<String []> inMemory = analyze("memory_" + m, imp, settings, m);
+			assertFalse("objects found", inMemory.isEmpty());
+			assertSameRows(AdipoQAnalyzerMain.reconstructionMethod [m], inMemory, analyze("disk_" + m, imp, settings, m, "-diskBacked", "1"));
+		}
+	}
+
+	/**
+	 * Surroundings of two boxes in a 3D image: all voxels closer than the reference distance to a surface voxel of the box
+	 * (the 3D / time-lapse rule), determined by comparing each voxel with each surface voxel
+	 * */
+	@Test
+	public void testStackSurroundingsMatchBruteForce() throws IOException {
+		int width = 18, height = 14, nSlices = 7;
+		int [][] boxes = {{3, 7, 2, 6, 1, 4}, {11, 14, 8, 11, 3, 5}};	// xMin, xMax, yMin, yMax, zMin, zMax
+		ImagePlus imp = AdipoTestImages.createImage(emptyPlanes(width, height, nSlices), nSlices, 1);
+		for(int [] box : boxes) {
+			for(int z = box [4]; z <= box [5]; z++) {
+				for(int y = box [2]; y <= box [3]; y++) {
+					for(int x = box [0]; x <= box [1]; x++) {
+						imp.getStack().setVoxel(x, y, imp.getStackIndex(1, z+1, 1)-1, 255.0);
+					}
+				}
+			}
+		}
+		double refDistance = 1.6;
+		File image = writeImage("surroundings", imp);
+		assertEquals(AdipoQAnalyzerHeadless.EXIT_OK, AdipoQAnalyzerHeadless.run(new String [] {"-settings", writeSettings(0.5, refDistance).getPath(),
+				image.getPath()}));
+		List<String []> rows = readShortResults(image);
+		assertEquals("objects", boxes.length, rows.size());
+		int voxelsColumn = getColumn(image, "Voxels"), surrVoxelsColumn = getColumn(image, "Surr Voxels"),
+				surrIntegratedColumn = getColumn(image, "C2: Surr Integrated Intensity");
+		for(int b = 0; b < boxes.length; b++) {
+			int [] box = boxes [b];
+			int voxels = (box [1] - box [0] + 1) * (box [3] - box [2] + 1) * (box [5] - box [4] + 1), surrVoxels = 0;
+			double surrIntegrated = 0.0;
+			for(int z = 0; z < nSlices; z++) {
+				for(int y = 0; y < height; y++) {
+					for(int x = 0; x < width; x++) {
+						if(isCloserToBoxSurface(box, x, y, z, nSlices, width, height, refDistance)) {
+							surrVoxels++;
+							surrIntegrated += imp.getStack().getVoxel(x, y, imp.getStackIndex(2, z+1, 1)-1);
+						}
+					}
+				}
+			}
+			String [] row = rows.get(b);
+			assertEquals("box " + (b+1) + " voxels", "" + voxels, row [voxelsColumn]);
+			assertEquals("box " + (b+1) + " surroundings voxels", surrVoxels, Double.parseDouble(row [surrVoxelsColumn]), 0.0);
+			assertEquals("box " + (b+1) + " surroundings integrated intensity", surrIntegrated, Double.parseDouble(row [surrIntegratedColumn]), 0.0);
+		}
+	}
+
+	private static String [][] emptyPlanes(int width, int height, int nPlanes) {
+		String [][] planes = new String [nPlanes][height];
+		for(int p = 0; p < nPlanes; p++) {
+			for(int y = 0; y < height; y++) {
+				planes [p][y] = new String(new char [width]).replace('\0', '.');
+			}
+		}
+		return planes;
+	}
+
+	private static boolean isCloserToBoxSurface(int [] box, int x, int y, int z, int nSlices, int width, int height, double refDistance) {
+		for(int sz = box [4]; sz <= box [5]; sz++) {
+			for(int sy = box [2]; sy <= box [3]; sy++) {
+				for(int sx = box [0]; sx <= box [1]; sx++) {
+					boolean surface = (sx == box [0] && sx > 0) || (sx == box [1] && sx < width-1)
+							|| (sy == box [2] && sy > 0) || (sy == box [3] && sy < height-1)
+							|| (sz == box [4] && sz > 0) || (sz == box [5] && sz < nSlices-1);
+					if(surface && Math.sqrt(Math.pow((x-sx) * PIXEL_WIDTH, 2.0) + Math.pow((y-sy) * PIXEL_WIDTH, 2.0)
+							+ Math.pow((z-sz) * PIXEL_DEPTH, 2.0)) < refDistance) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,123 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares median and trimmed-tail averages with the results obtained from a fully sorted array
+ * */
+public class AdipoQuantilesTest{
+	private static final double [] PERCENTS = {0.1, 5.0, 10.0, 25.0, 33.3, 50.0, 75.0, 100.0};
+
+	private static double getSortedMedian(double [] sorted) {
+		if(sorted.length == 0) return Double.NaN;
+		if(sorted.length%2==0) {
+			return (sorted [sorted.length/2-1] + sorted [sorted.length/2])/2.0;
+		}
+		return sorted [sorted.length/2];
+	}
+
+	/**
+	 * Queries the values in different orders, since each query partially orders the values for the next one
+	 * */
+	private static void assertSameAsSorted(String message, double [] values, int bitDepth) {
+		double [] sorted = Arrays.copyOf(values, values.length);
+		Arrays.sort(sorted);
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(double value : values) {
+			if(value < min) min = value;
+			if(value > max) max = value;
+		}
+		for(int order = 0; order < 3; order++) {
+			AdipoQuantiles quantiles = new AdipoQuantiles(Arrays.copyOf(values, values.length), bitDepth, min, max);
+			if(order == 0) {
+				assertEquals(message + " median", getSortedMedian(sorted), quantiles.getMedian(), 0.0);
+			}
+			for(int p = 0; p < PERCENTS.length; p++) {
+				double percent = PERCENTS [order == 2 ? PERCENTS.length - 1 - p : p];
+				String m = message + ", order " + order + ", " + percent + "%";
+				if(order == 1) {
+					assertEquals(m + " max", AdipoQAnalyzerMain.getMaxPercentFromSortedArray(sorted, percent), quantiles.getMaxPercentAverage(percent), 0.0);
+					assertEquals(m + " min", AdipoQAnalyzerMain.getMinPercentFromSortedArray(sorted, percent), quantiles.getMinPercentAverage(percent), 0.0);
+				}else {
+					assertEquals(m + " min", AdipoQAnalyzerMain.getMinPercentFromSortedArray(sorted, percent), quantiles.getMinPercentAverage(percent), 0.0);
+					assertEquals(m + " max", AdipoQAnalyzerMain.getMaxPercentFromSortedArray(sorted, percent), quantiles.getMaxPercentAverage(percent), 0.0);
+				}
+			}
+			assertEquals(message + ", order " + order + " median", getSortedMedian(sorted), quantiles.getMedian(), 0.0);
+		}
+		if(bitDepth == 32) {
+			assertEquals(message + " getMaxPercent", AdipoQAnalyzerMain.getMaxPercentFromSortedArray(sorted, 25.0), AdipoQAnalyzerMain.getMaxPercent(values, 25.0), 0.0);
+			assertEquals(message + " getMinPercent", AdipoQAnalyzerMain.getMinPercentFromSortedArray(sorted, 25.0), AdipoQAnalyzerMain.getMinPercent(values, 25.0), 0.0);
+		}
+	}
+
+	private static double [] getIntegers(Random random, int n, int range) {
+		double [] values = new double [n];
+		for(int i = 0; i < n; i++) {
+			values [i] = random.nextInt(range);
+		}
+		return values;
+	}
+
+	@Test
+	public void bitDepth8() {
+		Random random = new Random(8L);
+		for(int n : new int [] {1, 2, 3, 10, 101, 1000}) {
+			assertSameAsSorted("8-bit, n " + n, getIntegers(random, n, 256), 8);
+			// many ties
+			assertSameAsSorted("8-bit ties, n " + n, getIntegers(random, n, 3), 8);
+		}
+		assertSameAsSorted("8-bit, no values", new double [0], 8);
+	}
+
+	/**
+	 * Narrow ranges are counted in a histogram, wide ranges are selected
+	 * */
+	@Test
+	public void bitDepth16() {
+		Random random = new Random(16L);
+		for(int n : new int [] {1, 2, 3, 10, 101, 1000, 5000}) {
+			assertSameAsSorted("16-bit, n " + n, getIntegers(random, n, 65536), 16);
+			assertSameAsSorted("16-bit narrow, n " + n, getIntegers(random, n, 300), 16);
+			assertSameAsSorted("16-bit ties, n " + n, getIntegers(random, n, 4), 16);
+		}
+	}
+
+	@Test
+	public void bitDepth32() {
+		Random random = new Random(32L);
+		for(int n : new int [] {1, 2, 3, 10, 17, 101, 1000, 5000}) {
+			double [] values = new double [n];
+			for(int i = 0; i < n; i++) {
+				values [i] = (float) (random.nextGaussian() * 100.0);
+			}
+			assertSameAsSorted("32-bit, n " + n, values, 32);
+			assertSameAsSorted("32-bit ties, n " + n, getIntegers(random, n, 5), 32);
+			double [] special = getIntegers(random, n, 7);
+			for(int i = 0; i < n; i += 3) {
+				special [i] = i % 2 == 0 ? -0.0 : 0.0;
+			}
+			for(int i = 1; i < n; i += 5) {
+				special [i] = Double.NaN;
+			}
+			for(int i = 2; i < n; i += 11) {
+				special [i] = i % 2 == 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+			}
+			assertSameAsSorted("32-bit NaN, infinity and signed zeros, n " + n, special, 32);
+		}
+		double [] allNaN = new double [10];
+		Arrays.fill(allNaN, Double.NaN);
+		assertSameAsSorted("32-bit all NaN", allNaN, 32);
+		// sorted and reverse sorted inputs
+		double [] ascending = new double [1000];
+		for(int i = 0; i < ascending.length; i++) ascending [i] = i / 3;
+		assertSameAsSorted("32-bit ascending", ascending, 32);
+		for(int i = 0; i < ascending.length; i++) ascending [i] = -i / 3;
+		assertSameAsSorted("32-bit descending", ascending, 32);
+	}
+}
@@ -0,0 +1,154 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AdipoResultCacheTest{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(String name, byte [] content) throws IOException {
+		File file = new File(folder.getRoot(), name);
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content);
+		out.close();
+		return file;
+	}
+
+	@Test
+	public void sha256LikeMessageDigest() throws Exception {
+		byte [] content = new byte [200000];
+		for(int i = 0; i < content.length; i++) content [i] = (byte) (i * 31);
+		File file = write("img.tif", content);
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update("settings".getBytes("UTF-8"));
+		digest.update(content);
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()) hex.append(String.format("%02x", b));
+		assertEquals(hex.toString(), AdipoResultCache.getSHA256("settings", file));
+
+		hex = new StringBuilder();
+		for(byte b : MessageDigest.getInstance("SHA-256").digest(content)) hex.append(String.format("%02x", b));
+		assertEquals(hex.toString(), AdipoResultCache.getSHA256(null, file));
+	}
+
+	@Test
+	public void keyDependsOnSettingsAndContent() throws Exception {
+		File image = write("img.tif", new byte [] {1, 2, 3});
+		String key = AdipoResultCache.getKey(image, "a=1\n");
+		assertEquals(key, AdipoResultCache.getKey(image, "a=1\n"));
+		assertNotEquals(key, AdipoResultCache.getKey(image, "a=2\n"));
+		write("img.tif", new byte [] {1, 2, 4});
+		assertNotEquals(key, AdipoResultCache.getKey(image, "a=1\n"));
+	}
+
+	@Test
+	public void recordedOutputsAreComplete() throws Exception {
+		String directory = folder.getRoot().getPath();
+		File image = write("img.tif", new byte [] {1, 2, 3});
+		File results = write("img_AQA.txt", new byte [10]), rois = write("img_AQA_r.zip", new byte [20]);
+		String key = AdipoResultCache.getKey(image, "a=1\n");
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+
+		assertTrue(AdipoResultCache.record(directory, "img.tif", key, new ArrayList<String>(Arrays.asList(results.getPath(), rois.getPath()))));
+		assertTrue(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "other.tif", key));
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", AdipoResultCache.getKey(image, "a=2\n")));
+
+		// a changed or missing output invalidates the entry
+		write("img_AQA_r.zip", new byte [21]);
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+		write("img_AQA_r.zip", new byte [20]);
+		assertTrue(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+		assertTrue(rois.delete());
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+
+		// the latest entry of an image counts
+		assertTrue(AdipoResultCache.record(directory, "img.tif", key, new ArrayList<String>(Arrays.asList(results.getPath()))));
+		assertTrue(AdipoResultCache.hasCompleteOutputs(directory, "img.tif", key));
+		assertEquals(2, Files.readAllLines(new File(directory, AdipoResultCache.INDEX_FILE_NAME).toPath()).size());
+	}
+
+	/**
+	 * The index is written and read as UTF-8 independent of the platform charset
+	 * */
+	@Test
+	public void nonAsciiImageNamesAreFound() throws Exception {
+		String directory = folder.getRoot().getPath(), imageName = "Zelle_\u00e4\u00df_\u00b5m.tif";
+		File image = write("img.tif", new byte [] {1, 2, 3});
+		File results = write("img_AQA.txt", new byte [10]);
+		String key = AdipoResultCache.getKey(image, "a=1\n");
+		assertTrue(AdipoResultCache.record(directory, imageName, key, new ArrayList<String>(Arrays.asList(results.getPath()))));
+		assertTrue(AdipoResultCache.hasCompleteOutputs(directory, imageName, key));
+		assertFalse(AdipoResultCache.hasCompleteOutputs(directory, "Zelle_??_?m.tif", key));
+	}
+
+	@Test
+	public void nothingRecordedForMissingOutputs() throws Exception {
+		String directory = folder.getRoot().getPath();
+		File results = write("img_AQA.txt", new byte [10]);
+		assertFalse(AdipoResultCache.record(directory, "img.tif", "key", new ArrayList<String>()));
+		assertFalse(AdipoResultCache.record(directory, "img.tif", "key",
+				new ArrayList<String>(Arrays.asList(results.getPath(), new File(directory, "img_AQAs.txt").getPath()))));
+		assertFalse(new File(directory, AdipoResultCache.INDEX_FILE_NAME).exists());
+	}
+
+	/**
+	 * Every setting that can change the outputs has to change the key, settings that only affect the speed must not
+	 * */
+	@Test
+	public void settingsInKey() {
+		AdipoQAnalyzerMain analyzer = new AdipoQAnalyzerMain();
+		String settings = analyzer.getResultCacheSettings();
+
+		analyzer.nrOfThreads++;
+		analyzer.nrOfParallelImages++;
+		analyzer.memoryBudgetPercent /= 2.0;
+		analyzer.writeQueueSize++;
+		analyzer.diskBackedCacheMB++;
+		analyzer.prefetchImages++;
+		analyzer.prefetchMemoryMB++;
+		assertEquals(settings, analyzer.getResultCacheSettings());
+
+		ArrayList<String> variants = new ArrayList<String>();
+		variants.add(settings);
+		analyzer.channelID++;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.chosenInput = AdipoQAnalyzerMain.inputVariant [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.minSizeCalibrated++;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.increaseRange = !analyzer.increaseRange;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.excludeSelection = AdipoQAnalyzerMain.excludeOptions [2];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.chosenReconstruction = AdipoQAnalyzerMain.reconstructionMethod [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.tileSize = 512;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.fuseParticles = !analyzer.fuseParticles;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.quantifySurroundings = !analyzer.quantifySurroundings;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.refDistance++;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.chosenSurroundingsMode = AdipoQAnalyzerMain.surroundingsModes [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.ChosenNumberFormat = AdipoQAnalyzerMain.nrFormats [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.chosenOutputName = AdipoQAnalyzerMain.outputVariant [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.saveRois = !analyzer.saveRois;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.saveSurrMaps = !analyzer.saveSurrMaps;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.compressSurrMaps = !analyzer.compressSurrMaps;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.gzipResults = !analyzer.gzipResults;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.saveColumnarResults = !analyzer.saveColumnarResults;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.chosenImageOutput = AdipoQAnalyzerMain.imageOutputVariants [1];	variants.add(analyzer.getResultCacheSettings());
+		analyzer.addIdOverlay = !analyzer.addIdOverlay;	variants.add(analyzer.getResultCacheSettings());
+		analyzer.resolutionLevel++;	variants.add(analyzer.getResultCacheSettings());
+		for(int i = 1; i < variants.size(); i++) {
+			assertNotEquals("setting " + i, variants.get(i-1), variants.get(i));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AdipoResultMergerTest{
+	private static final String COLUMNS = "Image	ID	Voxels	", FOOTER = AdipoResultMerger.FOOTER_START + "01.01.2026";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String text) throws IOException {
+		Writer writer;
+		if(file.getName().endsWith(AdipoTableWriter.GZIP_SUFFIX)) {
+			writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8);
+		}else {
+			writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		}
+		writer.write(text);
+		writer.close();
+	}
+
+	/**
+	 * Writes an (empty) image and its long and short results
+	 * @param resultsName: name of the long results file without extension, e.g., {name}_AQA, {name}_S1_AQA, or {name}_AQA_{date}
+	 * */
+	private File writeImage(String imageName, String resultsName, String extension, String minSize, String columns, String... rows) throws IOException {
+		File image = new File(folder.getRoot(), imageName);
+		if(!image.exists()) write(image, "");
+		write(new File(folder.getRoot(), resultsName + extension), "Image name:	" + imageName + "\n\nPreferences:	\n	Channel Nr:	1\n"
+				+ "	Minimum particle size (micron^2):	" + minSize + "	Minimum particle size (px):	" + imageName.length() + "\n\nResults:\n");
+		StringBuilder text = new StringBuilder(columns + FOOTER + "\n");
+		for(String row : rows) text.append(row + "\n");
+		write(new File(folder.getRoot(), resultsName + "s" + extension), text.toString());
+		return image;
+	}
+
+	private static String sha256(File file) throws Exception {
+		byte [] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest) hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	@Test
+	public void mergesInManifestOrderAndReportsProblems() throws Exception {
+		ArrayList<File> images = new ArrayList<File>();
+		images.add(writeImage("b.tif", "b_AQA", ".txt", "10.0", COLUMNS, "b	1	5	", "b	2	7	"));
+		// gzip-compressed results, empty lines are skipped
+		images.add(writeImage("a.tif", "a_AQA", ".txt" + AdipoTableWriter.GZIP_SUFFIX, "10.0", COLUMNS, "a	1	3	", ""));
+		// older and newer date-suffixed outputs, the newer one is merged
+		writeImage("c.tif", "c_AQA_260101_120000", ".txt", "10.0", COLUMNS, "c-old	1	1	");
+		images.add(writeImage("c.tif", "c_AQA_260102_120000", ".txt", "10.0", COLUMNS, "c	1	9	"));
+		images.add(new File(folder.getRoot(), "missing.tif"));
+		images.add(writeImage("d.tif", "d_AQA", ".txt", "20.0", COLUMNS, "d	1	1	"));
+		images.add(writeImage("e.tif", "e_AQA", ".txt", "10.0", "Image	ID	Area	", "e	1	1	"));
+		// multi-series file
+		writeImage("f.czi", "f_S1_AQA", ".txt", "10.0", COLUMNS, "f_S1	1	4	");
+		images.add(writeImage("f.czi", "f_S2_AQA", ".txt", "10.0", COLUMNS, "f_S2	1	6	"));
+
+		File merged = new File(folder.getRoot(), "merged.txt");
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		int problems = AdipoResultMerger.merge(images, merged, "	merged", new PrintStream(log, true));
+		assertEquals(log.toString(), 3, problems);
+
+		List<String> lines = Files.readAllLines(merged.toPath(), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList(COLUMNS + "	merged", "b	1	5	", "b	2	7	", "a	1	3	", "c	1	9	", "f_S1	1	4	", "f_S2	1	6	"), lines);
+
+		List<String> checksums = Files.readAllLines(new File(merged.getPath() + ".sha256").toPath(), StandardCharsets.UTF_8);
+		assertEquals(2 * 5 + 1, checksums.size());
+		assertEquals(sha256(merged) + "  " + merged.getAbsolutePath(), checksums.get(checksums.size()-1));
+		File first = new File(folder.getRoot(), "b_AQA.txt");
+		assertEquals(sha256(first) + "  " + first.getAbsolutePath(), checksums.get(0));
+	}
+
+	/**
+	 * The minimum particle size in pixel depends on the calibration of each image and must not prevent merging
+	 * */
+	@Test
+	public void ignoresMinimumSizeInPixel() throws Exception {
+		ArrayList<File> images = new ArrayList<File>();
+		images.add(writeImage("long-name.tif", "long-name_AQA", ".txt", "10.0", COLUMNS, "x	1	1	"));
+		images.add(writeImage("g.tif", "g_AQA", ".txt", "10.0", COLUMNS, "g	1	1	"));
+		File merged = new File(folder.getRoot(), "merged.txt");
+		assertEquals(0, AdipoResultMerger.merge(images, merged, "", new PrintStream(new ByteArrayOutputStream())));
+		assertEquals(3, Files.readAllLines(merged.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void nothingToMerge() throws Exception {
+		ArrayList<File> images = new ArrayList<File>();
+		images.add(new File(folder.getRoot(), "missing.tif"));
+		File merged = new File(folder.getRoot(), "merged.txt");
+		assertEquals(1, AdipoResultMerger.merge(images, merged, "", new PrintStream(new ByteArrayOutputStream())));
+		assertEquals(false, merged.exists());
+	}
+
+	@Test
+	public void shardsPartitionTheManifest() throws Exception {
+		ArrayList<File> files = new ArrayList<File>();
+		int [] sizes = {5, 1, 9, 3, 3, 7, 0};
+		for(int i = 0; i < sizes.length; i++) {
+			File file = new File(folder.getRoot(), "img" + i + ".tif");
+			write(file, new String(new char [sizes [i]]).replace('\0', 'x'));
+			files.add(file);
+		}
+		for(String mode : AdipoManifest.shardModes) {
+			for(int nShards = 1; nShards <= 4; nShards++) {
+				ArrayList<File> all = new ArrayList<File>();
+				for(int shard = 0; shard < nShards; shard++) {
+					ArrayList<File> shardFiles = AdipoManifest.selectShard(files, shard, nShards, mode);
+					// manifest order within each shard
+					for(int i = 1; i < shardFiles.size(); i++) {
+						assertEquals(true, files.indexOf(shardFiles.get(i-1)) < files.indexOf(shardFiles.get(i)));
+					}
+					all.addAll(shardFiles);
+				}
+				assertEquals(mode + ", " + nShards + " shards", files.size(), all.size());
+				assertEquals(mode + ", " + nShards + " shards", files.size(), new HashSet<File>(all).size());
+			}
+		}
+		assertEquals(Arrays.asList(files.get(1), files.get(4)), AdipoManifest.selectShard(files, 1, 3, AdipoManifest.shardModes [0]));
+		// largest first to the shard with the lowest total size: 9 -> 0, 7 -> 1, 5 -> 1, 3 -> 0, 3 -> 0, 1 -> 1, 0 -> 1
+		assertEquals(Arrays.asList(files.get(2), files.get(3), files.get(4)), AdipoManifest.selectShard(files, 0, 2, AdipoManifest.shardModes [1]));
+	}
+}
@@ -0,0 +1,164 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.DecimalFormatSymbols;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes columnar results files with AdipoColumnarWriter and reads them back with AdipoResultTable
+ * */
+public class AdipoResultTableTest{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String [] COLUMNS = {"ID", "Frame", "Center X", "Voxels", "Average intensity C2"};
+	private static final byte [] TYPES = {AdipoResultTable.INT, AdipoResultTable.INT, AdipoResultTable.DOUBLE, 
+			AdipoResultTable.INT, AdipoResultTable.DOUBLE};
+
+	private static LinkedHashMap<String,String> createMetadata() {
+		LinkedHashMap<String,String> metadata = new LinkedHashMap<String,String>();
+		metadata.put(AdipoResultTable.IMAGE_NAME, "Gewebe \u00e4\u00f6\u00fc 1.tif");
+		metadata.put(AdipoResultTable.SETTINGS, "Settings\n	Channel:	1\n");
+		metadata.put(AdipoResultTable.ONE_ROW_FOOTER, "	Analysis started:	01.02.2026");
+		metadata.put(AdipoResultTable.FOOTER, "Datafile was generated by test.");
+		return metadata;
+	}
+
+	/**
+	 * @return rows of random values, including special doubles, and as many as needed to fill several blocks
+	 * */
+	private static double [][] createRows(int n, long seed) {
+		Random random = new Random(seed);
+		double [] special = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, Double.MIN_VALUE, Double.MAX_VALUE};
+		double [][] rows = new double [n][];
+		for(int r = 0; r < n; r++) {
+			rows [r] = new double [] {r + 1, random.nextInt(5), random.nextDouble() * 2000.0, 
+					random.nextInt(), r < special.length ? special [r] : random.nextGaussian() * 1000.0};
+		}
+		rows [n-1][3] = Integer.MIN_VALUE;
+		return rows;
+	}
+
+	private File write(String name, double [][] rows) throws IOException {
+		File file = new File(folder.getRoot(), name + AdipoResultTable.EXTENSION);
+		AdipoColumnarWriter writer = new AdipoColumnarWriter(file.getPath(), COLUMNS, TYPES, createMetadata());
+		for(int r = 0; r < rows.length; r++) {
+			writer.addRow(rows [r]);
+		}
+		writer.close();
+		return file;
+	}
+
+	@Test
+	public void readsWhatWasWritten() throws IOException {
+		for(int n : new int [] {0, 1, AdipoColumnarWriter.BLOCK_ROWS, 2 * AdipoColumnarWriter.BLOCK_ROWS + 17}) {
+			double [][] rows = n == 0 ? new double [0][] : createRows(n, n);
+			AdipoResultTable table = AdipoResultTable.read(write("t" + n, rows));
+			assertArrayEquals(COLUMNS, table.getColumnNames());
+			assertEquals(n, table.getRowCount());
+			LinkedHashMap<String,String> metadata = createMetadata();
+			for(String key : metadata.keySet()) {
+				assertEquals(metadata.get(key), table.getMetadata(key));
+			}
+			assertNull(table.getMetadata("unknown"));
+			for(int c = 0; c < COLUMNS.length; c++) {
+				assertEquals(TYPES [c], table.getType(COLUMNS [c]));
+				double [] column = table.getColumn(COLUMNS [c]);
+				assertEquals(n, column.length);
+				for(int r = 0; r < n; r++) {
+					// bit-identical, also NaN and -0.0
+					assertEquals(COLUMNS [c] + " row " + r, Double.doubleToRawLongBits(rows [r][c]), Double.doubleToRawLongBits(column [r]));
+				}
+				if(TYPES [c] == AdipoResultTable.INT) {
+					int [] ints = table.getIntColumn(COLUMNS [c]);
+					for(int r = 0; r < n; r++) {
+						assertEquals((int) rows [r][c], ints [r]);
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsIntsOfDoubleColumns() throws IOException {
+		AdipoResultTable.read(write("d", createRows(3, 1L))).getIntColumn(COLUMNS [2]);
+	}
+
+	@Test
+	public void rejectsDamagedFiles() throws IOException {
+		File file = write("damaged", createRows(100, 2L));
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		try {
+			access.setLength(access.length() - 9);
+		}finally {
+			access.close();
+		}
+		try {
+			AdipoResultTable.read(file);
+			fail("incomplete file read");
+		}catch(IOException e) {
+			assertEquals(file.getPath() + " is incomplete", e.getMessage());
+		}
+		
+		File text = folder.newFile("results.txt");
+		Files.write(text.toPath(), "Image name	ID".getBytes("UTF-8"));
+		try {
+			AdipoResultTable.read(text);
+			fail("text file read");
+		}catch(IOException e) {
+			assertEquals(text.getPath() + " is no columnar results file", e.getMessage());
+		}
+	}
+
+	/**
+	 * The text tables contain the preferences, the rows formatted like the result tables written during the analysis, and the footers;
+	 * like the text tables of the analysis, they are written in the platform encoding
+	 * */
+	@Test
+	public void writesTextTables() throws IOException {
+		double [][] rows = createRows(10, 3L);
+		AdipoResultTable table = AdipoResultTable.read(write("text", rows));
+		File longFile = new File(folder.getRoot(), "text_AQA.txt"), shortFile = new File(folder.getRoot(), "text_AQAs.txt");
+		DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.GERMANY);
+		table.writeText(longFile.getPath(), shortFile.getPath(), symbols);
+		
+		AdipoNumberFormat nf6 = new AdipoNumberFormat(symbols);
+		String header = "Image name	ID	Custom	Frame	Center X	Voxels	Average intensity C2";
+		Charset charset = Charset.defaultCharset();
+		List<String> longLines = Files.readAllLines(longFile.toPath(), charset), shortLines = Files.readAllLines(shortFile.toPath(), charset);
+		assertEquals(6 + rows.length + 2, longLines.size());
+		assertEquals("Settings", longLines.get(0));
+		assertEquals("	Channel:	1", longLines.get(1));
+		assertEquals("", longLines.get(2));
+		assertEquals("", longLines.get(3));
+		assertEquals("Results", longLines.get(4));
+		assertEquals(header, longLines.get(5));
+		assertEquals("", longLines.get(6 + rows.length));
+		assertEquals("Datafile was generated by test.", longLines.get(7 + rows.length));
+		assertEquals(1 + rows.length, shortLines.size());
+		assertEquals(header + "	Analysis started:	01.02.2026", shortLines.get(0));
+		for(int r = 0; r < rows.length; r++) {
+			String expected = table.getMetadata(AdipoResultTable.IMAGE_NAME) + "	" + (r + 1) + "		" + (long) rows [r][1] + "	" + nf6.format(rows [r][2]) 
+					+ "	" + (long) rows [r][3] + "	" + nf6.format(rows [r][4]);
+			expected = new String(expected.getBytes(charset), charset);
+			assertEquals(expected, longLines.get(6 + r));
+			assertEquals(expected, shortLines.get(1 + r));
+		}
+	}
+}
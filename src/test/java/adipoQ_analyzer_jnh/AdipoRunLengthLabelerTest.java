@@ -0,0 +1,76 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+/**
+ * Compares the run-length labeling with the flood fill (particles) and with the legacy flood fill (objects).
+ * Points are listed in scan order instead of flood fill order, so SDs may differ in the last bits.
+ * */
+public class AdipoRunLengthLabelerTest{
+	@Test
+	public void sameAsLegacyOnFixedMasks() {
+		for(AdipoFloodFillerTest.ImageFactory factory : AdipoFloodFillerTest.FIXED_IMAGES) {
+			AdipoFloodFillerTest.assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [2], factory, 1e-12);
+		}
+	}
+
+	@Test
+	public void sameAsLegacyOnRandomMasks() {
+		for(AdipoFloodFillerTest.ImageFactory factory : AdipoFloodFillerTest.RANDOM_IMAGES) {
+			AdipoFloodFillerTest.assertSameAsLegacy(AdipoQAnalyzerMain.reconstructionMethod [2], factory, 1e-12);
+		}
+	}
+
+	/**
+	 * Particles, voxels per frame and bounding boxes determined from the runs have to match the points of the flood filler
+	 * */
+	@Test
+	public void sameParticlesAsFloodFill() {
+		ImagePlus [] images = new ImagePlus [] {
+			AdipoTestImages.createImage(AdipoTestImages.MASK_2D, 1, 1),
+			AdipoTestImages.createImage(AdipoTestImages.MASK_3D, 3, 1),
+			AdipoTestImages.createImage(AdipoTestImages.MASK_4D, 2, 2),
+			AdipoTestImages.createRandomImage(31, 19, 6, 2, 0.4, 5L)
+		};
+		for(ImagePlus imp : images) {
+			AdipoChannel mask = new AdipoChannel(imp, 1);
+			for(int connectivity : new int [] {AdipoFloodFiller.CONNECTIVITY_6, AdipoFloodFiller.CONNECTIVITY_18, AdipoFloodFiller.CONNECTIVITY_26}) {
+				String message = imp.getNSlices() + " slices, " + imp.getNFrames() + " frames, connectivity " + connectivity;
+				ArrayList<long []> expected = AdipoTestImages.getParticles(new AdipoFloodFiller(mask, connectivity), mask);
+
+				AdipoRunLengthLabeler labeler = new AdipoRunLengthLabeler(mask, connectivity);
+				labeler.label();
+				int [] frameCounter = new int [mask.nFrames];
+				for(int p = 0; p < expected.size(); p++) {
+					assertEquals(message + ": particle " + (p+1) + " missing", true, labeler.nextParticle());
+					int [] expectedCounter = new int [mask.nFrames];
+					int [] expectedBox = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+					for(int i = 0; i < labeler.getParticleSize(); i++) {
+						expectedCounter [labeler.getT(i)]++;
+						expectedBox [0] = Math.min(expectedBox [0], labeler.getX(i));
+						expectedBox [1] = Math.max(expectedBox [1], labeler.getX(i));
+						expectedBox [2] = Math.min(expectedBox [2], labeler.getY(i));
+						expectedBox [3] = Math.max(expectedBox [3], labeler.getY(i));
+						expectedBox [4] = Math.min(expectedBox [4], labeler.getZ(i));
+						expectedBox [5] = Math.max(expectedBox [5], labeler.getZ(i));
+					}
+					labeler.countVoxelsPerFrame(frameCounter);
+					assertArrayEquals(message + ": voxels per frame of particle " + (p+1), expectedCounter, frameCounter);
+					assertArrayEquals(message + ": bounding box of particle " + (p+1), expectedBox, labeler.getBoundingBox());
+				}
+				assertEquals(message + ": too many particles", false, labeler.nextParticle());
+
+				labeler = new AdipoRunLengthLabeler(mask, connectivity);
+				labeler.label();
+				AdipoTestImages.assertSameParticles(message, expected, AdipoTestImages.getParticles(labeler, mask));
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+/**
+ * Compares the single-pass statistics with two-pass statistics (mean first, then the squared deviations)
+ * */
+public class AdipoStatisticsTest{
+	private static final double TOLERANCE = 1e-12;
+
+	private static double [][] getDataSets() {
+		Random random = new Random(6L);
+		double [][] sets = new double [6][];
+		sets [0] = new double [] {42.0};
+		sets [1] = new double [] {7.0, 7.0, 7.0, 7.0};
+		sets [2] = new double [1000];
+		sets [3] = new double [1000];
+		sets [4] = new double [777];
+		sets [5] = new double [4096];
+		for(int i = 0; i < sets [2].length; i++)	sets [2][i] = random.nextInt(256);
+		for(int i = 0; i < sets [3].length; i++)	sets [3][i] = random.nextInt(65536);
+		for(int i = 0; i < sets [4].length; i++)	sets [4][i] = (random.nextDouble() - 0.5) * 1e-3;
+		// large offset, small spread
+		for(int i = 0; i < sets [5].length; i++)	sets [5][i] = 1e6 + random.nextGaussian();
+		return sets;
+	}
+
+	private static void assertTwoPass(String message, double [] values, AdipoStatistics statistics) {
+		double sum = 0.0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(double value : values) {
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		double average = sum / values.length, sd = 0.0;
+		for(double value : values) {
+			sd += Math.pow(value - average, 2.0);
+		}
+		sd = Math.sqrt(sd / (values.length - 1.0));
+
+		assertEquals(message, values.length, statistics.getCount());
+		assertEquals(message + " min", min, statistics.getMin(), 0.0);
+		assertEquals(message + " max", max, statistics.getMax(), 0.0);
+		assertEquals(message + " sum", sum, statistics.getSum(), Math.abs(sum) * TOLERANCE);
+		assertEquals(message + " average", average, statistics.getAverage(), Math.abs(average) * TOLERANCE);
+		if(values.length == 1) {
+			assertEquals(message + " sd", Double.NaN, statistics.getSD(), 0.0);
+		}else {
+			// both algorithms lose precision for values with a large offset relative to their spread
+			assertEquals(message + " sd", sd, statistics.getSD(), (sd + Math.abs(average)) * TOLERANCE + Double.MIN_VALUE);
+		}
+	}
+
+	@Test
+	public void sameAsTwoPass() {
+		double [][] sets = getDataSets();
+		for(int s = 0; s < sets.length; s++) {
+			AdipoStatistics statistics = new AdipoStatistics();
+			for(double value : sets [s]) {
+				statistics.add(value);
+			}
+			assertTwoPass("set " + s, sets [s], statistics);
+		}
+	}
+
+	/**
+	 * Accumulators of chunks (including empty ones) merged in order have to give the statistics of the whole set
+	 * */
+	@Test
+	public void mergedChunksSameAsTwoPass() {
+		double [][] sets = getDataSets();
+		for(int s = 0; s < sets.length; s++) {
+			for(int chunkSize : new int [] {1, 3, 64, 1000}) {
+				AdipoStatistics merged = new AdipoStatistics();
+				merged.merge(new AdipoStatistics());
+				for(int start = 0; start < sets [s].length; start += chunkSize) {
+					AdipoStatistics chunk = new AdipoStatistics();
+					for(int i = start; i < Math.min(sets [s].length, start + chunkSize); i++) {
+						chunk.add(sets [s][i]);
+					}
+					merged.merge(chunk);
+					merged.merge(new AdipoStatistics());
+				}
+				assertTwoPass("set " + s + ", chunks of " + chunkSize, sets [s], merged);
+			}
+		}
+	}
+
+	@Test
+	public void empty() {
+		AdipoStatistics statistics = new AdipoStatistics();
+		assertEquals(0L, statistics.getCount());
+		assertEquals(Double.NaN, statistics.getAverage(), 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, statistics.getMin(), 0.0);
+		assertEquals(Double.NEGATIVE_INFINITY, statistics.getMax(), 0.0);
+	}
+
+	/**
+	 * Intensity parameters of the objects against two-pass statistics over the object voxels
+	 * */
+	@Test
+	public void adipocyteSameAsTwoPass() {
+		ImagePlus imp = AdipoTestImages.createRandomImage(17, 13, 3, 2, 0.5, 7L);
+		ArrayList<Adipocyte> adipos = AdipoTestImages.createAnalyzer(AdipoQAnalyzerMain.reconstructionMethod [0], true,
+				AdipoQAnalyzerMain.excludeOptions [0], 1.0).analyzeAdipocytes(imp, 1);
+		AdipoChannel mask = new AdipoChannel(imp, 1);
+		AdipoChannel intensities = new AdipoChannel(imp, 2);
+		ArrayList<long []> particles = AdipoTestImages.getParticles(new AdipoFloodFiller(mask, AdipoFloodFiller.CONNECTIVITY_26), mask);
+		assertEquals(particles.size(), adipos.size());
+		for(int p = 0; p < particles.size(); p++) {
+			for(int t = 0; t < imp.getNFrames(); t++) {
+				ArrayList<Double> frameValues = new ArrayList<Double>();
+				for(long key : particles.get(p)) {
+					int plane = (int) (key / mask.planeSize);
+					if(plane / mask.nSlices == t) {
+						frameValues.add(intensities.getValue(plane, (int) (key % mask.planeSize)));
+					}
+				}
+				if(frameValues.size() < 2) continue;
+				double [] values = new double [frameValues.size()];
+				AdipoStatistics expected = new AdipoStatistics();
+				for(int i = 0; i < values.length; i++) {
+					values [i] = frameValues.get(i);
+					expected.add(values [i]);
+				}
+				assertTwoPass("object " + (p+1) + " t" + t, values, expected);
+				Adipocyte adipo = adipos.get(p);
+				String message = "object " + (p+1) + " t" + t;
+				assertEquals(message + " average", expected.getAverage(), adipo.averageIntensity [t][1], expected.getAverage() * TOLERANCE);
+				assertEquals(message + " sd", expected.getSD(), adipo.sdIntensity [t][1], expected.getSD() * TOLERANCE);
+				assertEquals(message + " min", expected.getMin(), adipo.minIntensity [t][1], 0.0);
+				assertEquals(message + " max", expected.getMax(), adipo.maxIntensity [t][1], 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+
+/**
+ * Small fixed and seeded test images: channel 1 is the mask, channel 2 holds intensities.
+ * Masks are given as rows of characters per plane (plane = t * nSlices + z): '.' is background,
+ * '#' is foreground (255), digits are foreground of that value (label images).
+ * */
+class AdipoTestImages{
+	/**
+	 * 2D mask with objects touching each border, a ring with a hole, diagonal chains (separate in 4-, joined in 8-connectivity),
+	 * a U-shape that is only joined at the bottom, and single pixels
+	 * */
+	static final String [][] MASK_2D = {{
+		"##....#.#.....",
+		"##...#...#..#.",
+		".....#.#.#....",
+		"#....#...#..#.",
+		"#.....###.....",
+		"..#..........#",
+		"...#...##.##.#",
+		"....#..#...#..",
+		"##.....#####..",
+		"#.........#..#",
+	}};
+
+	/**
+	 * 3D mask with 3 slices: objects that are only joined between slices (straight and diagonally), a hollow box,
+	 * objects touching the first and last slice
+	 * */
+	static final String [][] MASK_3D = {{
+		"##.......",
+		"#...###..",
+		"....#.#..",
+		"....###..",
+		".#......#",
+		"..#....##",
+	},{
+		".........",
+		"....###..",
+		"....#.#.#",
+		"....###..",
+		"..#...#..",
+		".......#.",
+	},{
+		"..##.....",
+		"....###..",
+		"....###..",
+		"#...###..",
+		"...#.....",
+		"......#..",
+	}};
+
+	/**
+	 * Time series with 2 slices and 2 frames: an object present in both frames (separate objects per frame), and objects of different
+	 * size in the two frames
+	 * */
+	static final String [][] MASK_4D = {{
+		"###....",
+		"#......",
+		"....##.",
+		".......",
+	},{
+		"#......",
+		".....#.",
+		"....#..",
+		"......#",
+	},{
+		"##.....",
+		"#......",
+		"...###.",
+		"...#.##",
+	},{
+		".......",
+		"#.....#",
+		"......#",
+		"#......",
+	}};
+
+	static ImagePlus createImage(String [][] planes, int nSlices, int nFrames) {
+		int width = planes [0][0].length(), height = planes [0].length;
+		ImagePlus imp = IJ.createHyperStack("test", width, height, 2, nSlices, nFrames, 16);
+		ImageStack stack = imp.getStack();
+		for(int t = 0; t < nFrames; t++) {
+			for(int z = 0; z < nSlices; z++) {
+				String [] rows = planes [t * nSlices + z];
+				for(int y = 0; y < height; y++) {
+					for(int x = 0; x < width; x++) {
+						char ch = rows [y].charAt(x);
+						double value = 0.0;
+						if(ch == '#') {
+							value = 255.0;
+						}else if(ch != '.') {
+							value = ch - '0';
+						}
+						stack.setVoxel(x, y, imp.getStackIndex(1, z+1, t+1)-1, value);
+					}
+				}
+			}
+		}
+		fillIntensities(imp);
+		return imp;
+	}
+
+	/**
+	 * @return image with a seeded random mask of the given foreground density
+	 * */
+	static ImagePlus createRandomImage(int width, int height, int nSlices, int nFrames, double density, long seed) {
+		ImagePlus imp = IJ.createHyperStack("random", width, height, 2, nSlices, nFrames, 16);
+		ImageStack stack = imp.getStack();
+		Random random = new Random(seed);
+		for(int t = 0; t < nFrames; t++) {
+			for(int z = 0; z < nSlices; z++) {
+				for(int y = 0; y < height; y++) {
+					for(int x = 0; x < width; x++) {
+						if(random.nextDouble() < density) {
+							stack.setVoxel(x, y, imp.getStackIndex(1, z+1, t+1)-1, 255.0);
+						}
+					}
+				}
+			}
+		}
+		fillIntensities(imp);
+		return imp;
+	}
+
+	private static void fillIntensities(ImagePlus imp) {
+		ImageStack stack = imp.getStack();
+		for(int t = 0; t < imp.getNFrames(); t++) {
+			for(int z = 0; z < imp.getNSlices(); z++) {
+				for(int y = 0; y < imp.getHeight(); y++) {
+					for(int x = 0; x < imp.getWidth(); x++) {
+						stack.setVoxel(x, y, imp.getStackIndex(2, z+1, t+1)-1, (x * 31 + y * 17 + z * 7 + t * 3) % 97 + 1);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return headless analyzer with mask channel 1 and no surroundings quantification
+	 * */
+	static AdipoQAnalyzerMain createAnalyzer(String reconstruction, boolean increaseRange, String excludeSelection, double minSize) {
+		AdipoQAnalyzerMain analyzer = new AdipoQAnalyzerMain();
+		analyzer.headless = true;
+		analyzer.progress = new AdipoConsoleProgress(new String [] {"test"}, 1, false);
+		analyzer.channelID = 1;
+		analyzer.chosenReconstruction = reconstruction;
+		analyzer.increaseRange = increaseRange;
+		analyzer.excludeSelection = excludeSelection;
+		analyzer.minSize = minSize;
+		analyzer.quantifySurroundings = false;
+		analyzer.nrOfThreads = 3;
+		return analyzer;
+	}
+
+	/**
+	 * @return the points of each particle found by the labeler as sorted keys t, z, y, x, particles in the order they were found
+	 * */
+	static ArrayList<long []> getParticles(AdipoLabeler labeler, AdipoChannel mask) {
+		ArrayList<long []> particles = new ArrayList<long []>();
+		while(labeler.nextParticle()) {
+			long [] keys = new long [labeler.getParticleSize()];
+			for(int i = 0; i < keys.length; i++) {
+				keys [i] = (((long) labeler.getT(i) * mask.nSlices + labeler.getZ(i)) * mask.height + labeler.getY(i)) * mask.width + labeler.getX(i);
+			}
+			Arrays.sort(keys);
+			particles.add(keys);
+		}
+		return particles;
+	}
+
+	static void assertSameParticles(String message, ArrayList<long []> expected, ArrayList<long []> actual) {
+		assertEquals(message + ": number of particles", expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(message + ": particle " + (i+1), expected.get(i), actual.get(i));
+		}
+	}
+
+	/**
+	 * Asserts that both lists contain the same objects in the same order with identical parameters
+	 * @param sdTolerance: relative tolerance for SDs, which depend on the order of the points (0.0 = identical)
+	 * */
+	static void assertSameAdipocytes(String message, ArrayList<Adipocyte> expected, ArrayList<Adipocyte> actual, double sdTolerance) {
+		assertEquals(message + ": number of objects", expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			Adipocyte e = expected.get(i), a = actual.get(i);
+			String m = message + ": object " + (i+1);
+			assertArrayEquals(m + " voxels", e.voxelNumber, a.voxelNumber);
+			assertArrayEquals(m + " center x", e.centerX, a.centerX, 0.0);
+			assertArrayEquals(m + " center y", e.centerY, a.centerY, 0.0);
+			assertArrayEquals(m + " center z", e.centerZ, a.centerZ, 0.0);
+			for(int t = 0; t < e.voxelNumber.length; t++) {
+				assertEquals(m + " surface", e.getSurface(1.0, 1.0, 1.0, t), a.getSurface(1.0, 1.0, 1.0, t), 0.0);
+			}
+			assertArrayEquals(m + " average", e.averageIntensity, a.averageIntensity);
+			assertArrayEquals(m + " integrated", e.integratedIntensity, a.integratedIntensity);
+			assertArrayEquals(m + " median", e.medianIntensity, a.medianIntensity);
+			assertArrayEquals(m + " min", e.minIntensity, a.minIntensity);
+			assertArrayEquals(m + " max", e.maxIntensity, a.maxIntensity);
+			if(sdTolerance == 0.0) {
+				assertArrayEquals(m + " sd", e.sdIntensity, a.sdIntensity);
+			}else {
+				for(int t = 0; t < e.sdIntensity.length; t++) {
+					for(int c = 0; c < e.sdIntensity [t].length; c++) {
+						assertEquals(m + " sd", e.sdIntensity [t][c], a.sdIntensity [t][c], Math.abs(e.sdIntensity [t][c]) * sdTolerance);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Asserts that channel c has the same values in both images
+	 * */
+	static void assertSameChannel(String message, ImagePlus expected, ImagePlus actual, int c) {
+		for(int t = 0; t < expected.getNFrames(); t++) {
+			for(int z = 0; z < expected.getNSlices(); z++) {
+				int index = expected.getStackIndex(c, z+1, t+1);
+				assertArrayEquals(message + ": plane z" + (z+1) + " t" + (t+1),
+						(short []) expected.getStack().getPixels(index), (short []) actual.getStack().getPixels(index));
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package adipoQ_analyzer_jnh;
+
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ij.ImagePlus;
+
+/**
+ * Compares the tiled detection of 2D images with the untiled detection (particle analyzer for binary masks, wand tracing for label images).
+ * Small tiles make objects cross several tile seams, horizontally, vertically and diagonally.
+ * */
+public class AdipoTiledLabelerTest{
+	private static final int [] TILE_SIZES = {1, 2, 3, 4, 5, 7, 16};
+
+	/**
+	 * Label image with touching objects of different labels, objects crossing seams, a label enclosed by another label,
+	 * and separate regions of the same label
+	 * */
+	static final String [][] LABEL_2D = {{
+		"1112222..33",
+		"1.12..2..3.",
+		"1112..2.44.",
+		"..5555544..",
+		"..5.6.5....",
+		"..55555..77",
+		"8.......77.",
+		"88..9...7..",
+		"8..999.....",
+	}};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private void assertSameAsUntiled(String message, AdipoFloodFillerTest.ImageFactory factory, boolean labelImage) {
+		for(boolean increaseRange : new boolean [] {false, true}) {
+			for(String exclude : new String [] {AdipoQAnalyzerMain.excludeOptions [0], AdipoQAnalyzerMain.excludeOptions [1]}) {
+				for(double minSize : new double [] {1.0, 3.0}) {
+					String m = message + ", increaseRange " + increaseRange + ", exclude " + exclude + ", minSize " + minSize;
+					String filePrefix = folder.getRoot().getPath() + "/img_AQA";
+					ImagePlus untiledImp = factory.create();
+					ArrayList<Adipocyte> untiled = AdipoTestImages.createAnalyzer(AdipoQAnalyzerMain.reconstructionMethod [0], increaseRange, exclude, minSize)
+							.analyzeAdipocytesWithIn2D(untiledImp, 1, filePrefix, labelImage);
+					for(int tileSize : TILE_SIZES) {
+						AdipoQAnalyzerMain analyzer = AdipoTestImages.createAnalyzer(AdipoQAnalyzerMain.reconstructionMethod [0], increaseRange, exclude, minSize);
+						analyzer.tileSize = tileSize;
+						ImagePlus imp = factory.create();
+						ArrayList<Adipocyte> tiled = analyzer.analyzeAdipocytesWithIn2D(imp, 1, filePrefix, labelImage);
+						AdipoTestImages.assertSameAdipocytes(m + ", tiles of " + tileSize, untiled, tiled, 0.0);
+						AdipoTestImages.assertSameChannel(m + ", tiles of " + tileSize, untiledImp, imp, 1);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void binaryMaskSameAsParticleAnalyzer() {
+		assertSameAsUntiled("MASK_2D", new AdipoFloodFillerTest.ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createImage(AdipoTestImages.MASK_2D, 1, 1);
+			}
+		}, false);
+		assertSameAsUntiled("random", new AdipoFloodFillerTest.ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createRandomImage(37, 29, 1, 1, 0.5, 14L);
+			}
+		}, false);
+	}
+
+	@Test
+	public void labelImageSameAsWandTracing() {
+		assertSameAsUntiled("LABEL_2D", new AdipoFloodFillerTest.ImageFactory() {
+			public ImagePlus create() {
+				return AdipoTestImages.createImage(LABEL_2D, 1, 1);
+			}
+		}, true);
+	}
+}
@@ -0,0 +1,73 @@
+package adipoQ_analyzer_jnh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+
+public class AdipoVirtualStackTest{
+	/**
+	 * @return wrapped 8-bit stack of 6 planes, each plane filled with its plane number, cache of 2 planes
+	 * */
+	private static AdipoVirtualStack createStack() {
+		ImagePlus imp = IJ.createImage("planes", "8-bit black", 3, 2, 6);
+		for(int n = 1; n <= 6; n++) {
+			imp.getStack().setSliceLabel("plane " + n, n);
+			imp.getStack().getProcessor(n).set(n);
+		}
+		AdipoVirtualStack.wrap(imp, 2 * 3 * 2);
+		return (AdipoVirtualStack) imp.getStack();
+	}
+
+	private static void assertPlanes(ImageStack stack, int... planes) {
+		assertEquals(planes.length, stack.getSize());
+		for(int i = 0; i < planes.length; i++) {
+			assertEquals("plane " + planes [i], stack.getSliceLabel(i+1));
+			assertEquals(planes [i], ((byte []) stack.getPixels(i+1)) [0]);
+		}
+	}
+
+	@Test
+	public void decodesDroppedPlanesAgain() {
+		AdipoVirtualStack stack = createStack();
+		assertPlanes(stack, 1, 2, 3, 4, 5, 6);
+		assertEquals(6, stack.getDecodedPlanes());
+		stack.getPixels(5);
+		stack.getPixels(6);
+		assertEquals(6, stack.getDecodedPlanes());
+		stack.getPixels(1);
+		assertEquals(7, stack.getDecodedPlanes());
+	}
+
+	@Test
+	public void keepsPinnedAndReplacedPlanesWhenDeleting() {
+		AdipoVirtualStack stack = createStack();
+		byte [] pinned = (byte []) stack.pin(4);
+		pinned [0] = 40;
+		byte [] replaced = new byte [6];
+		replaced [0] = 60;
+		stack.setPixels(replaced, 6);
+		stack.deleteSlice(2);
+		stack.deleteSlice(1);
+		assertEquals(4, stack.getSize());
+		assertSame(pinned, stack.getPixels(2));
+		assertSame(replaced, stack.getPixels(4));
+		assertEquals("plane 3", stack.getSliceLabel(1));
+		assertEquals(3, ((byte []) stack.getPixels(1)) [0]);
+		assertEquals("plane 5", stack.getSliceLabel(3));
+		assertEquals(5, ((byte []) stack.getPixels(3)) [0]);
+		stack.deleteLastSlice();
+		assertEquals(3, stack.getSize());
+		assertSame(pinned, stack.getPixels(2));
+		assertEquals("plane 5", stack.getSliceLabel(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsPlanesOutOfRange() {
+		createStack().deleteSlice(7);
+	}
+}